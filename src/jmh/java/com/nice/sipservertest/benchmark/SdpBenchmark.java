@@ -0,0 +1,158 @@
+package com.nice.sipservertest.benchmark;
+
+import com.nice.sipservertest.dto.MediaSignalingEvent;
+import com.nice.sipservertest.dto.SdpAssemblyException;
+import com.nice.sipservertest.dto.SdpMediaDescriptor;
+import com.nice.sipservertest.dto.SdpMessage;
+import com.nice.sipservertest.dto.SdpObjectPool;
+import com.nice.sipservertest.factory.SdpMediaDescriptorFactory;
+import com.nice.sipservertest.factory.SipMediaSignalingEventFactory;
+import com.nice.sipservertest.parser.AsciiCharSequence;
+import com.nice.sipservertest.parser.SdpLineCursor;
+import com.nice.sipservertest.parser.SdpMessageParser;
+import com.nice.sipservertest.util.SipBodyHelpers;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sip.SipFactory;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SDP hot path benchmarks over a corpus of INVITE bodies (src/jmh/resources/sdp-corpus)
+ * run with: mvn -Pjmh test-compile exec:exec
+ * (GC profiler is on by default, so each benchmark also reports gc.alloc.rate.norm = bytes allocated per op)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class SdpBenchmark {
+
+    public enum Corpus {
+        SINGLE_AUDIO("single-audio.sdp", "application/sdp"),
+        AUDIO_VIDEO("audio-video.sdp", "application/sdp"),
+        SIPREC_MULTIPART("siprec-multipart.mime", "multipart/mixed;boundary=foobar"),
+        TWELVE_MEDIA("many-media.sdp", "application/sdp");
+
+        final String resource;
+        final String contentType;
+
+        Corpus(String resource, String contentType) {
+            this.resource = resource;
+            this.contentType = contentType;
+        }
+    }
+
+    @Param
+    public Corpus corpus;
+
+    private Request request;
+
+    private byte[] sdp;
+
+    private CharSequence sdpText;
+
+    private int firstMediaLine;
+
+    private SdpMessage message;
+
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocateDirect(8192);
+
+    private final SdpObjectPool pool = new SdpObjectPool(16);
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] body = readCorpus(corpus.resource);
+
+        String invite = "INVITE sip:recorder@10.0.0.5:5060 SIP/2.0\r\n" +
+                "Via: SIP/2.0/UDP 10.1.1.50:5060;branch=z9hG4bK-524287-1---a8e3b2d1c0f9e7d6\r\n" +
+                "Max-Forwards: 70\r\n" +
+                "From: <sip:src@10.1.1.50>;tag=1f3e5d7c\r\n" +
+                "To: <sip:recorder@10.0.0.5>\r\n" +
+                "Call-ID: 8a6d5f3c2b1e4d7a9c0b8e6f5d4c3b2a@10.1.1.50\r\n" +
+                "CSeq: 1 INVITE\r\n" +
+                "Contact: <sip:src@10.1.1.50:5060>\r\n" +
+                "Content-Type: " + corpus.contentType + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                "\r\n" +
+                new String(body, StandardCharsets.ISO_8859_1);
+
+        SipFactory sipFactory = SipFactory.getInstance();
+        sipFactory.setPathName("gov.nist");
+        MessageFactory messageFactory = sipFactory.createMessageFactory();
+        request = messageFactory.createRequest(invite);
+
+        sdp = SipBodyHelpers.getBodyContentBytes(request, "application/sdp");
+        if (sdp == null) throw new IllegalStateException("No SDP in corpus " + corpus);
+
+        sdpText = new AsciiCharSequence(sdp, 0, sdp.length);
+        firstMediaLine = sdpText.toString().indexOf("\nm=") + 1;
+
+        message = SdpMessageParser.parse(sdp, 0, sdp.length);
+        if (!message.isValid() || message.getMediaDescriptions().isEmpty()) {
+            throw new IllegalStateException("Invalid SDP in corpus " + corpus);
+        }
+    }
+
+    private static byte[] readCorpus(String name) throws IOException {
+        try (InputStream in = SdpBenchmark.class.getResourceAsStream("/sdp-corpus/" + name)) {
+            if (in == null) throw new IOException("Missing corpus file " + name);
+            return in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public byte[] extractBody() {
+        return SipBodyHelpers.getBodyContentBytes(request, "application/sdp");
+    }
+
+    @Benchmark
+    public SdpMessage parse() {
+        return SdpMessageParser.parse(sdp, 0, sdp.length);
+    }
+
+    /**
+     * parse into pooled objects and release them again, as the listener does with sip.pipeline.sdp-pool-size set
+     */
+    @Benchmark
+    public boolean parsePooled() {
+        SdpMessage msg = SdpMessageParser.parse(sdp, 0, sdp.length, pool);
+        boolean valid = msg.isValid();
+        pool.release(msg);
+        return valid;
+    }
+
+    @Benchmark
+    public String encode() throws SdpAssemblyException {
+        return message.getEncodedMessage();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeTo() throws SdpAssemblyException {
+        encodeBuffer.clear();
+        message.encodeTo(encodeBuffer);
+        return encodeBuffer;
+    }
+
+    /**
+     * first m= section only, as SdpMessageParser hands it to the factory
+     */
+    @Benchmark
+    public SdpMediaDescriptor parseMediaDescriptor() {
+        SdpLineCursor cursor = new SdpLineCursor(sdpText, firstMediaLine, sdpText.length());
+        cursor.next();
+        return SdpMediaDescriptorFactory.parse(cursor, message.getConnectionAddress());
+    }
+
+    @Benchmark
+    public MediaSignalingEvent createMediaSignalingEvent() {
+        return SipMediaSignalingEventFactory.createMediaSignalingEvent(request, message);
+    }
+}
@@ -0,0 +1,330 @@
+package com.nice.sipservertest.capture;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * binary capture of SIP messages into rotating memory-mapped segment files (read back with SipCaptureReader)
+ *   capture() only queues the message with its metadata - the one writer thread encodes it (the stack keeps no wire
+ *   bytes, the message is re-encoded from the parsed headers plus the raw body) and appends it to the current segment,
+ *   so messages must not change after they are captured
+ *   a message that finds the queue full is dropped and counted
+ *   segments are named sip-capture-NNNNNNNNNN.cap and numbered on from the ones already in the directory, when one is
+ *   full the next is mapped and the oldest past maxSegments deleted
+ * segment: int magic, short version, short 0, then records - a record length of 0 ends the segment
+ * record (big endian): int length of the rest, long timestamp millis, byte direction, byte transport,
+ *   byte peer address length + address, short peer port, short local port, short Call-ID length + Call-ID (UTF-8),
+ *   int message length + message - the writer puts the length last, so a reader of a live segment only sees whole
+ *   records
+ */
+@Slf4j
+public class SipCaptureJournal implements AutoCloseable {
+
+    static final int MAGIC = 0x53495043;
+
+    static final short VERSION = 1;
+
+    static final int SEGMENT_HEADER_BYTES = 8;
+
+    static final String SEGMENT_PREFIX = "sip-capture-";
+
+    static final String SEGMENT_SUFFIX = ".cap";
+
+    static final byte RECEIVED = 0;
+
+    static final byte SENT = 1;
+
+    static final String[] TRANSPORTS = {"UDP", "TCP", "TLS", "SCTP", "WS", "WSS"};
+
+    private static final class Capture {
+        final SIPMessage message;
+        final long timestampMillis;
+        final byte direction;
+        final String transport;
+        final InetAddress peerAddress;
+        final int peerPort;
+        final int localPort;
+
+        Capture(SIPMessage message, long timestampMillis, byte direction, String transport, InetAddress peerAddress,
+                int peerPort, int localPort) {
+            this.message = message;
+            this.timestampMillis = timestampMillis;
+            this.direction = direction;
+            this.transport = transport;
+            this.peerAddress = peerAddress;
+            this.peerPort = peerPort;
+            this.localPort = localPort;
+        }
+    }
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int maxSegments;
+
+    private final BlockingQueue<Capture> queue;
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    // writer thread only
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    private long nextSegmentNumber;
+
+    private MappedByteBuffer segment;
+
+    private final LongAdder captured = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder writtenBytes = new LongAdder();
+
+    /**
+     * @param segmentBytes size of each segment file, a message that does not fit in an empty segment is dropped
+     * @param maxSegments  segments kept in the directory, the oldest are deleted
+     */
+    public SipCaptureJournal(Path directory, int segmentBytes, int maxSegments, int queueCapacity) throws IOException {
+        if (segmentBytes < 4096 || maxSegments < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException(String.format("capture journal needs segments of at least 4096 bytes, at least one segment and queue slot (segment=%d, segments=%d, queue=%d)",
+                    segmentBytes, maxSegments, queueCapacity));
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        for (Path existing : listSegments(directory)) {
+            segments.add(existing);
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(existing) + 1);
+        }
+        rotate();
+
+        this.writer = new Thread(this::write, "sip-capture");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * queue a message received from the peer
+     */
+    public boolean captureReceived(SIPMessage message, String transport) {
+        return capture(message, RECEIVED, transport, message.getRemoteAddress(), message.getRemotePort(),
+                message.getLocalPort());
+    }
+
+    /**
+     * queue a response sent in answer to request (the response does not carry the peer address)
+     */
+    public boolean captureSent(SIPMessage response, SIPMessage request, String transport) {
+        return capture(response, SENT, transport, request.getRemoteAddress(), request.getRemotePort(),
+                request.getLocalPort());
+    }
+
+    private boolean capture(SIPMessage message, byte direction, String transport, InetAddress peerAddress, int peerPort,
+                            int localPort) {
+        if (!running) return false;
+
+        if (!queue.offer(new Capture(message, System.currentTimeMillis(), direction, transport, peerAddress, peerPort,
+                localPort))) {
+            dropped.increment();
+            return false;
+        }
+
+        captured.increment();
+        return true;
+    }
+
+    public long getCapturedCount() {
+        return captured.sum();
+    }
+
+    /**
+     * messages dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * messages that could not be encoded or written (too large for a segment, disk errors)
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * write what is queued, flush the current segment and stop the writer - messages captured after close are dropped
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        List<Capture> batch = new ArrayList<>();
+
+        // no interrupts - they would close the channel of a segment being mapped
+        while (running) {
+            try {
+                Capture capture = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (capture == null) continue;
+                batch.add(capture);
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            append(batch);
+            batch.clear();
+        }
+
+        queue.drainTo(batch);
+        append(batch);
+        segment.force();
+    }
+
+    private void append(List<Capture> batch) {
+        for (Capture capture : batch) {
+            try {
+                append(capture);
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+                log.warn("Failed to capture {} message", (capture.direction == SENT) ? "sent" : "received", e);
+            }
+        }
+    }
+
+    private void append(Capture capture) throws IOException {
+        byte[] headers = capture.message.encodeMessage(new StringBuilder()).toString().getBytes(StandardCharsets.UTF_8);
+        byte[] body = capture.message.getRawContent();
+        int bodyLength = (body == null) ? 0 : body.length;
+        byte[] callId = (capture.message.getCallId() == null) ? new byte[0] :
+                capture.message.getCallId().getCallId().getBytes(StandardCharsets.UTF_8);
+        byte[] address = (capture.peerAddress == null) ? new byte[0] : capture.peerAddress.getAddress();
+
+        int length = 8 + 1 + 1 + 1 + address.length + 2 + 2 + 2 + callId.length + 4 + headers.length + bodyLength;
+        if (4 + length > segmentBytes - SEGMENT_HEADER_BYTES - 4) {
+            throw new IOException("message of " + (headers.length + bodyLength) + " bytes does not fit a segment");
+        }
+        // keep room for the 0 that ends the segment
+        if (segment.remaining() < 4 + length + 4) {
+            rotate();
+        }
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putLong(capture.timestampMillis);
+        segment.put(capture.direction);
+        segment.put(transportCode(capture.transport));
+        segment.put((byte) address.length);
+        segment.put(address);
+        segment.putShort((short) capture.peerPort);
+        segment.putShort((short) capture.localPort);
+        segment.putShort((short) callId.length);
+        segment.put(callId);
+        segment.putInt(headers.length + bodyLength);
+        segment.put(headers);
+        if (body != null) segment.put(body);
+        segment.putInt(start, length);
+
+        written.increment();
+        writtenBytes.add(4 + length);
+    }
+
+    private void rotate() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.putInt(MAGIC);
+        segment.putShort(VERSION);
+        segment.putShort((short) 0);
+        segments.add(path);
+
+        while (segments.size() > maxSegments) {
+            Path oldest = segments.removeFirst();
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException e) {
+                log.warn("Failed to delete capture segment {}", oldest, e);
+            }
+        }
+        log.debug("Capturing SIP messages to {}", path);
+    }
+
+    private static byte transportCode(String transport) {
+        for (int i = 0; i < TRANSPORTS.length; i++) {
+            if (TRANSPORTS[i].equalsIgnoreCase(transport)) return (byte) i;
+        }
+        return (byte) 0xFF;
+    }
+
+    /**
+     * segment files of the directory, oldest first
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX) &&
+                            p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.nice.sipservertest.capture;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * offline reader/indexer of SipCaptureJournal segments - also works on the segments of a running journal
+ *   java -cp target/classes:... com.nice.sipservertest.capture.SipCaptureReader index &lt;directory&gt;
+ *   java -cp target/classes:... com.nice.sipservertest.capture.SipCaptureReader extract &lt;directory&gt; &lt;call-id&gt;
+ * index lists every call with its message count and time range, extract prints the messages of one call
+ */
+public final class SipCaptureReader {
+
+    @Getter
+    public static final class Record {
+
+        private final Path segment;
+
+        /**
+         * position of the record in the segment
+         */
+        private final int offset;
+
+        private final long timestampMillis;
+
+        private final boolean sent;
+
+        private final String transport;
+
+        /**
+         * null if the peer address was not known
+         */
+        private final InetAddress peerAddress;
+
+        private final int peerPort;
+
+        private final int localPort;
+
+        private final String callId;
+
+        /**
+         * null when only the index is read
+         */
+        private final byte[] message;
+
+        Record(Path segment, int offset, long timestampMillis, boolean sent, String transport, InetAddress peerAddress,
+               int peerPort, int localPort, String callId, byte[] message) {
+            this.segment = segment;
+            this.offset = offset;
+            this.timestampMillis = timestampMillis;
+            this.sent = sent;
+            this.transport = transport;
+            this.peerAddress = peerAddress;
+            this.peerPort = peerPort;
+            this.localPort = localPort;
+            this.callId = callId;
+            this.message = message;
+        }
+    }
+
+    private SipCaptureReader() {
+    }
+
+    /**
+     * records of every segment of the directory without their messages, grouped by Call-ID in capture order
+     */
+    public static Map<String, List<Record>> index(Path directory) throws IOException {
+        Map<String, List<Record>> calls = new LinkedHashMap<>();
+        for (Path segment : SipCaptureJournal.listSegments(directory)) {
+            read(segment, callId -> false,
+                    record -> calls.computeIfAbsent(record.callId, k -> new ArrayList<>()).add(record));
+        }
+        return calls;
+    }
+
+    /**
+     * the messages of one call, in capture order
+     */
+    public static List<Record> extract(Path directory, String callId) throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (Path segment : SipCaptureJournal.listSegments(directory)) {
+            read(segment, callId::equals, record -> {
+                if (record.callId.equals(callId)) records.add(record);
+            });
+        }
+        return records;
+    }
+
+    /**
+     * hand every whole record of the segment to handler - the message is only copied out when withMessage accepts
+     * the Call-ID
+     */
+    public static void read(Path segment, Predicate<String> withMessage, Consumer<Record> handler) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            // deleted by the journal since it was listed
+            return;
+        }
+
+        if (buffer.remaining() < SipCaptureJournal.SEGMENT_HEADER_BYTES || buffer.getInt() != SipCaptureJournal.MAGIC) {
+            throw new IOException(segment + " is not a capture segment");
+        }
+        short version = buffer.getShort();
+        if (version != SipCaptureJournal.VERSION) {
+            throw new IOException(segment + " has capture version " + version + ", expected " + SipCaptureJournal.VERSION);
+        }
+        buffer.position(SipCaptureJournal.SEGMENT_HEADER_BYTES);
+
+        while (buffer.remaining() >= 4) {
+            int offset = buffer.position();
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) break;
+
+            int end = buffer.position() + length;
+            long timestampMillis = buffer.getLong();
+            boolean sent = buffer.get() == SipCaptureJournal.SENT;
+            String transport = transport(buffer.get());
+            InetAddress peerAddress = address(buffer, buffer.get());
+            int peerPort = buffer.getShort() & 0xFFFF;
+            int localPort = buffer.getShort() & 0xFFFF;
+            String callId = string(buffer, buffer.getShort() & 0xFFFF);
+            int messageLength = buffer.getInt();
+
+            byte[] message = null;
+            if (withMessage.test(callId)) {
+                message = new byte[messageLength];
+                buffer.get(message);
+            }
+
+            handler.accept(new Record(segment, offset, timestampMillis, sent, transport, peerAddress, peerPort,
+                    localPort, callId, message));
+            buffer.position(end);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("index")) {
+            printIndex(index(Path.of(args[1])), System.out);
+        } else if (args.length == 3 && args[0].equals("extract")) {
+            printMessages(extract(Path.of(args[1]), args[2]), System.out);
+        } else {
+            System.err.println("usage: SipCaptureReader index <directory> | extract <directory> <call-id>");
+            System.exit(2);
+        }
+    }
+
+    static void printIndex(Map<String, List<Record>> calls, PrintStream out) {
+        for (Map.Entry<String, List<Record>> call : calls.entrySet()) {
+            List<Record> records = call.getValue();
+            Record first = records.get(0);
+            out.printf("%s\t%d\t%s\t%s\t%s%n", call.getKey(), records.size(),
+                    Instant.ofEpochMilli(first.timestampMillis), Instant.ofEpochMilli(records.get(records.size() - 1).timestampMillis),
+                    peer(first));
+        }
+    }
+
+    static void printMessages(List<Record> records, PrintStream out) {
+        for (Record record : records) {
+            out.printf("# %s %s %s %s local port %d%n", Instant.ofEpochMilli(record.timestampMillis),
+                    record.sent ? "sent to" : "received from", record.transport, peer(record), record.localPort);
+            out.println(new String(record.message, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String peer(Record record) {
+        return ((record.peerAddress == null) ? "?" : record.peerAddress.getHostAddress()) + ":" + record.peerPort;
+    }
+
+    private static String transport(byte code) {
+        int i = code & 0xFF;
+        return (i < SipCaptureJournal.TRANSPORTS.length) ? SipCaptureJournal.TRANSPORTS[i] : "?";
+    }
+
+    private static InetAddress address(MappedByteBuffer buffer, int length) throws UnknownHostException {
+        if (length == 0) return null;
+
+        byte[] address = new byte[length];
+        buffer.get(address);
+        return InetAddress.getByAddress(address);
+    }
+
+    private static String string(MappedByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,11 +1,16 @@
 package com.nice.sipservertest.config;
 
+import com.nice.sipservertest.dns.Route53AnswerCache;
+import com.nice.sipservertest.dns.Route53RecordUpdater;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
 import software.amazon.awssdk.profiles.ProfileFile;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.route53.Route53AsyncClient;
 import software.amazon.awssdk.services.route53.Route53Client;
 
 import java.nio.file.Paths;
@@ -13,12 +18,42 @@ import java.nio.file.Paths;
 import static software.amazon.awssdk.utils.UserHomeDirectoryUtils.userHomeDirectory;
 
 //@Configuration
+@EnableConfigurationProperties(Route53Properties.class)
 @Slf4j
 public class AWSConfig {
 
     @Bean
     Route53Client route53Client() {
-        return Route53Client.builder().credentialsProvider((ProfileCredentialsProvider.builder().profileFile(ProfileFile
+        return Route53Client.builder().credentialsProvider(credentialsProvider())
+                .region(Region.US_WEST_2)
+                .build();
+    }
+
+    @Bean
+    Route53AsyncClient route53AsyncClient() {
+        return Route53AsyncClient.builder().credentialsProvider(credentialsProvider())
+                .region(Region.US_WEST_2)
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    Route53RecordUpdater route53RecordUpdater(Route53AsyncClient route53AsyncClient, Route53Properties route53Properties) {
+        route53Properties.validate();
+        return new Route53RecordUpdater(route53AsyncClient, route53Properties.getHostedZoneId(),
+                route53Properties.getBatchWindowMs(), route53Properties.getStatusPollIntervalMs(),
+                route53Properties.getMaxBatchSize());
+    }
+
+    @Bean
+    Route53AnswerCache route53AnswerCache(Route53AsyncClient route53AsyncClient, Route53Properties route53Properties) {
+        route53Properties.validate();
+        return new Route53AnswerCache(route53AsyncClient, route53Properties.getAnswerDefaultTtlMs(),
+                route53Properties.getAnswerMinTtlMs(), route53Properties.getAnswerRefreshAhead(),
+                route53Properties.getAnswerCacheMaxEntries());
+    }
+
+    private static AwsCredentialsProvider credentialsProvider() {
+        return ProfileCredentialsProvider.builder().profileFile(ProfileFile
                         .aggregator()
                         .applyMutation(aggregator -> aggregator.addFile(ProfileFile
                                 .builder()
@@ -30,8 +65,6 @@ public class AWSConfig {
                                 .content(Paths.get(userHomeDirectory(), ".aws", "nikolai", "config"))
                                 .type(ProfileFile.Type.CONFIGURATION)
                                 .build()))
-                        .build()).profileName("default").build()))
-                .region(Region.US_WEST_2)
-                .build();
+                        .build()).profileName("default").build();
     }
 }
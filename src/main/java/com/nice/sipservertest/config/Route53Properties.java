@@ -0,0 +1,63 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Route53 record updates (aws.route53.* properties)
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "aws.route53")
+public class Route53Properties {
+
+    private String hostedZoneId = "Z008337866284ALQ4TSI";
+
+    /**
+     * changes submitted within this window of the first pending one go out in one change batch
+     */
+    private long batchWindowMs = 200;
+
+    /**
+     * how often a submitted change batch is checked until Route53 reports it INSYNC
+     */
+    private long statusPollIntervalMs = 5_000;
+
+    /**
+     * changes per ChangeResourceRecordSets call (Route53 allows up to 1000)
+     */
+    private int maxBatchSize = 1000;
+
+    /**
+     * cache lifetime of record answers without a TTL of their own (alias records)
+     */
+    private long answerDefaultTtlMs = 60_000;
+
+    /**
+     * shortest cache lifetime of a record answer, whatever the record TTL
+     */
+    private long answerMinTtlMs = 5_000;
+
+    /**
+     * fraction of the TTL after which a read refreshes the answer in the background
+     */
+    private double answerRefreshAhead = 0.8;
+
+    private int answerCacheMaxEntries = 256;
+
+    public void validate() {
+        if (hostedZoneId == null || hostedZoneId.isEmpty()) {
+            throw new IllegalArgumentException("aws.route53.hosted-zone-id must be set");
+        }
+        if (batchWindowMs < 0 || statusPollIntervalMs < 1 || maxBatchSize < 1 || maxBatchSize > 1000) {
+            throw new IllegalArgumentException(String.format("aws.route53 needs batch-window-ms >= 0, status-poll-interval-ms >= 1 and max-batch-size 1-1000 (%d, %d, %d)",
+                    batchWindowMs, statusPollIntervalMs, maxBatchSize));
+        }
+        if (answerDefaultTtlMs < 1 || answerMinTtlMs < 0 || answerRefreshAhead <= 0 || answerRefreshAhead > 1 ||
+                answerCacheMaxEntries < 1) {
+            throw new IllegalArgumentException(String.format("aws.route53 needs answer-default-ttl-ms >= 1, answer-min-ttl-ms >= 0, answer-refresh-ahead in (0, 1] and answer-cache-max-entries >= 1 (%d, %d, %s, %d)",
+                    answerDefaultTtlMs, answerMinTtlMs, answerRefreshAhead, answerCacheMaxEntries));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * binary capture of received and sent SIP messages (sip.capture.* properties), read back with SipCaptureReader
+ * ex. sip.capture.enabled=true, sip.capture.directory=/var/log/sip-capture
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.capture")
+public class SipCaptureProperties {
+
+    private boolean enabled = false;
+
+    private Path directory = Path.of("sip-capture");
+
+    /**
+     * size of each memory-mapped segment file
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    /**
+     * segments kept, the oldest are deleted - the journal holds up to segment-size * max-segments bytes
+     */
+    private int maxSegments = 16;
+
+    /**
+     * messages waiting for the writer thread - messages past it are not captured
+     */
+    private int queueCapacity = 8192;
+
+    public void validate() {
+        if (directory == null || segmentSize < 4096 || maxSegments < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException(String.format("sip.capture needs a directory, segment-size >= 4096, max-segments >= 1 and queue-capacity >= 1 (directory=%s, segment-size=%d, max-segments=%d, queue-capacity=%d)",
+                    directory, segmentSize, maxSegments, queueCapacity));
+        }
+    }
+}
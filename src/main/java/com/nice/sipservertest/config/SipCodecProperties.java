@@ -0,0 +1,45 @@
+package com.nice.sipservertest.config;
+
+import com.nice.sipservertest.dto.MediaCodecTypes;
+import com.nice.sipservertest.dto.SdpCodecRegistry;
+import com.nice.sipservertest.dto.SdpMediaCodecs;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * extra codec mappings added to the SDP codec registry at startup (sip.codecs.* properties), ex.
+ *   sip.codecs.encoding-names[G729a]=G729           rtpmap name (case insensitive) -> SdpMediaCodecs
+ *   sip.codecs.static-payload-types[9]=G722          payload type 0-95 used without rtpmap -> SdpMediaCodecs
+ *   sip.codecs.media-codec-types[AMR_WB]=AMR_WB      SdpMediaCodecs -> MediaCodecTypes in media signaling events
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.codecs")
+public class SipCodecProperties {
+
+    private Map<String, SdpMediaCodecs> encodingNames = new LinkedHashMap<>();
+
+    private Map<Integer, SdpMediaCodecs> staticPayloadTypes = new LinkedHashMap<>();
+
+    private Map<SdpMediaCodecs, MediaCodecTypes> mediaCodecTypes = new LinkedHashMap<>();
+
+    public void validate() {
+        for (Map.Entry<Integer, SdpMediaCodecs> entry : staticPayloadTypes.entrySet()) {
+            if (entry.getKey() < 0 || entry.getKey() > 95) {
+                throw new IllegalArgumentException("sip.codecs.static-payload-types keys must be 0-95 (96-127 are dynamic), got " +
+                        entry.getKey());
+            }
+        }
+    }
+
+    public SdpCodecRegistry applyTo(SdpCodecRegistry registry) {
+        encodingNames.forEach(registry::registerEncodingName);
+        staticPayloadTypes.forEach(registry::registerStaticPayloadType);
+        mediaCodecTypes.forEach(registry::registerMediaCodecType);
+        return registry;
+    }
+}
@@ -1,8 +1,26 @@
 package com.nice.sipservertest.config;
 
+import com.nice.sipservertest.capture.SipCaptureJournal;
+import com.nice.sipservertest.dto.SdpCodecRegistry;
+import com.nice.sipservertest.listener.ReusePortNetworkLayer;
 import com.nice.sipservertest.listener.SipListenerImpl;
 import com.nice.sipservertest.listener.SipLogger;
+import com.nice.sipservertest.listener.SipSignalingLog;
+import com.nice.sipservertest.listener.SipSignalingMetrics;
+import com.nice.sipservertest.negotiation.SdpOfferAnswerEngine;
+import com.nice.sipservertest.session.OffHeapMediaStateStore;
+import com.nice.sipservertest.session.RtpPortAllocator;
+import com.nice.sipservertest.session.SipSessionRegistry;
+import com.nice.sipservertest.util.DnsResolverCache;
+import com.nice.sipservertest.util.VirtualThreads;
 import gov.nist.core.StackLogger;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,10 +28,25 @@ import javax.sip.*;
 import javax.sip.address.AddressFactory;
 import javax.sip.header.HeaderFactory;
 import javax.sip.message.MessageFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TooManyListenersException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
+@EnableConfigurationProperties({SipPipelineProperties.class, SipExecutionProperties.class, SipStackProperties.class,
+        SipTransportProperties.class, SipCodecProperties.class, SipSessionProperties.class,
+        SipMediaProperties.class, SipLoggingProperties.class, SipCaptureProperties.class,
+        SipDnsProperties.class})
+@Slf4j
 public class SipConfig {
 
     @Bean
@@ -23,17 +56,89 @@ public class SipConfig {
         return sipFactory;
     }
 
+    /**
+     * SipLogger (created by the stack) and the listener log through it
+     */
+    @Bean(destroyMethod = "close")
+    SipSignalingLog sipSignalingLog(SipLoggingProperties loggingProperties) {
+        loggingProperties.validate();
+
+        SipSignalingLog signalingLog = new SipSignalingLog(loggingProperties.getBufferSize(), loggingProperties.toLimits(),
+                loggingProperties.getSummaryIntervalMs());
+        SipSignalingLog.setDefault(signalingLog);
+        log.info("Signaling log buffer of {} events", signalingLog.getCapacity());
+
+        return signalingLog;
+    }
+
+    /**
+     * takes the signaling log so the stack logger has somewhere to go from the start
+     */
     @Bean
-    SipStack sipStack(SipFactory sipFactory) throws PeerUnavailableException {
-        Properties properties = new Properties();
-        properties.setProperty("javax.sip.STACK_NAME", "sip-test");
+    SipStack sipStack(SipFactory sipFactory, SipStackProperties stackProperties,
+                      SipTransportProperties transportProperties, SipSignalingLog signalingLog)
+            throws PeerUnavailableException {
+        stackProperties.validate();
+        transportProperties.validate();
+
+        Properties properties = transportProperties.applyTo(stackProperties.applyTo(new Properties()));
+        return createSipStack(sipFactory, properties);
+    }
+
+    /**
+     * open every configured listening point, each with its own provider
+     * with sip.transport.udp-reuse-port-sockets > 1 each UDP listening point is opened that many times with
+     * SO_REUSEPORT - a stack only takes one listening point per address/port/transport, so socket i goes on extra
+     * stack i (TCP/TLS stay on the main stack)
+     */
+    @Bean(destroyMethod = "close")
+    SipTransports sipTransports(SipFactory sipFactory, SipStack sipStack, SipStackProperties stackProperties,
+                                SipTransportProperties transportProperties) throws SipException, InvalidArgumentException {
+        int reusePortSockets = transportProperties.getUdpReusePortSockets();
+
+        if (reusePortSockets > 1 && !ReusePortNetworkLayer.isSupported()) {
+            throw new IllegalStateException("sip.transport.udp-reuse-port-sockets needs SO_REUSEPORT, not supported on " +
+                    System.getProperty("os.name"));
+        }
+
+        List<SipProvider> providers = new ArrayList<>();
+        List<SipStack> reusePortStacks = new ArrayList<>();
+
+        for (SipTransportProperties.ListeningPoint lp : transportProperties.getListeningPoints()) {
+            if (reusePortSockets > 1 && SipTransportProperties.isUdp(lp)) {
+                for (int i = 0; i < reusePortSockets; i++) {
+                    if (reusePortStacks.size() == i) {
+                        Properties properties = stackProperties.applyTo(new Properties());
+                        properties.setProperty("javax.sip.STACK_NAME", stackProperties.getName() + "-udp-" + (i + 1));
+                        properties.setProperty("gov.nist.javax.sip.NETWORK_LAYER", ReusePortNetworkLayer.class.getName());
+                        reusePortStacks.add(createSipStack(sipFactory, properties));
+                    }
+
+                    providers.add(createSipProvider(reusePortStacks.get(i), lp));
+                }
+            } else {
+                providers.add(createSipProvider(sipStack, lp));
+            }
+        }
+
+        return new SipTransports(providers, reusePortStacks);
+    }
+
+    private static SipStack createSipStack(SipFactory sipFactory, Properties properties) throws PeerUnavailableException {
         properties.setProperty("gov.nist.javax.sip.STACK_LOGGER", SipLogger.class.getName());
+
+        TreeMap<Object, Object> effective = new TreeMap<>(properties);
+        effective.replaceAll((key, value) -> key.toString().endsWith("Password") ? "****" : value);
+        log.info("Creating SIP stack with {}", effective);
+
         return sipFactory.createSipStack(properties);
     }
 
-    @Bean
-    ListeningPoint listeningPoint(SipStack sipStack) throws TransportNotSupportedException, InvalidArgumentException {
-        return sipStack.createListeningPoint("0.0.0.0", 5060, "UDP");
+    private static SipProvider createSipProvider(SipStack sipStack, SipTransportProperties.ListeningPoint lp)
+            throws SipException, InvalidArgumentException {
+        ListeningPoint listeningPoint = sipStack.createListeningPoint(lp.getAddress(), lp.getPort(), lp.getTransport());
+        log.info("Listening on {}:{}/{} ({})", lp.getAddress(), lp.getPort(), lp.getTransport(), sipStack.getStackName());
+        return sipStack.createSipProvider(listeningPoint);
     }
 
     @Bean
@@ -51,12 +156,176 @@ public class SipConfig {
         return sipFactory.createAddressFactory();
     }
 
+    /**
+     * the parser looks codecs up in the default registry, so the configured codecs go there
+     */
+    @Bean
+    SdpCodecRegistry sdpCodecRegistry(SipCodecProperties codecProperties) {
+        codecProperties.validate();
+        return codecProperties.applyTo(SdpCodecRegistry.getDefault());
+    }
+
+    /**
+     * the parsers resolve connection line host names through the default cache, so the configured one goes there
+     */
+    @Bean(destroyMethod = "close")
+    DnsResolverCache dnsResolverCache(SipDnsProperties dnsProperties) {
+        dnsProperties.validate();
+
+        DnsResolverCache cache = new DnsResolverCache(dnsProperties.getMaxEntries(), dnsProperties.getPositiveTtlMs(),
+                dnsProperties.getNegativeTtlMs(), dnsProperties.getResolverThreads(), dnsProperties.getLookupTimeoutMs(),
+                InetAddress::getByName);
+        DnsResolverCache.setDefault(cache);
+
+        return cache;
+    }
+
+    @Bean
+    MeterBinder dnsResolverCacheMetrics(DnsResolverCache cache) {
+        return registry -> {
+            FunctionCounter.builder("sip.dns.cache.requests", cache, DnsResolverCache::getHitCount).tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("sip.dns.cache.requests", cache, DnsResolverCache::getMissCount).tag("result", "miss")
+                    .register(registry);
+            Gauge.builder("sip.dns.cache.size", cache, DnsResolverCache::size).register(registry);
+            FunctionTimer.builder("sip.dns.lookups", cache, DnsResolverCache::getResolutionCount,
+                    DnsResolverCache::getTotalResolutionTimeNanos, TimeUnit.NANOSECONDS).register(registry);
+            Gauge.builder("sip.dns.lookups.max", cache, c -> c.getMaxResolutionTimeNanos() / 1e9).baseUnit("seconds")
+                    .register(registry);
+            FunctionCounter.builder("sip.dns.lookup.failures", cache, DnsResolverCache::getFailureCount)
+                    .register(registry);
+            FunctionCounter.builder("sip.dns.lookup.timeouts", cache, DnsResolverCache::getTimeoutCount)
+                    .register(registry);
+        };
+    }
+
+    @Bean(destroyMethod = "close")
+    SipSessionRegistry sipSessionRegistry(SipSessionProperties sessionProperties) throws IOException {
+        sessionProperties.validate();
+
+        SipSessionProperties.OffHeap offHeap = sessionProperties.getOffHeap();
+        OffHeapMediaStateStore mediaStateStore = null;
+
+        if (offHeap.isEnabled()) {
+            int capacity = (offHeap.getCapacity() > 0) ? offHeap.getCapacity() : sessionProperties.getInitialCapacity();
+            mediaStateStore = new OffHeapMediaStateStore(capacity, offHeap.getMaxChannels(), offHeap.getMaxCodecs(),
+                    offHeap.getFile());
+            log.info("Call media state kept off-heap, {} calls in {} bytes ({})", mediaStateStore.getCapacity(),
+                    mediaStateStore.getArenaBytes(), (offHeap.getFile() == null) ? "direct" : offHeap.getFile());
+        }
+
+        return new SipSessionRegistry(sessionProperties.getInitialCapacity(), mediaStateStore);
+    }
+
+    @Bean
+    SdpOfferAnswerEngine sdpOfferAnswerEngine(SipMediaProperties mediaProperties) throws UnknownHostException {
+        mediaProperties.validate();
+        return new SdpOfferAnswerEngine(mediaProperties.toCapabilityProfile(), mediaProperties.getAnswerCacheSize());
+    }
+
+    /**
+     * plan - negotiated m= lines by offer shape, template - encoded answers by offer fingerprint
+     */
+    @Bean
+    MeterBinder sdpOfferAnswerEngineMetrics(SdpOfferAnswerEngine engine) {
+        return registry -> {
+            FunctionCounter.builder("sip.sdp.answer.cache", engine, SdpOfferAnswerEngine::getCacheHitCount)
+                    .tag("cache", "plan").tag("result", "hit").register(registry);
+            FunctionCounter.builder("sip.sdp.answer.cache", engine, SdpOfferAnswerEngine::getCacheMissCount)
+                    .tag("cache", "plan").tag("result", "miss").register(registry);
+            FunctionCounter.builder("sip.sdp.answer.cache", engine, SdpOfferAnswerEngine::getTemplateHitCount)
+                    .tag("cache", "template").tag("result", "hit").register(registry);
+            FunctionCounter.builder("sip.sdp.answer.cache", engine, SdpOfferAnswerEngine::getTemplateMissCount)
+                    .tag("cache", "template").tag("result", "miss").register(registry);
+            Gauge.builder("sip.sdp.answer.cache.size", engine, SdpOfferAnswerEngine::getCacheSize).tag("cache", "plan")
+                    .register(registry);
+            Gauge.builder("sip.sdp.answer.cache.size", engine, SdpOfferAnswerEngine::getTemplateCacheSize)
+                    .tag("cache", "template").register(registry);
+        };
+    }
+
+    /**
+     * local RTP/RTCP ports for answered m= lines - ports of calls that are not in the session registry any more are
+     * reclaimed by the leak check
+     */
+    @Bean(destroyMethod = "close")
+    RtpPortAllocator rtpPortAllocator(SipMediaProperties mediaProperties, SipSessionRegistry sessionRegistry) {
+        mediaProperties.validate();
+
+        RtpPortAllocator allocator = new RtpPortAllocator(mediaProperties.getRtpPortMin(), mediaProperties.getRtpPortMax());
+        if (mediaProperties.getPortLeakCheckIntervalMs() > 0) {
+            allocator.startLeakCheck(callId -> sessionRegistry.get(callId) != null,
+                    mediaProperties.getPortLeakCheckIntervalMs(), mediaProperties.getPortLeakGraceMs());
+        }
+        log.info("RTP ports {}-{}, {} pairs", mediaProperties.getRtpPortMin(), mediaProperties.getRtpPortMax(),
+                allocator.getCapacity());
+
+        return allocator;
+    }
+
     @Bean
-    SipListener sipListener(MessageFactory messageFactory, HeaderFactory headerFactory, AddressFactory addressFactory, SipStack sipStack,
-                            ListeningPoint listeningPoint)
-            throws TooManyListenersException, ObjectInUseException {
-        SipProvider sipProvider = sipStack.createSipProvider(listeningPoint);
-        return new SipListenerImpl(messageFactory, headerFactory, addressFactory, sipProvider);
+    MeterBinder rtpPortAllocatorMetrics(RtpPortAllocator allocator) {
+        return registry -> {
+            Gauge.builder("sip.rtp.ports.capacity", allocator, RtpPortAllocator::getCapacity).register(registry);
+            Gauge.builder("sip.rtp.ports.active", allocator, RtpPortAllocator::getInUseCount).register(registry);
+            Gauge.builder("sip.rtp.calls.active", allocator, RtpPortAllocator::getCallCount).register(registry);
+            FunctionCounter.builder("sip.rtp.ports.leaked", allocator, RtpPortAllocator::getLeakedCount)
+                    .register(registry);
+        };
+    }
+
+    /**
+     * gauges cover every stack the providers run on (the reuse-port stacks too)
+     */
+    @Bean
+    SipSignalingMetrics sipSignalingMetrics(MeterRegistry meterRegistry, SipTransports sipTransports,
+                                            SipSessionRegistry sessionRegistry) {
+        Set<SipStack> stacks = new LinkedHashSet<>();
+        for (SipProvider provider : sipTransports.getProviders()) {
+            stacks.add(provider.getSipStack());
+        }
+        return new SipSignalingMetrics(meterRegistry, stacks, sessionRegistry);
+    }
+
+    /**
+     * takes the codec registry and the DNS cache so both are configured before the first request is parsed
+     */
+    @Bean
+    SipListener sipListener(MessageFactory messageFactory, HeaderFactory headerFactory, AddressFactory addressFactory,
+                            SipTransports sipTransports, SipPipelineProperties pipelineProperties,
+                            SipExecutionProperties executionProperties, SdpCodecRegistry sdpCodecRegistry,
+                            DnsResolverCache dnsResolverCache,
+                            SipSessionRegistry sessionRegistry, SdpOfferAnswerEngine offerAnswerEngine,
+                            RtpPortAllocator rtpPortAllocator, SipTransportProperties transportProperties,
+                            SipMediaProperties mediaProperties, SipSignalingLog signalingLog,
+                            SipCaptureProperties captureProperties, SipSignalingMetrics metrics)
+            throws TooManyListenersException, ObjectInUseException, IOException {
+        ExecutorService callbackExecutor = null;
+
+        if (executionProperties.getMode() == SipExecutionProperties.Mode.VIRTUAL_THREADS) {
+            if (!VirtualThreads.isSupported()) {
+                throw new IllegalStateException("sip.execution.mode=virtual-threads needs Java 21 or later, running on " +
+                        System.getProperty("java.version"));
+            }
+            callbackExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        }
+        log.info("SIP callbacks run in {} mode", executionProperties.getMode());
+
+        String contactAddress = (transportProperties.getContactAddress() != null) ?
+                transportProperties.getContactAddress() : mediaProperties.getAddress();
+
+        SipCaptureJournal captureJournal = null;
+        if (captureProperties.isEnabled()) {
+            captureProperties.validate();
+            captureJournal = new SipCaptureJournal(captureProperties.getDirectory(), captureProperties.getSegmentSize(),
+                    captureProperties.getMaxSegments(), captureProperties.getQueueCapacity());
+            log.info("Capturing SIP messages to {}, {} segments of {} bytes", captureJournal.getDirectory(),
+                    captureProperties.getMaxSegments(), captureProperties.getSegmentSize());
+        }
+
+        return new SipListenerImpl(messageFactory, headerFactory, addressFactory, sipTransports.getProviders(),
+                pipelineProperties, sessionRegistry, offerAnswerEngine, rtpPortAllocator, contactAddress, signalingLog,
+                captureJournal, metrics, callbackExecutor);
     }
 
     @Bean
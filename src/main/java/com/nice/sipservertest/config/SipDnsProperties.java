@@ -0,0 +1,40 @@
+package com.nice.sipservertest.config;
+
+import com.nice.sipservertest.util.DnsResolverCache;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * resolver cache for host names in SDP connection lines (sip.dns.* properties)
+ * ex. sip.dns.resolver-threads=4, sip.dns.positive-ttl-ms=60000
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.dns")
+public class SipDnsProperties {
+
+    private int maxEntries = DnsResolverCache.DEFAULT_MAX_ENTRIES;
+
+    private long positiveTtlMs = DnsResolverCache.DEFAULT_POSITIVE_TTL_MS;
+
+    /**
+     * how long a name that did not resolve is remembered
+     */
+    private long negativeTtlMs = DnsResolverCache.DEFAULT_NEGATIVE_TTL_MS;
+
+    private int resolverThreads = DnsResolverCache.DEFAULT_RESOLVER_THREADS;
+
+    /**
+     * how long parsing an offer waits for a host name it has not seen before - 0 (default) never blocks the parse
+     * workers, the listener resolves the names in the background and parses the offer again
+     */
+    private long lookupTimeoutMs = DnsResolverCache.DEFAULT_LOOKUP_TIMEOUT_MS;
+
+    public void validate() {
+        if (maxEntries < 1 || positiveTtlMs < 0 || negativeTtlMs < 0 || resolverThreads < 1 || lookupTimeoutMs < 0) {
+            throw new IllegalArgumentException(String.format("sip.dns needs max-entries >= 1, resolver-threads >= 1 and TTLs/lookup-timeout-ms >= 0 (max-entries=%d, positive-ttl-ms=%d, negative-ttl-ms=%d, resolver-threads=%d, lookup-timeout-ms=%d)",
+                    maxEntries, positiveTtlMs, negativeTtlMs, resolverThreads, lookupTimeoutMs));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * how SipListenerImpl runs its callbacks (sip.execution.* properties)
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.execution")
+public class SipExecutionProperties {
+
+    public enum Mode {
+        /**
+         * requests go through the staged request pipeline (SipPipelineProperties)
+         */
+        PIPELINE,
+        /**
+         * each request/response callback runs start to end on its own virtual thread (needs Java 21)
+         */
+        VIRTUAL_THREADS
+    }
+
+    private Mode mode = Mode.PIPELINE;
+}
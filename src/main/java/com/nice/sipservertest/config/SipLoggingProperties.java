@@ -0,0 +1,69 @@
+package com.nice.sipservertest.config;
+
+import com.nice.sipservertest.listener.SipSignalingLog;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * asynchronous signaling log (sip.logging.* properties) - levels are set on the sip.stack, sip.request, sip.body,
+ * sip.response and sip.event loggers as usual
+ * ex. sip.logging.categories.body.sample-every=10, sip.logging.categories.request.max-per-second=500
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.logging")
+public class SipLoggingProperties {
+
+    /**
+     * events the ring buffer holds (rounded up to a power of two) - events past it are dropped
+     */
+    private int bufferSize = 65536;
+
+    /**
+     * how often dropped events are summarized
+     */
+    private long summaryIntervalMs = 10000;
+
+    private Map<SipSignalingLog.Category, CategoryLimits> categories = new EnumMap<>(SipSignalingLog.Category.class);
+
+    /**
+     * applies to INFO and below, WARN and ERROR always get in
+     */
+    @Getter
+    @Setter
+    public static class CategoryLimits {
+
+        /**
+         * log every Nth event, 1 logs all of them
+         */
+        private int sampleEvery = 1;
+
+        /**
+         * events logged per second, 0 for no limit
+         */
+        private int maxPerSecond = 0;
+    }
+
+    public void validate() {
+        if (bufferSize < 2 || bufferSize > (1 << 24) || summaryIntervalMs < 1) {
+            throw new IllegalArgumentException(String.format("sip.logging needs buffer-size 2-%d and summary-interval-ms >= 1 (buffer-size=%d, summary-interval-ms=%d)",
+                    1 << 24, bufferSize, summaryIntervalMs));
+        }
+        categories.forEach((category, limits) -> {
+            if (limits.sampleEvery < 1 || limits.maxPerSecond < 0) {
+                throw new IllegalArgumentException(String.format("sip.logging.categories.%s needs sample-every >= 1 and max-per-second >= 0 (%d, %d)",
+                        category.name().toLowerCase(), limits.sampleEvery, limits.maxPerSecond));
+            }
+        });
+    }
+
+    public Map<SipSignalingLog.Category, SipSignalingLog.Limits> toLimits() {
+        Map<SipSignalingLog.Category, SipSignalingLog.Limits> limits = new EnumMap<>(SipSignalingLog.Category.class);
+        categories.forEach((category, c) -> limits.put(category, new SipSignalingLog.Limits(c.sampleEvery, c.maxPerSecond)));
+        return limits;
+    }
+}
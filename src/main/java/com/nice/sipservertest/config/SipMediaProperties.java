@@ -0,0 +1,95 @@
+package com.nice.sipservertest.config;
+
+import com.nice.sipservertest.dto.MediaTransportProfile;
+import com.nice.sipservertest.dto.SdpMediaCodecs;
+import com.nice.sipservertest.dto.SdpMediaDirection;
+import com.nice.sipservertest.dto.SdpMediaTypes;
+import com.nice.sipservertest.negotiation.SdpCapabilityProfile;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * local media capabilities used to answer SDP offers (sip.media.* properties), ex.
+ *   sip.media.address=10.0.0.5                    address in the answer o= and c= lines
+ *   sip.media.codecs=PCMU,PCMA,TELEPHONE_EVENT    codecs in order of preference
+ *   sip.media.direction=RECEIVE_ONLY              recorder - never sends media
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.media")
+public class SipMediaProperties {
+
+    private String address = "127.0.0.1";
+
+    private String originUsername = "-";
+
+    private List<SdpMediaCodecs> codecs = new ArrayList<>(List.of(SdpMediaCodecs.PCMU, SdpMediaCodecs.PCMA,
+            SdpMediaCodecs.G722, SdpMediaCodecs.G729, SdpMediaCodecs.OPUS, SdpMediaCodecs.TELEPHONE_EVENT));
+
+    private Set<SdpMediaTypes> mediaTypes = EnumSet.of(SdpMediaTypes.AUDIO);
+
+    private Set<MediaTransportProfile> transportProfiles = EnumSet.of(MediaTransportProfile.RTP_AVP);
+
+    private SdpMediaDirection direction = SdpMediaDirection.SEND_RECEIVE;
+
+    /**
+     * list the answer codecs in the offer's order instead of the order of sip.media.codecs
+     */
+    private boolean honorOfferOrder = false;
+
+    /**
+     * local RTP/RTCP port range - RTP on the even ports, RTCP on the odd port after each
+     */
+    private int rtpPortMin = 20000;
+
+    private int rtpPortMax = 39999;
+
+    /**
+     * how often ports of calls that vanished without a BYE or dialog termination are reclaimed (0 disables the check)
+     */
+    private long portLeakCheckIntervalMs = 60_000;
+
+    /**
+     * calls younger than this are never treated as leaked
+     */
+    private long portLeakGraceMs = 120_000;
+
+    /**
+     * offer shapes whose negotiation result is kept (0 disables the cache)
+     */
+    private int answerCacheSize = 1024;
+
+    public void validate() {
+        if (codecs.isEmpty() || mediaTypes.isEmpty() || transportProfiles.isEmpty()) {
+            throw new IllegalArgumentException("sip.media.codecs, media-types and transport-profiles must not be empty");
+        }
+        if (direction != SdpMediaDirection.SEND_RECEIVE && direction != SdpMediaDirection.RECEIVE_ONLY &&
+                direction != SdpMediaDirection.SEND_ONLY) {
+            throw new IllegalArgumentException("sip.media.direction must be SEND_RECEIVE, RECEIVE_ONLY or SEND_ONLY, got " +
+                    direction);
+        }
+        if (rtpPortMin < 1024 || rtpPortMin % 2 != 0 || rtpPortMax > 65535 || rtpPortMax <= rtpPortMin) {
+            throw new IllegalArgumentException(String.format("sip.media.rtp-port-min must be an even port >= 1024 below sip.media.rtp-port-max <= 65535 (min=%d, max=%d)",
+                    rtpPortMin, rtpPortMax));
+        }
+        if (portLeakCheckIntervalMs < 0 || portLeakGraceMs < 0) {
+            throw new IllegalArgumentException("sip.media.port-leak-check-interval-ms and port-leak-grace-ms must not be negative");
+        }
+        if (answerCacheSize < 0) {
+            throw new IllegalArgumentException("sip.media.answer-cache-size must not be negative, got " + answerCacheSize);
+        }
+    }
+
+    public SdpCapabilityProfile toCapabilityProfile() throws UnknownHostException {
+        return new SdpCapabilityProfile(InetAddress.getByName(address), originUsername, codecs, mediaTypes,
+                transportProfiles, direction, honorOfferOrder);
+    }
+}
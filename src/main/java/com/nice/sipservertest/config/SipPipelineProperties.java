@@ -0,0 +1,52 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * worker count and queue capacity of each stage of the SIP request pipeline (sip.pipeline.* properties)
+ * ex. sip.pipeline.parse.workers=4, sip.pipeline.send.queue-capacity=2048, sip.pipeline.sdp-pool-size=4096
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.pipeline")
+public class SipPipelineProperties {
+
+    private Stage decode = new Stage(1, 1024);
+
+    private Stage parse = new Stage(2, 1024);
+
+    private Stage event = new Stage(1, 1024);
+
+    private Stage response = new Stage(1, 1024);
+
+    private Stage send = new Stage(1, 1024);
+
+    /**
+     * number of parsed SDP messages kept for reuse (0 disables pooling) - pooled messages are released after the
+     * response is sent
+     */
+    private int sdpPoolSize = 0;
+
+    @Getter
+    @Setter
+    public static class Stage {
+
+        private int workers;
+
+        /**
+         * split evenly between the workers - each worker has its own queue, requests go to one by Call-ID
+         */
+        private int queueCapacity;
+
+        public Stage() {
+            this(1, 1024);
+        }
+
+        public Stage(int workers, int queueCapacity) {
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+}
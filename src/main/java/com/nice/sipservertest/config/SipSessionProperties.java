@@ -0,0 +1,60 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * call session registry sizing (sip.session.* properties)
+ * ex. sip.session.off-heap.enabled=true, sip.session.off-heap.file=/dev/shm/sip-sessions
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.session")
+public class SipSessionProperties {
+
+    /**
+     * expected number of concurrent calls - the registry maps are sized for it up front
+     */
+    private int initialCapacity = 131072;
+
+    private OffHeap offHeap = new OffHeap();
+
+    /**
+     * pack the media channels of each call into an off-heap arena (OffHeapMediaStateStore) instead of keeping the
+     * MediaChannel objects on the heap
+     */
+    @Getter
+    @Setter
+    public static class OffHeap {
+
+        private boolean enabled = false;
+
+        /**
+         * calls the arena holds, 0 for sip.session.initial-capacity - calls past it stay on the heap
+         */
+        private int capacity = 0;
+
+        private int maxChannels = 4;
+
+        private int maxCodecs = 8;
+
+        /**
+         * memory-map this file for the arena (ex. on /dev/shm), unset for direct buffers
+         */
+        private Path file;
+    }
+
+    public void validate() {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("sip.session.initial-capacity must be at least 1, got " + initialCapacity);
+        }
+        if (offHeap.capacity < 0 || offHeap.maxChannels < 1 || offHeap.maxChannels > 127 || offHeap.maxCodecs < 1 ||
+                offHeap.maxCodecs > 127) {
+            throw new IllegalArgumentException(String.format("sip.session.off-heap needs capacity >= 0 and max-channels/max-codecs 1-127 (capacity=%d, max-channels=%d, max-codecs=%d)",
+                    offHeap.capacity, offHeap.maxChannels, offHeap.maxCodecs));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * JAIN-SIP (NIST) stack tuning (sip.stack.* properties) - anything left unset keeps the stack default
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.stack")
+public class SipStackProperties {
+
+    private static final String NIST = "gov.nist.javax.sip.";
+
+    private String name = "sip-test";
+
+    /**
+     * threads processing incoming messages (THREAD_POOL_SIZE) - the stack default is one
+     */
+    private Integer threadPoolSize;
+
+    /**
+     * let the stack call the listener from several threads at once (REENTRANT_LISTENER)
+     */
+    private Boolean reentrantListener;
+
+    /**
+     * server transaction table size after which new requests are dropped (MAX_SERVER_TRANSACTIONS)
+     */
+    private Integer maxServerTransactions;
+
+    private Integer maxClientTransactions;
+
+    /**
+     * largest accepted message in bytes (MAX_MESSAGE_SIZE)
+     */
+    private Integer maxMessageSize;
+
+    /**
+     * UDP socket buffers in bytes - how many datagrams queue up while the stack is busy (RECEIVE/SEND_UDP_BUFFER_SIZE)
+     */
+    private Integer receiveUdpBufferSize;
+
+    private Integer sendUdpBufferSize;
+
+    /**
+     * ms a message may wait before it is dropped under congestion, 0 disables (CONGESTION_CONTROL_TIMEOUT)
+     */
+    private Integer congestionControlTimeout;
+
+    /**
+     * keep TCP/TLS connections opened by peers (CACHE_SERVER_CONNECTIONS) or by us (CACHE_CLIENT_CONNECTIONS)
+     */
+    private Boolean cacheServerConnections;
+
+    private Boolean cacheClientConnections;
+
+    /**
+     * maximum number of cached TCP/TLS connections (MAX_CONNECTIONS)
+     */
+    private Integer maxConnections;
+
+    /**
+     * threads parsing TCP/TLS messages (TCP_POST_PARSING_THREAD_POOL_SIZE)
+     */
+    private Integer tcpPostParsingThreadPoolSize;
+
+    /**
+     * ms an idle NIO TCP/TLS socket is kept open (NIO_MAX_SOCKET_IDLE_TIME)
+     */
+    private Long nioMaxSocketIdleTime;
+
+    /**
+     * check the configured values
+     * @throws IllegalArgumentException listing every invalid value
+     */
+    public void validate() {
+        List<String> errors = new ArrayList<>();
+
+        if (name == null || name.isEmpty()) errors.add("sip.stack.name must be set");
+        positive(errors, "thread-pool-size", threadPoolSize);
+        positive(errors, "max-server-transactions", maxServerTransactions);
+        positive(errors, "max-client-transactions", maxClientTransactions);
+        positive(errors, "max-message-size", maxMessageSize);
+        positive(errors, "receive-udp-buffer-size", receiveUdpBufferSize);
+        positive(errors, "send-udp-buffer-size", sendUdpBufferSize);
+        positive(errors, "max-connections", maxConnections);
+        positive(errors, "tcp-post-parsing-thread-pool-size", tcpPostParsingThreadPoolSize);
+        positive(errors, "nio-max-socket-idle-time", nioMaxSocketIdleTime);
+
+        if (congestionControlTimeout != null && congestionControlTimeout < 0) {
+            errors.add("sip.stack.congestion-control-timeout must not be negative, was " + congestionControlTimeout);
+        }
+
+        if (Boolean.TRUE.equals(reentrantListener) && threadPoolSize == null) {
+            errors.add("sip.stack.reentrant-listener needs sip.stack.thread-pool-size, the stack default is a single thread");
+        }
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid SIP stack configuration: " + String.join("; ", errors));
+        }
+    }
+
+    private static void positive(List<String> errors, String name, Number value) {
+        if (value != null && value.longValue() <= 0) {
+            errors.add("sip.stack." + name + " must be positive, was " + value);
+        }
+    }
+
+    /**
+     * set the configured values on the properties passed to SipFactory.createSipStack
+     */
+    public Properties applyTo(Properties properties) {
+        properties.setProperty("javax.sip.STACK_NAME", name);
+        set(properties, "THREAD_POOL_SIZE", threadPoolSize);
+        set(properties, "REENTRANT_LISTENER", reentrantListener);
+        set(properties, "MAX_SERVER_TRANSACTIONS", maxServerTransactions);
+        set(properties, "MAX_CLIENT_TRANSACTIONS", maxClientTransactions);
+        set(properties, "MAX_MESSAGE_SIZE", maxMessageSize);
+        set(properties, "RECEIVE_UDP_BUFFER_SIZE", receiveUdpBufferSize);
+        set(properties, "SEND_UDP_BUFFER_SIZE", sendUdpBufferSize);
+        set(properties, "CONGESTION_CONTROL_TIMEOUT", congestionControlTimeout);
+        set(properties, "CACHE_SERVER_CONNECTIONS", cacheServerConnections);
+        set(properties, "CACHE_CLIENT_CONNECTIONS", cacheClientConnections);
+        set(properties, "MAX_CONNECTIONS", maxConnections);
+        set(properties, "TCP_POST_PARSING_THREAD_POOL_SIZE", tcpPostParsingThreadPoolSize);
+        set(properties, "NIO_MAX_SOCKET_IDLE_TIME", nioMaxSocketIdleTime);
+        return properties;
+    }
+
+    private static void set(Properties properties, String name, Object value) {
+        if (value != null) {
+            properties.setProperty(NIST + name, value.toString());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.nice.sipservertest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * SIP listening points (sip.transport.* properties)
+ * ex. sip.transport.listening-points[0].transport=UDP, sip.transport.listening-points[1].transport=TLS,
+ * sip.transport.listening-points[1].port=5061
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "sip.transport")
+public class SipTransportProperties {
+
+    private List<ListeningPoint> listeningPoints = new ArrayList<>(Collections.singletonList(new ListeningPoint()));
+
+    /**
+     * number of UDP sockets opened on each UDP listening point with SO_REUSEPORT (each on its own stack, so the kernel
+     * spreads the datagrams across their receive threads) - 1 is a single plain socket
+     */
+    private int udpReusePortSockets = 1;
+
+    /**
+     * host put in the Contact header of responses (ex. the public address behind NAT) - unset for sip.media.address
+     */
+    private String contactAddress;
+
+    /**
+     * key/trust store for TLS listening points (javax.net.ssl.* stack properties)
+     */
+    private String keyStore;
+
+    private String keyStorePassword;
+
+    private String keyStoreType = "JKS";
+
+    private String trustStore;
+
+    private String trustStorePassword;
+
+    private String trustStoreType = "JKS";
+
+    @Getter
+    @Setter
+    public static class ListeningPoint {
+
+        /**
+         * UDP, TCP or TLS
+         */
+        private String transport = "UDP";
+
+        private String address = "0.0.0.0";
+
+        private int port = 5060;
+    }
+
+    /**
+     * @throws IllegalArgumentException listing every invalid value
+     */
+    public void validate() {
+        List<String> errors = new ArrayList<>();
+
+        if (listeningPoints.isEmpty()) errors.add("at least one sip.transport.listening-points entry is needed");
+
+        for (ListeningPoint lp : listeningPoints) {
+            if (!isUdp(lp) && !"TCP".equalsIgnoreCase(lp.getTransport()) && !isTls(lp)) {
+                errors.add("unsupported transport " + lp.getTransport() + " (UDP, TCP or TLS)");
+            }
+            if (lp.getPort() < 1 || lp.getPort() > 65535) {
+                errors.add("invalid port " + lp.getPort() + " for " + lp.getTransport());
+            }
+            if (isTls(lp) && (keyStore == null || keyStore.isEmpty())) {
+                errors.add("TLS listening point on port " + lp.getPort() + " needs sip.transport.key-store");
+            }
+        }
+
+        if (udpReusePortSockets < 1) {
+            errors.add("sip.transport.udp-reuse-port-sockets must be positive, was " + udpReusePortSockets);
+        }
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid SIP transport configuration: " + String.join("; ", errors));
+        }
+    }
+
+    /**
+     * set the TLS key/trust store on the stack properties (only if a key store is configured)
+     */
+    public Properties applyTo(Properties properties) {
+        if (keyStore != null && !keyStore.isEmpty()) {
+            properties.setProperty("javax.net.ssl.keyStore", keyStore);
+            properties.setProperty("javax.net.ssl.keyStoreType", keyStoreType);
+            if (keyStorePassword != null) properties.setProperty("javax.net.ssl.keyStorePassword", keyStorePassword);
+            properties.setProperty("javax.net.ssl.trustStore", (trustStore != null) ? trustStore : keyStore);
+            properties.setProperty("javax.net.ssl.trustStoreType", trustStoreType);
+            if (trustStorePassword != null) properties.setProperty("javax.net.ssl.trustStorePassword", trustStorePassword);
+        }
+        return properties;
+    }
+
+    public static boolean isUdp(ListeningPoint lp) {
+        return "UDP".equalsIgnoreCase(lp.getTransport());
+    }
+
+    public static boolean isTls(ListeningPoint lp) {
+        return "TLS".equalsIgnoreCase(lp.getTransport());
+    }
+}
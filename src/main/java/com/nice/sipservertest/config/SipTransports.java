@@ -0,0 +1,29 @@
+package com.nice.sipservertest.config;
+
+import javax.sip.SipProvider;
+import javax.sip.SipStack;
+import java.util.List;
+
+/**
+ * the SIP providers the listener is wired to - one per listening socket - and the extra stacks that were created for
+ * SO_REUSEPORT UDP sockets (stopped with the Spring context)
+ */
+public class SipTransports {
+
+    private final List<SipProvider> providers;
+
+    private final List<SipStack> reusePortStacks;
+
+    public SipTransports(List<SipProvider> providers, List<SipStack> reusePortStacks) {
+        this.providers = providers;
+        this.reusePortStacks = reusePortStacks;
+    }
+
+    public List<SipProvider> getProviders() {
+        return providers;
+    }
+
+    public void close() {
+        reusePortStacks.forEach(SipStack::stop);
+    }
+}
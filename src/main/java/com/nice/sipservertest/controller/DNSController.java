@@ -1,15 +1,18 @@
 package com.nice.sipservertest.controller;
 
+import com.nice.sipservertest.config.Route53Properties;
+import com.nice.sipservertest.dns.Route53AnswerCache;
+import com.nice.sipservertest.dns.Route53RecordUpdater;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import software.amazon.awssdk.services.route53.Route53Client;
 import software.amazon.awssdk.services.route53.model.*;
 
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
 //@RestController
 //@RequestMapping("/dns")
@@ -17,21 +20,29 @@ import java.util.Collections;
 @Slf4j
 public class DNSController {
 
-    private final Route53Client route53Client;
+    private final Route53AnswerCache route53AnswerCache;
 
+    private final Route53RecordUpdater route53RecordUpdater;
+
+    private final Route53Properties route53Properties;
+
+    /**
+     * served from memory - Route53 is only asked when the cached answer nears the record TTL
+     */
     @GetMapping
-    public String getRecordResponse() {
-        TestDnsAnswerResponse testDnsAnswerResponse = route53Client.testDNSAnswer(builder -> builder.hostedZoneId("Z008337866284ALQ4TSI").recordName("sip.siptest.click").recordType(RRType.A));
-        return String.join("\n", testDnsAnswerResponse.recordData());
+    public CompletableFuture<String> getRecordResponse() {
+        return route53AnswerCache.get(route53Properties.getHostedZoneId(), "sip.siptest.click", RRType.A)
+                .thenApply(answer -> String.join("\n", answer.getRecordData()));
     }
 
+    /**
+     * completes once Route53 has the change INSYNC - updates arriving within the batch window share one change batch
+     */
     @PatchMapping
-    public void updateRecord() {
-        route53Client.changeResourceRecordSets(builder ->
-                builder.hostedZoneId("Z008337866284ALQ4TSI").changeBatch(builder1 ->
-                        builder1.changes(Collections.singletonList(Change
-                                .builder().resourceRecordSet(ResourceRecordSet
-                                        .builder().name("siptest.click").resourceRecords(Collections.singletonList(ResourceRecord
-                                                .builder().value("sip.siptest.click").build())).name("").ttl(20L).build()).action(ChangeAction.UPSERT).build()))));
+    public CompletableFuture<String> updateRecord() {
+        return route53RecordUpdater.upsert(ResourceRecordSet
+                        .builder().name("siptest.click").resourceRecords(Collections.singletonList(ResourceRecord
+                                .builder().value("sip.siptest.click").build())).name("").ttl(20L).build())
+                .thenApply(changeInfo -> changeInfo.id() + " " + changeInfo.statusAsString());
     }
 }
@@ -0,0 +1,251 @@
+package com.nice.sipservertest.dns;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.route53.Route53AsyncClient;
+import software.amazon.awssdk.services.route53.model.ListResourceRecordSetsResponse;
+import software.amazon.awssdk.services.route53.model.RRType;
+import software.amazon.awssdk.services.route53.model.ResourceRecordSet;
+import software.amazon.awssdk.services.route53.model.TestDnsAnswerResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * read-through cache of Route53 TestDNSAnswer results keyed by hosted zone, record name and type
+ *   entries live for the TTL of the record set (ListResourceRecordSets, fetched alongside the answer) - alias records
+ *   have no TTL of their own and use defaultTtlMs, and no entry lives less than minTtlMs so a TTL 0/1 record can not
+ *   turn every read into an API call
+ *   a read past refreshAhead of the TTL starts a background refresh and still gets the cached answer, so a record that
+ *   is read regularly (health checks) never expires - a failed refresh keeps the old answer until it expires
+ *   concurrent misses of the same key share one load (single flight)
+ */
+@Slf4j
+public class Route53AnswerCache {
+
+    @Getter
+    public static final class Answer {
+
+        private final List<String> recordData;
+
+        private final String responseCode;
+
+        /**
+         * TTL the entry lives for, in milliseconds
+         */
+        private final long ttlMs;
+
+        Answer(List<String> recordData, String responseCode, long ttlMs) {
+            this.recordData = List.copyOf(recordData);
+            this.responseCode = responseCode;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    private static final class Entry {
+        final Answer answer;
+        final long refreshAtNanos;
+        final long expiresAtNanos;
+
+        Entry(Answer answer, long refreshAtNanos, long expiresAtNanos) {
+            this.answer = answer;
+            this.refreshAtNanos = refreshAtNanos;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final Route53AsyncClient route53Client;
+
+    private final long defaultTtlMs;
+
+    private final long minTtlMs;
+
+    private final double refreshAhead;
+
+    private final int maxEntries;
+
+    private final LongSupplier nanoClock;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Answer>> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param refreshAhead fraction of the TTL after which a read refreshes the entry in the background (0-1)
+     */
+    public Route53AnswerCache(Route53AsyncClient route53Client, long defaultTtlMs, long minTtlMs, double refreshAhead,
+                              int maxEntries) {
+        this(route53Client, defaultTtlMs, minTtlMs, refreshAhead, maxEntries, System::nanoTime);
+    }
+
+    Route53AnswerCache(Route53AsyncClient route53Client, long defaultTtlMs, long minTtlMs, double refreshAhead,
+                       int maxEntries, LongSupplier nanoClock) {
+        if (defaultTtlMs < 1 || minTtlMs < 0 || refreshAhead <= 0 || refreshAhead > 1 || maxEntries < 1) {
+            throw new IllegalArgumentException(String.format("Route53 answer cache needs default TTL >= 1, min TTL >= 0, refresh ahead in (0, 1] and at least one entry (%d, %d, %s, %d)",
+                    defaultTtlMs, minTtlMs, refreshAhead, maxEntries));
+        }
+
+        this.route53Client = route53Client;
+        this.defaultTtlMs = defaultTtlMs;
+        this.minTtlMs = minTtlMs;
+        this.refreshAhead = refreshAhead;
+        this.maxEntries = maxEntries;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return future completed with the answer - already completed if it is cached
+     */
+    public CompletableFuture<Answer> get(String hostedZoneId, String recordName, RRType recordType) {
+        String key = key(hostedZoneId, recordName, recordType);
+        Entry entry = cache.get(key);
+        long now = nanoClock.getAsLong();
+
+        if (entry != null && now - entry.expiresAtNanos < 0) {
+            hits.increment();
+            if (now - entry.refreshAtNanos >= 0) {
+                load(key, hostedZoneId, recordName, recordType);
+            }
+            return CompletableFuture.completedFuture(entry.answer);
+        }
+
+        misses.increment();
+        return load(key, hostedZoneId, recordName, recordType);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private CompletableFuture<Answer> load(String key, String hostedZoneId, String recordName, RRType recordType) {
+        CompletableFuture<Answer> future = pending.get(key);
+        if (future != null) return future;
+
+        CompletableFuture<Answer> created = new CompletableFuture<>();
+        future = pending.putIfAbsent(key, created);
+        if (future != null) return future;
+
+        // a load may have finished between the caller's cache check and the putIfAbsent
+        Entry entry = cache.get(key);
+        long now = nanoClock.getAsLong();
+        if (entry != null && now - entry.refreshAtNanos < 0) {
+            pending.remove(key, created);
+            created.complete(entry.answer);
+            return created;
+        }
+
+        loads.increment();
+        try {
+            CompletableFuture<TestDnsAnswerResponse> answer = route53Client.testDNSAnswer(builder -> builder
+                    .hostedZoneId(hostedZoneId).recordName(recordName).recordType(recordType));
+            CompletableFuture<ListResourceRecordSetsResponse> recordSets = route53Client.listResourceRecordSets(builder -> builder
+                    .hostedZoneId(hostedZoneId).startRecordName(recordName).startRecordType(recordType).maxItems("1"));
+
+            answer.thenCombine(recordSets, (a, r) -> new Answer(a.recordData(), a.responseCode(), ttlMs(r, recordName, recordType)))
+                    .whenComplete((loaded, e) -> complete(key, created, loaded, e));
+        } catch (RuntimeException e) {
+            complete(key, created, null, e);
+        }
+
+        return created;
+    }
+
+    private void complete(String key, CompletableFuture<Answer> future, Answer answer, Throwable e) {
+        if (e != null) {
+            failures.increment();
+            log.warn("Failed to load Route53 answer for {}: {}", key, e.getMessage());
+            pending.remove(key, future);
+            future.completeExceptionally(e);
+            return;
+        }
+
+        long now = nanoClock.getAsLong();
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(answer.getTtlMs());
+        put(key, new Entry(answer, now + (long) (ttlNanos * refreshAhead), now + ttlNanos));
+        pending.remove(key, future);
+        future.complete(answer);
+    }
+
+    /**
+     * TTL of the record set, if ListResourceRecordSets started at it (it returns the next one if it does not exist)
+     */
+    private long ttlMs(ListResourceRecordSetsResponse response, String recordName, RRType recordType) {
+        long ttlMs = defaultTtlMs;
+
+        if (response.hasResourceRecordSets() && !response.resourceRecordSets().isEmpty()) {
+            ResourceRecordSet recordSet = response.resourceRecordSets().get(0);
+            if (recordSet.type() == recordType && normalize(recordSet.name()).equals(normalize(recordName)) &&
+                    recordSet.ttl() != null) {
+                ttlMs = TimeUnit.SECONDS.toMillis(recordSet.ttl());
+            }
+        }
+
+        return Math.max(ttlMs, minTtlMs);
+    }
+
+    private void put(String key, Entry entry) {
+        if (cache.size() >= maxEntries && !cache.containsKey(key)) {
+            evict();
+        }
+
+        cache.put(key, entry);
+    }
+
+    // only runs when the cache is full - drop expired entries first, then the one closest to expiring
+    private void evict() {
+        long now = nanoClock.getAsLong();
+        cache.entrySet().removeIf(e -> now - e.getValue().expiresAtNanos >= 0);
+
+        if (cache.size() < maxEntries) return;
+
+        String oldest = null;
+        long oldestExpiry = 0;
+        for (Map.Entry<String, Entry> e : cache.entrySet()) {
+            if (oldest == null || e.getValue().expiresAtNanos - oldestExpiry < 0) {
+                oldest = e.getKey();
+                oldestExpiry = e.getValue().expiresAtNanos;
+            }
+        }
+
+        if (oldest != null) cache.remove(oldest);
+    }
+
+    private static String key(String hostedZoneId, String recordName, RRType recordType) {
+        return hostedZoneId + '|' + normalize(recordName) + '|' + recordType;
+    }
+
+    // Route53 names are case insensitive, with or without the trailing dot
+    private static String normalize(String name) {
+        name = name.toLowerCase();
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+}
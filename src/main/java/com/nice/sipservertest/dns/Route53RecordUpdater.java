@@ -0,0 +1,229 @@
+package com.nice.sipservertest.dns;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.route53.Route53AsyncClient;
+import software.amazon.awssdk.services.route53.model.Change;
+import software.amazon.awssdk.services.route53.model.ChangeAction;
+import software.amazon.awssdk.services.route53.model.ChangeInfo;
+import software.amazon.awssdk.services.route53.model.ChangeStatus;
+import software.amazon.awssdk.services.route53.model.ResourceRecordSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * asynchronous Route53 record updates for one hosted zone
+ *   changes submitted within batchWindowMs of the first pending one go out as one ChangeResourceRecordSets call
+ *   (split at maxBatchSize changes) instead of one HTTP call per record
+ *   a record set (name, type, set identifier) changed again before the batch goes out keeps only its last change -
+ *   repeated UPSERTs of the same name collapse into one (Route53 also rejects a batch that changes a set twice)
+ *   each returned future completes with the ChangeInfo once Route53 reports the batch INSYNC (polled every
+ *   statusPollIntervalMs), or exceptionally if the batch is rejected - a batch is applied all or nothing, so one
+ *   invalid change fails every change of its batch
+ */
+@Slf4j
+public class Route53RecordUpdater implements AutoCloseable {
+
+    private static final class PendingChange {
+        Change change;
+        final List<CompletableFuture<ChangeInfo>> waiters = new ArrayList<>(1);
+
+        PendingChange(Change change) {
+            this.change = change;
+        }
+    }
+
+    private final Route53AsyncClient route53Client;
+
+    private final String hostedZoneId;
+
+    private final long batchWindowMs;
+
+    private final long statusPollIntervalMs;
+
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler;
+
+    // guarded by this - insertion order is the order changes are sent in
+    private Map<String, PendingChange> pending = new LinkedHashMap<>();
+
+    private boolean flushScheduled;
+
+    private final LongAdder submittedChanges = new LongAdder();
+
+    private final LongAdder sentChanges = new LongAdder();
+
+    private final LongAdder sentBatches = new LongAdder();
+
+    public Route53RecordUpdater(Route53AsyncClient route53Client, String hostedZoneId, long batchWindowMs,
+                                long statusPollIntervalMs, int maxBatchSize) {
+        if (batchWindowMs < 0 || statusPollIntervalMs < 1 || maxBatchSize < 1 || maxBatchSize > 1000) {
+            throw new IllegalArgumentException(String.format("Route53 updater needs batch window >= 0, poll interval >= 1 and batch size 1-1000 (window=%d, poll=%d, size=%d)",
+                    batchWindowMs, statusPollIntervalMs, maxBatchSize));
+        }
+
+        this.route53Client = route53Client;
+        this.hostedZoneId = hostedZoneId;
+        this.batchWindowMs = batchWindowMs;
+        this.statusPollIntervalMs = statusPollIntervalMs;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "route53-updater");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<ChangeInfo> upsert(ResourceRecordSet recordSet) {
+        return submit(Change.builder().action(ChangeAction.UPSERT).resourceRecordSet(recordSet).build());
+    }
+
+    /**
+     * the record set must match the one in the zone exactly (name, type, TTL and values)
+     */
+    public CompletableFuture<ChangeInfo> delete(ResourceRecordSet recordSet) {
+        return submit(Change.builder().action(ChangeAction.DELETE).resourceRecordSet(recordSet).build());
+    }
+
+    public CompletableFuture<ChangeInfo> submit(Change change) {
+        CompletableFuture<ChangeInfo> future = new CompletableFuture<>();
+        String key = key(change.resourceRecordSet());
+
+        synchronized (this) {
+            PendingChange pendingChange = pending.get(key);
+            if (pendingChange == null) {
+                pendingChange = new PendingChange(change);
+                pending.put(key, pendingChange);
+            } else {
+                // last change wins, everyone waiting on the record set hears about the batch it goes out in
+                pendingChange.change = change;
+            }
+            pendingChange.waiters.add(future);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, batchWindowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        submittedChanges.increment();
+
+        return future;
+    }
+
+    /**
+     * number of changes submitted / sent to Route53 - the difference is what coalescing saved
+     */
+    public long getSubmittedChangeCount() {
+        return submittedChanges.sum();
+    }
+
+    public long getSentChangeCount() {
+        return sentChanges.sum();
+    }
+
+    public long getSentBatchCount() {
+        return sentBatches.sum();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        synchronized (this) {
+            for (PendingChange pendingChange : pending.values()) {
+                pendingChange.waiters.forEach(w -> w.cancel(false));
+            }
+            pending.clear();
+        }
+    }
+
+    private void flush() {
+        List<PendingChange> changes;
+
+        synchronized (this) {
+            changes = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+
+        for (int from = 0; from < changes.size(); from += maxBatchSize) {
+            List<PendingChange> batch = changes.subList(from, Math.min(from + maxBatchSize, changes.size()));
+            try {
+                send(batch);
+            } catch (RuntimeException e) {
+                log.warn("Failed to send Route53 change batch of {} changes", batch.size(), e);
+                completeExceptionally(batch, e);
+            }
+        }
+    }
+
+    private void send(List<PendingChange> batch) {
+        List<Change> changes = new ArrayList<>(batch.size());
+        for (PendingChange pendingChange : batch) changes.add(pendingChange.change);
+
+        sentBatches.increment();
+        sentChanges.add(changes.size());
+
+        route53Client.changeResourceRecordSets(builder -> builder.hostedZoneId(hostedZoneId)
+                        .changeBatch(changeBatch -> changeBatch.changes(changes)))
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        log.warn("Route53 change batch of {} changes rejected", changes.size(), e);
+                        completeExceptionally(batch, e);
+                    } else {
+                        log.debug("Route53 change {} submitted, {} changes", response.changeInfo().id(), changes.size());
+                        track(batch, response.changeInfo());
+                    }
+                });
+    }
+
+    /**
+     * poll GetChange until the batch is INSYNC
+     */
+    private void track(List<PendingChange> batch, ChangeInfo changeInfo) {
+        if (changeInfo.status() == ChangeStatus.INSYNC) {
+            for (PendingChange pendingChange : batch) {
+                pendingChange.waiters.forEach(w -> w.complete(changeInfo));
+            }
+            return;
+        }
+
+        try {
+            scheduler.schedule(() -> route53Client.getChange(builder -> builder.id(changeInfo.id()))
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            log.warn("Route53 change {} status check failed", changeInfo.id(), e);
+                            completeExceptionally(batch, e);
+                        } else {
+                            track(batch, response.changeInfo());
+                        }
+                    }), statusPollIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // closed while the change was pending
+            completeExceptionally(batch, e);
+        }
+    }
+
+    private static void completeExceptionally(List<PendingChange> batch, Throwable e) {
+        for (PendingChange pendingChange : batch) {
+            pendingChange.waiters.forEach(w -> w.completeExceptionally(e));
+        }
+    }
+
+    private static String key(ResourceRecordSet recordSet) {
+        // Route53 names are case insensitive, with or without the trailing dot
+        String name = recordSet.name().toLowerCase();
+        if (name.endsWith(".")) name = name.substring(0, name.length() - 1);
+
+        return name + '|' + recordSet.typeAsString() + '|' +
+                ((recordSet.setIdentifier() != null) ? recordSet.setIdentifier() : "");
+    }
+}
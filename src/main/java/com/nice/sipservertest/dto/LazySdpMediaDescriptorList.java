@@ -0,0 +1,57 @@
+package com.nice.sipservertest.dto;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * read-only list of media descriptors that are only decoded the first time they are accessed
+ * the parser indexes the m= sections of the message and hands in a decoder for a section index, so consumers that
+ * only look at the first media description never pay for decoding the others
+ * NOTE:  not thread safe (same as the rest of SdpMessage) - decode from one thread or materialize first
+ */
+public class LazySdpMediaDescriptorList extends AbstractList<SdpMediaDescriptor> implements RandomAccess {
+
+    private final SdpMediaDescriptor[] descriptors;
+
+    private final IntFunction<SdpMediaDescriptor> decoder;
+
+
+    public LazySdpMediaDescriptorList(int size, IntFunction<SdpMediaDescriptor> decoder)
+    {
+        this.descriptors = new SdpMediaDescriptor[size];
+        this.decoder = decoder;
+    }
+
+    @Override
+    public SdpMediaDescriptor get(int index)
+    {
+        if (index < 0 || index >= descriptors.length)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + descriptors.length);
+        }
+
+        SdpMediaDescriptor descriptor = descriptors[index];
+        if (descriptor == null)
+        {
+            descriptor = decoder.apply(index);
+            descriptors[index] = descriptor;
+        }
+
+        return descriptor;
+    }
+
+    @Override
+    public int size()
+    {
+        return descriptors.length;
+    }
+
+    /**
+     * @return true if the media description at the index has already been decoded
+     */
+    public boolean isMaterialized(int index)
+    {
+        return descriptors[index] != null;
+    }
+}
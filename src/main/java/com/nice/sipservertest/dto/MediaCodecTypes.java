@@ -9,5 +9,13 @@ public enum MediaCodecTypes {
 
     G729,
 
-    TELEPHONY_EVENT
+    TELEPHONY_EVENT,
+
+    G722,
+
+    OPUS,
+
+    AMR_WB,
+
+    ILBC
 }
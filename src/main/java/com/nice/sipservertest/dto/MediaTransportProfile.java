@@ -1,5 +1,7 @@
 package com.nice.sipservertest.dto;
 
+import com.nice.sipservertest.parser.SdpLineCursor;
+
 public enum MediaTransportProfile {
 
     UNKNOWN,
@@ -11,17 +13,17 @@ public enum MediaTransportProfile {
     RTP_SAVP;
 
 
-    public static MediaTransportProfile sdpTransportStringToTransportEnum(String protocolString)
+    public static MediaTransportProfile sdpTransportStringToTransportEnum(CharSequence protocolString)
     {
-        if (protocolString.equalsIgnoreCase("RTP/AVP"))
+        if (SdpLineCursor.equalsIgnoreCase(protocolString, "RTP/AVP"))
         {
             return MediaTransportProfile.RTP_AVP;
         }
-        else if (protocolString.equalsIgnoreCase("RTP/SAVP"))
+        else if (SdpLineCursor.equalsIgnoreCase(protocolString, "RTP/SAVP"))
         {
             return MediaTransportProfile.RTP_SAVP;
         }
-        else if (protocolString.equalsIgnoreCase("udp"))
+        else if (SdpLineCursor.equalsIgnoreCase(protocolString, "udp"))
         {
             return MediaTransportProfile.UDP;
         }
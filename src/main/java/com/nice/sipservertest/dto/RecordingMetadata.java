@@ -0,0 +1,164 @@
+package com.nice.sipservertest.dto;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * recording session metadata (RFC 7865, application/rs-metadata+xml) sent by a SIPREC recording client next to
+ * the SDP - only the parts needed to tell whose voice is on which RTP stream are kept
+ * the stream label is the SDP RFC 4574 label, see getMediaDescriptor
+ */
+@Getter
+@Setter
+public class RecordingMetadata {
+
+    /**
+     * communication session (CS) being recorded
+     */
+    @Getter
+    @Setter
+    public static class Session
+    {
+        private String sessionId;
+
+        private String sipSessionId;
+
+        private String groupId;
+    }
+
+    /**
+     * one party of the communication session and the streams it sends and receives
+     */
+    @Getter
+    @Setter
+    public static class Participant
+    {
+        private String participantId;
+
+        private String aor;
+
+        private String name;
+
+        private final List<String> sendStreamIds = new ArrayList<>(2);
+
+        private final List<String> recvStreamIds = new ArrayList<>(2);
+    }
+
+    /**
+     * one recorded media stream - label matches the a=label attribute of an m= line of the SDP
+     */
+    @Getter
+    @Setter
+    public static class Stream
+    {
+        private String streamId;
+
+        private String sessionId;
+
+        private String label;
+    }
+
+    /**
+     * "complete" or "partial" (the metadata is an update to an earlier snapshot)
+     */
+    private String dataMode;
+
+    @Getter(AccessLevel.NONE)
+    private final List<Session> sessions = new ArrayList<>(1);
+
+    @Getter(AccessLevel.NONE)
+    private final List<Participant> participants = new ArrayList<>(2);
+
+    @Getter(AccessLevel.NONE)
+    private final List<Stream> streams = new ArrayList<>(2);
+
+
+    public List<Session> getSessions()
+    {
+        return Collections.unmodifiableList(sessions);
+    }
+
+    public List<Participant> getParticipants()
+    {
+        return Collections.unmodifiableList(participants);
+    }
+
+    public List<Stream> getStreams()
+    {
+        return Collections.unmodifiableList(streams);
+    }
+
+    public Participant getParticipant(String participantId)
+    {
+        for (Participant participant : participants)
+        {
+            if (participant.getParticipantId() != null && participant.getParticipantId().equals(participantId)) return participant;
+        }
+
+        return null;
+    }
+
+    public Stream getStream(String streamId)
+    {
+        for (Stream stream : streams)
+        {
+            if (stream.getStreamId() != null && stream.getStreamId().equals(streamId)) return stream;
+        }
+
+        return null;
+    }
+
+    public Stream getStreamByLabel(String label)
+    {
+        for (Stream stream : streams)
+        {
+            if (stream.getLabel() != null && stream.getLabel().equals(label)) return stream;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the participant that sends the stream (the speaker on that m= line) or null
+     */
+    public Participant getSender(Stream stream)
+    {
+        for (Participant participant : participants)
+        {
+            if (participant.getSendStreamIds().contains(stream.getStreamId())) return participant;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the SDP media description of the stream (by RFC 4574 label) or null
+     * NOTE:  the descriptor is looked up each time, nothing here holds on to (possibly pooled) SDP objects
+     */
+    public SdpMediaDescriptor getMediaDescriptor(SdpMessage sdpMessage, Stream stream)
+    {
+        if (sdpMessage == null || stream.getLabel() == null) return null;
+
+        return sdpMessage.getMediaMappingWithSdpLabelKey().get(stream.getLabel());
+    }
+
+    public void addSession(Session session)
+    {
+        sessions.add(session);
+    }
+
+    public void addParticipant(Participant participant)
+    {
+        participants.add(participant);
+    }
+
+    public void addStream(Stream stream)
+    {
+        streams.add(stream);
+    }
+}
@@ -0,0 +1,267 @@
+package com.nice.sipservertest.dto;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * RTP payload type -> media mapping, direct indexed for the RTP payload type range 0-127 (RFC 3551) with a small
+ * sorted overflow array for anything else (the internal 1000+ codec codes or junk from a malformed m= line)
+ * get/put/remove/containsKey with an int and forEachMapping don't box, the Map methods are there for existing callers
+ * iteration is in ascending payload type order, 0-127 first and then the overflow keys (so a negative junk key comes
+ * after 127)
+ */
+public class RtpPayloadMappings extends AbstractMap<Integer, SdpMediaMapping> {
+
+    public static final int DIRECT_SLOTS = 128;
+
+    private final SdpMediaMapping[] direct = new SdpMediaMapping[DIRECT_SLOTS];
+
+    private int[] otherKeys = new int[0];
+
+    private SdpMediaMapping[] otherValues = new SdpMediaMapping[0];
+
+    private int otherSize;
+
+    private int size;
+
+    private Set<Entry<Integer, SdpMediaMapping>> entrySet;
+
+
+    private static boolean isDirect(int payloadType)
+    {
+        return payloadType >= 0 && payloadType < DIRECT_SLOTS;
+    }
+
+    public SdpMediaMapping get(int payloadType)
+    {
+        if (isDirect(payloadType)) return direct[payloadType];
+
+        int i = Arrays.binarySearch(otherKeys, 0, otherSize, payloadType);
+        return (i >= 0) ? otherValues[i] : null;
+    }
+
+    public boolean containsKey(int payloadType)
+    {
+        return get(payloadType) != null;
+    }
+
+    /**
+     * @return the previous mapping for the payload type or null
+     */
+    public SdpMediaMapping put(int payloadType, SdpMediaMapping mapping)
+    {
+        if (mapping == null)
+        {
+            throw new NullPointerException("Media mapping for payload type " + payloadType + " is null");
+        }
+
+        if (isDirect(payloadType))
+        {
+            SdpMediaMapping previous = direct[payloadType];
+            direct[payloadType] = mapping;
+            if (previous == null) size++;
+            return previous;
+        }
+
+        int i = Arrays.binarySearch(otherKeys, 0, otherSize, payloadType);
+        if (i >= 0)
+        {
+            SdpMediaMapping previous = otherValues[i];
+            otherValues[i] = mapping;
+            return previous;
+        }
+
+        i = -i - 1;
+        if (otherSize == otherKeys.length)
+        {
+            int capacity = Math.max(4, otherSize * 2);
+            otherKeys = Arrays.copyOf(otherKeys, capacity);
+            otherValues = Arrays.copyOf(otherValues, capacity);
+        }
+
+        System.arraycopy(otherKeys, i, otherKeys, i + 1, otherSize - i);
+        System.arraycopy(otherValues, i, otherValues, i + 1, otherSize - i);
+        otherKeys[i] = payloadType;
+        otherValues[i] = mapping;
+        otherSize++;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return the removed mapping or null
+     */
+    public SdpMediaMapping remove(int payloadType)
+    {
+        if (isDirect(payloadType))
+        {
+            SdpMediaMapping previous = direct[payloadType];
+            direct[payloadType] = null;
+            if (previous != null) size--;
+            return previous;
+        }
+
+        int i = Arrays.binarySearch(otherKeys, 0, otherSize, payloadType);
+        if (i < 0) return null;
+
+        SdpMediaMapping previous = otherValues[i];
+        System.arraycopy(otherKeys, i + 1, otherKeys, i, otherSize - 1 - i);
+        System.arraycopy(otherValues, i + 1, otherValues, i, otherSize - 1 - i);
+        otherValues[--otherSize] = null;
+        size--;
+        return previous;
+    }
+
+    /**
+     * visit the mappings in iteration order (see class comment)
+     */
+    public void forEachMapping(Consumer<SdpMediaMapping> action)
+    {
+        if (size == 0) return;
+
+        for (SdpMediaMapping mapping : direct)
+        {
+            if (mapping != null) action.accept(mapping);
+        }
+
+        for (int i = 0; i < otherSize; i++)
+        {
+            action.accept(otherValues[i]);
+        }
+    }
+
+    @Override
+    public SdpMediaMapping get(Object key)
+    {
+        return (key instanceof Integer) ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return get(key) != null;
+    }
+
+    @Override
+    public SdpMediaMapping put(Integer key, SdpMediaMapping value)
+    {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public SdpMediaMapping remove(Object key)
+    {
+        return (key instanceof Integer) ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (size == 0) return;
+
+        Arrays.fill(direct, null);
+        Arrays.fill(otherValues, 0, otherSize, null);
+        otherSize = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<Integer, SdpMediaMapping>> entrySet()
+    {
+        if (entrySet == null)
+        {
+            entrySet = new AbstractSet<>()
+            {
+                @Override
+                public Iterator<Entry<Integer, SdpMediaMapping>> iterator()
+                {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return size;
+                }
+
+                @Override
+                public void clear()
+                {
+                    RtpPayloadMappings.this.clear();
+                }
+            };
+        }
+
+        return entrySet;
+    }
+
+    // walks the direct slots then the overflow array - position is the direct slot or DIRECT_SLOTS + overflow index
+    private final class EntryIterator implements Iterator<Entry<Integer, SdpMediaMapping>>
+    {
+        private int next = advance(0);
+
+        private int lastKey = Integer.MIN_VALUE;
+
+        private boolean canRemove;
+
+        private int advance(int position)
+        {
+            while (position < DIRECT_SLOTS && direct[position] == null) position++;
+            return position;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < DIRECT_SLOTS + otherSize;
+        }
+
+        @Override
+        public Entry<Integer, SdpMediaMapping> next()
+        {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            int key;
+            SdpMediaMapping value;
+            if (next < DIRECT_SLOTS)
+            {
+                key = next;
+                value = direct[next];
+                next = advance(next + 1);
+            }
+            else
+            {
+                key = otherKeys[next - DIRECT_SLOTS];
+                value = otherValues[next - DIRECT_SLOTS];
+                next++;
+            }
+
+            lastKey = key;
+            canRemove = true;
+            return new SimpleImmutableEntry<>(key, value);
+        }
+
+        @Override
+        public void remove()
+        {
+            if (!canRemove) throw new IllegalStateException();
+
+            canRemove = false;
+            RtpPayloadMappings.this.remove(lastKey);
+
+            // the overflow array shifted down under the iterator
+            if (!isDirect(lastKey)) next--;
+        }
+    }
+}
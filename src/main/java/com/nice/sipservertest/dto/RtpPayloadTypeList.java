@@ -0,0 +1,131 @@
+package com.nice.sipservertest.dto;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * ordered list of RTP payload type numbers (the fmt list of an m= line) kept as a plain int[]
+ * getInt/addInt/indexOfInt don't box, the List<Integer> methods are there for existing callers (payload types 0-127
+ * box to cached Integers, so even those don't allocate for valid payload types)
+ */
+public class RtpPayloadTypeList extends AbstractList<Integer> implements RandomAccess {
+
+    private int[] values;
+
+    private int size;
+
+
+    public RtpPayloadTypeList()
+    {
+        this.values = new int[8];
+    }
+
+    public int getInt(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+
+        return values[index];
+    }
+
+    public void addInt(int value)
+    {
+        if (size == values.length)
+        {
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        values[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return index of the first occurrence of the payload type or -1
+     */
+    public int indexOfInt(int value)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if (values[i] == value) return i;
+        }
+
+        return -1;
+    }
+
+    public boolean containsInt(int value)
+    {
+        return indexOfInt(value) >= 0;
+    }
+
+    @Override
+    public Integer get(int index)
+    {
+        return getInt(index);
+    }
+
+    @Override
+    public boolean add(Integer value)
+    {
+        addInt(value);
+        return true;
+    }
+
+    @Override
+    public Integer set(int index, Integer value)
+    {
+        int previous = getInt(index);
+        values[index] = value;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Integer value)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+
+        addInt(0);
+        System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        values[index] = value;
+    }
+
+    @Override
+    public Integer remove(int index)
+    {
+        int previous = getInt(index);
+        System.arraycopy(values, index + 1, values, index, size - 1 - index);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public int indexOf(Object o)
+    {
+        return (o instanceof Integer) ? indexOfInt((Integer) o) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public void clear()
+    {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+}
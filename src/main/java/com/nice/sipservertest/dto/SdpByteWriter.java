@@ -0,0 +1,308 @@
+package com.nice.sipservertest.dto;
+
+import com.nice.sipservertest.util.ObjectPool;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * writes SDP text straight into a byte[] or ByteBuffer - the encodeTo() counterpart of the StringBuilder used by
+ * getEncodedMessage(), producing the same bytes as getEncodedMessage().getBytes(UTF_8) without the intermediate strings
+ * NOTE:  writing past the end of the target throws BufferOverflowException (the target content is then undefined)
+ */
+final class SdpByteWriter
+{
+    static final byte[] EOL = ascii(SdpMessage.SDP_EOL);
+
+    static final byte[] IN_IP4 = ascii("IN IP4 ");
+
+    static final byte[] IN_IP6 = ascii("IN IP6 ");
+
+    /**
+     * 16 byte scratch for the octets of an IPv6 address - Inet6Address only hands out copies, so the scratch keeps
+     * the address it was filled from and writing the same address again (the local answer address) copies nothing
+     * NOTE:  released as is, not reset - the octets always match the address they are kept with
+     */
+    private static final class Ipv6Scratch
+    {
+        private Inet6Address address;
+
+        private final byte[] octets = new byte[16];
+    }
+
+    private static final ObjectPool<Ipv6Scratch> ipv6Scratches = new ObjectPool<>(64, Ipv6Scratch::new);
+
+    private final byte[] array;
+
+    // direct (or read-only) target buffer, written through put() calls
+    private final ByteBuffer buffer;
+
+    // heap target buffer, written through its backing array - position is updated by finish()
+    private final ByteBuffer heapBuffer;
+
+    private final int start;
+
+    private final int limit;
+
+    private int pos;
+
+    SdpByteWriter(byte[] array, int offset)
+    {
+        this.array = array;
+        this.buffer = null;
+        this.heapBuffer = null;
+        this.start = offset;
+        this.limit = array.length;
+        this.pos = offset;
+    }
+
+    /**
+     * writes from the buffer position on - heap buffers are written through their backing array
+     */
+    SdpByteWriter(ByteBuffer buffer)
+    {
+        if (buffer.hasArray() && !buffer.isReadOnly())
+        {
+            this.array = buffer.array();
+            this.buffer = null;
+            this.heapBuffer = buffer;
+            this.start = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+        }
+        else
+        {
+            this.array = null;
+            this.buffer = buffer;
+            this.heapBuffer = null;
+            this.start = buffer.position();
+            this.limit = buffer.limit();
+        }
+        this.pos = start;
+    }
+
+    static byte[] ascii(String s)
+    {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    int written()
+    {
+        return (buffer != null) ? buffer.position() - start : pos - start;
+    }
+
+    /**
+     * @return offset just past the last byte written (byte[] target)
+     */
+    int position()
+    {
+        return pos;
+    }
+
+    /**
+     * move a ByteBuffer target's position past the written bytes
+     */
+    void finish()
+    {
+        if (heapBuffer != null)
+        {
+            heapBuffer.position(heapBuffer.position() + (pos - start));
+        }
+    }
+
+    SdpByteWriter put(byte b)
+    {
+        if (buffer != null)
+        {
+            buffer.put(b);
+        }
+        else
+        {
+            if (pos >= limit) throw new BufferOverflowException();
+            array[pos++] = b;
+        }
+        return this;
+    }
+
+    SdpByteWriter put(byte[] bytes)
+    {
+        if (buffer != null)
+        {
+            buffer.put(bytes);
+        }
+        else
+        {
+            if (limit - pos < bytes.length) throw new BufferOverflowException();
+            System.arraycopy(bytes, 0, array, pos, bytes.length);
+            pos += bytes.length;
+        }
+        return this;
+    }
+
+    SdpByteWriter eol()
+    {
+        return put(EOL);
+    }
+
+    /**
+     * write text as UTF-8 (plain byte copy for the usual all ASCII SDP text)
+     */
+    SdpByteWriter put(CharSequence s)
+    {
+        int length = s.length();
+        for (int i = 0; i < length; i++)
+        {
+            char c = s.charAt(i);
+
+            if (c < 0x80)
+            {
+                put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                put((byte) (0xc0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3f)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put((byte) (0xf0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                put((byte) (0x80 | (cp & 0x3f)));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                // unpaired surrogate - String.getBytes(UTF_8) writes '?'
+                put((byte) '?');
+            }
+            else
+            {
+                put((byte) (0xe0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        return this;
+    }
+
+    SdpByteWriter put(long value)
+    {
+        if (value < 0)
+        {
+            if (value == Long.MIN_VALUE) return put(Long.toString(value));
+
+            put((byte) '-');
+            value = -value;
+        }
+
+        long divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+
+        for (; divisor > 0; divisor /= 10)
+        {
+            put((byte) ('0' + (value / divisor) % 10));
+        }
+        return this;
+    }
+
+    /**
+     * write the value in Double.toString() form - whole numbers (the usual framerate) without the string
+     */
+    SdpByteWriter put(double value)
+    {
+        if (value == Math.rint(value) && Math.abs(value) < 1e7 && !(value == 0 && 1 / value < 0))
+        {
+            return put((long) value).put((byte) '.').put((byte) '0');
+        }
+        return put(Double.toString(value));
+    }
+
+    SdpByteWriter putHex(int value)
+    {
+        int shift = 12;
+        while (shift > 0 && ((value >> shift) & 0xf) == 0) shift -= 4;
+
+        for (; shift >= 0; shift -= 4)
+        {
+            put((byte) Character.forDigit((value >> shift) & 0xf, 16));
+        }
+        return this;
+    }
+
+    /**
+     * write the address in InetAddress.getHostAddress() form
+     */
+    SdpByteWriter putHostAddress(InetAddress address)
+    {
+        if (address instanceof Inet4Address)
+        {
+            // Inet4Address.hashCode() is the address itself, first octet in the high byte - getAddress() would copy
+            int ip = address.hashCode();
+            put(ip >>> 24).put((byte) '.').put((ip >>> 16) & 0xff).put((byte) '.').
+                    put((ip >>> 8) & 0xff).put((byte) '.').put(ip & 0xff);
+        }
+        else
+        {
+            Inet6Address ip6 = (Inet6Address) address;
+            Ipv6Scratch scratch = ipv6Scratches.borrow();
+            try
+            {
+                if (scratch.address != ip6)
+                {
+                    System.arraycopy(ip6.getAddress(), 0, scratch.octets, 0, 16);
+                    scratch.address = ip6;
+                }
+
+                byte[] ip = scratch.octets;
+                for (int i = 0; i < ip.length; i += 2)
+                {
+                    if (i > 0) put((byte) ':');
+                    putHex(((ip[i] & 0xff) << 8) | (ip[i + 1] & 0xff));
+                }
+            }
+            finally
+            {
+                ipv6Scratches.release(scratch);
+            }
+
+            if (ip6.getScopedInterface() != null)
+            {
+                put((byte) '%').put(ip6.getScopedInterface().getName());
+            }
+            else if (ip6.getScopeId() != 0)
+            {
+                put((byte) '%').put(ip6.getScopeId());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * write "IN IP4 <address>" / "IN IP6 <address>" - see SdpMessage.getSdpConnectionString
+     */
+    SdpByteWriter putConnection(InetAddress address) throws SdpAssemblyException
+    {
+        if (address instanceof Inet4Address)
+        {
+            put(IN_IP4);
+        }
+        else if (address instanceof Inet6Address)
+        {
+            put(IN_IP6);
+        }
+        else
+        {
+            throw new SdpAssemblyException(SdpAssemblyErrorTypes.UNSUPPORTED_INET_TYPE,
+                    "Current SIP/SDP framework only supports IPv4 or IPv6 addresses in SDP connection lines");
+        }
+
+        return putHostAddress(address);
+    }
+}
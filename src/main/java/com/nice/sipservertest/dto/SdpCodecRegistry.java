@@ -0,0 +1,220 @@
+package com.nice.sipservertest.dto;
+
+import com.nice.sipservertest.parser.SdpLineCursor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * codec lookup tables used by SdpMediaCodecs and the media signaling event factory
+ *   rtpmap encoding name -> SdpMediaCodecs - open addressing table on an ASCII case-folded hash, looked up straight
+ *     from the parser's CharSequence view (no String, no lower-casing copy)
+ *   static RTP payload type (0-127) -> SdpMediaCodecs - direct indexed array, 96-127 are DYNAMIC (RFC 3551)
+ *   SdpMediaCodecs -> MediaCodecTypes - EnumMap
+ * extra names, static payload types and conversions can be registered at startup (see SipCodecProperties) - each
+ * register call publishes a new copy of the tables, so lookups never lock
+ */
+public class SdpCodecRegistry {
+
+    private static final SdpCodecRegistry defaultInstance = new SdpCodecRegistry();
+
+    private static final int PAYLOAD_TYPES = 128;
+
+    private static final int FIRST_DYNAMIC_PAYLOAD_TYPE = 96;
+
+    private static final class Tables
+    {
+        // encoding name table - names[i] == null is an empty slot, size is a power of two and at most half full
+        final String[] names;
+        final SdpMediaCodecs[] nameCodecs;
+        final SdpMediaCodecs[] payloadTypes;
+        final Map<SdpMediaCodecs, MediaCodecTypes> mediaCodecTypes;
+
+        Tables(String[] names, SdpMediaCodecs[] nameCodecs, SdpMediaCodecs[] payloadTypes,
+               Map<SdpMediaCodecs, MediaCodecTypes> mediaCodecTypes)
+        {
+            this.names = names;
+            this.nameCodecs = nameCodecs;
+            this.payloadTypes = payloadTypes;
+            this.mediaCodecTypes = mediaCodecTypes;
+        }
+    }
+
+    private volatile Tables tables;
+
+
+    public static SdpCodecRegistry getDefault()
+    {
+        return defaultInstance;
+    }
+
+    /**
+     * registry with the built in codecs (every SdpMediaCodecs with an SDP name, its static payload type and its
+     * MediaCodecTypes conversion)
+     */
+    public SdpCodecRegistry()
+    {
+        SdpMediaCodecs[] payloadTypes = new SdpMediaCodecs[PAYLOAD_TYPES];
+        Arrays.fill(payloadTypes, SdpMediaCodecs.UNKNOWN);
+        Arrays.fill(payloadTypes, FIRST_DYNAMIC_PAYLOAD_TYPE, PAYLOAD_TYPES, SdpMediaCodecs.DYNAMIC);
+
+        EnumMap<SdpMediaCodecs, MediaCodecTypes> mediaCodecTypes = new EnumMap<>(SdpMediaCodecs.class);
+        mediaCodecTypes.put(SdpMediaCodecs.G729, MediaCodecTypes.G729);
+        mediaCodecTypes.put(SdpMediaCodecs.PCMU, MediaCodecTypes.G711U);
+        mediaCodecTypes.put(SdpMediaCodecs.PCMA, MediaCodecTypes.G711A);
+        mediaCodecTypes.put(SdpMediaCodecs.TELEPHONE_EVENT, MediaCodecTypes.TELEPHONY_EVENT);
+        mediaCodecTypes.put(SdpMediaCodecs.G722, MediaCodecTypes.G722);
+        mediaCodecTypes.put(SdpMediaCodecs.OPUS, MediaCodecTypes.OPUS);
+        mediaCodecTypes.put(SdpMediaCodecs.AMR_WB, MediaCodecTypes.AMR_WB);
+        mediaCodecTypes.put(SdpMediaCodecs.ILBC, MediaCodecTypes.ILBC);
+
+        tables = new Tables(new String[16], new SdpMediaCodecs[16], payloadTypes, mediaCodecTypes);
+
+        for (SdpMediaCodecs codec : SdpMediaCodecs.values())
+        {
+            if (codec == SdpMediaCodecs.UNKNOWN || codec == SdpMediaCodecs.DYNAMIC) continue;
+
+            registerEncodingName(codec.getSdpCodecStringIdentifier(), codec);
+            if (codec.isStaticPayloadType())
+            {
+                registerStaticPayloadType(codec.getStandardRtpPayloadNumber(), codec);
+            }
+        }
+    }
+
+    /**
+     * @return codec for an rtpmap encoding name (case insensitive), UNKNOWN if not registered, null for null
+     */
+    public SdpMediaCodecs getCodecFromEncodingName(CharSequence encodingName)
+    {
+        if (encodingName == null) return null;
+
+        Tables t = tables;
+        int mask = t.names.length - 1;
+        for (int i = hash(encodingName) & mask; t.names[i] != null; i = (i + 1) & mask)
+        {
+            if (SdpLineCursor.equalsIgnoreCase(encodingName, t.names[i])) return t.nameCodecs[i];
+        }
+
+        return SdpMediaCodecs.UNKNOWN;
+    }
+
+    /**
+     * @return codec for a static payload type, DYNAMIC for 96-127, UNKNOWN for anything else
+     */
+    public SdpMediaCodecs getCodecFromPayloadType(int payloadType)
+    {
+        if (payloadType < 0 || payloadType >= PAYLOAD_TYPES) return SdpMediaCodecs.UNKNOWN;
+
+        return tables.payloadTypes[payloadType];
+    }
+
+    /**
+     * @return media codec type for the SDP codec, UNKNOWN if there is no conversion
+     */
+    public MediaCodecTypes getMediaCodecType(SdpMediaCodecs codec)
+    {
+        if (codec == null) return MediaCodecTypes.UNKNOWN;
+
+        MediaCodecTypes codecType = tables.mediaCodecTypes.get(codec);
+        return (codecType == null) ? MediaCodecTypes.UNKNOWN : codecType;
+    }
+
+    public Map<SdpMediaCodecs, MediaCodecTypes> getMediaCodecTypes()
+    {
+        return Collections.unmodifiableMap(tables.mediaCodecTypes);
+    }
+
+    /**
+     * map an rtpmap encoding name (ex. an alias like "G729a") to a codec - replaces an existing mapping of the name
+     */
+    public synchronized void registerEncodingName(String encodingName, SdpMediaCodecs codec)
+    {
+        if (encodingName == null || encodingName.isEmpty() || codec == null)
+        {
+            throw new IllegalArgumentException("Codec encoding name and codec are required");
+        }
+
+        Tables t = tables;
+        String[] names = t.names;
+        SdpMediaCodecs[] nameCodecs = t.nameCodecs;
+
+        int used = 0;
+        for (String name : names)
+        {
+            if (name != null) used++;
+        }
+
+        int size = names.length;
+        while ((used + 1) * 2 > size) size *= 2;
+
+        String[] newNames = new String[size];
+        SdpMediaCodecs[] newNameCodecs = new SdpMediaCodecs[size];
+        for (int i = 0; i < names.length; i++)
+        {
+            if (names[i] != null && !SdpLineCursor.equalsIgnoreCase(encodingName, names[i]))
+            {
+                insert(newNames, newNameCodecs, names[i], nameCodecs[i]);
+            }
+        }
+        insert(newNames, newNameCodecs, encodingName, codec);
+
+        tables = new Tables(newNames, newNameCodecs, t.payloadTypes, t.mediaCodecTypes);
+    }
+
+    /**
+     * map a static payload type (0-95) to a codec, for payload types that may be used without an rtpmap line
+     */
+    public synchronized void registerStaticPayloadType(int payloadType, SdpMediaCodecs codec)
+    {
+        if (payloadType < 0 || payloadType >= FIRST_DYNAMIC_PAYLOAD_TYPE || codec == null)
+        {
+            throw new IllegalArgumentException("Static RTP payload type must be 0-" + (FIRST_DYNAMIC_PAYLOAD_TYPE - 1) +
+                    ", got " + payloadType);
+        }
+
+        Tables t = tables;
+        SdpMediaCodecs[] payloadTypes = t.payloadTypes.clone();
+        payloadTypes[payloadType] = codec;
+
+        tables = new Tables(t.names, t.nameCodecs, payloadTypes, t.mediaCodecTypes);
+    }
+
+    public synchronized void registerMediaCodecType(SdpMediaCodecs codec, MediaCodecTypes codecType)
+    {
+        if (codec == null || codecType == null)
+        {
+            throw new IllegalArgumentException("Codec and media codec type are required");
+        }
+
+        Tables t = tables;
+        EnumMap<SdpMediaCodecs, MediaCodecTypes> mediaCodecTypes = new EnumMap<>(t.mediaCodecTypes);
+        mediaCodecTypes.put(codec, codecType);
+
+        tables = new Tables(t.names, t.nameCodecs, t.payloadTypes, mediaCodecTypes);
+    }
+
+    private static void insert(String[] names, SdpMediaCodecs[] nameCodecs, String name, SdpMediaCodecs codec)
+    {
+        int mask = names.length - 1;
+        int i = hash(name) & mask;
+        while (names[i] != null) i = (i + 1) & mask;
+
+        names[i] = name;
+        nameCodecs[i] = codec;
+    }
+
+    // ASCII case-folded hash - same value for "PCMU" and "pcmu"
+    private static int hash(CharSequence s)
+    {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++)
+        {
+            h = 31 * h + SdpLineCursor.toLowerAscii(s.charAt(i));
+        }
+
+        return h ^ (h >>> 16);
+    }
+}
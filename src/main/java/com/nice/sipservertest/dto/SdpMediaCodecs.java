@@ -49,6 +49,42 @@ public enum SdpMediaCodecs
                 {
                     return "telephone-event";
                 }
+            },
+
+    G722(9)
+            {
+                @Override
+                public String getSdpCodecStringIdentifier()
+                {
+                    return "G722";
+                }
+            },
+
+    OPUS(SdpMediaCodecs.DYNAMIC_BASE + 2)
+            {
+                @Override
+                public String getSdpCodecStringIdentifier()
+                {
+                    return "opus";
+                }
+            },
+
+    AMR_WB(SdpMediaCodecs.DYNAMIC_BASE + 3)
+            {
+                @Override
+                public String getSdpCodecStringIdentifier()
+                {
+                    return "AMR-WB";
+                }
+            },
+
+    ILBC(SdpMediaCodecs.DYNAMIC_BASE + 4)
+            {
+                @Override
+                public String getSdpCodecStringIdentifier()
+                {
+                    return "iLBC";
+                }
             };
 
 
@@ -78,71 +114,19 @@ public enum SdpMediaCodecs
         return "UNKNOWN";
     }
 
-    public static SdpMediaCodecs getSdpMediaCodecFromSdpName(String codecName)
+    /**
+     * @return codec for an rtpmap encoding name (case insensitive) or UNKNOWN - see SdpCodecRegistry
+     */
+    public static SdpMediaCodecs getSdpMediaCodecFromSdpName(CharSequence codecName)
     {
-        SdpMediaCodecs retVal;
-
-        if (codecName == null) return null;
-
-        if (codecName.equalsIgnoreCase("PCMU"))
-        {
-            retVal = PCMU;
-        }
-        else if (codecName.equalsIgnoreCase("G723"))
-        {
-            retVal = G723;
-        }
-        else if (codecName.equalsIgnoreCase("PCMA"))
-        {
-            retVal = PCMA;
-        }
-        else if (codecName.equalsIgnoreCase("G729"))
-        {
-            retVal = G729;
-        }
-        else if (codecName.equalsIgnoreCase("telephone-event"))
-        {
-            retVal = TELEPHONE_EVENT;
-        }
-        else
-        {
-            retVal = UNKNOWN;
-        }
-
-        return retVal;
+        return SdpCodecRegistry.getDefault().getCodecFromEncodingName(codecName);
     }
 
+    /**
+     * @return codec for a static payload type, DYNAMIC for 96-127, otherwise UNKNOWN - see SdpCodecRegistry
+     */
     public static SdpMediaCodecs getSdpMediaCodecFromPayloadNumber(int standardPayloadNumber)
     {
-        SdpMediaCodecs retVal;
-
-        if (standardPayloadNumber >= 96 && standardPayloadNumber <= 127)
-        {
-            return DYNAMIC;
-        }
-
-        switch(standardPayloadNumber)
-        {
-            case 0:
-                retVal = PCMU;
-                break;
-
-            case 4:
-                retVal = G723;
-                break;
-
-            case 8:
-                retVal = PCMA;
-                break;
-
-            case 18:
-                retVal = G729;
-                break;
-
-            default:
-                retVal = UNKNOWN;
-        }
-
-        return retVal;
+        return SdpCodecRegistry.getDefault().getCodecFromPayloadType(standardPayloadNumber);
     }
 }
@@ -6,7 +6,7 @@ import lombok.Setter;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.Map;
+import java.nio.ByteBuffer;
 
 @Getter
 @Setter
@@ -14,12 +14,46 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
 
     public final static InetAddress allZerosIpAddress;
 
+    // m= line media names ("audio", "video", ...) indexed by SdpMediaTypes ordinal
+    private static final byte[][] MEDIA_TYPE_NAMES = new byte[SdpMediaTypes.values().length][];
+
+    private static final byte[] INACTIVE = SdpByteWriter.ascii("a=inactive\r\n");
+
+    private static final byte[] RECVONLY = SdpByteWriter.ascii("a=recvonly\r\n");
+
+    private static final byte[] SENDONLY = SdpByteWriter.ascii("a=sendonly\r\n");
+
+    private static final byte[] SENDRECV = SdpByteWriter.ascii("a=sendrecv\r\n");
+
+    private static final byte[] LABEL = SdpByteWriter.ascii("a=label:");
+
+    private static final byte[] PTIME = SdpByteWriter.ascii("a=ptime:");
+
+    private static final byte[] MAXPTIME = SdpByteWriter.ascii("a=maxptime:");
+
+    private static final byte[] FRAMERATE = SdpByteWriter.ascii("a=framerate:");
+
+    private static final byte[] QUALITY = SdpByteWriter.ascii("a=quality:");
+
+    private static final byte[] RTCP = SdpByteWriter.ascii("a=rtcp:");
+
+    private static final byte[] ORIENT_LANDSCAPE = SdpByteWriter.ascii("a=orient:landscape\r\n");
+
+    private static final byte[] ORIENT_PORTRAIT = SdpByteWriter.ascii("a=orient:portrait\r\n");
+
+    private static final byte[] ORIENT_SEASCAPE = SdpByteWriter.ascii("a=orient:seascape\r\n");
+
     static {
         try {
             allZerosIpAddress = InetAddress.getByName("0.0.0.0");
         } catch(Exception e) {
             throw new RuntimeException(e.getMessage());
         }
+
+        for (SdpMediaTypes type : SdpMediaTypes.values())
+        {
+            MEDIA_TYPE_NAMES[type.ordinal()] = SdpByteWriter.ascii("m=" + type.toString().toLowerCase() + " ");
+        }
     }
 
     /// <summary>
@@ -48,7 +82,7 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
 
     public boolean getIsValid()
     {
-        return rtpEndpoint != null && (transportProfile != MediaTransportProfile.UNKNOWN || transportProtocolString != null);
+        return rtpEndpoint != null && (transportProfile != MediaTransportProfile.UNKNOWN || hasTransportProtocolString());
     }
 
 
@@ -65,6 +99,14 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
         quality = -1;
     }
 
+    @Override
+    public void reset()
+    {
+        super.reset();
+        rtpEndpoint = null;
+        rtcpEndpoint = null;
+    }
+
     /// <summary>
     /// get an encoded version of the message as a string in UTF-8 format
     /// </summary>
@@ -74,11 +116,7 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
         // append the m= line
         int endpointPort = 0;
         if (rtpEndpoint != null) endpointPort = rtpEndpoint.getPort();
-        String tp = transportProtocolString;
-        if (transportProfile != MediaTransportProfile.UNKNOWN) {
-
-            tp = MediaTransportProfile.getMediaTransportProfileString(transportProfile);
-        }
+        String tp = getTransportProtocolString();
         sb.append("m=").append(mediaType.toString().toLowerCase()).append(" ").
                 append(endpointPort).append(" ").append(tp).append(" ").append(getMediaFormatString()).append(SdpMessage.SDP_EOL);
 
@@ -195,7 +233,7 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
             else
             {
                 String pv = (rtcpEndpoint.getAddress().getAddress().length > 4) ? "IP6 " : "IP4 ";
-                sb.append("a=rtcp:").append(rtcpEndpoint.getPort()).append(" IN ").append(pv).append(rtcpEndpoint.getAddress()).append(SdpMessage.SDP_EOL);
+                sb.append("a=rtcp:").append(rtcpEndpoint.getPort()).append(" IN ").append(pv).append(rtcpEndpoint.getAddress().getHostAddress()).append(SdpMessage.SDP_EOL);
             }
         }
 
@@ -210,12 +248,7 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
          */
 
         // walk through the a=rtpmap: and associated attributes (a=fmtp:)
-        for (Map.Entry<Integer, SdpMediaMapping> kvp : mediaMappings.entrySet())
-        {
-            SdpMediaMapping mm = kvp.getValue();
-
-            mm.appendEncodedMessage(sb);
-        }
+        mediaMappings.forEachMapping(mm -> mm.appendEncodedMessage(sb));
     }
 
 
@@ -301,8 +334,6 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
 
     public static String getSdpConnectionString(InetAddress connectionAddress) throws SdpAssemblyException
     {
-        // TODO - connection string can use a FQDN so we should probably add support for this
-
         if (connectionAddress.getAddress().length == 4)
         {
             return "IN IP4 " + connectionAddress.getHostAddress();
@@ -317,4 +348,158 @@ public class SdpMediaDescriptor extends SdpMediaDescriptorBase {
                     "Current SIP/SDP framework only supports IPv4 or IPv6 addresses in SDP connection lines");
         }
     }
+
+    /**
+     * write the same bytes as appendEncodedMessage (UTF-8) into the buffer starting at offset
+     * @return offset just past the written bytes
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public int encodeTo(byte[] buf, int offset, InetAddress connectionAddress, SdpMediaDirection direction)
+            throws SdpAssemblyException
+    {
+        SdpByteWriter writer = new SdpByteWriter(buf, offset);
+        encodeTo(writer, connectionAddress, direction);
+        return writer.position();
+    }
+
+    /**
+     * write the same bytes as appendEncodedMessage (UTF-8) at the buffer position and advance it
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public void encodeTo(ByteBuffer buf, InetAddress connectionAddress, SdpMediaDirection direction)
+            throws SdpAssemblyException
+    {
+        SdpByteWriter writer = new SdpByteWriter(buf);
+        encodeTo(writer, connectionAddress, direction);
+        writer.finish();
+    }
+
+    /// <summary>
+    /// byte writer version of appendEncodedMessage - keep the two in sync
+    /// </summary>
+    void encodeTo(SdpByteWriter writer, InetAddress connectionAddress, SdpMediaDirection direction)
+            throws SdpAssemblyException
+    {
+        // m= line
+        int endpointPort = 0;
+        if (rtpEndpoint != null) endpointPort = rtpEndpoint.getPort();
+        // same as getMediaFormatString() - only RTP profiles have a payload type list, anything but UDP is an error
+        if (transportProfile != MediaTransportProfile.RTP_AVP && transportProfile != MediaTransportProfile.RTP_SAVP &&
+                transportProfile != MediaTransportProfile.UDP)
+        {
+            getMediaFormatString();
+        }
+        writer.put(MEDIA_TYPE_NAMES[mediaType.ordinal()]).put(endpointPort).put((byte) ' ').
+                put(MediaTransportProfile.getMediaTransportProfileString(transportProfile)).put((byte) ' ');
+        for (int i = 0; transportProfile != MediaTransportProfile.UDP && i < rtpPayloadTypeList.size(); i++)
+        {
+            if (i > 0) writer.put((byte) ' ');
+            writer.put(rtpPayloadTypeList.getInt(i));
+        }
+        writer.eol();
+
+        // i= line
+        if (mediaTitle != null)
+        {
+            writer.put((byte) 'i').put((byte) '=').put(mediaTitle).eol();
+        }
+
+        // c= line if the address differs from the session level connection address
+        if (rtpEndpoint != null && rtpEndpoint.getPort() != 0 && rtpEndpoint.getAddress() != null &&
+                !connectionAddress.equals(rtpEndpoint.getAddress()))
+        {
+            writer.put((byte) 'c').put((byte) '=').putConnection(rtpEndpoint.getAddress()).eol();
+        }
+
+        // send/receive/inactive attribute
+        SdpMediaDirection dir = this.direction;
+        if (rtpEndpoint == null || rtpEndpoint.getAddress() == null ||
+                rtpEndpoint.getAddress().equals(allZerosIpAddress) || rtpEndpoint.getPort() == 0)
+        {
+            dir = SdpMediaDirection.INACTIVE;
+        }
+        else if (dir == SdpMediaDirection.UNSPECIFIED && direction != SdpMediaDirection.UNSPECIFIED)
+        {
+            dir = direction;
+        }
+        else if (dir == SdpMediaDirection.UNSPECIFIED)
+        {
+            dir = SdpMediaDirection.SEND_RECEIVE;
+        }
+
+        switch(dir)
+        {
+            case INACTIVE:
+                writer.put(INACTIVE);
+                break;
+
+            case RECEIVE_ONLY:
+                writer.put(RECVONLY);
+                break;
+
+            case SEND_ONLY:
+                writer.put(SENDONLY);
+                break;
+
+            case SEND_RECEIVE:
+                writer.put(SENDRECV);
+                break;
+        }
+
+        if (label != null && !label.isEmpty())
+        {
+            writer.put(LABEL).put(label).eol();
+        }
+
+        if (packetTimeInMs != 0)
+        {
+            writer.put(PTIME).put(packetTimeInMs).eol();
+        }
+
+        if (maxPacketTimeInMs != 0)
+        {
+            writer.put(MAXPTIME).put(maxPacketTimeInMs).eol();
+        }
+
+        switch(orientation)
+        {
+            case LANDSCAPE:
+                writer.put(ORIENT_LANDSCAPE);
+                break;
+
+            case PORTRAIT:
+                writer.put(ORIENT_PORTRAIT);
+                break;
+
+            case SEASCAPE:
+                writer.put(ORIENT_SEASCAPE);
+                break;
+        }
+
+        if (framerate != 0)
+        {
+            writer.put(FRAMERATE).put(framerate).eol();
+        }
+
+        if (quality >= 0)
+        {
+            writer.put(QUALITY).put(quality).eol();
+        }
+
+        // a=rtcp: attribute from RFC 3605
+        boolean rtcpAddressesEqual = (rtpEndpoint == null && rtcpEndpoint == null) ||
+                (rtcpEndpoint != null && rtcpEndpoint.getAddress() != null && rtpEndpoint != null &&
+                        rtcpEndpoint.getAddress().equals(rtpEndpoint.getAddress()));
+        if (rtcpEndpoint != null && rtcpEndpoint.getAddress() != null && (!rtcpAddressesEqual || rtcpEndpoint.getPort() != rtpEndpoint.getPort() + 1))
+        {
+            writer.put(RTCP).put(rtcpEndpoint.getPort());
+            if (!rtcpAddressesEqual)
+            {
+                writer.put((byte) ' ').putConnection(rtcpEndpoint.getAddress());
+            }
+            writer.eol();
+        }
+
+        mediaMappings.forEachMapping(mm -> mm.encodeTo(writer));
+    }
 }
@@ -4,10 +4,6 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.regex.Pattern;
 
 @Getter
@@ -39,12 +35,22 @@ public class SdpMediaDescriptorBase {
     public MediaTransportProfile transportProfile;
 
     @Getter(AccessLevel.NONE)
-    public String transportProtocolString;
+    @Setter(AccessLevel.NONE)
+    private String transportProtocolString;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence transportProtocolText;
 
     public String getTransportProtocolString()
     {
         if (transportProfile == MediaTransportProfile.UNKNOWN)
         {
+            if (transportProtocolString == null && transportProtocolText != null)
+            {
+                transportProtocolString = transportProtocolText.toString();
+            }
+
             return transportProtocolString;
         }
         else
@@ -53,6 +59,23 @@ public class SdpMediaDescriptorBase {
         }
     }
 
+    public void setTransportProtocolString(String transportProtocolString)
+    {
+        this.transportProtocolString = transportProtocolString;
+        this.transportProtocolText = null;
+    }
+
+    public void setTransportProtocolString(CharSequence transportProtocolString)
+    {
+        this.transportProtocolString = null;
+        this.transportProtocolText = transportProtocolString;
+    }
+
+    protected boolean hasTransportProtocolString()
+    {
+        return transportProtocolString != null || transportProtocolText != null;
+    }
+
     /// <summary>
     /// direction of media flow - see RFC 4566 section 6
     /// default is SendReceive
@@ -63,7 +86,35 @@ public class SdpMediaDescriptorBase {
     /// <summary>
     /// SDP media session description (optional) - free form description of media - see RFC 4566 section 5.4
     /// </summary>
-    public String mediaDescriptorInformation;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String mediaDescriptorInformation;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence mediaDescriptorInformationText;
+
+    public String getMediaDescriptorInformation()
+    {
+        if (mediaDescriptorInformation == null && mediaDescriptorInformationText != null)
+        {
+            mediaDescriptorInformation = mediaDescriptorInformationText.toString();
+        }
+
+        return mediaDescriptorInformation;
+    }
+
+    public void setMediaDescriptorInformation(String mediaDescriptorInformation)
+    {
+        this.mediaDescriptorInformation = mediaDescriptorInformation;
+        this.mediaDescriptorInformationText = null;
+    }
+
+    public void setMediaDescriptorInformation(CharSequence mediaDescriptorInformation)
+    {
+        this.mediaDescriptorInformation = null;
+        this.mediaDescriptorInformationText = mediaDescriptorInformation;
+    }
 
     /// <summary>
     /// length of media in packet in milliseconds ('ptime:' attribute) - see RFC 4566 section 6
@@ -96,10 +147,11 @@ public class SdpMediaDescriptorBase {
     public int quality;
 
     /// <summary>
-    /// SDP media description media mappings (codecs) in order of preference
+    /// SDP media description media mappings (codecs) keyed by RTP payload type - the order of preference is
+    /// rtpPayloadTypeList
     /// </summary>
     @Setter(AccessLevel.NONE)
-    public Map<Integer, SdpMediaMapping> mediaMappings;
+    public RtpPayloadMappings mediaMappings;
 
     // TODO - port this if there is time
     /// <summary>
@@ -108,8 +160,11 @@ public class SdpMediaDescriptorBase {
     //@Setter(AccessLevel.NONE)
     //private Map<Integer, SdpMediaCrypto> mediaCrypto;
 
+    /// <summary>
+    /// RTP payload types from the m= line in order of preference
+    /// </summary>
     @Setter(AccessLevel.NONE)
-    public List<Integer> rtpPayloadTypeList;
+    public RtpPayloadTypeList rtpPayloadTypeList;
 
 
     public SdpMediaDescriptorBase()
@@ -124,11 +179,36 @@ public class SdpMediaDescriptorBase {
         framerate = 0;
         quality = -1;
 
-        rtpPayloadTypeList = new ArrayList<>();
-        mediaMappings = new HashMap<>();
+        rtpPayloadTypeList = new RtpPayloadTypeList();
+        mediaMappings = new RtpPayloadMappings();
         // mediaCrypto = new Dictionary<int, SdpMediaCrypto>();
     }
 
+    /**
+     * clear the descriptor back to the state of a new instance so it can be reused (see SdpObjectPool) - the mapping
+     * map and payload type list are cleared, not reallocated
+     */
+    public void reset()
+    {
+        label = null;
+        mediaTitle = null;
+        mediaType = SdpMediaTypes.AUDIO;
+        transportProfile = MediaTransportProfile.RTP_AVP;
+        transportProtocolString = null;
+        transportProtocolText = null;
+        direction = SdpMediaDirection.UNSPECIFIED;
+        mediaDescriptorInformation = null;
+        mediaDescriptorInformationText = null;
+        packetTimeInMs = 0;
+        maxPacketTimeInMs = 0;
+        orientation = SdpMediaOrientation.NONE;
+        framerate = 0;
+        quality = -1;
+
+        rtpPayloadTypeList.clear();
+        mediaMappings.clear();
+    }
+
     /**
      * add a media codec mapping to the media descriptor
      * @param mapping codec mapping to add
@@ -136,7 +216,7 @@ public class SdpMediaDescriptorBase {
     public SdpMediaDescriptorBase addMediaMappingCodec(SdpMediaMapping mapping)
     {
         mediaMappings.put(mapping.getRtpPayloadType(), mapping);
-        rtpPayloadTypeList.add(mapping.getRtpPayloadType());
+        rtpPayloadTypeList.addInt(mapping.getRtpPayloadType());
         return this;
     }
 
@@ -211,19 +291,11 @@ public class SdpMediaDescriptorBase {
     {
         StringBuilder sb = new StringBuilder();
 
-        boolean first = true;
-        for (int t : rtpPayloadTypeList)
+        for (int i = 0; i < rtpPayloadTypeList.size(); i++)
         {
-            if (first)
-            {
-                first = false;
-            }
-            else
-            {
-                sb.append(' ');
-            }
+            if (i > 0) sb.append(' ');
 
-            sb.append(t);
+            sb.append(rtpPayloadTypeList.getInt(i));
         }
 
         return sb.toString();
@@ -4,6 +4,7 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.nio.ByteBuffer;
 
 /**
  * represents a single SDP media codec mapping (RTP payload to codec name) in a single SDP media descriptor
@@ -12,6 +13,10 @@ import lombok.Setter;
 @Getter
 public class SdpMediaMapping
 {
+    private static final byte[] RTPMAP = SdpByteWriter.ascii("a=rtpmap:");
+
+    private static final byte[] FMTP = SdpByteWriter.ascii("a=fmtp:");
+
     /**
      * SDP codec/payload type
      */
@@ -21,9 +26,12 @@ public class SdpMediaMapping
     /**
      * original SDP payload type string in case it's an unknown type
      */
-    @Setter(AccessLevel.PACKAGE)
+    @Getter(AccessLevel.NONE)
     private String mediaEncodingString;
 
+    @Getter(AccessLevel.NONE)
+    private CharSequence mediaEncodingStringText;
+
     /**
      * RTP payload type number used in RTP session (may be static or dynamic type number)
      */
@@ -47,9 +55,12 @@ public class SdpMediaMapping
     /**
      * the media format specific parameters in a generic string
      */
-    @Setter(AccessLevel.PACKAGE)
+    @Getter(AccessLevel.NONE)
     private String genericFormatSpecificParameters;
 
+    @Getter(AccessLevel.NONE)
+    private CharSequence genericFormatSpecificParametersText;
+
 
     public SdpMediaMapping()
     {
@@ -105,6 +116,63 @@ public class SdpMediaMapping
         rtpPayloadType = rtpPayloadTypeNumber;
     }
 
+    public String getMediaEncodingString()
+    {
+        if (mediaEncodingString == null && mediaEncodingStringText != null) mediaEncodingString = mediaEncodingStringText.toString();
+        return mediaEncodingString;
+    }
+
+    void setMediaEncodingString(String mediaEncodingString)
+    {
+        this.mediaEncodingString = mediaEncodingString;
+        this.mediaEncodingStringText = null;
+    }
+
+    void setMediaEncodingString(CharSequence mediaEncodingString)
+    {
+        this.mediaEncodingString = null;
+        this.mediaEncodingStringText = mediaEncodingString;
+    }
+
+    public String getGenericFormatSpecificParameters()
+    {
+        if (genericFormatSpecificParameters == null && genericFormatSpecificParametersText != null)
+        {
+            genericFormatSpecificParameters = genericFormatSpecificParametersText.toString();
+        }
+
+        return genericFormatSpecificParameters;
+    }
+
+    void setGenericFormatSpecificParameters(String genericFormatSpecificParameters)
+    {
+        this.genericFormatSpecificParameters = genericFormatSpecificParameters;
+        this.genericFormatSpecificParametersText = null;
+    }
+
+    void setGenericFormatSpecificParameters(CharSequence genericFormatSpecificParameters)
+    {
+        this.genericFormatSpecificParameters = null;
+        this.genericFormatSpecificParametersText = genericFormatSpecificParameters;
+    }
+
+    /**
+     * copy of the mapping with its text fields decoded, so the copy does not refer to the parsed message body
+     * @param rtpPayloadType payload type of the copy (the m= line number - a default mapping created for a payload
+     *                       type without rtpmap carries the codec's standard number instead)
+     */
+    public SdpMediaMapping copy(int rtpPayloadType)
+    {
+        SdpMediaMapping copy = new SdpMediaMapping();
+        copy.mediaCodec = mediaCodec;
+        copy.mediaEncodingString = getMediaEncodingString();
+        copy.rtpPayloadType = rtpPayloadType;
+        copy.samplingFrequency = samplingFrequency;
+        copy.channels = channels;
+        copy.genericFormatSpecificParameters = getGenericFormatSpecificParameters();
+        return copy;
+    }
+
     private void initialize()
     {
         samplingFrequency = 8000;
@@ -116,7 +184,7 @@ public class SdpMediaMapping
     {
         if (mediaCodec == SdpMediaCodecs.UNKNOWN)
         {
-            return mediaEncodingString;
+            return getMediaEncodingString();
         }
 
         return mediaCodec.getSdpCodecStringIdentifier();
@@ -127,7 +195,7 @@ public class SdpMediaMapping
         // append the rtpmap attribute
         sb.append("a=rtpmap:").append(rtpPayloadType).append(" ");
         if (mediaCodec == SdpMediaCodecs.UNKNOWN)
-            sb.append(mediaEncodingString);
+            sb.append(getMediaEncodingString());
         else
             sb.append(mediaCodec.getSdpCodecStringIdentifier());
         sb.append("/").append(samplingFrequency);
@@ -141,9 +209,59 @@ public class SdpMediaMapping
 
     protected void appendFmtp(StringBuilder sb)
     {
-        if (genericFormatSpecificParameters != null && !genericFormatSpecificParameters.isEmpty())
+        if (getGenericFormatSpecificParameters() != null && !getGenericFormatSpecificParameters().isEmpty())
         {
-            sb.append("a=fmtp:").append(rtpPayloadType).append(" ").append(genericFormatSpecificParameters).append("\r\n");
+            sb.append("a=fmtp:").append(rtpPayloadType).append(" ").append(getGenericFormatSpecificParameters()).append("\r\n");
         }
     }
+
+    /**
+     * write the same bytes as appendEncodedMessage (UTF-8) into the buffer starting at offset
+     * @return offset just past the written bytes
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public int encodeTo(byte[] buf, int offset)
+    {
+        SdpByteWriter writer = new SdpByteWriter(buf, offset);
+        encodeTo(writer);
+        return writer.position();
+    }
+
+    /**
+     * write the same bytes as appendEncodedMessage (UTF-8) at the buffer position and advance it
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public void encodeTo(ByteBuffer buf)
+    {
+        SdpByteWriter writer = new SdpByteWriter(buf);
+        encodeTo(writer);
+        writer.finish();
+    }
+
+    void encodeTo(SdpByteWriter writer)
+    {
+        writer.put(RTPMAP).put(rtpPayloadType).put((byte) ' ');
+        if (mediaCodec == SdpMediaCodecs.UNKNOWN)
+            writer.put(textOrNull(mediaEncodingString, mediaEncodingStringText));
+        else
+            writer.put(mediaCodec.getSdpCodecStringIdentifier());
+        writer.put((byte) '/').put(samplingFrequency);
+        if (channels != 1)
+            writer.put((byte) '/').put(channels);
+        writer.eol();
+
+        CharSequence fmtp = (genericFormatSpecificParameters != null) ? genericFormatSpecificParameters :
+                genericFormatSpecificParametersText;
+        if (fmtp != null && fmtp.length() > 0)
+        {
+            writer.put(FMTP).put(rtpPayloadType).put((byte) ' ').put(fmtp).eol();
+        }
+    }
+
+    // lazy text without decoding it to a String - "null" like StringBuilder.append(null)
+    static CharSequence textOrNull(String value, CharSequence text)
+    {
+        if (value != null) return value;
+        return (text != null) ? text : "null";
+    }
 }
@@ -1,15 +1,12 @@
 package com.nice.sipservertest.dto;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import com.nice.sipservertest.parser.SdpLineCursor;
 
 public class SdpMediaMappingFactory {
 
-    // TODO - may need to update this regex with the characters for the media codec name
-    public final static Pattern rtpmapRegex = Pattern.compile("a=rtpmap\\:([0-9]+)[ \\t]+([a-zA-Z0-9\\-]+)\\/([0-9]+)(\\/([0-9]*))?", Pattern.CASE_INSENSITIVE);
+    private static final String RTPMAP_PREFIX = "rtpmap:";
 
-    // regex used to parse the a=fmtp: SDP mapping option
-    public final static Pattern fmtpRegex = Pattern.compile("a=fmtp\\:([0-9]+)[ \\t]+(.*)", Pattern.CASE_INSENSITIVE);
+    private static final String FMTP_PREFIX = "fmtp:";
 
 
     /**
@@ -19,39 +16,53 @@ public class SdpMediaMappingFactory {
      */
     public static boolean tryParseRtpMapIntoCurrent(SdpMediaMapping mediaMapping, String rtpMapString)
     {
-        Matcher m = rtpmapRegex.matcher(rtpMapString);
+        SdpLineCursor cursor = new SdpLineCursor(rtpMapString);
 
-        if (!m.find()) return false;
+        if (!cursor.next() || cursor.type() != 'a' ||
+                !cursor.regionMatches(cursor.valueStart(), cursor.valueEnd(), RTPMAP_PREFIX, true)) return false;
 
-        try
-        {
-            mediaMapping.setRtpPayloadType(Integer.parseInt(m.group(1)));
-        }
-        catch(NumberFormatException e)
-        {
-            return false;
-        }
+        return tryParseRtpMapIntoCurrent(mediaMapping, cursor, cursor.valueStart() + RTPMAP_PREFIX.length(), cursor.valueEnd());
+    }
 
-        mediaMapping.setMediaEncodingString(m.group(2));
-        mediaMapping.setMediaCodec(SdpMediaCodecs.getSdpMediaCodecFromSdpName(mediaMapping.getMediaEncodingString()));
+    /**
+     * parse the 'a=rtpmap:' attribute value into current object
+     * expected format is "<payload type> <encoding name>/<clock rate>[/<channels>]" (RFC 4566 section 6)
+     * @param cursor cursor positioned on the rtpmap line
+     * @param from offset of the payload type (just past the "rtpmap:")
+     * @param to end offset of the line value
+     * @return true if successful, false otherwise
+     */
+    public static boolean tryParseRtpMapIntoCurrent(SdpMediaMapping mediaMapping, SdpLineCursor cursor, int from, int to)
+    {
+        int ptEnd = cursor.digitsEnd(from, to);
+        int nameStart = cursor.skipBlanks(ptEnd, to);
+        int nameEnd = cursor.tokenCharsEnd(nameStart, to);
 
-        try
-        {
-            mediaMapping.setSamplingFrequency(Integer.parseInt(m.group(3)));
-        }
-        catch(NumberFormatException e)
-        {
-            return false;
-        }
+        if (ptEnd == from || nameStart == ptEnd || nameEnd == nameStart ||
+                nameEnd == to || cursor.text().charAt(nameEnd) != '/') return false;
 
-        try
-        {
-            mediaMapping.setChannels(Integer.parseInt(m.group(5)));
-        }
-        catch(NumberFormatException e)
+        int rateStart = nameEnd + 1;
+        int rateEnd = cursor.digitsEnd(rateStart, to);
+        if (rateEnd == rateStart) return false;
+
+        int pt = cursor.parseInt(from, ptEnd);
+        if (pt == SdpLineCursor.INVALID_INT) return false;
+        mediaMapping.setRtpPayloadType(pt);
+
+        CharSequence encodingName = cursor.subSequence(nameStart, nameEnd);
+        mediaMapping.setMediaEncodingString(encodingName);
+        mediaMapping.setMediaCodec(SdpMediaCodecs.getSdpMediaCodecFromSdpName(encodingName));
+
+        int rate = cursor.parseInt(rateStart, rateEnd);
+        if (rate == SdpLineCursor.INVALID_INT) return false;
+        mediaMapping.setSamplingFrequency(rate);
+
+        int channels = SdpLineCursor.INVALID_INT;
+        if (rateEnd < to && cursor.text().charAt(rateEnd) == '/')
         {
-            mediaMapping.setChannels(1);
+            channels = cursor.parseInt(rateEnd + 1, cursor.digitsEnd(rateEnd + 1, to));
         }
+        mediaMapping.setChannels((channels == SdpLineCursor.INVALID_INT) ? 1 : channels);
 
         return true;
     }
@@ -63,33 +74,43 @@ public class SdpMediaMappingFactory {
      */
     public static boolean tryParseFmtpIntoCurrent(SdpMediaMapping mediaMapping, String fmtpString)
     {
-        Matcher m = fmtpRegex.matcher(fmtpString);
+        SdpLineCursor cursor = new SdpLineCursor(fmtpString);
+
+        if (!cursor.next() || cursor.type() != 'a' ||
+                !cursor.regionMatches(cursor.valueStart(), cursor.valueEnd(), FMTP_PREFIX, true)) return false;
+
+        return tryParseFmtpIntoCurrent(mediaMapping, cursor, cursor.valueStart() + FMTP_PREFIX.length(), cursor.valueEnd());
+    }
 
-        if (!m.find() || m.groupCount() > 3) return false;
+    /**
+     * parse the 'a=fmtp:' attribute value into current object
+     * expected format is "<payload type> <format specific parameters>" (RFC 4566 section 6)
+     * @param cursor cursor positioned on the fmtp line
+     * @param from offset of the payload type (just past the "fmtp:")
+     * @param to end offset of the line value
+     * @return true if successful, false otherwise
+     */
+    public static boolean tryParseFmtpIntoCurrent(SdpMediaMapping mediaMapping, SdpLineCursor cursor, int from, int to)
+    {
+        int ptEnd = cursor.digitsEnd(from, to);
+        int paramsStart = cursor.skipBlanks(ptEnd, to);
 
+        if (ptEnd == from || paramsStart == ptEnd) return false;
 
-        int pt = -1;
+        int pt = cursor.parseInt(from, ptEnd);
+        if (pt == SdpLineCursor.INVALID_INT) return false;
 
-        try
-        {
-            pt = Integer.parseInt(m.group(1));
-
-            if (mediaMapping.getMediaCodec() == SdpMediaCodecs.UNKNOWN &&
-                    SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt) != SdpMediaCodecs.UNKNOWN &&
-                    SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt) != SdpMediaCodecs.DYNAMIC)
-            {
-                mediaMapping.setRtpPayloadType(pt);
-                mediaMapping.setMediaCodec(SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt));
-            }
-        }
-        catch(NumberFormatException e)
+        if (mediaMapping.getMediaCodec() == SdpMediaCodecs.UNKNOWN &&
+                SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt) != SdpMediaCodecs.UNKNOWN &&
+                SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt) != SdpMediaCodecs.DYNAMIC)
         {
-            return false;
+            mediaMapping.setRtpPayloadType(pt);
+            mediaMapping.setMediaCodec(SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt));
         }
 
         if (pt != mediaMapping.getRtpPayloadType()) return false;
 
-        mediaMapping.setGenericFormatSpecificParameters(m.group(2));
+        mediaMapping.setGenericFormatSpecificParameters(cursor.subSequence(paramsStart, to));
 
         return true;
     }
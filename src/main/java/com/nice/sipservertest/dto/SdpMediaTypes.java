@@ -1,5 +1,7 @@
 package com.nice.sipservertest.dto;
 
+import com.nice.sipservertest.parser.SdpLineCursor;
+
 public enum SdpMediaTypes {
     UNKNOWN,
 
@@ -11,6 +13,21 @@ public enum SdpMediaTypes {
 
     APPLICATION,
 
-    MESSAGE
+    MESSAGE;
+
+    /**
+     * @return media type of an m= line media field (case insensitive), UNKNOWN if it is not one of the RFC 4566 types
+     */
+    public static SdpMediaTypes sdpMediaStringToMediaEnum(CharSequence mediaString)
+    {
+        for (SdpMediaTypes type : values())
+        {
+            if (type != UNKNOWN && SdpLineCursor.equalsIgnoreCase(mediaString, type.name()))
+            {
+                return type;
+            }
+        }
 
+        return UNKNOWN;
+    }
 }
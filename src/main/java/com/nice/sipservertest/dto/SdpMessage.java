@@ -1,11 +1,14 @@
 package com.nice.sipservertest.dto;
 
+import com.nice.sipservertest.util.ObjectPool;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.net.InetAddress;
 import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,6 +33,56 @@ public class SdpMessage {
 
     public final static String SDP_EOL = "\r\n";
 
+    private static final byte[] VERSION = SdpByteWriter.ascii("v=");
+
+    private static final byte[] ORIGIN = SdpByteWriter.ascii("o=");
+
+    private static final byte[] ORIGIN_IN_IP4 = SdpByteWriter.ascii(" IN IP4 ");
+
+    private static final byte[] ORIGIN_IN_IP6 = SdpByteWriter.ascii(" IN IP6 ");
+
+    private static final byte[] SESSION_NAME = SdpByteWriter.ascii("s=");
+
+    private static final byte[] SESSION_INFORMATION = SdpByteWriter.ascii("i=");
+
+    private static final byte[] SESSION_URI = SdpByteWriter.ascii("u=");
+
+    private static final byte[] EMAIL = SdpByteWriter.ascii("e=");
+
+    private static final byte[] PHONE = SdpByteWriter.ascii("p=");
+
+    private static final byte[] CONNECTION = SdpByteWriter.ascii("c=");
+
+    private static final byte[] TIMING = SdpByteWriter.ascii("t=0 0\r\n");
+
+    private static final byte[] CATEGORY = SdpByteWriter.ascii("a=cat:");
+
+    private static final byte[] TYPE_BROADCAST = SdpByteWriter.ascii("a=type:broadcast\r\n");
+
+    private static final byte[] TYPE_H332 = SdpByteWriter.ascii("a=type:H332\r\n");
+
+    private static final byte[] TYPE_MEETING = SdpByteWriter.ascii("a=type:meeting\r\n");
+
+    private static final byte[] TYPE_MODERATED = SdpByteWriter.ascii("a=type:moderated\r\n");
+
+    private static final byte[] TYPE_TEST = SdpByteWriter.ascii("a=type:test\r\n");
+
+    private static final byte[] CHARSET_ISO_10646 = SdpByteWriter.ascii("a=charset:ISO-10646\r\n");
+
+    private static final byte[] CHARSET_ISO_8859_1 = SdpByteWriter.ascii("a=charset:ISO-8859-1\r\n");
+
+    // scratch buffers for getEncodedBytes() shared by all threads (a per thread buffer would be one per virtual
+    // thread) - grown (doubled) when a message does not fit, buffers grown past the limit are not pooled
+    private static final int ENCODE_BUFFER_SIZE = 2048;
+
+    private static final int MAX_POOLED_ENCODE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ObjectPool<byte[]> encodeBuffers = new ObjectPool<>(64, () -> new byte[ENCODE_BUFFER_SIZE]);
+
+    // NOTE:  string fields filled in by the parser can be set from a CharSequence view of the raw body (see
+    // SdpMessageParser.parse(byte[], int, int)) - the String is only materialized the first time its getter is called,
+    // so those fields are private and only read through their getters
+
 
     /// <summary>
     /// SDP version (always zero for RFC 4566) - see RFC 4566 section 5.1
@@ -41,7 +94,31 @@ public class SdpMessage {
     /// SDP origin user name - see RFC 4566 section 5.2
     /// default is to use a -
     /// </summary>
-    public String originUsername;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String originUsername;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence originUsernameText;
+
+    public String getOriginUsername()
+    {
+        if (originUsername == null && originUsernameText != null) originUsername = originUsernameText.toString();
+        return originUsername;
+    }
+
+    public void setOriginUsername(String originUsername)
+    {
+        this.originUsername = originUsername;
+        this.originUsernameText = null;
+    }
+
+    public void setOriginUsername(CharSequence originUsername)
+    {
+        this.originUsername = null;
+        this.originUsernameText = originUsername;
+    }
 
     /// <summary>
     /// SDP origin globally unique session ID - see RFC 4566 section 5.2
@@ -64,19 +141,39 @@ public class SdpMessage {
     /// <summary>
     /// SDP origin host unicast address (required) - FQDN is preferred but IP address is ok - see RFC 4566 section 5.2
     /// </summary>
-    public String originUnicastAddress;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String originUnicastAddress;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence originUnicastAddressText;
+
+    public String getOriginUnicastAddress()
+    {
+        if (originUnicastAddress == null && originUnicastAddressText != null) originUnicastAddress = originUnicastAddressText.toString();
+        return originUnicastAddress;
+    }
+
+    public void setOriginUnicastAddress(String originUnicastAddress)
+    {
+        this.originUnicastAddress = originUnicastAddress;
+        this.originUnicastAddressText = null;
+    }
+
+    public void setOriginUnicastAddress(CharSequence originUnicastAddress)
+    {
+        this.originUnicastAddress = null;
+        this.originUnicastAddressText = originUnicastAddress;
+    }
 
     /// <summary>
     /// a globally unique string ID of an SDP session - see RFC 4566 section 5.2
     /// NOTE:  at the SDP session level only the remote session ID is used (at this level the local and remote session IDs do not match)
     /// </summary>
-    @Getter(AccessLevel.NONE)
-    @Setter(AccessLevel.NONE)
-    public String sessionIdGloballyUnique;
-
     public String getSessionIdGloballyUnique() {
-        if (originUsername != null && originUnicastAddress != null) {
-            return originUsername + "_" + originUnicastAddress + "_" + originSessionId;
+        if (getOriginUsername() != null && getOriginUnicastAddress() != null) {
+            return getOriginUsername() + "_" + getOriginUnicastAddress() + "_" + originSessionId;
         }
         else {
             return null;
@@ -87,12 +184,60 @@ public class SdpMessage {
     /// SDP session name (required) - see RFC 4566 section 5.3
     /// default is ' '
     /// </summary>
-    public String sessionName;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String sessionName;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence sessionNameText;
+
+    public String getSessionName()
+    {
+        if (sessionName == null && sessionNameText != null) sessionName = sessionNameText.toString();
+        return sessionName;
+    }
+
+    public void setSessionName(String sessionName)
+    {
+        this.sessionName = sessionName;
+        this.sessionNameText = null;
+    }
+
+    public void setSessionName(CharSequence sessionName)
+    {
+        this.sessionName = null;
+        this.sessionNameText = sessionName;
+    }
 
     /// <summary>
     /// SDP session description (optional) - free form description of session - see RFC 4566 section 5.4
     /// </summary>
-    public String sessionInformation;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String sessionInformation;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence sessionInformationText;
+
+    public String getSessionInformation()
+    {
+        if (sessionInformation == null && sessionInformationText != null) sessionInformation = sessionInformationText.toString();
+        return sessionInformation;
+    }
+
+    public void setSessionInformation(String sessionInformation)
+    {
+        this.sessionInformation = sessionInformation;
+        this.sessionInformationText = null;
+    }
+
+    public void setSessionInformation(CharSequence sessionInformation)
+    {
+        this.sessionInformation = null;
+        this.sessionInformationText = sessionInformation;
+    }
 
     /// <summary>
     /// SDP URI (optional) - see RFC 4566 section 5.5
@@ -119,12 +264,60 @@ public class SdpMessage {
     /// <summary>
     /// SDP category session attribute 'cat:' - see RFC 4566 section 6
     /// </summary>
-    public String category;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String category;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence categoryText;
+
+    public String getCategory()
+    {
+        if (category == null && categoryText != null) category = categoryText.toString();
+        return category;
+    }
+
+    public void setCategory(String category)
+    {
+        this.category = category;
+        this.categoryText = null;
+    }
+
+    public void setCategory(CharSequence category)
+    {
+        this.category = null;
+        this.categoryText = category;
+    }
 
     /// <summary>
     /// SDP tool session attribute 'tool:' - see RFC 4566 section 6
     /// </summary>
-    public String tool;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String tool;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CharSequence toolText;
+
+    public String getTool()
+    {
+        if (tool == null && toolText != null) tool = toolText.toString();
+        return tool;
+    }
+
+    public void setTool(String tool)
+    {
+        this.tool = tool;
+        this.toolText = null;
+    }
+
+    public void setTool(CharSequence tool)
+    {
+        this.tool = null;
+        this.toolText = tool;
+    }
 
     /// <summary>
     /// SDP character set to use for session information in attribute 'charset:' - see RFC 4566 section 6
@@ -156,6 +349,7 @@ public class SdpMessage {
     /// </summary>
     public Map<String, SdpMediaDescriptor> getMediaMappingWithSdpLabelKey()
     {
+        indexLazyMediaDescriptions();
         return Collections.unmodifiableMap(mediaDescriptionsLabelIndexed);
     }
 
@@ -163,6 +357,10 @@ public class SdpMessage {
     @Setter(AccessLevel.NONE)
     private Map<String, SdpMediaDescriptor> mediaDescriptionsLabelIndexed;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean lazyLabelIndexPending;
+
     @Setter
     private boolean isValid;
 
@@ -223,9 +421,50 @@ public class SdpMessage {
         sessionPhoneNumbers = null;
         conferenceType = SdpMediaConferenceTypes.NONE;
         charset = SdpCharsets.ISO_10646;
+        direction = SdpMediaDirection.UNSPECIFIED;
+
+        // collections are cleared rather than reallocated when reset() reuses the message
+        if (mediaDescriptions instanceof ArrayList)
+        {
+            mediaDescriptions.clear();
+        }
+        else
+        {
+            mediaDescriptions = new ArrayList<>();
+        }
 
-        mediaDescriptions = new ArrayList<>();
-        mediaDescriptionsLabelIndexed = new HashMap<>();
+        if (mediaDescriptionsLabelIndexed == null)
+        {
+            mediaDescriptionsLabelIndexed = new HashMap<>();
+        }
+        else
+        {
+            mediaDescriptionsLabelIndexed.clear();
+        }
+    }
+
+    /// <summary>
+    /// clear the message back to the state of a new parser instance so it can be reused (see SdpObjectPool)
+    /// the media description list and label index are cleared, not reallocated - the media descriptors themselves
+    /// are not reset here, SdpObjectPool.release(SdpMessage) takes care of them
+    /// </summary>
+    public void reset()
+    {
+        initialize();
+        originUsernameText = null;
+        originUnicastAddressText = null;
+        sessionNameText = null;
+        sessionInformationText = null;
+        category = null;
+        categoryText = null;
+        tool = null;
+        toolText = null;
+        lazyLabelIndexPending = false;
+        isValid = false;
+        hasVersion = false;
+        hasOriginator = false;
+        hasSessionName = false;
+        hasTimeDescription = false;
     }
 
     /// <summary>
@@ -260,6 +499,7 @@ public class SdpMessage {
 
     public void addMediaDescriptor(SdpMediaDescriptor descriptor)
     {
+        materializeLazyMediaDescriptions();
         mediaDescriptions.add(descriptor);
         if (descriptor.label != null) mediaDescriptionsLabelIndexed.put(descriptor.label, descriptor);
     }
@@ -273,6 +513,7 @@ public class SdpMessage {
     {
         try {
 
+            indexLazyMediaDescriptions();
             return mediaDescriptionsLabelIndexed.get(label);
         } catch(Exception e) {
 
@@ -287,6 +528,7 @@ public class SdpMessage {
     /// <returns>this SdpMessage object</returns>
     public void addMediaDescription(SdpMediaDescriptor mediaDescription)
     {
+        materializeLazyMediaDescriptions();
         mediaDescriptions.add(mediaDescription);
 
         if (mediaDescription.label != null)
@@ -295,6 +537,38 @@ public class SdpMessage {
         }
     }
 
+    /**
+     * used by the parser in lazy mode - media descriptions are decoded the first time they are accessed and the
+     * label index is only built when it is first used
+     */
+    public void setLazyMediaDescriptions(LazySdpMediaDescriptorList lazyMediaDescriptions)
+    {
+        mediaDescriptions = lazyMediaDescriptions;
+        mediaDescriptionsLabelIndexed.clear();
+        lazyLabelIndexPending = true;
+    }
+
+    private void indexLazyMediaDescriptions()
+    {
+        if (!lazyLabelIndexPending) return;
+
+        lazyLabelIndexPending = false;
+        for (SdpMediaDescriptor md : mediaDescriptions)
+        {
+            if (md != null && md.label != null) mediaDescriptionsLabelIndexed.put(md.label, md);
+        }
+    }
+
+    // adding to a parsed message needs a regular list, so decode everything first
+    private void materializeLazyMediaDescriptions()
+    {
+        if (mediaDescriptions instanceof LazySdpMediaDescriptorList)
+        {
+            indexLazyMediaDescriptions();
+            mediaDescriptions = new ArrayList<>(mediaDescriptions);
+        }
+    }
+
     public SdpMediaDescriptor addMediaDescription(SdpMediaTypes mediaType, MediaTransportProfile rtpTransportMechanism,
                                                   int transportPort, String label, SdpMediaDirection direction,
                                                   InetAddress rtpEndpointAddress)
@@ -360,22 +634,22 @@ public class SdpMessage {
         // first the required session lines
         sb.append("v=").append(version).append(SDP_EOL);
         String ouser = "-";
-        if (originUsername != null && !originUsername.isEmpty()) ouser = originUsername;
+        if (getOriginUsername() != null && !getOriginUsername().isEmpty()) ouser = getOriginUsername();
 
         String inetType = "IP4";
         if (originAddressType == SdpAddressTypes.IPV6) inetType = "IP6";
         sb.append("o=").append(ouser).append(" ").append(originSessionId).append(" ").append(originSessionVersion).
-                append(" IN ").append(inetType).append(" ").append(originUnicastAddress).append(SDP_EOL);
+                append(" IN ").append(inetType).append(" ").append(getOriginUnicastAddress()).append(SDP_EOL);
 
         String sname = "-";
-        if (sessionName != null && !sessionName.isEmpty()) sname = sessionName;
+        if (getSessionName() != null && !getSessionName().isEmpty()) sname = getSessionName();
         sb.append("s=").append(sname).append(SDP_EOL);
 
         // optional sessions lines
         // session information (i=)
-        if (sessionInformation != null && !sessionInformation.isEmpty())
+        if (getSessionInformation() != null && !getSessionInformation().isEmpty())
         {
-            sb.append("i=").append(sessionInformation).append(SDP_EOL);
+            sb.append("i=").append(getSessionInformation()).append(SDP_EOL);
         }
 
         // uri of description (u=)
@@ -412,9 +686,9 @@ public class SdpMessage {
         sb.append("t=0 0").append(SDP_EOL);
 
         // category session attribute (a=cat:)
-        if (category != null)
+        if (getCategory() != null)
         {
-            sb.append("a=cat:").append(category).append(SDP_EOL);
+            sb.append("a=cat:").append(getCategory()).append(SDP_EOL);
         }
 
         // a=type: conference type attribute
@@ -465,10 +739,166 @@ public class SdpMessage {
         return sb.toString();
     }
 
-    public static String getSdpConnectionString(InetAddress connectionAddress) throws SdpAssemblyException
+    /// <summary>
+    /// get the encoded message as UTF-8 bytes - same content as getEncodedMessage().getBytes(UTF_8) but encoded
+    /// through a pooled scratch buffer, so the only allocation is the returned array
+    /// </summary>
+    public byte[] getEncodedBytes() throws SdpAssemblyException
     {
-        // TODO - connection string can use a FQDN so we should probably add support for this (although rare in practice)
+        byte[] buf = encodeBuffers.borrow();
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    int length = encodeTo(buf, 0);
+                    return Arrays.copyOf(buf, length);
+                }
+                catch (BufferOverflowException e)
+                {
+                    buf = new byte[buf.length * 2];
+                }
+            }
+        }
+        finally
+        {
+            if (buf.length <= MAX_POOLED_ENCODE_BUFFER_SIZE) encodeBuffers.release(buf);
+        }
+    }
 
+    /// <summary>
+    /// encode the message into buf starting at offset - same bytes as getEncodedMessage().getBytes(UTF_8)
+    /// throws BufferOverflowException if buf is too small (buf content past offset is then undefined)
+    /// </summary>
+    /// <returns>offset just past the encoded message</returns>
+    public int encodeTo(byte[] buf, int offset) throws SdpAssemblyException
+    {
+        SdpByteWriter writer = new SdpByteWriter(buf, offset);
+        encodeTo(writer);
+        return writer.position();
+    }
+
+    /// <summary>
+    /// encode the message at the buffer position and advance the position past it - same bytes as
+    /// getEncodedMessage().getBytes(UTF_8)
+    /// throws BufferOverflowException if the remaining space is too small (position is then undefined)
+    /// </summary>
+    public void encodeTo(ByteBuffer buf) throws SdpAssemblyException
+    {
+        SdpByteWriter writer = new SdpByteWriter(buf);
+        encodeTo(writer);
+        writer.finish();
+    }
+
+    /// <summary>
+    /// byte writer version of getEncodedMessage - keep the two in sync
+    /// lazy text fields are written from their CharSequence view without materializing the String
+    /// </summary>
+    private void encodeTo(SdpByteWriter writer) throws SdpAssemblyException
+    {
+        // first the required session lines
+        writer.put(VERSION).put(version).eol();
+
+        CharSequence ouser = text(originUsername, originUsernameText);
+        if (ouser == null || ouser.length() == 0) ouser = "-";
+
+        writer.put(ORIGIN).put(ouser).put((byte) ' ').put(originSessionId).put((byte) ' ').put(originSessionVersion).
+                put(originAddressType == SdpAddressTypes.IPV6 ? ORIGIN_IN_IP6 : ORIGIN_IN_IP4).
+                put(SdpMediaMapping.textOrNull(originUnicastAddress, originUnicastAddressText)).eol();
+
+        CharSequence sname = text(sessionName, sessionNameText);
+        if (sname == null || sname.length() == 0) sname = "-";
+        writer.put(SESSION_NAME).put(sname).eol();
+
+        // optional sessions lines
+        CharSequence sinfo = text(sessionInformation, sessionInformationText);
+        if (sinfo != null && sinfo.length() != 0)
+        {
+            writer.put(SESSION_INFORMATION).put(sinfo).eol();
+        }
+
+        if (sessionUri != null)
+        {
+            writer.put(SESSION_URI).put(sessionUri.toString()).eol();
+        }
+
+        if (sessionEmailAddresses != null)
+        {
+            for (String emailAddress : sessionEmailAddresses)
+            {
+                writer.put(EMAIL).put(SdpMediaMapping.textOrNull(emailAddress, null)).eol();
+            }
+        }
+
+        if (sessionPhoneNumbers != null)
+        {
+            for (String phoneNumber : sessionPhoneNumbers)
+            {
+                writer.put(PHONE).put(SdpMediaMapping.textOrNull(phoneNumber, null)).eol();
+            }
+        }
+
+        if (connectionAddress != null)
+        {
+            writer.put(CONNECTION).putConnection(connectionAddress).eol();
+        }
+
+        writer.put(TIMING);
+
+        CharSequence cat = text(category, categoryText);
+        if (cat != null)
+        {
+            writer.put(CATEGORY).put(cat).eol();
+        }
+
+        switch (conferenceType)
+        {
+            case BROADCAST:
+                writer.put(TYPE_BROADCAST);
+                break;
+
+            case H332:
+                writer.put(TYPE_H332);
+                break;
+
+            case MEETING:
+                writer.put(TYPE_MEETING);
+                break;
+
+            case MODERATED:
+                writer.put(TYPE_MODERATED);
+                break;
+
+            case TEST:
+                writer.put(TYPE_TEST);
+                break;
+        }
+
+        switch (charset)
+        {
+            case ISO_10646:
+                writer.put(CHARSET_ISO_10646);
+                break;
+
+            case ISO_8859_1:
+                writer.put(CHARSET_ISO_8859_1);
+                break;
+        }
+
+        for (SdpMediaDescriptor mm : mediaDescriptions)
+        {
+            mm.encodeTo(writer, connectionAddress, direction);
+        }
+    }
+
+    private static CharSequence text(String value, CharSequence text)
+    {
+        return (value != null) ? value : text;
+    }
+
+    public static String getSdpConnectionString(InetAddress connectionAddress) throws SdpAssemblyException
+    {
         if (connectionAddress.getAddress().length == 4)
         {
             return "IN IP4 " + connectionAddress.getHostAddress();
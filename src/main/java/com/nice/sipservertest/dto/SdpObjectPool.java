@@ -0,0 +1,89 @@
+package com.nice.sipservertest.dto;
+
+import com.nice.sipservertest.util.ObjectPool;
+
+import java.util.List;
+
+/**
+ * pools of parsed SDP messages and media descriptors for SdpMessageParser.parse(byte[], int, int, SdpObjectPool)
+ * a message borrowed through the parser is handed back with release(SdpMessage) once nothing refers to it any more
+ * (ex. after the response has been sent) - its media descriptors are reset and pooled along with it
+ * NOTE:  media mappings are not pooled, they are small and a descriptor's mapping map is cleared on reset
+ */
+public class SdpObjectPool {
+
+    // typical INVITE has 1-2 media descriptions (SIPREC 2+), so keep a few descriptors per message
+    private static final int DESCRIPTORS_PER_MESSAGE = 4;
+
+    private final ObjectPool<SdpMessage> messages;
+
+    private final ObjectPool<SdpMediaDescriptor> mediaDescriptors;
+
+
+    /**
+     * @param capacity number of idle messages kept (media descriptors get a multiple of that)
+     */
+    public SdpObjectPool(int capacity)
+    {
+        this.messages = new ObjectPool<>(capacity, SdpMessage::new);
+        this.mediaDescriptors = new ObjectPool<>(capacity * DESCRIPTORS_PER_MESSAGE, SdpMediaDescriptor::new);
+    }
+
+    /**
+     * @return a message in the state of a new SdpMessage()
+     */
+    public SdpMessage borrowMessage()
+    {
+        return messages.borrow();
+    }
+
+    /**
+     * @return a media descriptor in the state of a new SdpMediaDescriptor()
+     */
+    public SdpMediaDescriptor borrowMediaDescriptor()
+    {
+        return mediaDescriptors.borrow();
+    }
+
+    /**
+     * reset the message and its (decoded) media descriptors and return them to the pool
+     * the message and descriptors must not be used after this
+     */
+    public void release(SdpMessage message)
+    {
+        if (message == null) return;
+
+        List<SdpMediaDescriptor> descriptions = message.mediaDescriptions;
+        LazySdpMediaDescriptorList lazy = (descriptions instanceof LazySdpMediaDescriptorList) ?
+                (LazySdpMediaDescriptorList) descriptions : null;
+
+        for (int i = 0; i < descriptions.size(); i++)
+        {
+            // lazy lists only hold the descriptors that were decoded (don't decode the rest just to pool them)
+            if (lazy != null && !lazy.isMaterialized(i)) continue;
+
+            release(descriptions.get(i));
+        }
+
+        message.reset();
+        messages.release(message);
+    }
+
+    public void release(SdpMediaDescriptor mediaDescriptor)
+    {
+        if (mediaDescriptor == null) return;
+
+        mediaDescriptor.reset();
+        mediaDescriptors.release(mediaDescriptor);
+    }
+
+    public ObjectPool<SdpMessage> getMessagePool()
+    {
+        return messages;
+    }
+
+    public ObjectPool<SdpMediaDescriptor> getMediaDescriptorPool()
+    {
+        return mediaDescriptors;
+    }
+}
@@ -2,12 +2,12 @@ package com.nice.sipservertest.factory;
 
 import com.nice.sipservertest.dto.*;
 
-import java.net.Inet4Address;
+import com.nice.sipservertest.parser.SdpLineCursor;
+import com.nice.sipservertest.util.DnsResolverCache;
+
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class SdpMediaDescriptorFactory {
 
@@ -39,266 +39,70 @@ public class SdpMediaDescriptorFactory {
 
     public final static String SDP_ATTRIB_CRYPTO = "crypto";
 
-    public final static Pattern sdpConnectLinePattern = Pattern.compile("^IN[ \\t]+(IP4|IP6)[ \\t]+(.+)$");
-
-    public final static Pattern mediaLinePattern = Pattern.compile("^m=([a-zA-Z0-9]+)[ \\t]+([0-9]+)[ \\t]+([a-zA-Z0-9/\\-]+)[ \\t]+(.*)$");
-
-    public final static Pattern attribFlagLinePattern = Pattern.compile("^a=([a-zA-Z0-9\\-]+)$");
-
-    public final static Pattern attribLinePattern = Pattern.compile("^a=([a-zA-Z0-9\\-]+):(.*)");
-
-    public final static Pattern attribMappingLinePattern = Pattern.compile("^a=(rtpmap|fmtp):([0-9\\-]+)");
-
-    public final static Pattern attribRtcp = Pattern.compile("^([0-9]+)(?:[ \\t]+IN[ \\t]+(IP4|IP6)[ \\t]+([A-F0-9.:\\-]+))?$");
-
-    public final static Pattern sdpLinePattern = Pattern.compile("^([^=])=(.+)$");
-
-
     /// <summary>
     /// parse a SDP media mapping attribute set from a list of line strings
     /// </summary>
-    /// <param name="parentMessage">parent <c>SdpMessage</c> that owns this <c>SdpMessageMedia</c> object</param>
     /// <param name="message">multiple lines starting with the m= at message[0] and ending with the last a= line for one media mapping</param>
-    /// <param name="sdpMedia"></param>
+    /// <param name="connectionAddress">session level connection address</param>
     /// <returns></returns>
     public static SdpMediaDescriptor parse(List<String> message, InetAddress connectionAddress)
     {
-        SdpMediaDescriptor sdpMedia = new SdpMediaDescriptor();
+        SdpLineCursor cursor = new SdpLineCursor(String.join(SdpMessage.SDP_EOL, message));
 
-        // parse the m= line
-        Matcher m = mediaLinePattern.matcher(message.get(0));
-        if (!m.find() || m.groupCount() > 4 || m.groupCount() < 3) return null;
+        if (!cursor.next() || cursor.type() != 'm') return null;
 
-        int rtpEndpointPort;
-        try
-        {
-            rtpEndpointPort = Integer.parseInt(m.group(2));
-        }
-        catch(Exception e)
-        {
-            return null;
-        }
+        return parse(cursor, connectionAddress);
+    }
 
-        sdpMedia.transportProfile = MediaTransportProfile.sdpTransportStringToTransportEnum(m.group(3));
-        sdpMedia.transportProtocolString = m.group(3);
+    /// <summary>
+    /// parse one SDP media description from a line cursor
+    /// the cursor must be positioned on the m= line - on return it is positioned on the next m= line (or past the end
+    /// of the body) so the caller can simply call this again while <c>cursor.hasLine()</c>
+    /// </summary>
+    /// <param name="cursor">line cursor positioned on the m= line</param>
+    /// <param name="connectionAddress">session level connection address</param>
+    /// <returns>parsed media descriptor or null if the m= line is invalid (the media section is skipped)</returns>
+    public static SdpMediaDescriptor parse(SdpLineCursor cursor, InetAddress connectionAddress)
+    {
+        return parse(cursor, connectionAddress, new SdpMediaDescriptor());
+    }
 
-        // get the RTP payload type codes from the m= line
-        if (m.groupCount() == 4)
-        {
-            // we have an RTP payload type list
-            String[] rtpPtListStrings = m.group(4).split("\\s", 0);
+    /// <summary>
+    /// parse one SDP media description into a new or reset media descriptor (ex. one borrowed from SdpObjectPool)
+    /// </summary>
+    /// <returns>sdpMedia or null if the m= line is invalid (sdpMedia is then left partly filled in)</returns>
+    public static SdpMediaDescriptor parse(SdpLineCursor cursor, InetAddress connectionAddress, SdpMediaDescriptor sdpMedia)
+    {
+        // parse the m= line - "<media> <port> <proto> <fmt> ..." (RFC 4566 section 5.14)
+        int rtpEndpointPort = parseMediaLine(cursor, sdpMedia);
 
-            for(String rtpPtString : rtpPtListStrings)
-            {
-                try
-                {
-                    sdpMedia.rtpPayloadTypeList.add(Integer.parseInt(rtpPtString));
-                }
-                catch(Exception e)
-                {
-                }
-            }
+        if (rtpEndpointPort < 0)
+        {
+            // skip the rest of the media section
+            while (cursor.next() && cursor.type() != 'm') ;
+            return null;
         }
 
-        // walk the lines of the media description body (skip the first m= line)
-        for(String msg : message.subList(1, message.size()))
+        // walk the lines of the media description body (up to the next m= line)
+        while (cursor.next() && cursor.type() != 'm')
         {
-            // determine if this is an rtpmap or fmtp attribute, and if so, process it
-            Matcher ma = attribMappingLinePattern.matcher(msg);
-
-            if (ma.find())
-            {
-                String ptString = ma.group(2);
-                int pt;
-                try
-                {
-                    pt = Integer.parseInt(ptString);
-                }
-                catch(Exception e)
-                {
-                    continue;
-                }
-
-                SdpMediaMapping mm = sdpMedia.mediaMappings.get(pt);
-                if (mm == null)
-                {
-                    mm = new SdpMediaMapping();
-                    sdpMedia.mediaMappings.put(pt, mm);
-                }
-
-                if (ma.group(1).equalsIgnoreCase(SDP_ATTRIB_RTPMAP))
-                {
-                    SdpMediaMappingFactory.tryParseRtpMapIntoCurrent(mm, msg);
-                }
-                else
-                {
-                    SdpMediaMappingFactory.tryParseFmtpIntoCurrent(mm, msg);
-                }
-
-                continue;
-            }
-
-            // match for non-rtpmap/fmtp flag-type attributes
-            ma = attribFlagLinePattern.matcher(msg);
-
-            if (ma.find() && ma.groupCount() > 0)
-            {
-                String attribCmd = ma.group(1);
-
-                // this is a valid a= flag-type attribute line so process it
-                // note:  RFC 4566 doesn't seem to specify whether or not the attribute name is case-sensitive so going with the most general case
-                if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_SENDONLY))
-                {
-                    sdpMedia.direction = SdpMediaDirection.SEND_ONLY;
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_RECVONLY))
-                {
-                    sdpMedia.direction = SdpMediaDirection.RECEIVE_ONLY;
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_SENDRECV))
-                {
-                    sdpMedia.direction = SdpMediaDirection.SEND_RECEIVE;
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_INACTIVE))
-                {
-                    sdpMedia.direction = SdpMediaDirection.INACTIVE;
-                }
-
-                continue;
-            }
-
-            // match for non-rtpmap/fmtp value-type attributes
-            ma = attribLinePattern.matcher(msg);
-
-            if (ma.find() && ma.groupCount() > 1)
+            switch (cursor.type())
             {
-                String attribCmd = ma.group(1);
+                case 'a':
+                    parseAttribute(cursor, sdpMedia, connectionAddress);
+                    break;
 
-                // this is a valid a= attribute line so process it
-                // note:  RFC 4566 seems to suggest that the token is case-sensitive, but going to take the more cautious route
-                // and process as case-insensitive (I can't imagine the IETF would assign another key using case to differentiate them)
-                if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_LABEL))
-                {
-                    sdpMedia.label = ma.group(2);
-                }
-                // TODO - removing this for now - may add crypto attributes back in if time permits
-                /*
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_CRYPTO))
-                {
-                    if (sdpMediaCrypto.TryParse(ma.Groups[2].Value, out SdpMediaCrypto mcrypto))
-                    {
-                        sdpMedia.MediaCrypto.Add(mcrypto.Tag, mcrypto);
-                    }
-                }
-                */
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_PTIME))
-                {
-                    try
-                    {
-                        sdpMedia.packetTimeInMs = Integer.parseInt(ma.group(2));
-                    }
-                    catch(Exception e)
+                case 'c':
+                    InetAddress cip = parseSdpConnectionString(cursor, cursor.valueStart(), cursor.valueEnd());
+                    if (cip != null)
                     {
-                        // if it fails to parse, there's not much that can be done
+                        sdpMedia.setRtpEndpoint(new InetSocketAddress(cip, rtpEndpointPort));
                     }
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_ORIENT))
-                {
-                    switch(ma.group(2).toLowerCase())
-                    {
-                        case "landscape":
-                            sdpMedia.orientation = SdpMediaOrientation.LANDSCAPE;
-                            break;
+                    break;
 
-                        case "portrait":
-                            sdpMedia.orientation = SdpMediaOrientation.PORTRAIT;
-                            break;
-
-                        case "seascape":
-                            sdpMedia.orientation = SdpMediaOrientation.SEASCAPE;
-                            break;
-                    }
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_RTCP))
-                {
-                    // a=rtcp: attribute
-                    Matcher mrtcp = attribRtcp.matcher(ma.group(2));
-                    if (mrtcp.find())
-                    {
-                        InetAddress rtcpIp;
-                        InetAddress rtpAddr = (sdpMedia.getRtpEndpoint() == null) ? connectionAddress : sdpMedia.getRtpEndpoint().getAddress();
-                        if (mrtcp.groupCount() >= 3)
-                        {
-                            try
-                            {
-                                rtcpIp = Inet4Address.getByName(mrtcp.group(3));
-                            }
-                            catch(Exception e)
-                            {
-                                rtcpIp = rtpAddr;
-                            }
-                        }
-                        else
-                        {
-                            rtcpIp = rtpAddr;
-                        }
-
-                        if (rtcpIp != null)
-                        {
-                            try
-                            {
-                                sdpMedia.setRtcpEndpoint(new InetSocketAddress(rtcpIp, Integer.parseInt(mrtcp.group(1))));
-                            }
-                            catch(Exception e)
-                            {
-                            }
-                        }
-                    }
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_FRAMERATE))
-                {
-                    try
-                    {
-                        sdpMedia.framerate = Integer.parseInt(ma.group(2));
-                    }
-                    catch(Exception e)
-                    {
-                    }
-                }
-                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_QUALITY))
-                {
-                    try
-                    {
-                        int x = Integer.parseInt(ma.group(2));
-                        if (x >= 0 && x <= 10) sdpMedia.quality = x;
-                    }
-                    catch(Exception e)
-                    {
-                    }
-                }
-
-                continue;
-            }
-
-            // look for other non-attribute lines
-            Matcher mc = sdpLinePattern.matcher(msg);
-
-            if (mc.find() && mc.groupCount() >= 2)
-            {
-                switch(mc.group(1).charAt(0))
-                {
-                    case 'c':
-                        InetAddress cip = parseSdpConnectionString(mc.group(2));
-                        if (cip != null)
-                        {
-                            sdpMedia.setRtpEndpoint(new InetSocketAddress(cip, rtpEndpointPort));
-                        }
-                        break;
-
-                    case 'i':
-                        sdpMedia.mediaDescriptorInformation = mc.group(2);
-                        break;
-                }
+                case 'i':
+                    sdpMedia.setMediaDescriptorInformation(cursor.valueText());
+                    break;
             }
         }
 
@@ -309,8 +113,9 @@ public class SdpMediaDescriptorFactory {
         }
 
         // check the rtp payload list from the m= line and create defaults for any that are not specified in the message
-        for(int pt : sdpMedia.rtpPayloadTypeList)
+        for (int i = 0; i < sdpMedia.rtpPayloadTypeList.size(); i++)
         {
+            int pt = sdpMedia.rtpPayloadTypeList.getInt(i);
             if (sdpMedia.mediaMappings.get(pt) == null)
             {
                 // no info provided for this RTP payload type in the message so we'll create a default if possible
@@ -346,24 +151,301 @@ public class SdpMediaDescriptorFactory {
         return sdpMedia;
     }
 
+    /**
+     * check the m= line the cursor is positioned on without decoding anything (used to index media sections)
+     */
+    public static boolean isValidMediaLine(SdpLineCursor cursor)
+    {
+        return cursor.type() == 'm' && parseMediaLine(cursor, null) >= 0;
+    }
+
+    /**
+     * parse the m= line into the media descriptor (only validates the line if the descriptor is null)
+     * @return RTP port from the m= line or -1 if the line is invalid
+     */
+    private static int parseMediaLine(SdpLineCursor cursor, SdpMediaDescriptor sdpMedia)
+    {
+        int end = cursor.valueEnd();
+
+        int mediaStart = cursor.valueStart();
+        int mediaEnd = alphanumericEnd(cursor, mediaStart, end);
+        int portStart = cursor.skipBlanks(mediaEnd, end);
+        int portEnd = cursor.digitsEnd(portStart, end);
+        int protoStart = cursor.skipBlanks(portEnd, end);
+        int protoEnd = transportCharsEnd(cursor, protoStart, end);
+        int fmtStart = cursor.skipBlanks(protoEnd, end);
+
+        if (mediaEnd == mediaStart || portStart == mediaEnd || portEnd == portStart || protoStart == portEnd ||
+                protoEnd == protoStart || fmtStart == protoEnd)
+        {
+            return -1;
+        }
+
+        int rtpEndpointPort = cursor.parseInt(portStart, portEnd);
+        if (rtpEndpointPort == SdpLineCursor.INVALID_INT) return -1;
+
+        if (sdpMedia == null) return rtpEndpointPort;
+
+        sdpMedia.setMediaType(SdpMediaTypes.sdpMediaStringToMediaEnum(cursor.subSequence(mediaStart, mediaEnd)));
+
+        CharSequence transportProtocol = cursor.subSequence(protoStart, protoEnd);
+        sdpMedia.transportProfile = MediaTransportProfile.sdpTransportStringToTransportEnum(transportProtocol);
+        sdpMedia.setTransportProtocolString(transportProtocol);
+
+        // get the RTP payload type codes from the m= line (whitespace separated, anything unparsable is ignored)
+        int p = fmtStart;
+        while (p < end)
+        {
+            int ptEnd = p;
+            while (ptEnd < end && !isFormatSeparator(cursor.text().charAt(ptEnd))) ptEnd++;
+
+            int pt = cursor.parseInt(p, ptEnd);
+            if (pt != SdpLineCursor.INVALID_INT)
+            {
+                sdpMedia.rtpPayloadTypeList.addInt(pt);
+            }
+
+            p = ptEnd + 1;
+        }
+
+        return rtpEndpointPort;
+    }
+
+    private static void parseAttribute(SdpLineCursor cursor, SdpMediaDescriptor sdpMedia, InetAddress connectionAddress)
+    {
+        int start = cursor.valueStart();
+        int end = cursor.valueEnd();
+
+        int nameEnd = cursor.tokenCharsEnd(start, end);
+        if (nameEnd == start) return;
+
+        // determine if this is an rtpmap or fmtp attribute, and if so, process it
+        if (nameEnd < end && cursor.text().charAt(nameEnd) == ':' &&
+                (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_RTPMAP, false) ||
+                        cursor.regionEquals(start, nameEnd, SDP_ATTRIB_FMTP, false)))
+        {
+            int ptStart = nameEnd + 1;
+            int ptEnd = ptStart;
+            while (ptEnd < end && (SdpLineCursor.isDigit(cursor.text().charAt(ptEnd)) || cursor.text().charAt(ptEnd) == '-')) ptEnd++;
+
+            if (ptEnd > ptStart)
+            {
+                int pt = cursor.parseInt(ptStart, ptEnd);
+                if (pt == SdpLineCursor.INVALID_INT) return;
+
+                SdpMediaMapping mm = sdpMedia.mediaMappings.get(pt);
+                if (mm == null)
+                {
+                    mm = new SdpMediaMapping();
+                    sdpMedia.mediaMappings.put(pt, mm);
+                }
+
+                if (nameEnd - start == SDP_ATTRIB_RTPMAP.length())
+                {
+                    SdpMediaMappingFactory.tryParseRtpMapIntoCurrent(mm, cursor, ptStart, end);
+                }
+                else
+                {
+                    SdpMediaMappingFactory.tryParseFmtpIntoCurrent(mm, cursor, ptStart, end);
+                }
+
+                return;
+            }
+        }
+
+        if (nameEnd == end)
+        {
+            // this is a valid a= flag-type attribute line so process it
+            // note:  RFC 4566 doesn't seem to specify whether or not the attribute name is case-sensitive so going with the most general case
+            if (cursor.regionEquals(start, end, SDP_ATTRIB_SENDONLY, true))
+            {
+                sdpMedia.direction = SdpMediaDirection.SEND_ONLY;
+            }
+            else if (cursor.regionEquals(start, end, SDP_ATTRIB_RECVONLY, true))
+            {
+                sdpMedia.direction = SdpMediaDirection.RECEIVE_ONLY;
+            }
+            else if (cursor.regionEquals(start, end, SDP_ATTRIB_SENDRECV, true))
+            {
+                sdpMedia.direction = SdpMediaDirection.SEND_RECEIVE;
+            }
+            else if (cursor.regionEquals(start, end, SDP_ATTRIB_INACTIVE, true))
+            {
+                sdpMedia.direction = SdpMediaDirection.INACTIVE;
+            }
+
+            return;
+        }
+
+        // anything else has to be a "name:value" attribute
+        if (cursor.text().charAt(nameEnd) != ':') return;
+
+        int valueStart = nameEnd + 1;
+
+        // this is a valid a= attribute line so process it
+        // note:  RFC 4566 seems to suggest that the token is case-sensitive, but going to take the more cautious route
+        // and process as case-insensitive (I can't imagine the IETF would assign another key using case to differentiate them)
+        if (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_LABEL, true))
+        {
+            sdpMedia.label = cursor.substring(valueStart, end);
+        }
+        // TODO - removing this for now - may add crypto attributes back in if time permits
+        else if (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_PTIME, true))
+        {
+            // if it fails to parse, there's not much that can be done
+            int ptime = cursor.parseInt(valueStart, end);
+            if (ptime != SdpLineCursor.INVALID_INT) sdpMedia.packetTimeInMs = ptime;
+        }
+        else if (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_ORIENT, true))
+        {
+            if (cursor.regionEquals(valueStart, end, "landscape", true))
+            {
+                sdpMedia.orientation = SdpMediaOrientation.LANDSCAPE;
+            }
+            else if (cursor.regionEquals(valueStart, end, "portrait", true))
+            {
+                sdpMedia.orientation = SdpMediaOrientation.PORTRAIT;
+            }
+            else if (cursor.regionEquals(valueStart, end, "seascape", true))
+            {
+                sdpMedia.orientation = SdpMediaOrientation.SEASCAPE;
+            }
+        }
+        else if (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_RTCP, true))
+        {
+            parseRtcpAttribute(cursor, valueStart, end, sdpMedia, connectionAddress);
+        }
+        else if (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_FRAMERATE, true))
+        {
+            int framerate = cursor.parseInt(valueStart, end);
+            if (framerate != SdpLineCursor.INVALID_INT) sdpMedia.framerate = framerate;
+        }
+        else if (cursor.regionEquals(start, nameEnd, SDP_ATTRIB_QUALITY, true))
+        {
+            int x = cursor.parseInt(valueStart, end);
+            if (x >= 0 && x <= 10) sdpMedia.quality = x;
+        }
+    }
+
+    /**
+     * parse the RFC 3605 'a=rtcp:' attribute - "<port> [IN <IP4|IP6> <address>]"
+     */
+    private static void parseRtcpAttribute(SdpLineCursor cursor, int from, int to, SdpMediaDescriptor sdpMedia,
+                                           InetAddress connectionAddress)
+    {
+        int portEnd = cursor.digitsEnd(from, to);
+        if (portEnd == from) return;
+
+        InetAddress rtpAddr = (sdpMedia.getRtpEndpoint() == null) ? connectionAddress : sdpMedia.getRtpEndpoint().getAddress();
+        InetAddress rtcpIp = rtpAddr;
+
+        if (portEnd < to)
+        {
+            int netTypeStart = cursor.skipBlanks(portEnd, to);
+            int netTypeEnd = cursor.tokenEnd(netTypeStart, to);
+            int addrTypeStart = cursor.skipBlanks(netTypeEnd, to);
+            int addrTypeEnd = cursor.tokenEnd(addrTypeStart, to);
+            int addrStart = cursor.skipBlanks(addrTypeEnd, to);
+            int addrEnd = addrStart;
+            while (addrEnd < to && isRtcpAddressChar(cursor.text().charAt(addrEnd))) addrEnd++;
+
+            if (netTypeStart == portEnd || !cursor.regionEquals(netTypeStart, netTypeEnd, "IN", false) ||
+                    addrTypeStart == netTypeEnd ||
+                    !(cursor.regionEquals(addrTypeStart, addrTypeEnd, "IP4", false) ||
+                            cursor.regionEquals(addrTypeStart, addrTypeEnd, "IP6", false)) ||
+                    addrStart == addrTypeEnd || addrEnd == addrStart || addrEnd != to)
+            {
+                return;
+            }
+
+            rtcpIp = DnsResolverCache.getDefault().resolve(cursor.text(), addrStart, addrEnd);
+            if (rtcpIp == null)
+            {
+                rtcpIp = rtpAddr;
+            }
+        }
+
+        if (rtcpIp != null)
+        {
+            int port = cursor.parseInt(from, portEnd);
+            if (port != SdpLineCursor.INVALID_INT)
+            {
+                try
+                {
+                    sdpMedia.setRtcpEndpoint(new InetSocketAddress(rtcpIp, port));
+                }
+                catch(Exception e)
+                {
+                }
+            }
+        }
+    }
+
     public static InetAddress parseSdpConnectionString(String messageLineBody)
     {
-        Matcher m = sdpConnectLinePattern.matcher(messageLineBody);
+        SdpLineCursor cursor = new SdpLineCursor("c=" + messageLineBody);
+
+        if (!cursor.next()) return null;
 
-        if (!m.find() || m.groupCount() < 2)
+        return parseSdpConnectionString(cursor, cursor.valueStart(), cursor.valueEnd());
+    }
+
+    /**
+     * parse a connection line value - "IN <IP4|IP6> <address>" (RFC 4566 section 5.7)
+     * @return connection address or null if the value is invalid or the host name has not been resolved (yet)
+     */
+    public static InetAddress parseSdpConnectionString(SdpLineCursor cursor, int from, int to)
+    {
+        int addrStart = connectionAddressStart(cursor, from, to);
+
+        if (addrStart < 0)
         {
             return null;
         }
 
-        InetAddress ip;
-        try {
+        return DnsResolverCache.getDefault().resolve(cursor.text(), addrStart, to);
+    }
 
-            ip = Inet4Address.getByName(m.group(2));
-        } catch(Exception e) {
+    /**
+     * validate the "IN <IP4|IP6> " prefix of a connection line value
+     * @return offset of the connection address or -1 if the value is invalid
+     */
+    public static int connectionAddressStart(SdpLineCursor cursor, int from, int to)
+    {
+        if (!cursor.regionMatches(from, to, "IN", false)) return -1;
 
-            return null;
+        int addrTypeStart = cursor.skipBlanks(from + 2, to);
+        if (addrTypeStart == from + 2 ||
+                !(cursor.regionMatches(addrTypeStart, to, "IP4", false) || cursor.regionMatches(addrTypeStart, to, "IP6", false)))
+        {
+            return -1;
         }
 
-        return ip;
+        int addrStart = cursor.skipBlanks(addrTypeStart + 3, to);
+        if (addrStart == addrTypeStart + 3 || addrStart == to) return -1;
+
+        return addrStart;
+    }
+
+    private static int alphanumericEnd(SdpLineCursor cursor, int from, int to)
+    {
+        while (from < to && cursor.text().charAt(from) != '-' && SdpLineCursor.isTokenChar(cursor.text().charAt(from))) from++;
+        return from;
+    }
+
+    private static int transportCharsEnd(SdpLineCursor cursor, int from, int to)
+    {
+        while (from < to && (SdpLineCursor.isTokenChar(cursor.text().charAt(from)) || cursor.text().charAt(from) == '/')) from++;
+        return from;
+    }
+
+    private static boolean isFormatSeparator(char c)
+    {
+        return SdpLineCursor.isBlank(c) || c == '\n' || c == '\r' || c == '\f' || c == 0x0b;
+    }
+
+    private static boolean isRtcpAddressChar(char c)
+    {
+        return (c >= 'A' && c <= 'F') || SdpLineCursor.isDigit(c) || c == '.' || c == ':' || c == '-';
     }
 }
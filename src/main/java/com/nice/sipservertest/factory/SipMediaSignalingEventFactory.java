@@ -1,6 +1,5 @@
 package com.nice.sipservertest.factory;
 
-import com.nice.sipservertest.Utils;
 import com.nice.sipservertest.dto.*;
 import com.nice.sipservertest.parser.SdpMessageParser;
 import com.nice.sipservertest.util.SipBodyHelpers;
@@ -37,7 +36,10 @@ public class SipMediaSignalingEventFactory {
             InetSocketAddress rtpEndpoint = md.getRtpEndpoint();
 
             MediaChannelStates mediaChannelState = MediaChannelStates.ACTIVE;
-            if (rtpEndpoint.getPort() == 0) {
+            if (rtpEndpoint == null) {
+                // the connection address did not resolve - no media can flow until a re-INVITE brings one
+                mediaChannelState = MediaChannelStates.INACTIVE;
+            } else if (rtpEndpoint.getPort() == 0) {
                 mediaChannelState = MediaChannelStates.UNUSED;
             } else if (rtpEndpoint.getAddress().equals(SdpMediaDescriptor.allZerosIpAddress) ||
                     md.getDirection() == SdpMediaDirection.INACTIVE) {
@@ -46,7 +48,9 @@ public class SipMediaSignalingEventFactory {
 
             // make the list of codecs in provided order
             List<MediaCodec> codecs = new ArrayList<>();
-            for (int rtpPayloadNumber : md.getRtpPayloadTypeList()) {
+            RtpPayloadTypeList payloadTypes = md.getRtpPayloadTypeList();
+            for (int i = 0; i < payloadTypes.size(); i++) {
+                int rtpPayloadNumber = payloadTypes.getInt(i);
                 SdpMediaMapping mm = md.getMediaMappings().get(rtpPayloadNumber);
 
                 MediaCodec mCodec = new MediaCodec();
@@ -70,12 +74,6 @@ public class SipMediaSignalingEventFactory {
 
     public static MediaCodecTypes getMediaCodecTypeFromSdpMediaCodec(SdpMediaCodecs codec) {
 
-        MediaCodecTypes codecType = Utils.codecConversionTable.get(codec);
-
-        if (codecType == null) {
-            codecType = MediaCodecTypes.UNKNOWN;
-        }
-
-        return codecType;
+        return SdpCodecRegistry.getDefault().getMediaCodecType(codec);
     }
 }
@@ -0,0 +1,94 @@
+package com.nice.sipservertest.listener;
+
+import gov.nist.core.net.DefaultNetworkLayer;
+import gov.nist.core.net.NetworkLayer;
+import gov.nist.javax.sip.SipStackImpl;
+
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.*;
+
+/**
+ * JAIN-SIP network layer that binds UDP sockets with SO_REUSEPORT, so several stacks can each listen on the same
+ * port and the kernel spreads incoming datagrams across them (gov.nist.javax.sip.NETWORK_LAYER)
+ * everything else is the default network layer
+ */
+public class ReusePortNetworkLayer implements NetworkLayer {
+
+    private final NetworkLayer delegate = DefaultNetworkLayer.SINGLETON;
+
+    public static boolean isSupported() {
+        try (DatagramSocket socket = new DatagramSocket(null)) {
+            return socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public DatagramSocket createDatagramSocket(int port, InetAddress laddr) throws SocketException {
+        if (laddr.isMulticastAddress()) {
+            return delegate.createDatagramSocket(port, laddr);
+        }
+
+        DatagramSocket socket = new DatagramSocket(null);
+        try {
+            socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            socket.bind(new InetSocketAddress(laddr, port));
+        } catch (IOException | UnsupportedOperationException e) {
+            socket.close();
+            SocketException socketException = new SocketException("Failed to bind " + laddr + ":" + port +
+                    " with SO_REUSEPORT: " + e.getMessage());
+            socketException.initCause(e);
+            throw socketException;
+        }
+
+        return socket;
+    }
+
+    @Override
+    public DatagramSocket createDatagramSocket() throws SocketException {
+        return delegate.createDatagramSocket();
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog, InetAddress bindAddress) throws IOException {
+        return delegate.createServerSocket(port, backlog, bindAddress);
+    }
+
+    @Override
+    public SSLServerSocket createSSLServerSocket(int port, int backlog, InetAddress bindAddress) throws IOException {
+        return delegate.createSSLServerSocket(port, backlog, bindAddress);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port) throws IOException {
+        return delegate.createSocket(address, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress myAddress) throws IOException {
+        return delegate.createSocket(address, port, myAddress);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress myAddress, int myPort) throws IOException {
+        return delegate.createSocket(address, port, myAddress, myPort);
+    }
+
+    @Override
+    public SSLSocket createSSLSocket(InetAddress address, int port) throws IOException {
+        return delegate.createSSLSocket(address, port);
+    }
+
+    @Override
+    public SSLSocket createSSLSocket(InetAddress address, int port, InetAddress myAddress) throws IOException {
+        return delegate.createSSLSocket(address, port, myAddress);
+    }
+
+    @Override
+    public void setSipStack(SipStackImpl sipStackImpl) {
+        delegate.setSipStack(sipStackImpl);
+    }
+}
@@ -0,0 +1,69 @@
+package com.nice.sipservertest.listener;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * runs the tasks of one call one after another, in the order they were submitted, on an executor that would run them
+ * all at once (ex. virtual thread per task) - tasks of different calls still run concurrently
+ * a call only has a queue while one of its tasks is running, its first task takes a thread and runs the ones queued
+ * behind it, so a BYE can not finish before the INVITE it follows
+ */
+@Slf4j
+class SipCallSequencer {
+
+    private final Executor executor;
+
+    private final ConcurrentHashMap<String, ArrayDeque<Runnable>> queues = new ConcurrentHashMap<>();
+
+    SipCallSequencer(Executor executor) {
+        this.executor = executor;
+    }
+
+    void execute(String callId, Runnable task) {
+        boolean[] idle = new boolean[1];
+        queues.compute(callId, (key, queue) -> {
+            if (queue == null) {
+                idle[0] = true;
+                return new ArrayDeque<>();
+            }
+            queue.add(task);
+            return queue;
+        });
+
+        if (idle[0]) {
+            try {
+                executor.execute(() -> drain(callId, task));
+            } catch (RejectedExecutionException e) {
+                queues.remove(callId);
+                throw e;
+            }
+        }
+    }
+
+    private void drain(String callId, Runnable first) {
+        Runnable[] next = {first};
+        while (next[0] != null) {
+            try {
+                next[0].run();
+            } catch (RuntimeException e) {
+                log.warn("Task of call {} failed", callId, e);
+            }
+            queues.compute(callId, (key, queue) -> {
+                next[0] = queue.poll();
+                return (next[0] != null) ? queue : null;
+            });
+        }
+    }
+
+    /**
+     * calls with a task running or queued
+     */
+    int size() {
+        return queues.size();
+    }
+}
@@ -1,14 +1,26 @@
 package com.nice.sipservertest.listener;
 
-import com.nice.sipservertest.dto.MediaSignalingEvent;
+import com.nice.sipservertest.capture.SipCaptureJournal;
+import com.nice.sipservertest.config.SipPipelineProperties;
+import com.nice.sipservertest.dto.SdpAssemblyException;
+import com.nice.sipservertest.dto.SdpMediaDescriptor;
 import com.nice.sipservertest.dto.SdpMessage;
+import com.nice.sipservertest.dto.SdpObjectPool;
 import com.nice.sipservertest.factory.SipMediaSignalingEventFactory;
+import com.nice.sipservertest.negotiation.SdpOfferAnswerEngine;
+import com.nice.sipservertest.parser.RecordingMetadataParser;
 import com.nice.sipservertest.parser.SdpMessageParser;
+import com.nice.sipservertest.session.RtpPortAllocator;
+import com.nice.sipservertest.session.SipSessionRegistry;
+import com.nice.sipservertest.util.BodySlice;
+import com.nice.sipservertest.util.DnsResolverCache;
 import com.nice.sipservertest.util.SipBodyHelpers;
 import gov.nist.javax.sip.header.ContentType;
 import gov.nist.javax.sip.message.*;
+import gov.nist.javax.sip.stack.SIPTransaction;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
 
 import javax.sip.*;
 import javax.sip.address.AddressFactory;
@@ -23,79 +35,512 @@ import javax.sip.message.Response;
 import java.net.NetworkInterface;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TooManyListenersException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 @Slf4j
 public class SipListenerImpl implements SipListener {
 
+    private static final String SDP_CONTENT_TYPE = "application/sdp";
+
+    private static final String RECORDING_METADATA_CONTENT_TYPE = "application/rs-metadata+xml";
+
+    // index of parseSdp in requestHandlers
+    private static final int PARSE_STEP = 1;
+
     private final MessageFactory messageFactory;
     private final HeaderFactory headerFactory;
     private final AddressFactory addressFactory;
-    private final SipProvider sipProvider;
+    private final List<SipProvider> sipProviders;
+    private final SipRequestPipeline pipeline;
+    private final ExecutorService callbackExecutor;
+    private final SipCallSequencer callSequencer;
+    private final List<SipPipelineStage.Handler<SipRequestContext>> requestHandlers;
+    private final SdpObjectPool sdpPool;
+    private final SipSessionRegistry sessionRegistry;
+    private final SdpOfferAnswerEngine offerAnswerEngine;
+    private final RtpPortAllocator rtpPortAllocator;
+    private final String contactAddress;
+    private final SipSignalingLog signalingLog;
+    private final SipCaptureJournal captureJournal;
+    private final SipSignalingMetrics metrics;
 
+    /**
+     * @param contactAddress   host of the Contact header of responses
+     * @param signalingLog     requests, bodies, responses and transaction events are logged through it, formatted
+     *                         off the request threads
+     * @param captureJournal   if set, every received and sent message is captured into it (closed with the listener)
+     * @param metrics          request, SDP and response timings
+     * @param callbackExecutor if set (ex. virtual thread per task), each request and response callback runs start to
+     *                         end on it instead of going through the staged request pipeline (the requests of
+     *                         one call still one after another)
+     */
     public SipListenerImpl(MessageFactory messageFactory, HeaderFactory headerFactory, AddressFactory addressFactory,
-                           SipProvider sipProvider) throws TooManyListenersException {
+                           List<SipProvider> sipProviders, SipPipelineProperties pipelineProperties,
+                           SipSessionRegistry sessionRegistry, SdpOfferAnswerEngine offerAnswerEngine,
+                           RtpPortAllocator rtpPortAllocator, String contactAddress, SipSignalingLog signalingLog,
+                           SipCaptureJournal captureJournal, SipSignalingMetrics metrics,
+                           ExecutorService callbackExecutor)
+            throws TooManyListenersException {
         this.messageFactory = messageFactory;
         this.headerFactory = headerFactory;
         this.addressFactory = addressFactory;
-        this.sipProvider = sipProvider;
-        this.sipProvider.addSipListener(this);
+        this.sipProviders = sipProviders;
+        this.sessionRegistry = sessionRegistry;
+        this.offerAnswerEngine = offerAnswerEngine;
+        this.rtpPortAllocator = rtpPortAllocator;
+        this.contactAddress = contactAddress;
+        this.signalingLog = signalingLog;
+        this.captureJournal = captureJournal;
+        this.metrics = metrics;
+        this.callbackExecutor = callbackExecutor;
+        this.callSequencer = (callbackExecutor != null) ? new SipCallSequencer(callbackExecutor) : null;
+        this.sdpPool = (pipelineProperties.getSdpPoolSize() > 0) ? new SdpObjectPool(pipelineProperties.getSdpPoolSize()) : null;
+        if (sdpPool != null) {
+            metrics.bindSdpPool(sdpPool);
+        }
+        this.requestHandlers = Arrays.asList(this::decodeBody, this::parseSdp, this::createMediaSignalingEvent,
+                this::buildResponse, this::sendResponse);
+
+        if (callbackExecutor == null) {
+            this.pipeline = new SipRequestPipeline(pipelineProperties, this::decodeBody, this::parseSdp,
+                    this::createMediaSignalingEvent, this::buildResponse, this::sendResponse, this::handlePipelineError);
+            this.pipeline.start();
+        } else {
+            this.pipeline = null;
+        }
+
+        // one provider per listening socket, all feeding the same listener
+        for (SipProvider sipProvider : sipProviders) {
+            sipProvider.addSipListener(this);
+        }
     }
 
+    /**
+     * runs on the SIP stack thread - only takes the server transaction (so retransmissions are absorbed by the stack
+     * while the request is in the pipeline) and enqueues, everything else happens on the pipeline workers
+     * (or on a callback executor thread)
+     */
     @SneakyThrows
     @Override
     public void processRequest(RequestEvent requestEvent) {
         SIPRequest request = (SIPRequest) requestEvent.getRequest();
+        metrics.requestReceived(request.getMethod());
 
-        log.info("Received a SIP request {}", request);
+        if (captureJournal != null) {
+            captureJournal.captureReceived(request, request.getTopmostVia().getTransport());
+        }
 
-        String contentString = SipBodyHelpers.getBodyContentString(request,
-                "application/sdp");
-        log.info("Content string: {}", contentString);
-//        SdpMessage sdpMessage = SdpMessageParser.parse(contentString);
-//        MediaSignalingEvent mediaSignalingEvent = SipMediaSignalingEventFactory.createMediaSignalingEvent(request, sdpMessage);
+        if (Request.ACK.equals(request.getMethod())) {
+            log.debug("Received ACK for call {}", request.getCallId().getCallId());
+            return;
+        }
 
-//        String encodedMessage = sdpMessage.getEncodedMessage();
         ServerTransaction transaction = requestEvent.getServerTransaction();
 
         if (transaction == null) {
-            log.info("Creating new transaction");
-            transaction = sipProvider.getNewServerTransaction(request);
+            try {
+                transaction = ((SipProvider) requestEvent.getSource()).getNewServerTransaction(request);
+            } catch (TransactionAlreadyExistsException e) {
+                log.debug("Retransmission of a request already in progress, call {}", request.getCallId().getCallId());
+                return;
+            }
+        }
+
+        SipRequestContext context = new SipRequestContext(request, transaction);
+
+        if (callbackExecutor != null) {
+            callSequencer.execute(request.getCallId().getCallId(), () -> handleRequest(context));
+        } else if (!pipeline.submit(context)) {
+            log.warn("Request pipeline is full, rejecting {} for call {}", request.getMethod(), request.getCallId().getCallId());
+            send(context, messageFactory.createResponse(Response.SERVICE_UNAVAILABLE, request));
+        }
+    }
+
+    /**
+     * run all the request steps on the calling thread (the pipeline runs the same steps on its stages)
+     */
+    private void handleRequest(SipRequestContext context) {
+        handleRequest(context, 0);
+    }
+
+    private void handleRequest(SipRequestContext context, int firstStep) {
+        try {
+            for (int i = firstStep; i < requestHandlers.size(); i++) {
+                if (!requestHandlers.get(i).handle(context)) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to process request for call {}", context.getRequest().getCallId().getCallId(), e);
+            handlePipelineError(context, e);
+        }
+    }
+
+    private boolean decodeBody(SipRequestContext context) {
+        SIPRequest request = context.getRequest();
+        signalingLog.log(SipSignalingLog.Category.REQUEST, Level.INFO, request.getCallId().getCallId(),
+                "Received a SIP request {}", request);
+
+        // SIPREC bodies carry the SDP and the recording metadata in one multipart body - both come out of one scan
+        BodySlice[] bodies = SipBodyHelpers.getBodyContents(context.getRequest(), SDP_CONTENT_TYPE,
+                RECORDING_METADATA_CONTENT_TYPE);
+        BodySlice body = bodies[0];
+        context.setSdpBody(body);
+        context.setRecordingMetadataBody(bodies[1]);
+
+        if (body != null) {
+            signalingLog.log(SipSignalingLog.Category.BODY, Level.INFO, request.getCallId().getCallId(),
+                    "Content string: {}", (Supplier<String>) () -> body.toString(StandardCharsets.ISO_8859_1));
+        }
+
+        return true;
+    }
+
+    private boolean parseSdp(SipRequestContext context) {
+        BodySlice body = context.getSdpBody();
+
+        if (body != null) {
+            long start = System.nanoTime();
+            try {
+                SdpMessage sdpMessage = (sdpPool != null) ?
+                        SdpMessageParser.parse(body.getArray(), body.getOffset(), body.getLength(), sdpPool) :
+                        SdpMessageParser.parse(body.getArray(), body.getOffset(), body.getLength());
+                context.setSdpMessage(sdpMessage);
+                metrics.sdpParsed(System.nanoTime() - start, body.getLength(), sdpMessage.getMediaDescriptions().size());
+            } catch (Exception e) {
+                metrics.sdpParseFailed(System.nanoTime() - start, body.getLength());
+                log.warn("Failed to parse SDP of call {}", context.getRequest().getCallId().getCallId(), e);
+            }
+
+            if (context.getSdpMessage() != null && awaitHostLookups(context, body)) {
+                return false;
+            }
+        }
+
+        BodySlice metadataBody = context.getRecordingMetadataBody();
+
+        if (metadataBody != null) {
+            try {
+                context.setRecordingMetadata(RecordingMetadataParser.parse(metadataBody.getArray(),
+                        metadataBody.getOffset(), metadataBody.getLength()));
+                log.debug("Recording metadata of call {}: {} participants, {} streams",
+                        context.getRequest().getCallId().getCallId(),
+                        context.getRecordingMetadata().getParticipants().size(),
+                        context.getRecordingMetadata().getStreams().size());
+            } catch (Exception e) {
+                log.warn("Failed to parse recording metadata of call {}", context.getRequest().getCallId().getCallId(), e);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * an offer with media endpoints that did not resolve (host names the DNS cache has no entry for yet) is parsed
+     * again once their lookups are done - the thread moves on instead of waiting on DNS, and endpoints that still do
+     * not resolve on the second parse are answered inactive
+     * only a new call waits like that - nothing but a CANCEL can follow an INVITE that is not answered yet (a BYE
+     * needs the dialog), while a re-offer that let a BYE overtake it would bring back a call that already ended
+     * @return true if the request was handed to the lookups
+     */
+    private boolean awaitHostLookups(SipRequestContext context, BodySlice body) {
+        SIPRequest request = context.getRequest();
+        if (context.isHostLookupsAwaited() || !Request.INVITE.equals(request.getMethod()) ||
+                request.getToTag() != null || !hasUnresolvedEndpoint(context.getSdpMessage())) {
+            return false;
+        }
+
+        List<String> hosts = SdpMessageParser.connectionHostNames(body.getArray(), body.getOffset(), body.getLength());
+        if (hosts.isEmpty()) {
+            return false;
+        }
+
+        CompletableFuture<?>[] lookups = new CompletableFuture<?>[hosts.size()];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = DnsResolverCache.getDefault().resolveAsync(hosts.get(i));
+        }
+
+        log.debug("Resolving {} of call {} before answering", hosts, context.getRequest().getCallId().getCallId());
+        context.setHostLookupsAwaited(true);
+        releaseSdpMessage(context);
+        context.setSdpMessage(null);
+        CompletableFuture.allOf(lookups).whenComplete((result, e) -> resumeParse(context));
+
+        return true;
+    }
+
+    private static boolean hasUnresolvedEndpoint(SdpMessage sdpMessage) {
+        for (SdpMediaDescriptor md : sdpMessage.getMediaDescriptions()) {
+            if (md.getRtpEndpoint() == null) return true;
+        }
+        return false;
+    }
+
+    private void resumeParse(SipRequestContext context) {
+        String callId = context.getRequest().getCallId().getCallId();
+        try {
+            if (callbackExecutor != null) {
+                callSequencer.execute(callId, () -> handleRequest(context, PARSE_STEP));
+            } else if (!pipeline.resubmitToParse(context)) {
+                log.warn("Request pipeline is full, rejecting {} for call {}", context.getRequest().getMethod(), callId);
+                send(context, messageFactory.createResponse(Response.SERVICE_UNAVAILABLE, context.getRequest()));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to resume request of call {} after resolving its SDP host names", callId, e);
+        }
+    }
+
+    private boolean createMediaSignalingEvent(SipRequestContext context) {
+        try {
+            context.setMediaSignalingEvent(SipMediaSignalingEventFactory.createMediaSignalingEvent(context.getRequest(),
+                    context.getSdpMessage()));
+        } catch (Exception e) {
+            log.warn("Failed to create media signaling event for call {}", context.getRequest().getCallId().getCallId(), e);
+        }
+
+        updateSession(context);
+
+        return true;
+    }
+
+    /**
+     * track the media of the call - INVITE/re-INVITE/UPDATE with SDP replace it (and the SIPREC recording metadata
+     * when they carry one), BYE ends the call. A CANCEL does not: every INVITE is answered finally right away, so a
+     * CANCEL can only cross that final response and is a no-op for the dialog (RFC 3261 9.2) - a dialog that never
+     * gets its BYE is cleaned up by processDialogTerminated
+     */
+    private void updateSession(SipRequestContext context) {
+        SIPRequest request = context.getRequest();
+        String method = request.getMethod();
+        String callId = request.getCallId().getCallId();
+
+        if (Request.BYE.equals(method)) {
+            if (sessionRegistry.remove(callId) != null) {
+                log.debug("Call {} ended, {} calls in progress", callId, sessionRegistry.size());
+            }
+            rtpPortAllocator.release(callId);
+        } else if ((Request.INVITE.equals(method) || Request.UPDATE.equals(method)) &&
+                context.getSdpMessage() != null && context.getMediaSignalingEvent() != null) {
+            sessionRegistry.update(callId, context.getSdpMessage(), context.getMediaSignalingEvent().getMediaChannels(),
+                    context.getRecordingMetadata());
+        }
+    }
+
+    /**
+     * INVITE/UPDATE offers are answered from the local capabilities (488 if no m= line is acceptable, 503 if the RTP
+     * ports ran out), everything else gets a 200 without a body
+     */
+    private boolean buildResponse(SipRequestContext context) throws ParseException {
+        SIPRequest request = context.getRequest();
+        String method = request.getMethod();
+
+        Response response;
+        if (context.getSdpBody() != null && (Request.INVITE.equals(method) || Request.UPDATE.equals(method))) {
+            byte[] answer = null;
+            boolean portsExhausted = false;
+            try {
+                answer = buildAnswer(context);
+            } catch (RtpPortsExhaustedException e) {
+                log.warn("No free RTP ports for call {}", request.getCallId().getCallId());
+                portsExhausted = true;
+            }
+
+            // a failed new call gives back what it got, an established call keeps the ports of its current media
+            if (answer == null && request.getToTag() == null) {
+                sessionRegistry.remove(request.getCallId().getCallId());
+                rtpPortAllocator.release(request.getCallId().getCallId());
+            }
+
+            if (portsExhausted) {
+                response = messageFactory.createResponse(Response.SERVICE_UNAVAILABLE, request);
+            } else if (answer != null) {
+                ContentType c = new ContentType();
+                c.setContentType("application");
+                c.setContentSubType("sdp");
+                response = messageFactory.createResponse(Response.OK, request, c, answer);
+            } else {
+                response = messageFactory.createResponse(Response.NOT_ACCEPTABLE_HERE, request);
+            }
+        } else {
+            response = messageFactory.createResponse(Response.OK, request);
+        }
+
+        response.addHeader(createContactHeader(context));
+        context.setResponse(response);
+
+        return true;
+    }
+
+    /**
+     * @return encoded SDP answer, null if the offer could not be parsed or none of its m= lines is acceptable
+     * the answer o= session id is derived from the Call-ID so it stays the same across re-INVITEs of the call, the
+     * version follows the offer's
+     */
+    private byte[] buildAnswer(SipRequestContext context) {
+        SdpMessage offer = context.getSdpMessage();
+        String callId = context.getRequest().getCallId().getCallId();
+
+        if (offer == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try {
+            byte[] answer = offerAnswerEngine.answerBytes(offer, Integer.toUnsignedLong(callId.hashCode()),
+                    offer.getOriginSessionVersion(), (offered, index) -> {
+                        int port = rtpPortAllocator.allocate(callId, index);
+                        if (port < 0) throw new RtpPortsExhaustedException();
+                        return port;
+                    });
+            metrics.sdpAnswered((answer != null) ? "answered" : "rejected", System.nanoTime() - start);
+            if (answer == null) {
+                log.info("No acceptable media in offer of call {}", callId);
+            }
+            return answer;
+        } catch (RtpPortsExhaustedException e) {
+            metrics.sdpAnswered("no-ports", System.nanoTime() - start);
+            throw e;
+        } catch (SdpAssemblyException e) {
+            metrics.sdpAnswered("failed", System.nanoTime() - start);
+            log.warn("Failed to encode SDP answer of call {}", callId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Contact of the listening point the request came in on - sips: for TLS, transport=tcp for TCP
+     */
+    private ContactHeader createContactHeader(SipRequestContext context) throws ParseException {
+        // the stack's server transactions know their local socket
+        SIPTransaction transaction = (SIPTransaction) context.getTransaction();
+        String transport = transaction.getTransport();
+        int port = transaction.getPort();
+
+        String uri;
+        if ("TLS".equalsIgnoreCase(transport)) {
+            uri = String.format("sips:%s:%d", contactAddress, port);
+        } else if ("TCP".equalsIgnoreCase(transport)) {
+            uri = String.format("sip:%s:%d;transport=tcp", contactAddress, port);
+        } else {
+            uri = String.format("sip:%s:%d", contactAddress, port);
+        }
+
+        return headerFactory.createContactHeader(addressFactory.createAddress(uri));
+    }
+
+    /**
+     * thrown out of the answer port source when the RTP port range is used up
+     */
+    private static class RtpPortsExhaustedException extends RuntimeException {
+        RtpPortsExhaustedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private boolean sendResponse(SipRequestContext context) throws SipException, InvalidArgumentException {
+        try {
+            send(context, context.getResponse());
+            signalingLog.log(SipSignalingLog.Category.RESPONSE, Level.INFO, context.getRequest().getCallId().getCallId(),
+                    "Sent response: {}", context.getResponse());
+        } finally {
+            releaseSdpMessage(context);
+        }
+
+        return false;
+    }
+
+    /**
+     * hand a pooled SDP message back once the request is done with it (nothing past the event stage refers to it,
+     * the media signaling event only holds copies)
+     */
+    private void releaseSdpMessage(SipRequestContext context) {
+        if (sdpPool != null && context.getSdpMessage() != null) {
+            sdpPool.release(context.getSdpMessage());
+            context.setSdpMessage(null);
+        }
+    }
+
+    private void send(SipRequestContext context, Response response) throws SipException, InvalidArgumentException {
+        SIPRequest request = context.getRequest();
+
+        long start = System.nanoTime();
+        context.getTransaction().sendResponse(response);
+        metrics.responseSent(request.getMethod(), response.getStatusCode(), context.getReceivedNanos(),
+                System.nanoTime() - start);
+
+        if (captureJournal != null) {
+            captureJournal.captureSent((SIPResponse) response, request, request.getTopmostVia().getTransport());
+        }
+    }
+
+    private void logEvent(String format, Object event) {
+        signalingLog.log(SipSignalingLog.Category.EVENT, Level.INFO, null, format, event);
+    }
+
+    private void handlePipelineError(SipRequestContext context, Exception e) {
+        releaseSdpMessage(context);
+        try {
+            send(context, messageFactory.createResponse(Response.SERVER_INTERNAL_ERROR, context.getRequest()));
+        } catch (Exception sendException) {
+            log.warn("Failed to send error response for call {}", context.getRequest().getCallId().getCallId(), sendException);
+        }
+    }
+
+    /**
+     * stop the pipeline workers - called by Spring when the context is closed
+     */
+    public void close() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        if (callbackExecutor != null) {
+            callbackExecutor.shutdown();
+        }
+        if (captureJournal != null) {
+            captureJournal.close();
         }
-        ContentType c = new ContentType();
-        c.setContentType("application");
-        c.setContentSubType("sdp");
-        Response response = messageFactory.createResponse(200, request, c, contentString.getBytes());
-        ContactHeader contactHeader = headerFactory.createContactHeader(addressFactory.createAddress(String.format("sip:%s:%d", "54.190.30.227",
-                5060)));
-        response.addHeader(contactHeader);
-        transaction.sendResponse(response);
-        log.info("Sent response: {}", response);
     }
 
     @Override
     public void processResponse(ResponseEvent responseEvent) {
-        log.info("Process response: {}", responseEvent);
+        if (captureJournal != null) {
+            SIPResponse response = (SIPResponse) responseEvent.getResponse();
+            captureJournal.captureReceived(response, response.getTopmostVia().getTransport());
+        }
+
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(() -> logEvent("Process response: {}", responseEvent));
+        } else {
+            logEvent("Process response: {}", responseEvent);
+        }
     }
 
     @Override
     public void processTimeout(TimeoutEvent timeoutEvent) {
-        log.info("Process timeout: {}", timeoutEvent);
+        logEvent("Process timeout: {}", timeoutEvent);
     }
 
     @Override
     public void processIOException(IOExceptionEvent exceptionEvent) {
-        log.info("Process IOException: {}", exceptionEvent);
+        logEvent("Process IOException: {}", exceptionEvent);
     }
 
     @Override
     public void processTransactionTerminated(TransactionTerminatedEvent transactionTerminatedEvent) {
-        log.info("Process transaction terminated: {}", transactionTerminatedEvent);
+        logEvent("Process transaction terminated: {}", transactionTerminatedEvent);
     }
 
     @Override
     public void processDialogTerminated(DialogTerminatedEvent dialogTerminatedEvent) {
-        log.info("Process dialog terminated: {}", dialogTerminatedEvent);
+        logEvent("Process dialog terminated: {}", dialogTerminatedEvent);
+        String callId = dialogTerminatedEvent.getDialog().getCallId().getCallId();
+        sessionRegistry.remove(callId);
+        rtpPortAllocator.release(callId);
     }
 }
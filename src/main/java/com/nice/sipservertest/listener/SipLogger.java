@@ -1,88 +1,104 @@
 package com.nice.sipservertest.listener;
 
+import gov.nist.core.LogLevels;
 import gov.nist.core.StackLogger;
+import org.slf4j.event.Level;
 
 import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * JAIN-SIP stack logger - hands stack messages to the default SipSignalingLog (STACK category, sip.stack logger)
+ * the stack creates it by class name (gov.nist.javax.sip.STACK_LOGGER), so it looks the log up on every call - until
+ * one is set, or after disableLogging, logging is off
+ */
 public class SipLogger implements StackLogger {
+
+    private volatile boolean enabled = true;
+
+    private final LongAdder lineCount = new LongAdder();
+
     @Override
     public void logStackTrace() {
-
+        logStackTrace(LogLevels.TRACE_DEBUG);
     }
 
     @Override
     public void logStackTrace(int traceLevel) {
-
+        // the trace is only rendered on the log thread
+        log(toLevel(traceLevel), "Stack trace", new Throwable());
     }
 
     @Override
     public int getLineCount() {
-        return 0;
+        return lineCount.intValue();
     }
 
     @Override
     public void logException(Throwable ex) {
-
+        log(Level.ERROR, "Stack exception", ex);
     }
 
     @Override
     public void logDebug(String message) {
-
+        log(Level.DEBUG, message, null);
     }
 
     @Override
     public void logDebug(String message, Exception ex) {
-
+        log(Level.DEBUG, message, ex);
     }
 
     @Override
     public void logTrace(String message) {
-
+        log(Level.TRACE, message, null);
     }
 
     @Override
     public void logFatalError(String message) {
-
+        log(Level.ERROR, message, null);
     }
 
     @Override
     public void logError(String message) {
-
+        log(Level.ERROR, message, null);
     }
 
     @Override
     public boolean isLoggingEnabled() {
-        return false;
+        return isLoggingEnabled(LogLevels.TRACE_INFO);
     }
 
     @Override
     public boolean isLoggingEnabled(int logLevel) {
-        return false;
+        SipSignalingLog signalingLog = SipSignalingLog.getDefault();
+        return enabled && signalingLog != null && logLevel != LogLevels.TRACE_NONE &&
+                signalingLog.isEnabled(SipSignalingLog.Category.STACK, toLevel(logLevel));
     }
 
     @Override
     public void logError(String message, Exception ex) {
-
+        log(Level.ERROR, message, ex);
     }
 
     @Override
     public void logWarning(String string) {
-
+        log(Level.WARN, string, null);
     }
 
     @Override
     public void logInfo(String string) {
-
+        log(Level.INFO, string, null);
     }
 
     @Override
     public void disableLogging() {
-
+        enabled = false;
     }
 
     @Override
     public void enableLogging() {
-
+        enabled = true;
     }
 
     @Override
@@ -97,6 +113,22 @@ public class SipLogger implements StackLogger {
 
     @Override
     public String getLoggerName() {
-        return null;
+        return "sip.stack";
+    }
+
+    private void log(Level level, String message, Throwable cause) {
+        SipSignalingLog signalingLog = SipSignalingLog.getDefault();
+        if (!enabled || signalingLog == null) return;
+
+        signalingLog.log(SipSignalingLog.Category.STACK, level, null, message, cause);
+        lineCount.increment();
+    }
+
+    private static Level toLevel(int logLevel) {
+        if (logLevel >= LogLevels.TRACE_TRACE) return Level.TRACE;
+        if (logLevel >= LogLevels.TRACE_DEBUG) return Level.DEBUG;
+        if (logLevel >= LogLevels.TRACE_INFO) return Level.INFO;
+        if (logLevel >= LogLevels.TRACE_WARN) return Level.WARN;
+        return Level.ERROR;
     }
 }
@@ -0,0 +1,147 @@
+package com.nice.sipservertest.listener;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * one stage of the request pipeline - a fixed number of worker threads, each draining its own bounded queue
+ * items with the same key (ex. the Call-ID) always go to the same worker, so they are handled in the order they were
+ * enqueued however many workers the stage has - a CANCEL or BYE can not overtake the INVITE of its call
+ * items the handler accepts are put on the next stage's queue, which blocks the workers (not the SIP stack)
+ * when the next stage is full
+ */
+@Slf4j
+public class SipPipelineStage<T> {
+
+    public interface Handler<T> {
+        /**
+         * @return true to pass the item on to the next stage, false if processing of the item is finished
+         */
+        boolean handle(T item) throws Exception;
+    }
+
+    private final String name;
+
+    private final List<BlockingQueue<T>> queues = new ArrayList<>();
+
+    /**
+     * null to spread the items round-robin
+     */
+    private final ToIntFunction<T> key;
+
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    private final Handler<T> handler;
+
+    private final SipPipelineStage<T> next;
+
+    private final BiConsumer<T, Exception> errorHandler;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    public SipPipelineStage(String name, int workerCount, int queueCapacity, Handler<T> handler,
+                            SipPipelineStage<T> next, BiConsumer<T, Exception> errorHandler) {
+        this(name, workerCount, queueCapacity, null, handler, next, errorHandler);
+    }
+
+    /**
+     * @param queueCapacity shared out between the workers' queues
+     * @param key hash of the ordering key of an item - items with equal keys are handled in order by one worker
+     */
+    public SipPipelineStage(String name, int workerCount, int queueCapacity, ToIntFunction<T> key, Handler<T> handler,
+                            SipPipelineStage<T> next, BiConsumer<T, Exception> errorHandler) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException(String.format("Stage %s needs at least one worker and queue slot (workers=%d, queue=%d)",
+                    name, workerCount, queueCapacity));
+        }
+
+        this.name = name;
+        this.key = key;
+        this.handler = handler;
+        this.next = next;
+        this.errorHandler = errorHandler;
+
+        int workerCapacity = Math.max(1, queueCapacity / workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<T> queue = new ArrayBlockingQueue<>(workerCapacity);
+            queues.add(queue);
+            Thread worker = new Thread(() -> run(queue), "sip-" + name + "-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+    }
+
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    public void stop() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * enqueue without waiting
+     * @return false if the queue of the item's worker is full
+     */
+    public boolean offer(T item) {
+        return queueOf(item).offer(item);
+    }
+
+    public void put(T item) throws InterruptedException {
+        queueOf(item).put(item);
+    }
+
+    public int size() {
+        int size = 0;
+        for (BlockingQueue<T> queue : queues) size += queue.size();
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private BlockingQueue<T> queueOf(T item) {
+        if (queues.size() == 1) {
+            return queues.get(0);
+        }
+        int hash = (key != null) ? key.applyAsInt(item) : roundRobin.getAndIncrement();
+        // spread the high bits, String hashes of similar Call-IDs differ mostly in the low ones
+        return queues.get(Math.floorMod(hash ^ (hash >>> 16), queues.size()));
+    }
+
+    private void run(BlockingQueue<T> queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            boolean forward;
+            try {
+                forward = handler.handle(item);
+            } catch (Exception e) {
+                log.error("Pipeline stage {} failed", name, e);
+                errorHandler.accept(item, e);
+                continue;
+            }
+
+            if (forward && next != null) {
+                try {
+                    next.put(item);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
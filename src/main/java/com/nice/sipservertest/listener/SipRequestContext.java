@@ -0,0 +1,57 @@
+package com.nice.sipservertest.listener;
+
+import com.nice.sipservertest.dto.MediaSignalingEvent;
+import com.nice.sipservertest.dto.RecordingMetadata;
+import com.nice.sipservertest.dto.SdpMessage;
+import com.nice.sipservertest.util.BodySlice;
+import gov.nist.javax.sip.message.SIPRequest;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.sip.ServerTransaction;
+import javax.sip.message.Response;
+
+/**
+ * state of one SIP request as it moves through the request pipeline - each stage fills in its part
+ */
+@Getter
+@Setter
+public class SipRequestContext {
+
+    private final SIPRequest request;
+
+    private final ServerTransaction transaction;
+
+    /**
+     * System.nanoTime() when the request reached the listener
+     */
+    private final long receivedNanos = System.nanoTime();
+
+    /**
+     * SDP body - a slice of the raw request content (null if the request has no SDP)
+     */
+    private BodySlice sdpBody;
+
+    private SdpMessage sdpMessage;
+
+    /**
+     * SIPREC recording metadata body - a slice of the raw request content (null if the request has none)
+     */
+    private BodySlice recordingMetadataBody;
+
+    private RecordingMetadata recordingMetadata;
+
+    private MediaSignalingEvent mediaSignalingEvent;
+
+    /**
+     * true once the SDP is parsed again after the host names of its connection lines were resolved
+     */
+    private boolean hostLookupsAwaited;
+
+    private Response response;
+
+    public SipRequestContext(SIPRequest request, ServerTransaction transaction) {
+        this.request = request;
+        this.transaction = transaction;
+    }
+}
@@ -0,0 +1,81 @@
+package com.nice.sipservertest.listener;
+
+import com.nice.sipservertest.config.SipPipelineProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sip.header.CallIdHeader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * staged request processing: decode -> SDP parse -> media signaling event -> response build -> send
+ * each stage has its own bounded queue and workers (SipPipelineProperties), so the SIP stack thread only enqueues
+ * and a slow stage backs up its own queue instead of stalling the socket reads
+ * requests are routed to the stage workers by Call-ID, so the requests of one call keep their order through every
+ * stage (the INVITE is answered before a CANCEL/BYE that follows it touches the session and its ports)
+ */
+@Slf4j
+public class SipRequestPipeline {
+
+    private final SipPipelineStage<SipRequestContext> decodeStage;
+
+    private final SipPipelineStage<SipRequestContext> parseStage;
+
+    private final List<SipPipelineStage<SipRequestContext>> stages;
+
+    public SipRequestPipeline(SipPipelineProperties properties,
+                              SipPipelineStage.Handler<SipRequestContext> decode,
+                              SipPipelineStage.Handler<SipRequestContext> parse,
+                              SipPipelineStage.Handler<SipRequestContext> event,
+                              SipPipelineStage.Handler<SipRequestContext> response,
+                              SipPipelineStage.Handler<SipRequestContext> send,
+                              BiConsumer<SipRequestContext, Exception> errorHandler) {
+        // built back to front so each stage knows where its output goes
+        SipPipelineStage<SipRequestContext> sendStage = stage("send", properties.getSend(), send, null, errorHandler);
+        SipPipelineStage<SipRequestContext> responseStage = stage("response", properties.getResponse(), response, sendStage, errorHandler);
+        SipPipelineStage<SipRequestContext> eventStage = stage("event", properties.getEvent(), event, responseStage, errorHandler);
+        this.parseStage = stage("parse", properties.getParse(), parse, eventStage, errorHandler);
+        this.decodeStage = stage("decode", properties.getDecode(), decode, parseStage, errorHandler);
+        this.stages = Arrays.asList(decodeStage, parseStage, eventStage, responseStage, sendStage);
+    }
+
+    private static SipPipelineStage<SipRequestContext> stage(String name, SipPipelineProperties.Stage properties,
+                                                             SipPipelineStage.Handler<SipRequestContext> handler,
+                                                             SipPipelineStage<SipRequestContext> next,
+                                                             BiConsumer<SipRequestContext, Exception> errorHandler) {
+        return new SipPipelineStage<>(name, properties.getWorkers(), properties.getQueueCapacity(),
+                SipRequestPipeline::callIdHash, handler, next, errorHandler);
+    }
+
+    private static int callIdHash(SipRequestContext context) {
+        CallIdHeader callId = context.getRequest().getCallId();
+        return (callId != null && callId.getCallId() != null) ? callId.getCallId().hashCode() : 0;
+    }
+
+    public void start() {
+        stages.forEach(SipPipelineStage::start);
+        log.info("SIP request pipeline started");
+    }
+
+    public void stop() {
+        stages.forEach(SipPipelineStage::stop);
+    }
+
+    /**
+     * hand a request to the pipeline without blocking
+     * @return false if the first stage is full and the request was not accepted
+     */
+    public boolean submit(SipRequestContext context) {
+        return decodeStage.offer(context);
+    }
+
+    /**
+     * hand a decoded request back to the SDP parse stage without blocking (ex. once the host names of its SDP are
+     * resolved)
+     * @return false if the parse stage is full and the request was not accepted
+     */
+    public boolean resubmitToParse(SipRequestContext context) {
+        return parseStage.offer(context);
+    }
+}
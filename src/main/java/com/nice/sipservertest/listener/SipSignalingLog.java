@@ -0,0 +1,399 @@
+package com.nice.sipservertest.listener;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * asynchronous signaling log - the SIP stack (SipLogger) and the listener hand events to a bounded lock-free ring
+ * buffer, one daemon thread formats them and writes them to the sip.&lt;category&gt; SLF4J loggers
+ *   producers only claim a slot (CAS) and store the format and argument references - toString() of the arguments
+ *   (requests, responses) runs on the consumer thread, an argument that is a Supplier is called there too
+ *   arguments must not change after they are logged - never log pooled objects (SdpMessage)
+ *   per category, INFO and below can be sampled (every Nth event) and rate limited (events per second), WARN and
+ *   ERROR always get in - an event that finds the buffer full is dropped, drops are summarized every summaryIntervalMs
+ */
+@Slf4j
+public class SipSignalingLog implements AutoCloseable {
+
+    public enum Category {
+        STACK, REQUEST, BODY, RESPONSE, EVENT
+    }
+
+    /**
+     * sampleEvery 1 and maxPerSecond 0 let every event in
+     */
+    @Getter
+    public static final class Limits {
+
+        public static final Limits NONE = new Limits(1, 0);
+
+        private final int sampleEvery;
+
+        private final int maxPerSecond;
+
+        public Limits(int sampleEvery, int maxPerSecond) {
+            if (sampleEvery < 1 || maxPerSecond < 0) {
+                throw new IllegalArgumentException(String.format("signaling log limits need sample-every >= 1 and max-per-second >= 0 (%d, %d)",
+                        sampleEvery, maxPerSecond));
+            }
+            this.sampleEvery = sampleEvery;
+            this.maxPerSecond = maxPerSecond;
+        }
+    }
+
+    /**
+     * where formatted events go - the default writes to SLF4J
+     */
+    interface Sink {
+        boolean isEnabled(Category category, Level level);
+
+        void write(Category category, Level level, String callId, String message, Throwable cause);
+    }
+
+    private static final class Slf4jSink implements Sink {
+        private final Logger[] loggers = new Logger[Category.values().length];
+
+        Slf4jSink() {
+            for (Category category : Category.values()) {
+                loggers[category.ordinal()] = LoggerFactory.getLogger("sip." + category.name().toLowerCase());
+            }
+        }
+
+        @Override
+        public boolean isEnabled(Category category, Level level) {
+            return loggers[category.ordinal()].isEnabledForLevel(level);
+        }
+
+        @Override
+        public void write(Category category, Level level, String callId, String message, Throwable cause) {
+            loggers[category.ordinal()].atLevel(level).addKeyValue("callId", callId).setCause(cause).log(message);
+        }
+    }
+
+    private static final class Slot {
+        Category category;
+        Level level;
+        String callId;
+        String format;
+        Object arg0;
+        Object arg1;
+        int argCount;
+        Throwable cause;
+    }
+
+    private static final class CategoryState {
+        final Limits limits;
+        final AtomicLong sampleCounter = new AtomicLong();
+        // second of the current rate window in the high 32 bits, events let in during it in the low 32
+        final AtomicLong rateWindow = new AtomicLong(-1L << 32);
+        final LongAdder accepted = new LongAdder();
+        final LongAdder sampledOut = new LongAdder();
+        final LongAdder rateLimited = new LongAdder();
+        final LongAdder overflow = new LongAdder();
+
+        CategoryState(Limits limits) {
+            this.limits = limits;
+        }
+    }
+
+    private static volatile SipSignalingLog defaultLog;
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    // slot i is free for producer sequence s when sequences[i] == s, holds event s when it is s + 1
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only the consumer moves it
+    private long head;
+
+    private final CategoryState[] states = new CategoryState[Category.values().length];
+
+    private final Sink sink;
+
+    private final LongSupplier nanoClock;
+
+    private final long summaryIntervalNanos;
+
+    private final Thread consumer;
+
+    private volatile boolean running = true;
+
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * @param capacity events the buffer holds, rounded up to a power of two
+     * @param limits   per category, missing categories are not limited
+     */
+    public SipSignalingLog(int capacity, Map<Category, Limits> limits, long summaryIntervalMs) {
+        this(capacity, limits, summaryIntervalMs, new Slf4jSink(), System::nanoTime);
+    }
+
+    SipSignalingLog(int capacity, Map<Category, Limits> limits, long summaryIntervalMs, Sink sink,
+                    LongSupplier nanoClock) {
+        if (capacity < 2 || capacity > (1 << 24) || summaryIntervalMs < 1) {
+            throw new IllegalArgumentException(String.format("signaling log needs capacity 2-%d and summary interval >= 1 (capacity=%d, interval=%d)",
+                    1 << 24, capacity, summaryIntervalMs));
+        }
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Slot[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+
+        EnumMap<Category, Limits> categoryLimits = new EnumMap<>(Category.class);
+        categoryLimits.putAll(limits);
+        for (Category category : Category.values()) {
+            states[category.ordinal()] = new CategoryState(categoryLimits.getOrDefault(category, Limits.NONE));
+        }
+
+        this.sink = sink;
+        this.nanoClock = nanoClock;
+        this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(summaryIntervalMs);
+
+        this.consumer = new Thread(this::consume, "sip-signaling-log");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * log SipLogger feeds - null until one is created (SipConfig), the stack creates SipLogger by class name
+     */
+    public static SipSignalingLog getDefault() {
+        return defaultLog;
+    }
+
+    public static void setDefault(SipSignalingLog signalingLog) {
+        defaultLog = signalingLog;
+    }
+
+    public boolean isEnabled(Category category, Level level) {
+        return sink.isEnabled(category, level);
+    }
+
+    public void log(Category category, Level level, String callId, String message, Throwable cause) {
+        publish(category, level, callId, message, null, null, 0, cause);
+    }
+
+    public void log(Category category, Level level, String callId, String format, Object arg) {
+        publish(category, level, callId, format, arg, null, 1, null);
+    }
+
+    public void log(Category category, Level level, String callId, String format, Object arg0, Object arg1) {
+        publish(category, level, callId, format, arg0, arg1, 2, null);
+    }
+
+    public long getAcceptedCount(Category category) {
+        return states[category.ordinal()].accepted.sum();
+    }
+
+    public long getSampledOutCount(Category category) {
+        return states[category.ordinal()].sampledOut.sum();
+    }
+
+    public long getRateLimitedCount(Category category) {
+        return states[category.ordinal()].rateLimited.sum();
+    }
+
+    /**
+     * events dropped because the buffer was full
+     */
+    public long getOverflowCount(Category category) {
+        return states[category.ordinal()].overflow.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * write what is in the buffer and stop the consumer - events logged after close are dropped
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (defaultLog == this) {
+            defaultLog = null;
+        }
+    }
+
+    private void publish(Category category, Level level, String callId, String format, Object arg0, Object arg1,
+                         int argCount, Throwable cause) {
+        if (!running || !sink.isEnabled(category, level)) return;
+
+        CategoryState state = states[category.ordinal()];
+        if (level.toInt() < Level.WARN.toInt() && !admit(state)) return;
+
+        long sequence;
+        int index;
+        while (true) {
+            sequence = tail.get();
+            index = (int) sequence & mask;
+            long available = sequences.get(index);
+
+            if (available == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) break;
+            } else if (available < sequence) {
+                // the consumer has not freed the slot of the previous lap
+                state.overflow.increment();
+                return;
+            }
+            // else another producer claimed the sequence, retry with the new tail
+        }
+
+        Slot slot = slots[index];
+        slot.category = category;
+        slot.level = level;
+        slot.callId = callId;
+        slot.format = format;
+        slot.arg0 = arg0;
+        slot.arg1 = arg1;
+        slot.argCount = argCount;
+        slot.cause = cause;
+        sequences.lazySet(index, sequence + 1);
+
+        state.accepted.increment();
+    }
+
+    private boolean admit(CategoryState state) {
+        Limits limits = state.limits;
+
+        if (limits.sampleEvery > 1 && state.sampleCounter.getAndIncrement() % limits.sampleEvery != 0) {
+            state.sampledOut.increment();
+            return false;
+        }
+
+        if (limits.maxPerSecond > 0) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong()) & 0xFFFFFFFFL;
+            while (true) {
+                long window = state.rateWindow.get();
+                long count = (window >>> 32 == second) ? window & 0xFFFFFFFFL : 0;
+                if (count >= limits.maxPerSecond) {
+                    state.rateLimited.increment();
+                    return false;
+                }
+                if (state.rateWindow.compareAndSet(window, (second << 32) | (count + 1))) break;
+            }
+        }
+
+        return true;
+    }
+
+    private void consume() {
+        long[] reported = new long[states.length * 2];
+        long nextSummary = nanoClock.getAsLong() + summaryIntervalNanos;
+        int idle = 0;
+
+        while (true) {
+            if (poll()) {
+                idle = 0;
+                continue;
+            }
+
+            if (!running) {
+                // a producer may still be filling a claimed slot
+                if (head == tail.get()) break;
+                Thread.onSpinWait();
+                continue;
+            }
+
+            long now = nanoClock.getAsLong();
+            if (now - nextSummary >= 0) {
+                summarize(reported);
+                nextSummary = now + summaryIntervalNanos;
+            }
+
+            // spin briefly for bursts, then back off so an idle log costs nothing
+            idle++;
+            if (idle < 64) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos((idle < 1024) ? 50_000 : 1_000_000);
+            }
+        }
+
+        summarize(reported);
+    }
+
+    private boolean poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) return false;
+
+        Slot slot = slots[index];
+        try {
+            String message = slot.format;
+            if (slot.argCount > 0) {
+                Object[] args = (slot.argCount == 1) ? new Object[]{resolve(slot.arg0)} :
+                        new Object[]{resolve(slot.arg0), resolve(slot.arg1)};
+                message = MessageFormatter.arrayFormat(slot.format, args).getMessage();
+            }
+            sink.write(slot.category, slot.level, slot.callId, message, slot.cause);
+            written.increment();
+        } catch (RuntimeException e) {
+            log.warn("Failed to write signaling log event {}", slot.format, e);
+        } finally {
+            slot.callId = null;
+            slot.format = null;
+            slot.arg0 = null;
+            slot.arg1 = null;
+            slot.cause = null;
+            sequences.lazySet(index, head + slots.length);
+            head++;
+        }
+
+        return true;
+    }
+
+    private static Object resolve(Object arg) {
+        return (arg instanceof Supplier) ? ((Supplier<?>) arg).get() : arg;
+    }
+
+    private void summarize(long[] reported) {
+        for (Category category : Category.values()) {
+            CategoryState state = states[category.ordinal()];
+            long overflow = state.overflow.sum();
+            long rateLimited = state.rateLimited.sum();
+            long newOverflow = overflow - reported[category.ordinal() * 2];
+            long newRateLimited = rateLimited - reported[category.ordinal() * 2 + 1];
+
+            if (newOverflow > 0 || newRateLimited > 0) {
+                log.warn("Signaling log {} dropped {} events with the buffer full and {} over the rate limit",
+                        category, newOverflow, newRateLimited);
+            }
+            reported[category.ordinal() * 2] = overflow;
+            reported[category.ordinal() * 2 + 1] = rateLimited;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.nice.sipservertest.listener;
+
+import com.nice.sipservertest.dto.SdpObjectPool;
+import com.nice.sipservertest.session.SipSessionRegistry;
+import com.nice.sipservertest.util.ObjectPool;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.sip.SipStack;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters of the signaling path (scraped from /actuator/prometheus)
+ *   sip.requests.received{method}       requests handed to the listener (ACKs included)
+ *   sip.requests{method,status}         processRequest to the response being sent
+ *   sip.response.send{method,status}    transaction.sendResponse
+ *   sip.sdp.parse{result}               SDP body parse, m= sections included
+ *   sip.sdp.answer{result}              offer/answer negotiation and answer encoding
+ *   sip.sdp.body.size, sip.sdp.media.lines of the parsed offers
+ *   sip.transactions.active{type}       summed over the stacks
+ *   sip.dialogs.active                  calls in the session registry
+ *   sip.sdp.pool.borrows{pool,result}, sip.sdp.pool.drops{pool} of the SDP object pool (bindSdpPool)
+ * meters per method/status are looked up from a cache, so recording does not allocate - methods other than the
+ * RFC 3261 ones and their extensions are tagged OTHER, a peer can not grow the tag cardinality
+ */
+public class SipSignalingMetrics {
+
+    private static final Set<String> METHODS = Set.of("INVITE", "ACK", "BYE", "CANCEL", "OPTIONS", "REGISTER",
+            "UPDATE", "INFO", "PRACK", "SUBSCRIBE", "NOTIFY", "REFER", "MESSAGE", "PUBLISH");
+
+    private static final String OTHER = "OTHER";
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Counter> received = new ConcurrentHashMap<>();
+
+    // status codes 100-699 by method, index 0 also takes anything out of range
+    private final Map<String, AtomicReferenceArray<Timer>> requestTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicReferenceArray<Timer>> sendTimers = new ConcurrentHashMap<>();
+
+    private final Timer parseTimer;
+
+    private final Timer parseFailureTimer;
+
+    private final Map<String, Timer> answerTimers = new ConcurrentHashMap<>();
+
+    private final DistributionSummary bodySize;
+
+    private final DistributionSummary mediaLines;
+
+    // gauges only hold their state weakly
+    private final List<SIPTransactionStack> stacks;
+
+    private final SipSessionRegistry sessionRegistry;
+
+    /**
+     * @param sessionRegistry counted for the active dialogs - the stacks only hand out a copy of their dialog table
+     */
+    public SipSignalingMetrics(MeterRegistry registry, Collection<SipStack> sipStacks,
+                               SipSessionRegistry sessionRegistry) {
+        this.registry = registry;
+
+        this.parseTimer = Timer.builder("sip.sdp.parse").tag("result", "parsed").publishPercentileHistogram()
+                .register(registry);
+        this.parseFailureTimer = Timer.builder("sip.sdp.parse").tag("result", "failed").publishPercentileHistogram()
+                .register(registry);
+        this.bodySize = DistributionSummary.builder("sip.sdp.body.size").baseUnit("bytes")
+                .serviceLevelObjectives(256, 512, 1024, 2048, 4096, 8192, 16384).register(registry);
+        this.mediaLines = DistributionSummary.builder("sip.sdp.media.lines")
+                .serviceLevelObjectives(1, 2, 3, 4, 6, 8, 16).register(registry);
+
+        this.stacks = sipStacks.stream().map(SIPTransactionStack.class::cast).toList();
+        gauge("sip.transactions.active", "server", stacks, SIPTransactionStack::getServerTransactionTableSize);
+        gauge("sip.transactions.active", "client", stacks, SIPTransactionStack::getClientTransactionTableSize);
+        this.sessionRegistry = sessionRegistry;
+        Gauge.builder("sip.dialogs.active", sessionRegistry, SipSessionRegistry::size).register(registry);
+    }
+
+    /**
+     * the listener owns the pool, so it is bound once the listener has created it
+     */
+    public void bindSdpPool(SdpObjectPool sdpPool) {
+        bindPool("message", sdpPool.getMessagePool());
+        bindPool("descriptor", sdpPool.getMediaDescriptorPool());
+    }
+
+    private void bindPool(String pool, ObjectPool<?> objectPool) {
+        FunctionCounter.builder("sip.sdp.pool.borrows", objectPool, ObjectPool::getHitCount).tag("pool", pool)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("sip.sdp.pool.borrows", objectPool, ObjectPool::getMissCount).tag("pool", pool)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("sip.sdp.pool.drops", objectPool, ObjectPool::getDropCount).tag("pool", pool)
+                .register(registry);
+    }
+
+    public void requestReceived(String method) {
+        received.computeIfAbsent(methodTag(method), m -> Counter.builder("sip.requests.received").tag("method", m)
+                .register(registry)).increment();
+    }
+
+    /**
+     * @param receivedNanos System.nanoTime() when the request reached the listener
+     */
+    public void responseSent(String method, int status, long receivedNanos, long sendNanos) {
+        long now = System.nanoTime();
+        timer(requestTimers, "sip.requests", method, status).record(now - receivedNanos, TimeUnit.NANOSECONDS);
+        timer(sendTimers, "sip.response.send", method, status).record(sendNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void sdpParsed(long nanos, int bodyBytes, int mediaLineCount) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+        bodySize.record(bodyBytes);
+        mediaLines.record(mediaLineCount);
+    }
+
+    public void sdpParseFailed(long nanos, int bodyBytes) {
+        parseFailureTimer.record(nanos, TimeUnit.NANOSECONDS);
+        bodySize.record(bodyBytes);
+    }
+
+    /**
+     * @param result answered, rejected (nothing acceptable), no-ports or failed
+     */
+    public void sdpAnswered(String result, long nanos) {
+        answerTimers.computeIfAbsent(result, r -> Timer.builder("sip.sdp.answer").tag("result", r)
+                .publishPercentileHistogram().register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(Map<String, AtomicReferenceArray<Timer>> timers, String name, String method, int status) {
+        String methodTag = methodTag(method);
+        AtomicReferenceArray<Timer> byStatus = timers.computeIfAbsent(methodTag, m -> new AtomicReferenceArray<>(600));
+        int index = (status >= 100 && status < 700) ? status - 100 : 0;
+
+        Timer timer = byStatus.get(index);
+        if (timer == null) {
+            // the registry hands racing registrations the same timer
+            timer = Timer.builder(name).tag("method", methodTag).tag("status", Integer.toString(index + 100))
+                    .publishPercentileHistogram().register(registry);
+            byStatus.set(index, timer);
+        }
+        return timer;
+    }
+
+    private void gauge(String name, String type, List<SIPTransactionStack> stacks,
+                       ToDoubleFunction<SIPTransactionStack> value) {
+        Gauge.builder(name, stacks, s -> sum(s, value)).tag("type", type).register(registry);
+    }
+
+    private static double sum(List<SIPTransactionStack> stacks, ToDoubleFunction<SIPTransactionStack> value) {
+        double sum = 0;
+        for (SIPTransactionStack stack : stacks) sum += value.applyAsDouble(stack);
+        return sum;
+    }
+
+    private static String methodTag(String method) {
+        return METHODS.contains(method) ? method : OTHER;
+    }
+}
@@ -0,0 +1,205 @@
+package com.nice.sipservertest.negotiation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * pre-encoded SDP answer with patch points for the per call values - o= session id/version, the media address
+ * (o= and c= lines) and the port of each accepted m= line
+ * a template is the encoded answer cut at the patch points: literal chunk, value, literal chunk, ..., literal chunk
+ * immutable, shared by every answer made from it
+ */
+class SdpAnswerTemplate {
+
+    static final int SESSION_ID = -1;
+
+    static final int SESSION_VERSION = -2;
+
+    static final int ADDRESS = -3;
+
+    // slots >= 0 are the port of that m= line index
+
+    private final byte[][] chunks;
+
+    private final int[] slots;
+
+    private final int literalLength;
+
+    // per m= line index, false for lines rejected with port 0
+    private final boolean[] acceptedLines;
+
+    private final boolean acceptedMedia;
+
+    private SdpAnswerTemplate(byte[][] chunks, int[] slots, boolean[] acceptedLines) {
+        this.chunks = chunks;
+        this.slots = slots;
+        this.acceptedLines = acceptedLines;
+
+        boolean accepted = false;
+        for (boolean line : acceptedLines) accepted |= line;
+        this.acceptedMedia = accepted;
+
+        int length = 0;
+        for (byte[] chunk : chunks) length += chunk.length;
+        this.literalLength = length;
+    }
+
+    boolean hasAcceptedMedia() {
+        return acceptedMedia;
+    }
+
+    boolean isAccepted(int mediaIndex) {
+        return acceptedLines[mediaIndex];
+    }
+
+    /**
+     * cut an encoded answer at its patch points - the o= id, version and address, the session c= address and every
+     * non-zero m= port (port 0 lines are rejected and stay as they are)
+     */
+    static SdpAnswerTemplate of(byte[] encoded) {
+        List<byte[]> chunks = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Boolean> acceptedLines = new ArrayList<>();
+
+        int chunkStart = 0;
+        int mediaIndex = 0;
+        int lineStart = 0;
+
+        while (lineStart < encoded.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < encoded.length && encoded[lineEnd] != '\r' && encoded[lineEnd] != '\n') lineEnd++;
+
+            if (lineEnd - lineStart > 2 && encoded[lineStart + 1] == '=') {
+                switch (encoded[lineStart]) {
+                    case 'o': {
+                        // o=<username> <id> <version> IN IP4 <address>
+                        int idStart = indexOf(encoded, ' ', lineStart, lineEnd) + 1;
+                        int idEnd = indexOf(encoded, ' ', idStart, lineEnd);
+                        int versionEnd = indexOf(encoded, ' ', idEnd + 1, lineEnd);
+                        int addressStart = lastIndexOf(encoded, ' ', versionEnd, lineEnd) + 1;
+
+                        chunkStart = cut(encoded, chunks, slots, chunkStart, idStart, idEnd, SESSION_ID);
+                        chunkStart = cut(encoded, chunks, slots, chunkStart, idEnd + 1, versionEnd, SESSION_VERSION);
+                        chunkStart = cut(encoded, chunks, slots, chunkStart, addressStart, lineEnd, ADDRESS);
+                        break;
+                    }
+                    case 'c': {
+                        // c=IN IP4 <address> - only the session level one, accepted m= lines use the same address
+                        if (mediaIndex == 0) {
+                            int addressStart = lastIndexOf(encoded, ' ', lineStart, lineEnd) + 1;
+                            chunkStart = cut(encoded, chunks, slots, chunkStart, addressStart, lineEnd, ADDRESS);
+                        }
+                        break;
+                    }
+                    case 'm': {
+                        // m=<media> <port> <proto> <fmt>...
+                        int portStart = indexOf(encoded, ' ', lineStart, lineEnd) + 1;
+                        int portEnd = indexOf(encoded, ' ', portStart, lineEnd);
+
+                        boolean accepted = portEnd - portStart != 1 || encoded[portStart] != '0';
+                        if (accepted) {
+                            chunkStart = cut(encoded, chunks, slots, chunkStart, portStart, portEnd, mediaIndex);
+                        }
+                        acceptedLines.add(accepted);
+                        mediaIndex++;
+                        break;
+                    }
+                }
+            }
+
+            lineStart = lineEnd;
+            while (lineStart < encoded.length && (encoded[lineStart] == '\r' || encoded[lineStart] == '\n')) lineStart++;
+        }
+
+        chunks.add(Arrays.copyOfRange(encoded, chunkStart, encoded.length));
+
+        boolean[] accepted = new boolean[acceptedLines.size()];
+        for (int i = 0; i < accepted.length; i++) accepted[i] = acceptedLines.get(i);
+
+        return new SdpAnswerTemplate(chunks.toArray(new byte[0][]), slots.stream().mapToInt(Integer::intValue).toArray(),
+                accepted);
+    }
+
+    /**
+     * @param address host address bytes (ASCII) of the answer
+     * @param ports   RTP port per m= line index (rejected lines are not read)
+     */
+    byte[] fill(long sessionId, long sessionVersion, byte[] address, int[] ports) {
+        int length = literalLength;
+        for (int slot : slots) {
+            length += (slot == SESSION_ID) ? digits(sessionId) :
+                    (slot == SESSION_VERSION) ? digits(sessionVersion) :
+                    (slot == ADDRESS) ? address.length : digits(ports[slot]);
+        }
+
+        byte[] out = new byte[length];
+        int pos = 0;
+
+        for (int i = 0; i < slots.length; i++) {
+            System.arraycopy(chunks[i], 0, out, pos, chunks[i].length);
+            pos += chunks[i].length;
+
+            int slot = slots[i];
+            if (slot == ADDRESS) {
+                System.arraycopy(address, 0, out, pos, address.length);
+                pos += address.length;
+            } else {
+                pos = putDecimal(out, pos, (slot == SESSION_ID) ? sessionId : (slot == SESSION_VERSION) ? sessionVersion : ports[slot]);
+            }
+        }
+
+        byte[] last = chunks[slots.length];
+        System.arraycopy(last, 0, out, pos, last.length);
+
+        return out;
+    }
+
+    private static int cut(byte[] encoded, List<byte[]> chunks, List<Integer> slots, int chunkStart, int valueStart,
+                           int valueEnd, int slot) {
+        chunks.add(Arrays.copyOfRange(encoded, chunkStart, valueStart));
+        slots.add(slot);
+        return valueEnd;
+    }
+
+    private static int indexOf(byte[] buf, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == c) return i;
+        }
+        return to;
+    }
+
+    private static int lastIndexOf(byte[] buf, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (buf[i] == c) return i;
+        }
+        return from - 1;
+    }
+
+    private static int digits(long value) {
+        if (value < 0) return Long.toString(value).length();
+
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int putDecimal(byte[] out, int pos, long value) {
+        if (value < 0) {
+            byte[] text = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(text, 0, out, pos, text.length);
+            return pos + text.length;
+        }
+
+        int end = pos + digits(value);
+        for (int i = end - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,76 @@
+package com.nice.sipservertest.negotiation;
+
+import com.nice.sipservertest.dto.MediaTransportProfile;
+import com.nice.sipservertest.dto.SdpMediaCodecs;
+import com.nice.sipservertest.dto.SdpMediaDirection;
+import com.nice.sipservertest.dto.SdpMediaTypes;
+import lombok.Getter;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * what this endpoint can do with media - the answerer side of RFC 3264 offer/answer
+ * immutable, the offer/answer engine caches negotiation results made against it
+ */
+@Getter
+public class SdpCapabilityProfile {
+
+    /**
+     * address in the answer o= and c= lines
+     */
+    private final InetAddress address;
+
+    private final String originUsername;
+
+    /**
+     * codecs in order of preference - TELEPHONE_EVENT is added next to the chosen codecs, it never makes an m= line
+     * acceptable on its own
+     */
+    private final List<SdpMediaCodecs> codecs;
+
+    private final Set<SdpMediaTypes> mediaTypes;
+
+    private final Set<MediaTransportProfile> transportProfiles;
+
+    /**
+     * directions this endpoint supports - SEND_RECEIVE, or RECEIVE_ONLY for a recorder that never sends media
+     */
+    private final SdpMediaDirection direction;
+
+    /**
+     * list the answer codecs in the offer's order instead of the profile's
+     */
+    private final boolean honorOfferOrder;
+
+    public SdpCapabilityProfile(InetAddress address, String originUsername, List<SdpMediaCodecs> codecs,
+                                Set<SdpMediaTypes> mediaTypes, Set<MediaTransportProfile> transportProfiles,
+                                SdpMediaDirection direction, boolean honorOfferOrder) {
+        if (address == null || codecs == null || codecs.isEmpty()) {
+            throw new IllegalArgumentException("Capability profile needs an address and at least one codec");
+        }
+        if (direction != SdpMediaDirection.SEND_RECEIVE && direction != SdpMediaDirection.RECEIVE_ONLY &&
+                direction != SdpMediaDirection.SEND_ONLY) {
+            throw new IllegalArgumentException("Capability profile direction must be SEND_RECEIVE, RECEIVE_ONLY or SEND_ONLY, got " +
+                    direction);
+        }
+
+        this.address = address;
+        this.originUsername = originUsername;
+        this.codecs = List.copyOf(codecs);
+        this.mediaTypes = Collections.unmodifiableSet(EnumSet.copyOf(mediaTypes));
+        this.transportProfiles = Collections.unmodifiableSet(EnumSet.copyOf(transportProfiles));
+        this.direction = direction;
+        this.honorOfferOrder = honorOfferOrder;
+    }
+
+    /**
+     * @return preference rank of the codec (lower is preferred), -1 if it is not supported
+     */
+    public int rank(SdpMediaCodecs codec) {
+        return codecs.indexOf(codec);
+    }
+}
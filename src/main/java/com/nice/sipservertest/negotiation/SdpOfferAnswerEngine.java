@@ -0,0 +1,417 @@
+package com.nice.sipservertest.negotiation;
+
+import com.nice.sipservertest.dto.*;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RFC 3264 offer/answer - builds the answer SdpMessage for a parsed offer against the local capability profile
+ *   one answer m= line per offered m= line, in the same order
+ *   codecs are the intersection of the offer and the profile, in the profile's order of preference (or the offer's
+ *     with honorOfferOrder) - offered payload type numbers are kept, telephone-event is added when offered at the
+ *     clock rate of the preferred codec
+ *   directions are flipped (sendonly -> recvonly, ...) and limited to what the profile supports
+ *   a=label is mirrored so the offerer can match the streams (SIPREC)
+ *   m= lines with an unsupported media type or transport, or without a common codec, are rejected with port 0
+ * the per m= line result only depends on the shape of the offer (media types, transports, directions, codecs), so
+ * it is cached by shape - repeated offers from the same SBC only fill in ports, labels and the o= line
+ * answerBytes goes one step further and caches the encoded answer per offer fingerprint (shape, labels and address
+ * family) as an SdpAnswerTemplate - a hot answer is the template with the o= id/version, address and ports patched in
+ */
+public class SdpOfferAnswerEngine {
+
+    /**
+     * local RTP port for an accepted offered m= line
+     */
+    public interface PortSource {
+        int rtpPort(SdpMediaDescriptor offered, int index);
+    }
+
+    /**
+     * negotiated answer for one offered m= line - immutable, shared by every answer built from the cache
+     */
+    private static final class MediaPlan {
+
+        final boolean accepted;
+
+        final SdpMediaTypes mediaType;
+
+        final MediaTransportProfile transportProfile;
+
+        final SdpMediaDirection direction;
+
+        // copies (not the parsed offer's mappings), in answer order
+        final List<SdpMediaMapping> mappings;
+
+        final int packetTimeInMs;
+
+        MediaPlan(boolean accepted, SdpMediaTypes mediaType, MediaTransportProfile transportProfile,
+                  SdpMediaDirection direction, List<SdpMediaMapping> mappings, int packetTimeInMs) {
+            this.accepted = accepted;
+            this.mediaType = mediaType;
+            this.transportProfile = transportProfile;
+            this.direction = direction;
+            this.mappings = mappings;
+            this.packetTimeInMs = packetTimeInMs;
+        }
+    }
+
+    private final SdpCapabilityProfile profile;
+
+    private final int cacheSize;
+
+    private final ConcurrentHashMap<String, MediaPlan[]> cache = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private final ConcurrentHashMap<String, SdpAnswerTemplate> templates = new ConcurrentHashMap<>();
+
+    private final LongAdder templateHits = new LongAdder();
+
+    private final LongAdder templateMisses = new LongAdder();
+
+    private final byte[] addressBytes;
+
+    /**
+     * @param cacheSize number of offer shapes kept (0 disables the cache)
+     */
+    public SdpOfferAnswerEngine(SdpCapabilityProfile profile, int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Answer cache size must not be negative, got " + cacheSize);
+        }
+
+        this.profile = profile;
+        this.cacheSize = cacheSize;
+        this.addressBytes = profile.getAddress().getHostAddress().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public SdpCapabilityProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @param sessionId      o= session id of the answer (keep it for the dialog)
+     * @param sessionVersion o= session version of the answer (must grow when a re-INVITE changes the answer)
+     * @return the answer - check hasAcceptedMedia, an answer that rejects every m= line means the offer is not
+     * acceptable (488)
+     */
+    public SdpMessage answer(SdpMessage offer, long sessionId, long sessionVersion, PortSource ports) {
+        return answer(offer, sessionId, sessionVersion, profile.getAddress(), ports);
+    }
+
+    /**
+     * @param address media address of the answer (o= and c= lines) instead of the profile's
+     */
+    public SdpMessage answer(SdpMessage offer, long sessionId, long sessionVersion, InetAddress address,
+                             PortSource ports) {
+        List<SdpMediaDescriptor> offered = offer.getMediaDescriptions();
+        MediaPlan[] plans = negotiate(offer, offered);
+
+        SdpMessage answer = new SdpMessage(address.getHostAddress(), address, profile.getOriginUsername());
+        answer.originSessionId = sessionId;
+        answer.originSessionVersion = sessionVersion;
+        answer.originAddressType = (address instanceof Inet6Address) ? SdpAddressTypes.IPV6 : SdpAddressTypes.IPV4;
+
+        for (int i = 0; i < plans.length; i++) {
+            MediaPlan plan = plans[i];
+            SdpMediaDescriptor md = offered.get(i);
+
+            int port = plan.accepted ? ports.rtpPort(md, i) : 0;
+            SdpMediaDescriptor answered = answer.addMediaDescription(plan.mediaType, plan.transportProfile, port,
+                    md.getLabel(), plan.direction, address);
+            for (SdpMediaMapping mapping : plan.mappings) {
+                answered.addMediaMappingCodec(mapping);
+            }
+            answered.packetTimeInMs = plan.packetTimeInMs;
+        }
+
+        return answer;
+    }
+
+    /**
+     * encoded answer - same bytes as answer(...).getEncodedBytes(), patched from a cached template when an offer
+     * with the same fingerprint was answered before
+     * @return null if none of the offered m= lines is acceptable (488)
+     */
+    public byte[] answerBytes(SdpMessage offer, long sessionId, long sessionVersion, PortSource ports)
+            throws SdpAssemblyException {
+        return answerBytes(offer, sessionId, sessionVersion, profile.getAddress(), ports);
+    }
+
+    public byte[] answerBytes(SdpMessage offer, long sessionId, long sessionVersion, InetAddress address,
+                              PortSource ports) throws SdpAssemblyException {
+        List<SdpMediaDescriptor> offered = offer.getMediaDescriptions();
+
+        if (cacheSize == 0) {
+            SdpMessage answer = answer(offer, sessionId, sessionVersion, address, ports);
+            return hasAcceptedMedia(answer) ? answer.getEncodedBytes() : null;
+        }
+
+        String fingerprint = fingerprint(offer, offered, address);
+        SdpAnswerTemplate template = templates.get(fingerprint);
+
+        if (template == null) {
+            templateMisses.increment();
+
+            SdpMessage answer = answer(offer, sessionId, sessionVersion, address, ports);
+            byte[] encoded = answer.getEncodedBytes();
+            template = SdpAnswerTemplate.of(encoded);
+            putBounded(templates, fingerprint, template);
+
+            return template.hasAcceptedMedia() ? encoded : null;
+        }
+
+        templateHits.increment();
+        if (!template.hasAcceptedMedia()) {
+            return null;
+        }
+
+        // ports only for the accepted m= lines, same as answer()
+        int[] rtpPorts = new int[offered.size()];
+        for (int i = 0; i < rtpPorts.length; i++) {
+            if (template.isAccepted(i)) rtpPorts[i] = ports.rtpPort(offered.get(i), i);
+        }
+
+        byte[] hostAddress = (address == profile.getAddress()) ? addressBytes :
+                address.getHostAddress().getBytes(StandardCharsets.US_ASCII);
+        return template.fill(sessionId, sessionVersion, hostAddress, rtpPorts);
+    }
+
+    /**
+     * @return true if at least one m= line of the answer was accepted
+     */
+    public static boolean hasAcceptedMedia(SdpMessage answer) {
+        for (SdpMediaDescriptor md : answer.getMediaDescriptions()) {
+            if (md.getRtpEndpoint() != null && md.getRtpEndpoint().getPort() != 0) return true;
+        }
+
+        return false;
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public long getTemplateHitCount() {
+        return templateHits.sum();
+    }
+
+    public long getTemplateMissCount() {
+        return templateMisses.sum();
+    }
+
+    public int getTemplateCacheSize() {
+        return templates.size();
+    }
+
+    private MediaPlan[] negotiate(SdpMessage offer, List<SdpMediaDescriptor> offered) {
+        if (cacheSize == 0) {
+            return plan(offer, offered);
+        }
+
+        String shape = shape(offer, offered);
+        MediaPlan[] plans = cache.get(shape);
+        if (plans != null) {
+            cacheHits.increment();
+            return plans;
+        }
+
+        cacheMisses.increment();
+        plans = plan(offer, offered);
+        putBounded(cache, shape, plans);
+
+        return plans;
+    }
+
+    private <V> void putBounded(ConcurrentHashMap<String, V> map, String key, V value) {
+        if (map.size() >= cacheSize) {
+            // full - make room by dropping any entry, offer shapes in use come right back
+            Iterator<String> it = map.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        map.put(key, value);
+    }
+
+    private MediaPlan[] plan(SdpMessage offer, List<SdpMediaDescriptor> offered) {
+        MediaPlan[] plans = new MediaPlan[offered.size()];
+
+        for (int i = 0; i < plans.length; i++) {
+            plans[i] = plan(offered.get(i), offer.getDirection());
+        }
+
+        return plans;
+    }
+
+    private MediaPlan plan(SdpMediaDescriptor md, SdpMediaDirection sessionDirection) {
+        MediaTransportProfile transport = md.getTransportProfile();
+
+        if (!profile.getMediaTypes().contains(md.getMediaType()) || !profile.getTransportProfiles().contains(transport) ||
+                md.getRtpEndpoint() == null || md.getRtpEndpoint().getPort() == 0) {
+            return reject(md);
+        }
+
+        RtpPayloadTypeList payloadTypes = md.getRtpPayloadTypeList();
+
+        List<SdpMediaMapping> chosen = new ArrayList<>();
+        for (int i = 0; i < payloadTypes.size(); i++) {
+            int pt = payloadTypes.getInt(i);
+            SdpMediaMapping mapping = md.getMediaMappings().get(pt);
+
+            if (mapping != null && mapping.getMediaCodec() != SdpMediaCodecs.TELEPHONE_EVENT &&
+                    profile.rank(mapping.getMediaCodec()) >= 0) {
+                chosen.add(mapping.copy(pt));
+            }
+        }
+
+        if (chosen.isEmpty()) {
+            return reject(md);
+        }
+
+        if (!profile.isHonorOfferOrder()) {
+            chosen.sort(Comparator.comparingInt(mapping -> profile.rank(mapping.getMediaCodec())));
+        }
+
+        // DTMF events at the clock rate of the preferred codec (RFC 4733)
+        if (profile.rank(SdpMediaCodecs.TELEPHONE_EVENT) >= 0) {
+            int clock = chosen.get(0).getSamplingFrequency();
+
+            for (int i = 0; i < payloadTypes.size(); i++) {
+                int pt = payloadTypes.getInt(i);
+                SdpMediaMapping mapping = md.getMediaMappings().get(pt);
+
+                if (mapping != null && mapping.getMediaCodec() == SdpMediaCodecs.TELEPHONE_EVENT &&
+                        mapping.getSamplingFrequency() == clock) {
+                    chosen.add(mapping.copy(pt));
+                }
+            }
+        }
+
+        SdpMediaDirection offeredDirection = md.getDirection();
+        if (offeredDirection == SdpMediaDirection.UNSPECIFIED) offeredDirection = sessionDirection;
+
+        return new MediaPlan(true, md.getMediaType(), transport, answerDirection(offeredDirection), List.copyOf(chosen),
+                md.getPacketTimeInMs());
+    }
+
+    /**
+     * port 0 m= line of the same media type and transport, listing the first offered format (RFC 3264 section 6)
+     */
+    private static MediaPlan reject(SdpMediaDescriptor md) {
+        // an unknown transport can not be encoded, the rejected line says RTP/AVP instead
+        MediaTransportProfile transport = (md.getTransportProfile() == MediaTransportProfile.UNKNOWN) ?
+                MediaTransportProfile.RTP_AVP : md.getTransportProfile();
+
+        List<SdpMediaMapping> mappings = new ArrayList<>(1);
+        if (md.getRtpPayloadTypeList().size() > 0) {
+            int pt = md.getRtpPayloadTypeList().getInt(0);
+            SdpMediaMapping mapping = md.getMediaMappings().get(pt);
+            mappings.add((mapping != null) ? mapping.copy(pt) : new SdpMediaMapping(SdpMediaCodecs.UNKNOWN, pt));
+        }
+
+        return new MediaPlan(false, md.getMediaType(), transport, SdpMediaDirection.INACTIVE, List.copyOf(mappings), 0);
+    }
+
+    /**
+     * the offered direction seen from this side, limited to the directions of the profile
+     */
+    SdpMediaDirection answerDirection(SdpMediaDirection offered) {
+        boolean send;
+        boolean receive;
+
+        switch (offered) {
+            case SEND_ONLY:
+                send = false;
+                receive = true;
+                break;
+            case RECEIVE_ONLY:
+                send = true;
+                receive = false;
+                break;
+            case INACTIVE:
+                send = false;
+                receive = false;
+                break;
+            default:
+                send = true;
+                receive = true;
+                break;
+        }
+
+        send &= profile.getDirection() != SdpMediaDirection.RECEIVE_ONLY;
+        receive &= profile.getDirection() != SdpMediaDirection.SEND_ONLY;
+
+        if (send && receive) return SdpMediaDirection.SEND_RECEIVE;
+        if (send) return SdpMediaDirection.SEND_ONLY;
+        if (receive) return SdpMediaDirection.RECEIVE_ONLY;
+        return SdpMediaDirection.INACTIVE;
+    }
+
+    /**
+     * template cache key - the offer shape plus everything else that ends up in the answer text except the patch
+     * points: labels and the address family (IN IP4/IN IP6)
+     */
+    private static String fingerprint(SdpMessage offer, List<SdpMediaDescriptor> offered, InetAddress address) {
+        StringBuilder sb = new StringBuilder(shape(offer, offered));
+        sb.append((address instanceof Inet6Address) ? "|6" : "|4");
+
+        // '\n' can not be part of a label
+        for (SdpMediaDescriptor md : offered) {
+            sb.append('\n');
+            if (md.getLabel() != null) sb.append(md.getLabel());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * cache key - everything plan() looks at, nothing it does not (ports, addresses, labels, o= line)
+     */
+    private static String shape(SdpMessage offer, List<SdpMediaDescriptor> offered) {
+        StringBuilder sb = new StringBuilder(64 * offered.size());
+        sb.append(offer.getDirection().ordinal());
+
+        for (SdpMediaDescriptor md : offered) {
+            sb.append('|').append(md.getMediaType().ordinal()).append(',').append(md.getTransportProfile().ordinal());
+            if (md.getTransportProfile() == MediaTransportProfile.UNKNOWN) sb.append(md.getTransportProtocolString());
+            sb.append(',').append(md.getDirection().ordinal()).append(',').append(md.getPacketTimeInMs());
+            sb.append(',').append((md.getRtpEndpoint() == null || md.getRtpEndpoint().getPort() == 0) ? '0' : '1');
+
+            RtpPayloadTypeList payloadTypes = md.getRtpPayloadTypeList();
+            for (int i = 0; i < payloadTypes.size(); i++) {
+                int pt = payloadTypes.getInt(i);
+                SdpMediaMapping mapping = md.getMediaMappings().get(pt);
+
+                sb.append(';').append(pt);
+                if (mapping != null) {
+                    sb.append(':').append(mapping.getMediaCodec().ordinal());
+                    if (mapping.getMediaCodec() == SdpMediaCodecs.UNKNOWN) sb.append(mapping.getMediaEncodingString());
+                    sb.append('/').append(mapping.getSamplingFrequency()).append('/').append(mapping.getChannels());
+                    sb.append('/').append(mapping.getGenericFormatSpecificParameters());
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+}
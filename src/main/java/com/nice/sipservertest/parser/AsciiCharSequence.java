@@ -0,0 +1,114 @@
+package com.nice.sipservertest.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * read-only CharSequence view over ASCII bytes (each byte is one char, same mapping as ISO-8859-1)
+ * used to run the SDP parser straight over the raw SIP body - subSequence() returns another view over the same bytes
+ * and the String is only decoded (and then cached) the first time toString() is called
+ * NOTE:  the bytes are not copied, so the backing array/buffer must not be modified while any view is still in use
+ */
+public final class AsciiCharSequence implements CharSequence {
+
+    private final byte[] array;
+
+    private final ByteBuffer buffer;
+
+    private final int offset;
+
+    private final int length;
+
+    private String string;
+
+
+    public AsciiCharSequence(byte[] array, int offset, int length)
+    {
+        if (offset < 0 || length < 0 || offset > array.length - length)
+        {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array length " + array.length);
+        }
+
+        this.array = array;
+        this.buffer = null;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * view over the remaining bytes of the buffer (position to limit) - the buffer position is not changed
+     */
+    public AsciiCharSequence(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            this.array = buffer.array();
+            this.buffer = null;
+            this.offset = buffer.arrayOffset() + buffer.position();
+        }
+        else
+        {
+            this.array = null;
+            this.buffer = buffer;
+            this.offset = buffer.position();
+        }
+
+        this.length = buffer.remaining();
+    }
+
+    private AsciiCharSequence(byte[] array, ByteBuffer buffer, int offset, int length)
+    {
+        this.array = array;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= length)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+
+        return (char) ((array != null ? array[offset + index] : buffer.get(offset + index)) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > length || start > end)
+        {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+
+        return new AsciiCharSequence(array, buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (string == null)
+        {
+            if (array != null)
+            {
+                string = new String(array, offset, length, StandardCharsets.ISO_8859_1);
+            }
+            else
+            {
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) bytes[i] = buffer.get(offset + i);
+                string = new String(bytes, StandardCharsets.ISO_8859_1);
+            }
+        }
+
+        return string;
+    }
+}
@@ -0,0 +1,199 @@
+package com.nice.sipservertest.parser;
+
+import com.nice.sipservertest.dto.RecordingMetadata;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * streaming (StAX) parser for SIPREC recording metadata (RFC 7865, application/rs-metadata+xml)
+ * the document is read once, element by element, straight from the body bytes - no DOM is built and elements
+ * that are not part of RecordingMetadata (ex. associate-time, extension data) are skipped without being kept
+ * element names are matched on the local name only, so metadata with a missing or draft namespace is accepted
+ */
+public class RecordingMetadataParser {
+
+    // no DTDs and no external entities - the metadata comes from the network
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    /**
+     * parse metadata from the raw message bytes (ex. a multipart part slice of SIPMessage.getRawContent()) - the
+     * charset comes from the XML declaration (UTF-8 if there is none)
+     */
+    public static RecordingMetadata parse(byte[] buf, int off, int len) throws XMLStreamException
+    {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(buf, off, len));
+        try
+        {
+            return parse(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    public static RecordingMetadata parse(XMLStreamReader reader) throws XMLStreamException
+    {
+        RecordingMetadata metadata = new RecordingMetadata();
+
+        // participants by id - participantstreamassoc may come before the participant it refers to
+        Map<String, RecordingMetadata.Participant> participants = new HashMap<>();
+
+        RecordingMetadata.Session session = null;
+        RecordingMetadata.Participant participant = null;
+        RecordingMetadata.Stream stream = null;
+
+        while (reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                switch (reader.getLocalName())
+                {
+                    case "session":
+                        session = null;
+                        break;
+                    case "participant":
+                    case "participantstreamassoc":
+                        participant = null;
+                        break;
+                    case "stream":
+                        stream = null;
+                        break;
+                    default:
+                        break;
+                }
+                continue;
+            }
+
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+            switch (reader.getLocalName())
+            {
+                case "datamode":
+                    metadata.setDataMode(reader.getElementText().trim());
+                    break;
+
+                case "session":
+                    session = new RecordingMetadata.Session();
+                    session.setSessionId(attribute(reader, "session_id"));
+                    metadata.addSession(session);
+                    break;
+                case "sipSessionID":
+                    if (session != null && session.getSipSessionId() == null)
+                    {
+                        session.setSipSessionId(reader.getElementText().trim());
+                    }
+                    break;
+                case "group-ref":
+                    if (session != null)
+                    {
+                        session.setGroupId(reader.getElementText().trim());
+                    }
+                    break;
+
+                case "participant":
+                    participant = getParticipant(metadata, participants, attribute(reader, "participant_id"));
+                    break;
+                case "participantstreamassoc":
+                    participant = getParticipant(metadata, participants, attribute(reader, "participant_id"));
+                    break;
+                case "nameID":
+                    if (participant != null)
+                    {
+                        participant.setAor(attribute(reader, "aor"));
+                    }
+                    break;
+                case "aor":
+                    // pre RFC 7865 drafts
+                    if (participant != null && participant.getAor() == null)
+                    {
+                        participant.setAor(reader.getElementText().trim());
+                    }
+                    break;
+                case "name":
+                    if (participant != null && participant.getName() == null)
+                    {
+                        participant.setName(reader.getElementText().trim());
+                    }
+                    break;
+                // send and recv are children of participantstreamassoc (children of participant in the drafts)
+                case "send":
+                    if (participant != null)
+                    {
+                        participant.getSendStreamIds().add(reader.getElementText().trim());
+                    }
+                    break;
+                case "recv":
+                case "receive":
+                    if (participant != null)
+                    {
+                        participant.getRecvStreamIds().add(reader.getElementText().trim());
+                    }
+                    break;
+
+                case "stream":
+                    stream = new RecordingMetadata.Stream();
+                    stream.setStreamId(attribute(reader, "stream_id"));
+                    stream.setSessionId(attribute(reader, "session_id"));
+                    metadata.addStream(stream);
+                    break;
+                case "label":
+                    if (stream != null)
+                    {
+                        stream.setLabel(reader.getElementText().trim());
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return metadata;
+    }
+
+    private static RecordingMetadata.Participant getParticipant(RecordingMetadata metadata,
+                                                                Map<String, RecordingMetadata.Participant> participants,
+                                                                String participantId)
+    {
+        RecordingMetadata.Participant participant = (participantId == null) ? null : participants.get(participantId);
+
+        if (participant == null)
+        {
+            participant = new RecordingMetadata.Participant();
+            participant.setParticipantId(participantId);
+            metadata.addParticipant(participant);
+
+            if (participantId != null) participants.put(participantId, participant);
+        }
+
+        return participant;
+    }
+
+    // attributes are not namespace qualified in RFC 7865, older drafts used "id"
+    private static String attribute(XMLStreamReader reader, String name)
+    {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) value = reader.getAttributeValue(null, "id");
+
+        return value;
+    }
+
+    private static XMLInputFactory createInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        return factory;
+    }
+}
@@ -0,0 +1,324 @@
+package com.nice.sipservertest.parser;
+
+/**
+ * forward-only cursor over the "x=value" lines of an SDP body (see RFC 4566 section 5)
+ * the body is walked exactly once and nothing is split, copied or matched with a regex - callers get the type
+ * character of the current line and the offsets of its value, and only materialize the pieces they actually keep
+ * lines that are not of the "x=value" form (or have an empty value) are skipped, same as the previous regex parser
+ */
+public class SdpLineCursor {
+
+    /**
+     * returned by the number parsing helpers when the text is not a valid number
+     */
+    public static final int INVALID_INT = Integer.MIN_VALUE;
+
+    public static final long INVALID_LONG = Long.MIN_VALUE;
+
+    private final CharSequence text;
+
+    private final int end;
+
+    private int position;
+
+    private boolean hasLine;
+
+    private char type;
+
+    private int lineStart;
+
+    private int valueStart;
+
+    private int valueEnd;
+
+
+    public SdpLineCursor(CharSequence text)
+    {
+        this(text, 0, text.length());
+    }
+
+    public SdpLineCursor(CharSequence text, int start, int end)
+    {
+        this.text = text;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * advance to the next well formed SDP line
+     * note:  RFC 4566 section 5 asks parsers to also accept a bare LF as the line terminator, so a CR is optional
+     * @return true if the cursor is positioned on a line, false if the end of the body was reached
+     */
+    public boolean next()
+    {
+        while (position < end)
+        {
+            int start = position;
+            int eol = start;
+            while (eol < end && text.charAt(eol) != '\n') eol++;
+
+            position = (eol < end) ? eol + 1 : end;
+
+            int stop = eol;
+            if (stop > start && text.charAt(stop - 1) == '\r') stop--;
+
+            if (stop - start < 3 || text.charAt(start) == '=' || text.charAt(start + 1) != '=' ||
+                    indexOf('\r', start + 2, stop) >= 0)
+            {
+                // TXDO - might want to provide feedback on the skip for troubleshooting
+                continue;
+            }
+
+            type = text.charAt(start);
+            lineStart = start;
+            valueStart = start + 2;
+            valueEnd = stop;
+            hasLine = true;
+            return true;
+        }
+
+        type = 0;
+        lineStart = end;
+        valueStart = end;
+        valueEnd = end;
+        hasLine = false;
+        return false;
+    }
+
+    /**
+     * @return true if the last call to next() positioned the cursor on a line
+     */
+    public boolean hasLine()
+    {
+        return hasLine;
+    }
+
+    /**
+     * @return SDP type character of the current line (the 'x' in "x=value")
+     */
+    public char type()
+    {
+        return type;
+    }
+
+    public CharSequence text()
+    {
+        return text;
+    }
+
+    /**
+     * @return end offset of the text this cursor walks
+     */
+    public int end()
+    {
+        return end;
+    }
+
+    public int lineStart()
+    {
+        return lineStart;
+    }
+
+    public int valueStart()
+    {
+        return valueStart;
+    }
+
+    public int valueEnd()
+    {
+        return valueEnd;
+    }
+
+    /**
+     * @return the value of the current line (everything after the '=')
+     */
+    public String value()
+    {
+        return substring(valueStart, valueEnd);
+    }
+
+    /**
+     * @return the value of the current line as a view over the parsed text (not materialized if the text is a view itself)
+     */
+    public CharSequence valueText()
+    {
+        return text.subSequence(valueStart, valueEnd);
+    }
+
+    public String substring(int from, int to)
+    {
+        return text.subSequence(from, to).toString();
+    }
+
+    public CharSequence subSequence(int from, int to)
+    {
+        return text.subSequence(from, to);
+    }
+
+    public boolean valueEquals(String s)
+    {
+        return regionEquals(valueStart, valueEnd, s, false);
+    }
+
+    /**
+     * @return true if the text in [from, to) is exactly the given string
+     */
+    public boolean regionEquals(int from, int to, String s, boolean ignoreCase)
+    {
+        return to - from == s.length() && regionMatches(from, to, s, ignoreCase);
+    }
+
+    /**
+     * @return true if the text in [from, to) starts with the given string
+     */
+    public boolean regionMatches(int from, int to, String s, boolean ignoreCase)
+    {
+        if (to - from < s.length()) return false;
+
+        for (int i = 0; i < s.length(); i++)
+        {
+            char a = text.charAt(from + i);
+            char b = s.charAt(i);
+
+            if (a != b && (!ignoreCase || toLowerAscii(a) != toLowerAscii(b))) return false;
+        }
+
+        return true;
+    }
+
+    public int indexOf(char c, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (text.charAt(i) == c) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return offset of the first character in [from, to) that is not a space or tab
+     */
+    public int skipBlanks(int from, int to)
+    {
+        while (from < to && isBlank(text.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * @return offset of the first space or tab in [from, to) (or 'to' if there is none)
+     */
+    public int tokenEnd(int from, int to)
+    {
+        while (from < to && !isBlank(text.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * @return offset of the first character in [from, to) that is not an ASCII digit
+     */
+    public int digitsEnd(int from, int to)
+    {
+        while (from < to && isDigit(text.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * @return offset of the first character in [from, to) that is not an SDP token character ([a-zA-Z0-9-])
+     */
+    public int tokenCharsEnd(int from, int to)
+    {
+        while (from < to && isTokenChar(text.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * parse [from, to) the same way Integer.parseInt does (optional sign followed by ASCII digits)
+     * @return parsed value or INVALID_INT if the text is not a valid int
+     */
+    public int parseInt(int from, int to)
+    {
+        long v = parseLong(from, to);
+
+        if (v == INVALID_LONG || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) return INVALID_INT;
+
+        return (int) v;
+    }
+
+    /**
+     * parse [from, to) the same way Long.parseLong does (optional sign followed by ASCII digits)
+     * @return parsed value or INVALID_LONG if the text is not a valid long
+     */
+    public long parseLong(int from, int to)
+    {
+        if (from >= to) return INVALID_LONG;
+
+        boolean negative = false;
+        char first = text.charAt(from);
+        if (first == '-' || first == '+')
+        {
+            negative = first == '-';
+            from++;
+
+            if (from == to) return INVALID_LONG;
+        }
+
+        // accumulate negatively so Long.MIN_VALUE doesn't overflow (same approach as Long.parseLong)
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (int i = from; i < to; i++)
+        {
+            char c = text.charAt(i);
+            if (!isDigit(c)) return INVALID_LONG;
+
+            int digit = c - '0';
+            if (result < multiplyLimit) return INVALID_LONG;
+
+            result *= 10;
+            if (result < limit + digit) return INVALID_LONG;
+
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /**
+     * ASCII case-insensitive comparison that works on any CharSequence (so parsed text doesn't have to become a String first)
+     */
+    public static boolean equalsIgnoreCase(CharSequence s, String other)
+    {
+        if (s.length() != other.length()) return false;
+
+        for (int i = 0; i < other.length(); i++)
+        {
+            char a = s.charAt(i);
+            char b = other.charAt(i);
+
+            if (a != b && toLowerAscii(a) != toLowerAscii(b)) return false;
+        }
+
+        return true;
+    }
+
+    public static boolean isBlank(char c)
+    {
+        return c == ' ' || c == '\t';
+    }
+
+    public static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    public static boolean isTokenChar(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '-';
+    }
+
+    public static char toLowerAscii(char c)
+    {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -2,322 +2,415 @@ package com.nice.sipservertest.parser;
 
 import com.nice.sipservertest.dto.*;
 import com.nice.sipservertest.factory.SdpMediaDescriptorFactory;
+import com.nice.sipservertest.util.DnsResolverCache;
+import com.nice.sipservertest.util.InetAddressLiterals;
 
 import java.net.InetAddress;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class SdpMessageParser {
 
-    public final static String SdpEOLPattern = "\\r\\n";
-
-    static final Pattern sdpLineRegex = Pattern.compile("^([^=])=(.+)$");
-
-    static final Pattern sdpConnectLineRegex = Pattern.compile("^IN[ \\t]+(IP4|IP6)[ \\t]+(.+)$");
-
-    static final Pattern sdpOriginLineRegex = Pattern.compile("^([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)$");
-
-    static final Pattern sdpAttributeLineRegex = Pattern.compile("^([^:]+)(:(.+))?$");
-
     public static SdpMessage parse(String messageString)
     {
-        SdpMessage msg = new SdpMessage();
-
-        String[] msgLines = messageString.split(SdpEOLPattern, 0);
-
-        SdpMessageStates state = SdpMessageStates.SESSION;
-        List<String> currentMediaObject = new ArrayList<>();
-        for (String msgLine : msgLines)
-        {
-            Matcher m = sdpLineRegex.matcher(msgLine);
-            if (!m.find() || m.groupCount() < 2) continue;  // TXDO - might want to provide feedback on the skip for troubleshooting
-
-            char cmdCode = m.group(1).charAt(0);
-            String msgLineBody = m.group(2);
-
-            switch(cmdCode)
-            {
-                case 'v':       // session only - SDP version
-                    // if the 'v' command is in the session info and not zero, then fail to parse
-                    // otherwise, just ignore it
-                    if (state == SdpMessageStates.SESSION && !msgLineBody.equals("0")) {
-                        throw new SdpParseException(SdpParserErrorTypes.INVALID_SDP_VERSION,
-                                "Invalid SDP session version number (only zero allowed)");
-                    }
-
-                    msg.setHasVersion(true);
-                    break;
-
-                case 'o':       // session only - originator info
-                    Matcher mo = sdpOriginLineRegex.matcher(msgLineBody);
+        return parse(new SdpLineCursor(messageString));
+    }
 
-                    if (!mo.find() || mo.groupCount() < 6) break;
+    /**
+     * parse an ASCII SDP body straight from the raw message bytes (ex. SIPMessage.getRawContent()) without decoding
+     * it into a String first - string fields of the result are views over the buffer that are only decoded when read
+     * NOTE:  the buffer must not be modified while the parsed message is in use
+     */
+    public static SdpMessage parse(byte[] buf, int off, int len)
+    {
+        return parse(new SdpLineCursor(new AsciiCharSequence(buf, off, len)));
+    }
 
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        String user = mo.group(1);
-                        if (user == null || user.isEmpty() || user.equals("-")) {
-                            msg.originUsername = null;
-                        } else {
-                            msg.originUsername = user;
-                        }
+    /**
+     * pooled version of parse(byte[], int, int) - the message and its media descriptors are borrowed from the pool
+     * and must be handed back with pool.release(msg) once the message is no longer used
+     */
+    public static SdpMessage parse(byte[] buf, int off, int len, SdpObjectPool pool)
+    {
+        return parse(new SdpLineCursor(new AsciiCharSequence(buf, off, len)), pool);
+    }
 
-                        try {
-                            msg.originSessionId = Long.parseLong(mo.group(2));
-                        } catch (Exception e) {
-                        }
+    /**
+     * parse an ASCII SDP body from the remaining bytes of the buffer (the buffer position is not changed)
+     * NOTE:  the buffer must not be modified while the parsed message is in use
+     */
+    public static SdpMessage parse(ByteBuffer buf)
+    {
+        return parse(new SdpLineCursor(new AsciiCharSequence(buf)));
+    }
 
-                        try {
-                            msg.originSessionVersion = Long.parseLong(mo.group(3));
-                        } catch (Exception e) {
-                        }
+    /**
+     * lazy version of parse(String) - see parse(SdpLineCursor, boolean)
+     */
+    public static SdpMessage parseLazy(String messageString)
+    {
+        return parse(new SdpLineCursor(messageString), true);
+    }
 
-                        if (mo.group(5).equals("IP4")) {
+    /**
+     * lazy version of parse(byte[], int, int) - see parse(SdpLineCursor, boolean)
+     */
+    public static SdpMessage parseLazy(byte[] buf, int off, int len)
+    {
+        return parse(new SdpLineCursor(new AsciiCharSequence(buf, off, len)), true);
+    }
 
-                            msg.originAddressType = SdpAddressTypes.IPV4;
-                        } else {
+    public static SdpMessage parse(SdpLineCursor cursor)
+    {
+        return parse(cursor, false, null);
+    }
 
-                            msg.originAddressType = SdpAddressTypes.IPV6;
-                        }
+    public static SdpMessage parse(SdpLineCursor cursor, SdpObjectPool pool)
+    {
+        return parse(cursor, false, pool);
+    }
 
-                        msg.originUnicastAddress = mo.group(6);
+    public static SdpMessage parse(SdpLineCursor cursor, boolean lazyMediaDescriptions)
+    {
+        return parse(cursor, lazyMediaDescriptions, null);
+    }
 
-                        msg.setHasOriginator(true);
-                    }
-                    break;
+    /**
+     * parse an SDP message in a single pass over the line cursor
+     * session level lines are handled here, each m= section is handed to the media descriptor factory which consumes
+     * its lines and leaves the cursor on the next m= line
+     * in lazy mode the m= sections are only indexed (line offsets) and each media descriptor is decoded the first
+     * time it is accessed through getMediaDescriptions() - message validity still comes from the session lines
+     * with a pool the message and media descriptors are borrowed from it instead of allocated (lazily decoded
+     * descriptors are always allocated, the pool only takes them back)
+     */
+    public static SdpMessage parse(SdpLineCursor cursor, boolean lazyMediaDescriptions, SdpObjectPool pool)
+    {
+        SdpMessage msg = (pool != null) ? pool.borrowMessage() : new SdpMessage();
 
-                case 's':       // session only - session name
-                    // if we're in session state and the session isn't set to the default ('-'), then update it
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        if (!msgLineBody.equals("-")) msg.sessionName = msgLineBody;
+        boolean hasLine = cursor.next();
 
-                        msg.setHasSessionName(true);
-                    }
-                    break;
+        // session description - everything up to the first m= line
+        while (hasLine && cursor.type() != 'm')
+        {
+            parseSessionLine(cursor, msg);
+            hasLine = cursor.next();
+        }
 
-                case 'c':       // session and media - session IP info
-                    if (state == SdpMessageStates.SESSION)
+        // media descriptions
+        if (lazyMediaDescriptions)
+        {
+            indexMediaSections(cursor, msg);
+        }
+        else
+        {
+            while (hasLine)
+            {
+                if (pool != null)
+                {
+                    SdpMediaDescriptor pooled = pool.borrowMediaDescriptor();
+                    if (SdpMediaDescriptorFactory.parse(cursor, msg.connectionAddress, pooled) != null)
                     {
-                        msg.connectionAddress = parseSdpConnectionString(msgLineBody);
+                        msg.addMediaDescription(pooled);
                     }
                     else
                     {
-                        currentMediaObject.add(msgLine);
+                        pool.release(pooled);
                     }
-                    break;
-
-                case 't':       // session only - session time (only support t=0 0)
-                    // basically ignore this in the parser - hopefully it's a '0 0', but we wouldn't do anything if it wasn't anyway...
-                    if (state == SdpMessageStates.SESSION)
+                }
+                else
+                {
+                    SdpMediaDescriptor md = SdpMediaDescriptorFactory.parse(cursor, msg.connectionAddress);
+                    if (md != null)
                     {
-                        msg.setHasTimeDescription(true);
+                        msg.addMediaDescription(md);
                     }
+                }
 
-                    break;
-
-                case 'a':       // session and media - attirbute
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        // parse session level attributes
-                        parseSessionAttributes(msgLineBody, msg);
-                    }
-                    else
-                    {
-                        currentMediaObject.add(msgLine);
-                    }
-                    break;
+                hasLine = cursor.hasLine();
+            }
+        }
 
-                case 'm':       // media only - main media info line for media descriptor
-                    // if there's a previous media descriptor, then parse it and add it to the message collection
-                    if (currentMediaObject.stream().count() > 0)
-                    {
-                        try {
+        if (msg.isHasVersion() && msg.isHasOriginator() && msg.isHasSessionName() && msg.isHasTimeDescription())
+        {
+            msg.setValid(true);
+        }
 
-                            msg.addMediaDescription(SdpMediaDescriptorFactory.parse(currentMediaObject, msg.connectionAddress));
-                        } catch(Exception e) {
-                        }
-                    }
+        return msg;
+    }
 
-                    state = SdpMessageStates.MEDIA;
-                    currentMediaObject.clear();
+    private static void indexMediaSections(SdpLineCursor cursor, SdpMessage msg)
+    {
+        int[] sectionStart = new int[4];
+        int[] sectionEnd = new int[4];
+        int count = 0;
 
-                    currentMediaObject.add(msgLine);
-                    break;
+        while (cursor.hasLine())
+        {
+            int start = cursor.lineStart();
+            boolean valid = SdpMediaDescriptorFactory.isValidMediaLine(cursor);
 
-                case 'i':       // session and media - info
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        msg.sessionInformation = msgLineBody;
-                    }
-                    else
-                    {
-                        currentMediaObject.add(msgLine);
-                    }
-                    break;
+            // skip to the next m= line
+            while (cursor.next() && cursor.type() != 'm') ;
 
-                case 'u':       // session only - URL
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        try
-                        {
-                            msg.sessionUri = URI.create(msgLineBody);
-                        } catch(Exception e) {
-
-                            // if we have an error in parsing, then just move on
-                            // we will almost certainly not use this option so no point in error handling
-                        }
-                    }
-                    break;
+            if (!valid) continue;
 
-                case 'e':       // session only - email
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        msg.addSessionEmailAddress(msgLineBody);
-                    }
-                    break;
-
-                case 'p':       // session only - phone number
-                    if (state == SdpMessageStates.SESSION)
-                    {
-                        msg.addSessionPhoneNumber(msgLineBody);
-                    }
-                    break;
+            if (count == sectionStart.length)
+            {
+                sectionStart = Arrays.copyOf(sectionStart, count * 2);
+                sectionEnd = Arrays.copyOf(sectionEnd, count * 2);
             }
+
+            sectionStart[count] = start;
+            sectionEnd[count] = cursor.hasLine() ? cursor.lineStart() : cursor.end();
+            count++;
         }
 
-        // if there's a previous media descriptor, then parse it and add it to the message collection
-        if (currentMediaObject.size() > 0)
-        {
-            try {
-                msg.addMediaDescription(SdpMediaDescriptorFactory.parse(currentMediaObject, msg.connectionAddress));
-            } catch(Exception e) {
+        CharSequence text = cursor.text();
+        InetAddress connectionAddress = msg.connectionAddress;
+        int[] starts = sectionStart;
+        int[] ends = sectionEnd;
 
-            }
-        }
+        msg.setLazyMediaDescriptions(new LazySdpMediaDescriptorList(count, i -> {
+            SdpLineCursor sectionCursor = new SdpLineCursor(text, starts[i], ends[i]);
+            sectionCursor.next();
+            return SdpMediaDescriptorFactory.parse(sectionCursor, connectionAddress);
+        }));
+    }
 
-        if (msg.isHasVersion() && msg.isHasOriginator() && msg.isHasSessionName() && msg.isHasTimeDescription())
+    private static void parseSessionLine(SdpLineCursor cursor, SdpMessage msg)
+    {
+        switch(cursor.type())
         {
-            msg.setValid(true);
+            case 'v':       // session only - SDP version
+                // if the 'v' command is in the session info and not zero, then fail to parse
+                if (!cursor.valueEquals("0")) {
+                    throw new SdpParseException(SdpParserErrorTypes.INVALID_SDP_VERSION,
+                            "Invalid SDP session version number (only zero allowed)");
+                }
+
+                msg.setHasVersion(true);
+                break;
+
+            case 'o':       // session only - originator info
+                parseOrigin(cursor, msg);
+                break;
+
+            case 's':       // session only - session name
+                // if the session isn't set to the default ('-'), then update it
+                if (!cursor.valueEquals("-")) msg.setSessionName(cursor.valueText());
+
+                msg.setHasSessionName(true);
+                break;
+
+            case 'c':       // session and media - session IP info
+                msg.connectionAddress = parseSdpConnectionString(cursor, cursor.valueStart(), cursor.valueEnd());
+                break;
+
+            case 't':       // session only - session time (only support t=0 0)
+                // basically ignore this in the parser - hopefully it's a '0 0', but we wouldn't do anything if it wasn't anyway...
+                msg.setHasTimeDescription(true);
+                break;
+
+            case 'a':       // session and media - attirbute
+                parseSessionAttributes(cursor, msg);
+                break;
+
+            case 'i':       // session and media - info
+                msg.setSessionInformation(cursor.valueText());
+                break;
+
+            case 'u':       // session only - URL
+                try
+                {
+                    msg.sessionUri = URI.create(cursor.value());
+                } catch(Exception e) {
+
+                    // if we have an error in parsing, then just move on
+                    // we will almost certainly not use this option so no point in error handling
+                }
+                break;
+
+            case 'e':       // session only - email
+                msg.addSessionEmailAddress(cursor.value());
+                break;
+
+            case 'p':       // session only - phone number
+                msg.addSessionPhoneNumber(cursor.value());
+                break;
         }
-
-        return msg;
     }
 
-    public static InetAddress parseSdpConnectionString(String messageLineBody)
+    /**
+     * parse the origin line - "<username> <sess-id> <sess-version> <nettype> <addrtype> <unicast-address>"
+     * (RFC 4566 section 5.2), lines without exactly six fields are ignored
+     */
+    private static void parseOrigin(SdpLineCursor cursor, SdpMessage msg)
     {
-        Matcher m = sdpConnectLineRegex.matcher(messageLineBody);
+        int[] fieldStart = new int[6];
+        int[] fieldEnd = new int[6];
 
-        if (!m.find() || m.groupCount() < 2)
+        int end = cursor.valueEnd();
+        int p = cursor.valueStart();
+        for (int i = 0; i < 6; i++)
         {
-            return null;
+            int fieldEndOffset = cursor.tokenEnd(p, end);
+            if (fieldEndOffset == p) return;
+
+            fieldStart[i] = p;
+            fieldEnd[i] = fieldEndOffset;
+
+            p = cursor.skipBlanks(fieldEndOffset, end);
+            if (i < 5 && (p == fieldEndOffset || p == end)) return;
         }
 
-        InetAddress ip;
+        if (fieldEnd[5] != end) return;
 
-        try {
+        if (cursor.regionEquals(fieldStart[0], fieldEnd[0], "-", false)) {
+            msg.setOriginUsername((String) null);
+        } else {
+            msg.setOriginUsername(cursor.subSequence(fieldStart[0], fieldEnd[0]));
+        }
 
-            ip = InetAddress.getByName(m.group(2));
-        } catch(Exception e) {
+        long sessionId = cursor.parseLong(fieldStart[1], fieldEnd[1]);
+        if (sessionId != SdpLineCursor.INVALID_LONG) msg.originSessionId = sessionId;
 
-            return null;
+        long sessionVersion = cursor.parseLong(fieldStart[2], fieldEnd[2]);
+        if (sessionVersion != SdpLineCursor.INVALID_LONG) msg.originSessionVersion = sessionVersion;
+
+        if (cursor.regionEquals(fieldStart[4], fieldEnd[4], "IP4", false)) {
+
+            msg.originAddressType = SdpAddressTypes.IPV4;
+        } else {
+
+            msg.originAddressType = SdpAddressTypes.IPV6;
         }
 
-        return ip;
+        msg.setOriginUnicastAddress(cursor.subSequence(fieldStart[5], fieldEnd[5]));
+
+        msg.setHasOriginator(true);
     }
 
-    private static void parseSessionAttributes(String msgLineBody, SdpMessage msg)
+    /**
+     * host names (IP literals left out) of the c= lines and a=rtcp addresses of an ASCII SDP body - the names parsing
+     * the body looks up in the DnsResolverCache, so a caller can resolveAsync them and parse again once they are in
+     */
+    public static List<String> connectionHostNames(byte[] buf, int off, int len)
     {
-        Matcher m = sdpAttributeLineRegex.matcher(msgLineBody);
-
-        if (!m.find()) return;
+        SdpLineCursor cursor = new SdpLineCursor(new AsciiCharSequence(buf, off, len));
+        List<String> hosts = new ArrayList<>(2);
 
-        if (m.groupCount() == 2)
+        while (cursor.next())
         {
-            // flag type attributes
-            String flag = m.group(1);
+            int from = cursor.valueStart();
+            int to = cursor.valueEnd();
+            int addrStart = -1;
 
-            switch(flag)
+            if (cursor.type() == 'c')
+            {
+                addrStart = SdpMediaDescriptorFactory.connectionAddressStart(cursor, from, to);
+            }
+            else if (cursor.type() == 'a' && cursor.regionMatches(from, to, "rtcp:", true))
             {
-                case SdpMediaDescriptorFactory.SDP_ATTRIB_RECVONLY:
-                    msg.direction = SdpMediaDirection.RECEIVE_ONLY;
-                    break;
+                // "rtcp:<port> IN IP4 <address>"
+                int portEnd = cursor.digitsEnd(from + 5, to);
+                int netTypeStart = cursor.skipBlanks(portEnd, to);
+                if (netTypeStart > portEnd) addrStart = SdpMediaDescriptorFactory.connectionAddressStart(cursor, netTypeStart, to);
+            }
 
-                case SdpMediaDescriptorFactory.SDP_ATTRIB_SENDRECV:
-                    msg.direction = SdpMediaDirection.SEND_RECEIVE;
-                    break;
+            if (addrStart >= 0 && InetAddressLiterals.parse(cursor.text(), addrStart, to) == null &&
+                    InetAddressLiterals.isHostName(cursor.text(), addrStart, to))
+            {
+                String host = cursor.substring(addrStart, to);
+                if (!hosts.contains(host)) hosts.add(host);
+            }
+        }
 
-                case SdpMediaDescriptorFactory.SDP_ATTRIB_SENDONLY:
-                    msg.direction = SdpMediaDirection.SEND_ONLY;
-                    break;
+        return hosts;
+    }
 
-                case SdpMediaDescriptorFactory.SDP_ATTRIB_INACTIVE:
-                    msg.direction = SdpMediaDirection.INACTIVE;
-                    break;
+    public static InetAddress parseSdpConnectionString(String messageLineBody)
+    {
+        SdpLineCursor cursor = new SdpLineCursor("c=" + messageLineBody);
 
-            }
-        }
-        else if (m.groupCount() == 3)
-        {
-            // type/value attributes
-            String cmd = m.group(1);
+        if (!cursor.next()) return null;
 
-            switch(cmd)
-            {
-                case "cat":
-                    msg.category = m.group(3);
-                    break;
+        return parseSdpConnectionString(cursor, cursor.valueStart(), cursor.valueEnd());
+    }
 
-                case "tool":
-                    msg.tool = m.group(3);
-                    break;
+    public static InetAddress parseSdpConnectionString(SdpLineCursor cursor, int from, int to)
+    {
+        int addrStart = SdpMediaDescriptorFactory.connectionAddressStart(cursor, from, to);
 
-                case "type":
-                    switch (m.group(3).toLowerCase())
-                    {
-                        case "broadcast":
-                            msg.conferenceType = SdpMediaConferenceTypes.BROADCAST;
-                            break;
+        if (addrStart < 0)
+        {
+            return null;
+        }
 
-                        case "h332":
-                            msg.conferenceType = SdpMediaConferenceTypes.H332;
-                            break;
+        // literals are parsed in place, host names come from the resolver cache (null until they have been resolved)
+        return DnsResolverCache.getDefault().resolve(cursor.text(), addrStart, to);
+    }
 
-                        case "meeting":
-                            msg.conferenceType = SdpMediaConferenceTypes.MEETING;
-                            break;
+    /**
+     * parse a session level attribute - "<name>[:<value>]"
+     */
+    private static void parseSessionAttributes(SdpLineCursor cursor, SdpMessage msg)
+    {
+        int start = cursor.valueStart();
+        int end = cursor.valueEnd();
 
-                        case "moderated":
-                            msg.conferenceType = SdpMediaConferenceTypes.MODERATED;
-                            break;
+        int colon = cursor.indexOf(':', start, end);
+        if (colon == start || colon == end - 1) return;
 
-                        case "test":
-                            msg.conferenceType = SdpMediaConferenceTypes.TEST;
-                            break;
-                    }
-                    break;
+        int nameEnd = (colon < 0) ? end : colon;
+        int valueStart = nameEnd + 1;
+        boolean hasValue = colon >= 0;
 
-                case "charset":
-                    switch (m.group(3).toUpperCase())
-                    {
-                        case "ISO-10646":
-                            // leaving this here since the default could change in the future
-                            msg.charset = SdpCharsets.ISO_10646;
-                            break;
-
-                        case "ISO-8859-1":
-                            msg.charset = SdpCharsets.ISO_8859_1;
-                            break;
-
-                        default:
-                            // nothing was specified in the SDP message so use default per RFC 4566
-                            msg.charset = SdpCharsets.ISO_10646;
-                            break;
-                    }
-                    break;
+        // type/value attributes
+        if (cursor.regionEquals(start, nameEnd, "cat", false))
+        {
+            msg.setCategory(hasValue ? cursor.subSequence(valueStart, end) : null);
+        }
+        else if (cursor.regionEquals(start, nameEnd, "tool", false))
+        {
+            msg.setTool(hasValue ? cursor.subSequence(valueStart, end) : null);
+        }
+        else if (hasValue && cursor.regionEquals(start, nameEnd, SdpMediaDescriptorFactory.SDP_ATTRIB_CONFERENCE_TYPE, false))
+        {
+            if (cursor.regionEquals(valueStart, end, "broadcast", true))
+            {
+                msg.conferenceType = SdpMediaConferenceTypes.BROADCAST;
+            }
+            else if (cursor.regionEquals(valueStart, end, "h332", true))
+            {
+                msg.conferenceType = SdpMediaConferenceTypes.H332;
+            }
+            else if (cursor.regionEquals(valueStart, end, "meeting", true))
+            {
+                msg.conferenceType = SdpMediaConferenceTypes.MEETING;
+            }
+            else if (cursor.regionEquals(valueStart, end, "moderated", true))
+            {
+                msg.conferenceType = SdpMediaConferenceTypes.MODERATED;
+            }
+            else if (cursor.regionEquals(valueStart, end, "test", true))
+            {
+                msg.conferenceType = SdpMediaConferenceTypes.TEST;
+            }
+        }
+        else if (hasValue && cursor.regionEquals(start, nameEnd, "charset", false))
+        {
+            if (cursor.regionEquals(valueStart, end, "ISO-8859-1", true))
+            {
+                msg.charset = SdpCharsets.ISO_8859_1;
+            }
+            else
+            {
+                // ISO-10646 or nothing usable was specified in the SDP message so use default per RFC 4566
+                msg.charset = SdpCharsets.ISO_10646;
             }
         }
     }
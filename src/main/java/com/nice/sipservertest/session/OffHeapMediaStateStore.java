@@ -0,0 +1,427 @@
+package com.nice.sipservertest.session;
+
+import com.nice.sipservertest.dto.MediaChannel;
+import com.nice.sipservertest.dto.MediaChannelStates;
+import com.nice.sipservertest.dto.MediaChannelTypes;
+import com.nice.sipservertest.dto.MediaCodec;
+import com.nice.sipservertest.dto.MediaCodecTypes;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * per-call media state (MediaChannel list) packed into fixed-width slots outside the Java heap, so hundreds of
+ * thousands of calls do not keep millions of InetSocketAddress/MediaCodec/String objects alive
+ * the arena is split into segments (direct ByteBuffers, or regions of a memory-mapped file), each an open
+ * addressing table (linear probing, backward shift delete) keyed by a 64 bit hash of the Call-ID with its own
+ * StampedLock - reads are optimistic and only take the read lock if a write raced them
+ * MediaChannel objects are decoded on demand by get()
+ * a slot holds per channel: state, type, RTP and RTCP endpoints, and for each codec its payload type and codec
+ * type - fmtp strings are not kept
+ * put() returns false for state that does not fit a slot (Call-ID longer than MAX_CALL_ID_BYTES, more channels or
+ * codecs than the slot was sized for, unresolved address) or when the segment is full, the caller keeps that call
+ * on the heap
+ */
+public class OffHeapMediaStateStore implements AutoCloseable {
+
+    public static final int MAX_CALL_ID_BYTES = 128;
+
+    private static final int SEGMENTS = 64;
+
+    private static final int SEGMENT_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+
+    // slot header
+    private static final int USED = 0;
+    private static final int CALL_ID_LENGTH = 1;
+    private static final int CHANNEL_COUNT = 2;
+    private static final int HASH = 8;
+    private static final int CALL_ID = 16;
+    private static final int CHANNELS = CALL_ID + MAX_CALL_ID_BYTES;
+
+    // channel
+    private static final int STATE = 0;
+    private static final int TYPE = 1;
+    private static final int RTP = 2;
+    private static final int RTCP = RTP + 19;
+    private static final int CODEC_COUNT = RTCP + 19;
+    private static final int CODECS = CODEC_COUNT + 1;
+
+    // endpoint - address length (0 = no endpoint, 4 or 16), address, port
+    private static final int ENDPOINT_ADDRESS = 1;
+    private static final int ENDPOINT_PORT = 17;
+
+    private static final byte NONE = (byte) 0xff;
+
+    private static final MediaChannelStates[] STATES = MediaChannelStates.values();
+    private static final MediaChannelTypes[] TYPES = MediaChannelTypes.values();
+    private static final MediaCodecTypes[] CODEC_TYPES = MediaCodecTypes.values();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final int maxChannels;
+
+    private final int maxCodecs;
+
+    private final int channelSize;
+
+    private final int slotSize;
+
+    private final FileChannel file;
+
+    private final ThreadLocal<byte[]> slotCopy;
+
+    private final class Segment {
+
+        final StampedLock lock = new StampedLock();
+
+        final ByteBuffer buffer;
+
+        final int mask;
+
+        final int maxSize;
+
+        int size;
+
+        Segment(ByteBuffer buffer, int slots) {
+            this.buffer = buffer;
+            this.mask = slots - 1;
+            this.maxSize = slots - slots / 4;
+        }
+    }
+
+    /**
+     * @param capacity    number of calls - each segment is sized so the table stays at most 3/4 full
+     * @param maxChannels media channels kept per call
+     * @param maxCodecs   codecs kept per channel
+     * @param mappedFile  back the arena with this file (memory-mapped) instead of direct buffers, null for direct
+     */
+    public OffHeapMediaStateStore(int capacity, int maxChannels, int maxCodecs, Path mappedFile) throws IOException {
+        if (capacity < 1 || maxChannels < 1 || maxChannels > 127 || maxCodecs < 1 || maxCodecs > 127) {
+            throw new IllegalArgumentException(String.format("Invalid off-heap store geometry (capacity=%d, channels=%d, codecs=%d)",
+                    capacity, maxChannels, maxCodecs));
+        }
+
+        this.maxChannels = maxChannels;
+        this.maxCodecs = maxCodecs;
+        this.channelSize = CODECS + 2 * maxCodecs;
+        this.slotSize = (CHANNELS + maxChannels * channelSize + 7) & ~7;
+        this.slotCopy = ThreadLocal.withInitial(() -> new byte[slotSize]);
+
+        int perSegment = (int) Math.ceil(capacity / (double) SEGMENTS * 4 / 3);
+        int slots = Integer.highestOneBit(Math.max(perSegment, 2) - 1) << 1;
+        long segmentBytes = (long) slots * slotSize;
+        if (segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Off-heap store capacity " + capacity + " is too large");
+        }
+
+        this.file = (mappedFile == null) ? null : FileChannel.open(mappedFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            ByteBuffer buffer = (file == null) ? ByteBuffer.allocateDirect((int) segmentBytes) :
+                    file.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            segments[i] = new Segment(buffer, slots);
+        }
+    }
+
+    /**
+     * store (or replace) the media state of a call
+     * @return false if the state does not fit a slot or the segment is full - nothing is stored then, and an
+     * earlier state of the call is removed
+     */
+    public boolean put(String callId, List<MediaChannel> mediaChannels) {
+        byte[] key = callId.getBytes(StandardCharsets.UTF_8);
+        if (key.length > MAX_CALL_ID_BYTES) return false;
+
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+
+        byte[] slot = new byte[slotSize];
+        boolean fits = encode(slot, hash, key, mediaChannels);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            int index = find(segment, hash, key);
+
+            if (!fits) {
+                if (index >= 0) delete(segment, index);
+                return false;
+            }
+
+            if (index < 0) {
+                if (segment.size >= segment.maxSize) return false;
+
+                index = (int) hash & segment.mask;
+                while (segment.buffer.get(index * slotSize + USED) != 0) index = (index + 1) & segment.mask;
+                segment.size++;
+            }
+
+            segment.buffer.put(index * slotSize, slot);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return newly decoded media channels of the call, null if the call is not stored
+     */
+    public List<MediaChannel> get(String callId) {
+        byte[] key = callId.getBytes(StandardCharsets.UTF_8);
+        if (key.length > MAX_CALL_ID_BYTES) return null;
+
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        byte[] slot = slotCopy.get();
+
+        long stamp = segment.lock.tryOptimisticRead();
+        boolean found = copySlot(segment, hash, key, slot);
+
+        if (!segment.lock.validate(stamp)) {
+            stamp = segment.lock.readLock();
+            try {
+                found = copySlot(segment, hash, key, slot);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+
+        return found ? decode(slot) : null;
+    }
+
+    /**
+     * @return false if the call was not stored
+     */
+    public boolean remove(String callId) {
+        byte[] key = callId.getBytes(StandardCharsets.UTF_8);
+        if (key.length > MAX_CALL_ID_BYTES) return false;
+
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            int index = find(segment, hash, key);
+            if (index < 0) return false;
+
+            delete(segment, index);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            size += segment.size;
+            segment.lock.unlockRead(stamp);
+        }
+        return size;
+    }
+
+    /**
+     * @return number of calls that fit (each segment stays at most 3/4 full)
+     */
+    public int getCapacity() {
+        return segments[0].maxSize * SEGMENTS;
+    }
+
+    /**
+     * @return bytes of the arena (direct or mapped)
+     */
+    public long getArenaBytes() {
+        return (long) (segments[0].mask + 1) * slotSize * SEGMENTS;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> SEGMENT_SHIFT)];
+    }
+
+    /**
+     * @return slot index of the call or -1 - bounded by the table size, so a read racing a write can not loop
+     */
+    private int find(Segment segment, long hash, byte[] key) {
+        ByteBuffer buffer = segment.buffer;
+        int index = (int) hash & segment.mask;
+
+        for (int probes = 0; probes <= segment.mask; probes++) {
+            int base = index * slotSize;
+            if (buffer.get(base + USED) == 0) return -1;
+
+            if (buffer.getLong(base + HASH) == hash && (buffer.get(base + CALL_ID_LENGTH) & 0xff) == key.length) {
+                int i = 0;
+                while (i < key.length && buffer.get(base + CALL_ID + i) == key[i]) i++;
+                if (i == key.length) return index;
+            }
+
+            index = (index + 1) & segment.mask;
+        }
+
+        return -1;
+    }
+
+    private boolean copySlot(Segment segment, long hash, byte[] key, byte[] slot) {
+        int index = find(segment, hash, key);
+        if (index < 0) return false;
+
+        segment.buffer.get(index * slotSize, slot);
+        return true;
+    }
+
+    /**
+     * backward shift delete - slots after the removed one move up if their home slot allows it, so probe chains
+     * stay unbroken without tombstones
+     */
+    private void delete(Segment segment, int index) {
+        ByteBuffer buffer = segment.buffer;
+        int hole = index;
+        int next = index;
+
+        while (true) {
+            next = (next + 1) & segment.mask;
+            if (buffer.get(next * slotSize + USED) == 0) break;
+
+            int home = (int) buffer.getLong(next * slotSize + HASH) & segment.mask;
+            boolean stays = (hole <= next) ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (stays) continue;
+
+            buffer.put(hole * slotSize, buffer, next * slotSize, slotSize);
+            hole = next;
+        }
+
+        buffer.put(hole * slotSize + USED, (byte) 0);
+        segment.size--;
+    }
+
+    private boolean encode(byte[] slot, long hash, byte[] key, List<MediaChannel> mediaChannels) {
+        int channelCount = (mediaChannels == null) ? 0 : mediaChannels.size();
+        if (channelCount > maxChannels) return false;
+
+        ByteBuffer out = ByteBuffer.wrap(slot);
+        out.put(USED, (byte) 1);
+        out.put(CALL_ID_LENGTH, (byte) key.length);
+        out.put(CHANNEL_COUNT, (byte) channelCount);
+        out.putLong(HASH, hash);
+        out.put(CALL_ID, key);
+
+        for (int c = 0; c < channelCount; c++) {
+            MediaChannel channel = mediaChannels.get(c);
+            int base = CHANNELS + c * channelSize;
+
+            out.put(base + STATE, ordinal(channel.getMediaSessionState()));
+            out.put(base + TYPE, ordinal(channel.getMediaChannelType()));
+            if (!encodeEndpoint(out, base + RTP, channel.getRtpEndpoint()) ||
+                    !encodeEndpoint(out, base + RTCP, channel.getRtcpEndpoint())) {
+                return false;
+            }
+
+            List<MediaCodec> codecs = channel.getMediaCodecs();
+            int codecCount = (codecs == null) ? 0 : codecs.size();
+            if (codecCount > maxCodecs) return false;
+
+            out.put(base + CODEC_COUNT, (byte) codecCount);
+            for (int i = 0; i < codecCount; i++) {
+                MediaCodec codec = codecs.get(i);
+                if (codec.getRtpPayloadType() < 0 || codec.getRtpPayloadType() > 127) return false;
+
+                out.put(base + CODECS + 2 * i, (byte) codec.getRtpPayloadType());
+                out.put(base + CODECS + 2 * i + 1, ordinal(codec.getMediaCodecType()));
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean encodeEndpoint(ByteBuffer out, int offset, InetSocketAddress endpoint) {
+        if (endpoint == null) {
+            out.put(offset, (byte) 0);
+            return true;
+        }
+        if (endpoint.getAddress() == null) return false;
+
+        byte[] address = endpoint.getAddress().getAddress();
+        out.put(offset, (byte) address.length);
+        out.put(offset + ENDPOINT_ADDRESS, address);
+        out.putShort(offset + ENDPOINT_PORT, (short) endpoint.getPort());
+        return true;
+    }
+
+    private List<MediaChannel> decode(byte[] slot) {
+        ByteBuffer in = ByteBuffer.wrap(slot);
+        int channelCount = in.get(CHANNEL_COUNT);
+        List<MediaChannel> channels = new ArrayList<>(channelCount);
+
+        for (int c = 0; c < channelCount; c++) {
+            int base = CHANNELS + c * channelSize;
+
+            int codecCount = in.get(base + CODEC_COUNT);
+            List<MediaCodec> codecs = new ArrayList<>(codecCount);
+            for (int i = 0; i < codecCount; i++) {
+                codecs.add(new MediaCodec(in.get(base + CODECS + 2 * i),
+                        value(CODEC_TYPES, in.get(base + CODECS + 2 * i + 1)), null));
+            }
+
+            channels.add(new MediaChannel(value(STATES, in.get(base + STATE)), value(TYPES, in.get(base + TYPE)),
+                    decodeEndpoint(in, base + RTP), decodeEndpoint(in, base + RTCP), codecs));
+        }
+
+        return channels;
+    }
+
+    private static InetSocketAddress decodeEndpoint(ByteBuffer in, int offset) {
+        int length = in.get(offset);
+        if (length == 0) return null;
+
+        byte[] address = new byte[length];
+        in.get(offset + ENDPOINT_ADDRESS, address);
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address), in.getShort(offset + ENDPOINT_PORT) & 0xffff);
+        } catch (UnknownHostException e) {
+            // only thrown for a bad address length, which encode never writes
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return (value == null) ? NONE : (byte) value.ordinal();
+    }
+
+    private static <T> T value(T[] values, byte ordinal) {
+        return (ordinal == NONE) ? null : values[ordinal];
+    }
+
+    // FNV-1a, 64 bit, with the murmur3 finalizer so both the segment (high) and slot (low) bits are mixed
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
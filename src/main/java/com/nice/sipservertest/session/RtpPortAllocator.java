@@ -0,0 +1,247 @@
+package com.nice.sipservertest.session;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * local RTP/RTCP port pairs (even RTP port, RTCP on the next odd port - RFC 3550 section 11) from a configured range
+ * free pairs are a lock-free bitmap, one bit per pair set while it is in use - allocate CASes the lowest clear bit of
+ * the word under a round-robin cursor, free CASes the bit back, so both are O(1) until the range is nearly full
+ * the round-robin cursor also keeps a freed pair from being handed out again right away (late RTP of the old call)
+ * ports can be owned by a call (allocate(callId, mediaIndex)) - released together when the dialog ends, and
+ * reclaimed by the leak check if the call disappears without a BYE/dialog termination
+ */
+@Slf4j
+public class RtpPortAllocator implements AutoCloseable {
+
+    /**
+     * ports of one call by m= line index (0 = none yet) - only read and written inside the calls map compute
+     */
+    private static final class CallPorts {
+        final long allocatedMillis;
+        int[] rtpPorts;
+
+        CallPorts(long allocatedMillis, int size) {
+            this.allocatedMillis = allocatedMillis;
+            this.rtpPorts = new int[size];
+        }
+    }
+
+    private final int minPort;
+
+    private final int pairs;
+
+    private final AtomicLongArray bitmap;
+
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, CallPorts> calls = new ConcurrentHashMap<>();
+
+    private final LongAdder leakedPorts = new LongAdder();
+
+    private volatile ScheduledExecutorService leakChecker;
+
+    /**
+     * @param minPort first RTP port (even)
+     * @param maxPort last usable port - the last pair is the highest even port whose RTCP port is <= maxPort
+     */
+    public RtpPortAllocator(int minPort, int maxPort) {
+        if (minPort < 1 || minPort % 2 != 0 || maxPort > 65535 || maxPort <= minPort) {
+            throw new IllegalArgumentException(String.format("RTP port range needs an even first port and room for one pair (min=%d, max=%d)",
+                    minPort, maxPort));
+        }
+
+        this.minPort = minPort;
+        this.pairs = (maxPort - minPort + 1) / 2;
+        this.bitmap = new AtomicLongArray((pairs + 63) / 64);
+
+        // bits past the last pair are permanently in use
+        int tail = pairs % 64;
+        if (tail != 0) {
+            bitmap.set(bitmap.length() - 1, -1L << tail);
+        }
+    }
+
+    /**
+     * @return RTP port of a free pair (RTCP is the port + 1), -1 if every pair is in use
+     */
+    public int allocate() {
+        int words = bitmap.length();
+        int start = Math.floorMod(cursor.getAndIncrement(), words);
+
+        // a pair freed behind the scan is missed by that pass - scan again while the count says one is free
+        do {
+            for (int n = 0; n < words; n++) {
+                int w = (start + n < words) ? start + n : start + n - words;
+
+                long word = bitmap.get(w);
+                while (word != -1L) {
+                    int bit = Long.numberOfTrailingZeros(~word);
+                    if (bitmap.compareAndSet(w, word, word | (1L << bit))) {
+                        inUse.incrementAndGet();
+                        return minPort + 2 * (w * 64 + bit);
+                    }
+                    word = bitmap.get(w);
+                }
+            }
+            Thread.onSpinWait();
+        } while (inUse.get() < pairs);
+
+        return -1;
+    }
+
+    /**
+     * @return false if the port is not an allocated RTP port of the range
+     */
+    public boolean free(int rtpPort) {
+        int pair = (rtpPort - minPort) / 2;
+        if (rtpPort < minPort || (rtpPort - minPort) % 2 != 0 || pair >= pairs) {
+            return false;
+        }
+
+        int w = pair / 64;
+        long mask = 1L << (pair % 64);
+
+        long word = bitmap.get(w);
+        while ((word & mask) != 0) {
+            if (bitmap.compareAndSet(w, word, word & ~mask)) {
+                inUse.decrementAndGet();
+                return true;
+            }
+            word = bitmap.get(w);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return RTP port of m= line mediaIndex of the call - the same port on every re-INVITE/UPDATE of the call,
+     * -1 if every pair is in use
+     */
+    public int allocate(String callId, int mediaIndex) {
+        int[] port = {-1};
+
+        calls.compute(callId, (id, ports) -> {
+            if (ports != null && mediaIndex < ports.rtpPorts.length && ports.rtpPorts[mediaIndex] != 0) {
+                port[0] = ports.rtpPorts[mediaIndex];
+                return ports;
+            }
+
+            port[0] = allocate();
+            if (port[0] < 0) {
+                return ports;
+            }
+
+            if (ports == null) {
+                ports = new CallPorts(System.currentTimeMillis(), mediaIndex + 1);
+            } else if (mediaIndex >= ports.rtpPorts.length) {
+                ports.rtpPorts = Arrays.copyOf(ports.rtpPorts, mediaIndex + 1);
+            }
+            ports.rtpPorts[mediaIndex] = port[0];
+            return ports;
+        });
+
+        return port[0];
+    }
+
+    /**
+     * free every port of the call (BYE, dialog terminated, failed initial INVITE)
+     * @return number of ports freed
+     */
+    public int release(String callId) {
+        CallPorts ports = calls.remove(callId);
+        return (ports != null) ? freeAll(ports) : 0;
+    }
+
+    /**
+     * free the ports of calls that are no longer live - a call that vanished without BYE/dialog termination
+     * (ex. the media signaling event failed, so it never made it into the session registry)
+     * @param graceMillis calls younger than this are left alone (their INVITE may still be in progress)
+     * @return number of ports reclaimed
+     */
+    public int reclaimLeaked(Predicate<String> isLive, long graceMillis) {
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        int[] reclaimed = {0};
+
+        for (String callId : calls.keySet()) {
+            calls.computeIfPresent(callId, (id, ports) -> {
+                if (ports.allocatedMillis > cutoff || isLive.test(id)) {
+                    return ports;
+                }
+
+                int freed = freeAll(ports);
+                reclaimed[0] += freed;
+                log.warn("Reclaimed {} leaked RTP ports of call {}", freed, id);
+                return null;
+            });
+        }
+
+        leakedPorts.add(reclaimed[0]);
+        return reclaimed[0];
+    }
+
+    /**
+     * run reclaimLeaked every intervalMillis on a daemon thread until close()
+     */
+    public synchronized void startLeakCheck(Predicate<String> isLive, long intervalMillis, long graceMillis) {
+        if (leakChecker != null) {
+            throw new IllegalStateException("RTP port leak check already running");
+        }
+
+        leakChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rtp-port-leak-check");
+            t.setDaemon(true);
+            return t;
+        });
+        leakChecker.scheduleWithFixedDelay(() -> {
+            try {
+                reclaimLeaked(isLive, graceMillis);
+            } catch (RuntimeException e) {
+                log.warn("RTP port leak check failed", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getCapacity() {
+        return pairs;
+    }
+
+    public int getInUseCount() {
+        return inUse.get();
+    }
+
+    public int getCallCount() {
+        return calls.size();
+    }
+
+    public long getLeakedCount() {
+        return leakedPorts.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (leakChecker != null) {
+            leakChecker.shutdownNow();
+            leakChecker = null;
+        }
+    }
+
+    private int freeAll(CallPorts ports) {
+        int freed = 0;
+        for (int port : ports.rtpPorts) {
+            if (port != 0 && free(port)) freed++;
+        }
+        return freed;
+    }
+}
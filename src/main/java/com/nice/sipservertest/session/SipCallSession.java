@@ -0,0 +1,79 @@
+package com.nice.sipservertest.session;
+
+import com.nice.sipservertest.dto.MediaChannel;
+import com.nice.sipservertest.dto.RecordingMetadata;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * media state of one call (dialog) - immutable, the registry replaces the whole snapshot on each re-INVITE/UPDATE
+ * so readers always see a consistent channel list without locking
+ */
+@Getter
+public class SipCallSession {
+
+    private final String callId;
+
+    /**
+     * SdpMessage.getSessionIdGloballyUnique() of the remote SDP (null if the call has no SDP)
+     */
+    private final String sdpSessionId;
+
+    /**
+     * o= session version of the SDP the media channels came from
+     */
+    private final long sdpSessionVersion;
+
+    /**
+     * null when the registry keeps the media state of the call off-heap - see SipSessionRegistry.getMediaChannels
+     */
+    private final List<MediaChannel> mediaChannels;
+
+    /**
+     * SIPREC recording metadata of the call, null if it is not a recording session
+     */
+    private final RecordingMetadata recordingMetadata;
+
+    private final long createdMillis;
+
+    private final long updatedMillis;
+
+    public SipCallSession(String callId, String sdpSessionId, long sdpSessionVersion, List<MediaChannel> mediaChannels,
+                          long createdMillis, long updatedMillis) {
+        this(callId, sdpSessionId, sdpSessionVersion, mediaChannels, null, createdMillis, updatedMillis);
+    }
+
+    public SipCallSession(String callId, String sdpSessionId, long sdpSessionVersion, List<MediaChannel> mediaChannels,
+                          RecordingMetadata recordingMetadata, long createdMillis, long updatedMillis) {
+        this.callId = callId;
+        this.sdpSessionId = sdpSessionId;
+        this.sdpSessionVersion = sdpSessionVersion;
+        this.mediaChannels = (mediaChannels == null) ? null : Collections.unmodifiableList(mediaChannels);
+        this.recordingMetadata = recordingMetadata;
+        this.createdMillis = createdMillis;
+        this.updatedMillis = updatedMillis;
+    }
+
+    public boolean isOffHeap() {
+        return mediaChannels == null;
+    }
+
+    /**
+     * @return new snapshot of the same call with the media of a re-INVITE/UPDATE
+     */
+    public SipCallSession withMedia(String sdpSessionId, long sdpSessionVersion, List<MediaChannel> mediaChannels,
+                                    long updatedMillis) {
+        return withMedia(sdpSessionId, sdpSessionVersion, mediaChannels, recordingMetadata, updatedMillis);
+    }
+
+    /**
+     * @param recordingMetadata metadata of the re-INVITE/UPDATE, null to keep the current one
+     */
+    public SipCallSession withMedia(String sdpSessionId, long sdpSessionVersion, List<MediaChannel> mediaChannels,
+                                    RecordingMetadata recordingMetadata, long updatedMillis) {
+        return new SipCallSession(callId, sdpSessionId, sdpSessionVersion, mediaChannels,
+                (recordingMetadata != null) ? recordingMetadata : this.recordingMetadata, createdMillis, updatedMillis);
+    }
+}
@@ -0,0 +1,170 @@
+package com.nice.sipservertest.session;
+
+import com.nice.sipservertest.dto.MediaChannel;
+import com.nice.sipservertest.dto.RecordingMetadata;
+import com.nice.sipservertest.dto.SdpMessage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * calls in progress, keyed by Call-ID and by SDP session id (SdpMessage.getSessionIdGloballyUnique())
+ * both indexes are ConcurrentHashMaps - reads never lock and a write only locks the one bin of its key, so there
+ * is no global lock however many calls are up
+ * with an OffHeapMediaStateStore the media channels of each call are packed off-heap and decoded on demand by
+ * getMediaChannels (calls whose state does not fit a store slot stay on the heap)
+ * the Call-ID map is the source of truth - the SDP session id index only points at a Call-ID, it is updated inside
+ * the Call-ID map's compute for the call (so index changes of one call are ordered) and a lookup is checked against
+ * the session it finds
+ */
+public class SipSessionRegistry {
+
+    private final ConcurrentHashMap<String, SipCallSession> sessions;
+
+    private final ConcurrentHashMap<String, String> callIdsBySdpSessionId;
+
+    private final OffHeapMediaStateStore mediaStateStore;
+
+    public SipSessionRegistry(int initialCapacity) {
+        this(initialCapacity, null);
+    }
+
+    /**
+     * @param initialCapacity expected number of concurrent calls - sizing the maps up front avoids rehashing while
+     *                        calls ramp up
+     * @param mediaStateStore off-heap store for the media channels, null to keep them on the heap
+     */
+    public SipSessionRegistry(int initialCapacity, OffHeapMediaStateStore mediaStateStore) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Session registry capacity must be at least 1, got " + initialCapacity);
+        }
+
+        this.sessions = new ConcurrentHashMap<>(initialCapacity);
+        this.callIdsBySdpSessionId = new ConcurrentHashMap<>(initialCapacity);
+        this.mediaStateStore = mediaStateStore;
+    }
+
+    /**
+     * create the session of a new call or replace the media of an existing one (INVITE, re-INVITE, UPDATE)
+     * the replace is atomic per call - an SDP with an older o= version than the current one (a re-INVITE handled
+     * late by another pipeline worker) does not overwrite the newer media
+     * @return the current session of the call
+     */
+    public SipCallSession update(String callId, SdpMessage sdpMessage, List<MediaChannel> mediaChannels) {
+        return update(callId, sdpMessage, mediaChannels, null);
+    }
+
+    /**
+     * @param recordingMetadata SIPREC metadata sent with the SDP, null to keep what the call already has (a
+     *                          re-INVITE only carries metadata when it changed)
+     */
+    public SipCallSession update(String callId, SdpMessage sdpMessage, List<MediaChannel> mediaChannels,
+                                 RecordingMetadata recordingMetadata) {
+        String sdpSessionId = (sdpMessage == null) ? null : sdpMessage.getSessionIdGloballyUnique();
+        long sdpSessionVersion = (sdpMessage == null) ? 0 : sdpMessage.originSessionVersion;
+        long now = System.currentTimeMillis();
+
+        return sessions.compute(callId, (key, current) -> {
+            if (current != null && sdpSessionId != null && sdpSessionId.equals(current.getSdpSessionId()) &&
+                    sdpSessionVersion < current.getSdpSessionVersion()) {
+                return current;
+            }
+
+            // the store write is inside the compute too, so the stored media matches the session snapshot
+            // (a failed put also drops an earlier stored state of the call)
+            boolean offHeap = mediaStateStore != null && mediaStateStore.put(key, mediaChannels);
+            List<MediaChannel> heapChannels = offHeap ? null :
+                    (mediaChannels == null) ? Collections.<MediaChannel>emptyList() : mediaChannels;
+
+            SipCallSession session = (current == null) ?
+                    new SipCallSession(key, sdpSessionId, sdpSessionVersion, heapChannels, recordingMetadata, now, now) :
+                    current.withMedia(sdpSessionId, sdpSessionVersion, heapChannels, recordingMetadata, now);
+            reindex(current, session);
+            return session;
+        });
+    }
+
+    public SipCallSession get(String callId) {
+        return (callId == null) ? null : sessions.get(callId);
+    }
+
+    /**
+     * @return media channels of the call (decoded from the off-heap store if it is kept there), null if the call
+     * is not registered
+     */
+    public List<MediaChannel> getMediaChannels(String callId) {
+        SipCallSession session = get(callId);
+
+        if (session == null) {
+            return null;
+        }
+        if (!session.isOffHeap()) {
+            return session.getMediaChannels();
+        }
+
+        List<MediaChannel> mediaChannels = mediaStateStore.get(callId);
+        return (mediaChannels == null) ? Collections.emptyList() : mediaChannels;
+    }
+
+    public SipCallSession getBySdpSessionId(String sdpSessionId) {
+        if (sdpSessionId == null) {
+            return null;
+        }
+
+        String callId = callIdsBySdpSessionId.get(sdpSessionId);
+        SipCallSession session = (callId == null) ? null : sessions.get(callId);
+
+        return (session != null && sdpSessionId.equals(session.getSdpSessionId())) ? session : null;
+    }
+
+    /**
+     * evict a call (BYE, dialog terminated)
+     * @return the removed session or null if the call was not registered
+     */
+    public SipCallSession remove(String callId) {
+        if (callId == null) {
+            return null;
+        }
+
+        SipCallSession[] removed = new SipCallSession[1];
+        sessions.computeIfPresent(callId, (key, current) -> {
+            if (current.getSdpSessionId() != null) {
+                callIdsBySdpSessionId.remove(current.getSdpSessionId(), key);
+            }
+            if (current.isOffHeap()) {
+                mediaStateStore.remove(key);
+            }
+            removed[0] = current;
+            return null;
+        });
+
+        return removed[0];
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * release the off-heap store - called by Spring when the context is closed
+     */
+    public void close() throws IOException {
+        if (mediaStateStore != null) {
+            mediaStateStore.close();
+        }
+    }
+
+    private void reindex(SipCallSession previous, SipCallSession session) {
+        String callId = session.getCallId();
+        String sdpSessionId = session.getSdpSessionId();
+
+        if (previous != null && previous.getSdpSessionId() != null && !previous.getSdpSessionId().equals(sdpSessionId)) {
+            callIdsBySdpSessionId.remove(previous.getSdpSessionId(), callId);
+        }
+        if (sdpSessionId != null) {
+            callIdsBySdpSessionId.put(sdpSessionId, callId);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.nice.sipservertest.util;
+
+import lombok.Getter;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * a region of a message body buffer (ex. one part of a multipart body inside SIPMessage.getRawContent())
+ * NOTE:  the slice shares the buffer, it must not be modified while the slice is in use
+ */
+@Getter
+public class BodySlice {
+
+    private final byte[] array;
+
+    private final int offset;
+
+    private final int length;
+
+    public BodySlice(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array length " + array.length);
+        }
+
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static BodySlice of(byte[] array) {
+        return new BodySlice(array, 0, array.length);
+    }
+
+    /**
+     * @return the bytes of the slice - the shared array itself if the slice covers all of it, otherwise a copy
+     */
+    public byte[] toByteArray() {
+        return (offset == 0 && length == array.length) ? array : Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    public String toString(Charset charset) {
+        return new String(array, offset, length, charset);
+    }
+}
@@ -0,0 +1,351 @@
+package com.nice.sipservertest.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * bounded host name -> address cache with background resolvers, so SDP parsing never waits on DNS
+ * IP literals are parsed directly (InetAddressLiterals) and never reach the cache or the resolver
+ * for a host name:
+ *   fresh entry - returned (hit)
+ *   expired entry - the stale address is returned (hit) and a refresh is started in the background
+ *   no entry - a lookup is started in the background and null is returned (miss), so the next parse gets it
+ *   (a lookupTimeoutMs > 0 makes the caller wait for it up to that long instead - not for the pipeline workers)
+ * the listener resolveAsyncs the names of an offer whose endpoints did not resolve and parses it again once the
+ * lookups are done, so no thread is parked on DNS
+ * NOTE:  the JDK resolver doesn't expose the record TTL, so entries use configured positive/negative TTLs
+ * (the defaults match the JDK's own networkaddress.cache.ttl and networkaddress.cache.negative.ttl)
+ */
+@Slf4j
+public class DnsResolverCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    public static final long DEFAULT_POSITIVE_TTL_MS = 30_000;
+
+    public static final long DEFAULT_NEGATIVE_TTL_MS = 10_000;
+
+    public static final int DEFAULT_RESOLVER_THREADS = 2;
+
+    public static final long DEFAULT_LOOKUP_TIMEOUT_MS = 0;
+
+    // replaced by the configured cache (SipConfig) - the parsers look it up on every connection line
+    private static volatile DnsResolverCache defaultInstance = new DnsResolverCache(DEFAULT_MAX_ENTRIES,
+            DEFAULT_POSITIVE_TTL_MS, DEFAULT_NEGATIVE_TTL_MS, DEFAULT_RESOLVER_THREADS, DEFAULT_LOOKUP_TIMEOUT_MS,
+            InetAddress::getByName);
+
+    /**
+     * host name lookup used by the cache (InetAddress.getByName by default)
+     */
+    public interface HostLookup {
+        InetAddress lookup(String host) throws UnknownHostException;
+    }
+
+    private static final class Entry {
+        final InetAddress address;
+        final long expiresAtNanos;
+
+        Entry(InetAddress address, long expiresAtNanos)
+        {
+            this.address = address;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<InetAddress>> pending = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+
+    private final long positiveTtlNanos;
+
+    private final long negativeTtlNanos;
+
+    private final long lookupTimeoutNanos;
+
+    private final HostLookup hostLookup;
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder resolutions = new LongAdder();
+
+    private final LongAdder totalResolutionNanos = new LongAdder();
+
+    private final AtomicLong maxResolutionNanos = new AtomicLong();
+
+
+    public static DnsResolverCache getDefault()
+    {
+        return defaultInstance;
+    }
+
+    public static void setDefault(DnsResolverCache cache)
+    {
+        defaultInstance = cache;
+    }
+
+    /**
+     * @param lookupTimeoutMs how long resolve waits for a host name it has no entry for, 0 to never wait
+     */
+    public DnsResolverCache(int maxEntries, long positiveTtlMs, long negativeTtlMs, int resolverThreads,
+                            long lookupTimeoutMs, HostLookup hostLookup)
+    {
+        if (maxEntries < 1 || positiveTtlMs < 0 || negativeTtlMs < 0 || resolverThreads < 1 || lookupTimeoutMs < 0)
+        {
+            throw new IllegalArgumentException(String.format("DNS cache needs at least one entry and resolver thread, TTLs and lookup timeout >= 0 (entries=%d, ttl=%d/%d, threads=%d, timeout=%d)",
+                    maxEntries, positiveTtlMs, negativeTtlMs, resolverThreads, lookupTimeoutMs));
+        }
+
+        this.maxEntries = maxEntries;
+        this.positiveTtlNanos = TimeUnit.MILLISECONDS.toNanos(positiveTtlMs);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        this.lookupTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lookupTimeoutMs);
+        this.hostLookup = hostLookup;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(resolverThreads, resolverThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxEntries), r -> {
+                    Thread t = new Thread(r, "sdp-dns-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * resolve an address from [from, to) of the text - see resolve(String)
+     */
+    public InetAddress resolve(CharSequence text, int from, int to)
+    {
+        InetAddress literal = InetAddressLiterals.parse(text, from, to);
+
+        if (literal != null || !InetAddressLiterals.isHostName(text, from, to))
+        {
+            return literal;
+        }
+
+        return resolve(text.subSequence(from, to).toString());
+    }
+
+    /**
+     * lookup of a host name - never waits unless a lookup timeout is set
+     * @return the cached address (possibly stale while it is being refreshed), null if the name does not resolve or
+     * has no entry yet
+     */
+    public InetAddress resolve(String host)
+    {
+        Entry entry = cache.get(host);
+
+        if (entry == null)
+        {
+            misses.increment();
+            CompletableFuture<InetAddress> lookup = refresh(host);
+            if (lookupTimeoutNanos == 0) return lookup.getNow(null);
+
+            try
+            {
+                return lookup.get(lookupTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            catch(TimeoutException e)
+            {
+                timeouts.increment();
+                log.debug("Lookup of {} still running after {} ms", host, TimeUnit.NANOSECONDS.toMillis(lookupTimeoutNanos));
+                return null;
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            catch(ExecutionException e)
+            {
+                return null;
+            }
+        }
+
+        hits.increment();
+        if (System.nanoTime() - entry.expiresAtNanos >= 0)
+        {
+            refresh(host);
+        }
+
+        return entry.address;
+    }
+
+    /**
+     * @return future completed with the address (null if it can't be resolved) - already completed if cached
+     */
+    public CompletableFuture<InetAddress> resolveAsync(String host)
+    {
+        InetAddress literal = InetAddressLiterals.parse(host);
+        if (literal != null) return CompletableFuture.completedFuture(literal);
+
+        Entry entry = cache.get(host);
+        if (entry != null && System.nanoTime() - entry.expiresAtNanos < 0)
+        {
+            hits.increment();
+            return CompletableFuture.completedFuture(entry.address);
+        }
+
+        misses.increment();
+        return refresh(host);
+    }
+
+    private CompletableFuture<InetAddress> refresh(String host)
+    {
+        CompletableFuture<InetAddress> future = pending.get(host);
+        if (future != null) return future;
+
+        CompletableFuture<InetAddress> created = new CompletableFuture<>();
+        future = pending.putIfAbsent(host, created);
+        if (future != null) return future;
+
+        // a lookup may have finished between the caller's cache miss and the putIfAbsent
+        Entry entry = cache.get(host);
+        if (entry != null && System.nanoTime() - entry.expiresAtNanos < 0)
+        {
+            pending.remove(host, created);
+            created.complete(entry.address);
+            return created;
+        }
+
+        try
+        {
+            executor.execute(() -> lookup(host, created));
+        }
+        catch(RejectedExecutionException e)
+        {
+            // resolver queue is full - drop it, the next message for this host will try again
+            log.warn("DNS resolver queue full, not resolving {}", host);
+            pending.remove(host, created);
+            created.complete(null);
+        }
+
+        return created;
+    }
+
+    private void lookup(String host, CompletableFuture<InetAddress> future)
+    {
+        long start = System.nanoTime();
+        InetAddress address = null;
+
+        try
+        {
+            address = hostLookup.lookup(host);
+        }
+        catch(Exception e)
+        {
+            failures.increment();
+            log.debug("Failed to resolve {}: {}", host, e.getMessage());
+        }
+
+        long now = System.nanoTime();
+        long elapsed = now - start;
+        resolutions.increment();
+        totalResolutionNanos.add(elapsed);
+        maxResolutionNanos.accumulateAndGet(elapsed, Math::max);
+
+        put(host, new Entry(address, now + ((address != null) ? positiveTtlNanos : negativeTtlNanos)));
+        pending.remove(host, future);
+        future.complete(address);
+    }
+
+    private void put(String host, Entry entry)
+    {
+        if (cache.size() >= maxEntries && !cache.containsKey(host))
+        {
+            evict();
+        }
+
+        cache.put(host, entry);
+    }
+
+    // only runs when the cache is full - drop expired entries first, then the one closest to expiring
+    private void evict()
+    {
+        long now = System.nanoTime();
+        cache.entrySet().removeIf(e -> now - e.getValue().expiresAtNanos >= 0);
+
+        if (cache.size() < maxEntries) return;
+
+        String oldest = null;
+        long oldestExpiry = 0;
+        for (Map.Entry<String, Entry> e : cache.entrySet())
+        {
+            if (oldest == null || e.getValue().expiresAtNanos - oldestExpiry < 0)
+            {
+                oldest = e.getKey();
+                oldestExpiry = e.getValue().expiresAtNanos;
+            }
+        }
+
+        if (oldest != null) cache.remove(oldest);
+    }
+
+    public int size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * stop the resolver threads
+     */
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getFailureCount()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * misses that gave up waiting for the lookup
+     */
+    public long getTimeoutCount()
+    {
+        return timeouts.sum();
+    }
+
+    public long getResolutionCount()
+    {
+        return resolutions.sum();
+    }
+
+    public long getTotalResolutionTimeNanos()
+    {
+        return totalResolutionNanos.sum();
+    }
+
+    public long getMaxResolutionTimeNanos()
+    {
+        return maxResolutionNanos.get();
+    }
+}
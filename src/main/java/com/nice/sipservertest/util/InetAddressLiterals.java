@@ -0,0 +1,195 @@
+package com.nice.sipservertest.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * IPv4/IPv6 literal parser that never touches the name resolver
+ * InetAddress.getByName falls back to a (blocking) DNS lookup for anything it can't parse as a literal, so the SDP
+ * parsers use this first and only hand real host names to the DnsResolverCache
+ */
+public class InetAddressLiterals {
+
+    /**
+     * parse an IPv4 ("a.b.c.d") or IPv6 (RFC 4291 section 2.2 text forms) literal
+     * @return the address or null if [from, to) is not an IP address literal
+     */
+    public static InetAddress parse(CharSequence s, int from, int to)
+    {
+        byte[] address = null;
+
+        for (int i = from; i < to; i++)
+        {
+            char c = s.charAt(i);
+
+            if (c == ':')
+            {
+                address = parseIpv6(s, from, to);
+                break;
+            }
+            else if (c == '.')
+            {
+                byte[] ipv4 = new byte[4];
+                address = parseIpv4(s, from, to, ipv4, 0) ? ipv4 : null;
+                break;
+            }
+        }
+
+        if (address == null) return null;
+
+        try
+        {
+            // no lookup is done when the raw address is given
+            return InetAddress.getByAddress(address);
+        }
+        catch(UnknownHostException e)
+        {
+            return null;
+        }
+    }
+
+    public static InetAddress parse(CharSequence s)
+    {
+        return parse(s, 0, s.length());
+    }
+
+    /**
+     * @return true if [from, to) could be a DNS host name (letters, digits, '-' and '.'), so it is worth a lookup
+     */
+    public static boolean isHostName(CharSequence s, int from, int to)
+    {
+        if (from >= to || to - from > 253 || s.charAt(from) == '.' || s.charAt(from) == '-') return false;
+
+        for (int i = from; i < to; i++)
+        {
+            char c = s.charAt(i);
+
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.'))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean parseIpv4(CharSequence s, int from, int to, byte[] out, int offset)
+    {
+        int octet = 0;
+        int digits = 0;
+        int octets = 0;
+
+        for (int i = from; i <= to; i++)
+        {
+            char c = (i < to) ? s.charAt(i) : '.';
+
+            if (c >= '0' && c <= '9')
+            {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) return false;
+            }
+            else if (c == '.')
+            {
+                if (digits == 0 || octets == 4) return false;
+
+                out[offset + octets++] = (byte) octet;
+                octet = 0;
+                digits = 0;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        return octets == 4;
+    }
+
+    private static int hexDigit(char c)
+    {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static byte[] parseIpv6(CharSequence s, int from, int to)
+    {
+        byte[] out = new byte[16];
+        int groups = 0;
+        int compressAt = -1;
+        int i = from;
+
+        if (to - from >= 2 && s.charAt(from) == ':')
+        {
+            if (s.charAt(from + 1) != ':') return null;
+
+            compressAt = 0;
+            i += 2;
+        }
+
+        while (i < to)
+        {
+            int groupStart = i;
+            int value = 0;
+            while (i < to && i - groupStart < 4)
+            {
+                int digit = hexDigit(s.charAt(i));
+                if (digit < 0) break;
+
+                value = (value << 4) | digit;
+                i++;
+            }
+
+            if (i < to && s.charAt(i) == '.')
+            {
+                // embedded IPv4 tail (ex. ::ffff:10.0.0.1) takes the last two groups
+                if (groups > 6 || !parseIpv4(s, groupStart, to, out, groups * 2)) return null;
+
+                groups += 2;
+                i = to;
+                break;
+            }
+
+            if (i == groupStart || groups == 8) return null;
+
+            out[groups * 2] = (byte) (value >> 8);
+            out[groups * 2 + 1] = (byte) value;
+            groups++;
+
+            if (i == to) break;
+
+            if (s.charAt(i) != ':') return null;
+            i++;
+
+            if (i < to && s.charAt(i) == ':')
+            {
+                if (compressAt >= 0) return null;
+
+                compressAt = groups;
+                i++;
+            }
+            else if (i == to)
+            {
+                // trailing single colon
+                return null;
+            }
+        }
+
+        if (compressAt >= 0)
+        {
+            if (groups == 8) return null;
+
+            // move the groups after the "::" to the end of the address
+            int tailBytes = (groups - compressAt) * 2;
+            System.arraycopy(out, compressAt * 2, out, 16 - tailBytes, tailBytes);
+            for (int z = compressAt * 2; z < 16 - tailBytes; z++) out[z] = 0;
+        }
+        else if (groups != 8)
+        {
+            return null;
+        }
+
+        return out;
+    }
+}
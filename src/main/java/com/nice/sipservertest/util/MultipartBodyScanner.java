@@ -0,0 +1,276 @@
+package com.nice.sipservertest.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * splits a multipart body (RFC 2046 section 5.1) straight from the raw body bytes - every part is a slice of the
+ * body buffer and its Content-Type is located in place, so nothing is decoded or copied
+ * the boundary delimiter is found with Boyer-Moore-Horspool (the skip table is built once per scanner), which skips
+ * most of a large part (ex. SIPREC rs-metadata XML) without looking at every byte
+ * lenient like the JAIN-SIP parser:  bare LF line ends are accepted, and a body without the close delimiter ends
+ * at the end of the buffer
+ */
+public class MultipartBodyScanner {
+
+    private static final String DEFAULT_CONTENT_TYPE = "text/plain";
+
+    /**
+     * one body part - the slice is the part content (between the blank line after the part headers and the CRLF
+     * before the next delimiter)
+     */
+    public static final class Part extends BodySlice {
+
+        // media type ("type/subtype") in the part headers, -1 if the part has no Content-Type
+        private final int contentTypeStart;
+
+        private final int contentTypeEnd;
+
+        Part(byte[] array, int offset, int length, int contentTypeStart, int contentTypeEnd) {
+            super(array, offset, length);
+            this.contentTypeStart = contentTypeStart;
+            this.contentTypeEnd = contentTypeEnd;
+        }
+
+        /**
+         * @param mediaType "type/subtype" (ex. "application/sdp"), compared ignoring case and parameters
+         */
+        public boolean isContentType(String mediaType) {
+            if (contentTypeStart < 0) return DEFAULT_CONTENT_TYPE.equalsIgnoreCase(mediaType);
+
+            byte[] array = getArray();
+            if (contentTypeEnd - contentTypeStart != mediaType.length()) return false;
+
+            for (int i = 0; i < mediaType.length(); i++) {
+                if (toLowerAscii(array[contentTypeStart + i]) != toLowerAscii(mediaType.charAt(i))) return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * @return media type of the part ("type/subtype" without parameters), text/plain if it has no Content-Type
+         */
+        public String getContentType() {
+            if (contentTypeStart < 0) return DEFAULT_CONTENT_TYPE;
+
+            return new String(getArray(), contentTypeStart, contentTypeEnd - contentTypeStart, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    // "--" + boundary
+    private final byte[] delimiter;
+
+    // Horspool bad character shifts
+    private final int[] shift = new int[256];
+
+    public MultipartBodyScanner(CharSequence boundary) {
+        if (boundary == null || boundary.length() == 0) {
+            throw new IllegalArgumentException("Multipart boundary is empty");
+        }
+
+        delimiter = new byte[boundary.length() + 2];
+        delimiter[0] = '-';
+        delimiter[1] = '-';
+        for (int i = 0; i < boundary.length(); i++) {
+            delimiter[i + 2] = (byte) boundary.charAt(i);
+        }
+
+        int m = delimiter.length;
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = m;
+        }
+        for (int i = 0; i < m - 1; i++) {
+            shift[delimiter[i] & 0xff] = m - 1 - i;
+        }
+    }
+
+    /**
+     * @return all the parts of the body, in order
+     */
+    public List<Part> scan(byte[] body, int off, int len) {
+        List<Part> parts = new ArrayList<>();
+        scan(body, off, len, part -> {
+            parts.add(part);
+            return false;
+        });
+        return parts;
+    }
+
+    /**
+     * @return the first part with the media type (ex. "application/sdp") or null - parts after it are not scanned
+     */
+    public Part findPart(byte[] body, int off, int len, String mediaType) {
+        Part[] found = new Part[1];
+        scan(body, off, len, part -> {
+            if (!part.isContentType(mediaType)) return false;
+
+            found[0] = part;
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * find the first part of each media type in one pass over the body (ex. the SDP and the SIPREC metadata) - the
+     * scan stops once all of them are found
+     * @return parts in the order of mediaTypes, null for a media type that is not in the body
+     */
+    public Part[] findParts(byte[] body, int off, int len, String... mediaTypes) {
+        Part[] found = new Part[mediaTypes.length];
+        int[] missing = {mediaTypes.length};
+        scan(body, off, len, part -> {
+            for (int i = 0; i < mediaTypes.length; i++) {
+                if (found[i] == null && part.isContentType(mediaTypes[i])) {
+                    found[i] = part;
+                    missing[0]--;
+                    break;
+                }
+            }
+            return missing[0] == 0;
+        });
+        return found;
+    }
+
+    /**
+     * @param visitor called for each part in order, returns true to stop the scan
+     */
+    private void scan(byte[] body, int off, int len, Predicate<Part> visitor) {
+        int end = off + len;
+        int d = nextDelimiter(body, off, off, end);
+
+        while (d >= 0) {
+            int p = d + delimiter.length;
+
+            // close delimiter
+            if (p + 1 < end && body[p] == '-' && body[p + 1] == '-') break;
+
+            // rest of the delimiter line is transport padding
+            int lineEnd = indexOf(body, (byte) '\n', p, end);
+            if (lineEnd < 0) break;
+
+            int partStart = lineEnd + 1;
+            int next = nextDelimiter(body, off, partStart, end);
+            int partEnd = end;
+            if (next >= 0) {
+                // the line break before the delimiter belongs to the delimiter
+                partEnd = next;
+                if (partEnd > partStart && body[partEnd - 1] == '\n') partEnd--;
+                if (partEnd > partStart && body[partEnd - 1] == '\r') partEnd--;
+            }
+
+            if (visitor.test(parsePart(body, partStart, partEnd))) return;
+
+            d = next;
+        }
+    }
+
+    /**
+     * parse the part headers (only Content-Type is kept) - the part content starts after the first empty line
+     */
+    private static Part parsePart(byte[] body, int from, int to) {
+        int contentTypeStart = -1;
+        int contentTypeEnd = -1;
+
+        int p = from;
+        while (p < to) {
+            int lineEnd = indexOf(body, (byte) '\n', p, to);
+            int next = (lineEnd < 0) ? to : lineEnd + 1;
+            if (lineEnd < 0) lineEnd = to;
+
+            int valueEnd = (lineEnd > p && body[lineEnd - 1] == '\r') ? lineEnd - 1 : lineEnd;
+
+            // empty line - end of the part headers
+            if (valueEnd == p) {
+                return new Part(body, next, to - next, contentTypeStart, contentTypeEnd);
+            }
+
+            int valueStart = headerValueStart(body, p, valueEnd, "content-type");
+            if (valueStart < 0) valueStart = headerValueStart(body, p, valueEnd, "c");
+
+            if (valueStart >= 0) {
+                int typeEnd = valueStart;
+                while (typeEnd < valueEnd && body[typeEnd] != ';' && body[typeEnd] != ' ' && body[typeEnd] != '\t') typeEnd++;
+
+                contentTypeStart = valueStart;
+                contentTypeEnd = typeEnd;
+            }
+
+            p = next;
+        }
+
+        // headers only, no content
+        return new Part(body, to, 0, contentTypeStart, contentTypeEnd);
+    }
+
+    /**
+     * @return offset of the value (leading blanks skipped) if the line is the named header, otherwise -1
+     */
+    private static int headerValueStart(byte[] body, int from, int to, String name) {
+        if (to - from <= name.length()) return -1;
+
+        for (int i = 0; i < name.length(); i++) {
+            if (toLowerAscii(body[from + i]) != name.charAt(i)) return -1;
+        }
+
+        int p = from + name.length();
+        while (p < to && (body[p] == ' ' || body[p] == '\t')) p++;
+        if (p == to || body[p] != ':') return -1;
+
+        p++;
+        while (p < to && (body[p] == ' ' || body[p] == '\t')) p++;
+        return p;
+    }
+
+    /**
+     * @return offset of the next delimiter at the start of a line (or at the start of the body) or -1 - the delimiter
+     * must be followed by "--", padding or the line end, so a longer boundary with the same prefix does not match
+     */
+    private int nextDelimiter(byte[] body, int bodyStart, int from, int to) {
+        int p = from;
+        while (true) {
+            int match = indexOfDelimiter(body, p, to);
+            if (match < 0) return match;
+
+            if (match == bodyStart || body[match - 1] == '\n') {
+                int after = match + delimiter.length;
+                if (after == to) return match;
+
+                byte b = body[after];
+                if (b == '-' || b == ' ' || b == '\t' || b == '\r' || b == '\n') return match;
+            }
+
+            p = match + 1;
+        }
+    }
+
+    private int indexOfDelimiter(byte[] body, int from, int to) {
+        int m = delimiter.length;
+        int last = m - 1;
+
+        int i = from;
+        while (i <= to - m) {
+            int j = last;
+            while (j >= 0 && body[i + j] == delimiter[j]) j--;
+            if (j < 0) return i;
+
+            i += shift[body[i + last] & 0xff];
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(byte[] body, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (body[i] == b) return i;
+        }
+
+        return -1;
+    }
+
+    private static int toLowerAscii(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+}
@@ -0,0 +1,112 @@
+package com.nice.sipservertest.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * bounded lock-free object pool - a fixed array of slots that borrow() empties and release() fills
+ * each call probes a few slots from a random start, so threads borrowing (ex. SDP parse workers) and threads
+ * releasing (ex. the send worker) don't contend on the same slot, and nothing is allocated on either path
+ * when no pooled object is found borrow() creates a new one, when no free slot is found release() drops the object
+ * NOTE:  objects must be reset before they are released and must not be used by the releasing side afterwards
+ */
+public class ObjectPool<T> {
+
+    private static final int MAX_PROBES = 8;
+
+    private final AtomicReferenceArray<T> slots;
+
+    private final int mask;
+
+    private final int probes;
+
+    private final Supplier<T> factory;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder drops = new LongAdder();
+
+    /**
+     * @param capacity maximum number of idle objects kept (rounded up to a power of two)
+     * @param factory creates an object when the pool is empty
+     */
+    public ObjectPool(int capacity, Supplier<T> factory)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Object pool capacity must be positive, got " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.probes = Math.min(size, MAX_PROBES);
+        this.factory = factory;
+    }
+
+    public T borrow()
+    {
+        int start = ThreadLocalRandom.current().nextInt();
+        for (int i = 0; i < probes; i++)
+        {
+            int index = (start + i) & mask;
+            if (slots.get(index) != null)
+            {
+                T item = slots.getAndSet(index, null);
+                if (item != null)
+                {
+                    hits.increment();
+                    return item;
+                }
+            }
+        }
+
+        misses.increment();
+        return factory.get();
+    }
+
+    /**
+     * @return false if the pool had no free slot and the object was dropped (left to the GC)
+     */
+    public boolean release(T item)
+    {
+        int start = ThreadLocalRandom.current().nextInt();
+        for (int i = 0; i < probes; i++)
+        {
+            int index = (start + i) & mask;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, item))
+            {
+                return true;
+            }
+        }
+
+        drops.increment();
+        return false;
+    }
+
+    public int getCapacity()
+    {
+        return slots.length();
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getDropCount()
+    {
+        return drops.sum();
+    }
+}
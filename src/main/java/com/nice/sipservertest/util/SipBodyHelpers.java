@@ -1,19 +1,20 @@
 package com.nice.sipservertest.util;
 
-import gov.nist.javax.sip.message.Content;
-import gov.nist.javax.sip.message.MultipartMimeContent;
-import gov.nist.javax.sip.message.MultipartMimeContentImpl;
-import gov.nist.javax.sip.message.SIPMessage;
-
 import javax.sip.header.ContentTypeHeader;
 import javax.sip.message.Message;
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SipBodyHelpers {
 
     private static final String MULTIPART_MIXED = "multipart/mixed";
 
+    private static final int MAX_CACHED_SCANNERS = 256;
+
+    // scanners are immutable, so one per boundary is shared - recording clients usually send a fixed boundary
+    private static final ConcurrentHashMap<String, MultipartBodyScanner> scanners = new ConcurrentHashMap<>();
+
     public static String getBodyContentString(Message message, String contentType) {
 
         String content = null;
@@ -33,7 +34,8 @@ public class SipBodyHelpers {
         // check for multipart content
         if (mainContentType.equalsIgnoreCase(MULTIPART_MIXED)) {
             // mixed multipart message body
-            content = getMultipartBodyContentString(message, contentType);
+            BodySlice part = getMultipartBodyContent(message, mainContentTypeHeader, contentType);
+            content = (part == null) ? null : part.toString(StandardCharsets.UTF_8);
         }
 
         // check for single body case
@@ -44,45 +46,150 @@ public class SipBodyHelpers {
         return content;
     }
 
-    private static boolean isContentTypeHeaderIncomplete(ContentTypeHeader mainContentTypeHeader) {
-        return mainContentTypeHeader == null || mainContentTypeHeader.getContentType() == null ||
-                mainContentTypeHeader.getContentSubType() == null;
+    /**
+     * same as getBodyContentString but returns the body bytes - for a single body message this is the raw content
+     * as received (no copy and no charset decode), for a multipart body it is a copy of just the matching part
+     */
+    public static byte[] getBodyContentBytes(Message message, String contentType) {
+        BodySlice content = getBodyContent(message, contentType);
+        return (content == null) ? null : content.toByteArray();
     }
 
-    private static String getMultipartBodyContentString(Message message, String contentType) {
-        // mixed multipart message body
-        MultipartMimeContent multipartContent = getMultipartMimeContent(message);
+    /**
+     * same as getBodyContentBytes but returns the content as a slice of the raw message content - nothing is copied
+     * or decoded for multipart bodies either, so the slice can go straight to SdpMessageParser.parse(byte[], int, int)
+     */
+    public static BodySlice getBodyContent(Message message, String contentType) {
 
-        if (multipartContent == null) {
+        if (message == null) {
             return null;
         }
-        for (Iterator<Content> it = multipartContent.getContents(); it.hasNext(); ) {
-            Content content = it.next();
-            ContentTypeHeader contentTypeHeader = content.getContentTypeHeader();
-            String contentTypeAndSubtype = contentTypeHeader.getContentType() + "/" + contentTypeHeader.getContentSubType();
 
-            if (contentTypeAndSubtype.equalsIgnoreCase(contentType)) {
-                return contentToString(content.getContent());
-            }
+        ContentTypeHeader mainContentTypeHeader = (ContentTypeHeader) message.getHeader(ContentTypeHeader.NAME);
+
+        if (isContentTypeHeaderIncomplete(mainContentTypeHeader)) {
+            return null;
+        }
+
+        String mainContentType = mainContentTypeHeader.getContentType() + "/" + mainContentTypeHeader.getContentSubType();
+
+        // check for single body case
+        if (mainContentType.equalsIgnoreCase(contentType)) {
+            byte[] rawContent = message.getRawContent();
+            return (rawContent == null) ? null : BodySlice.of(rawContent);
+        }
+
+        // check for multipart content
+        if (mainContentType.equalsIgnoreCase(MULTIPART_MIXED)) {
+            return getMultipartBodyContent(message, mainContentTypeHeader, contentType);
         }
 
         return null;
     }
 
-    private static MultipartMimeContent getMultipartMimeContent(Message message) {
-        if (message == null || message.getContentLength() == null ||
-                message.getContentLength().getContentLength() == 0) {
-            return null;
+    /**
+     * same as getBodyContent for several content types at once (ex. the SDP and the SIPREC metadata of a recording
+     * session INVITE) - a multipart body is scanned once for all of them
+     * @return slices in the order of contentTypes, null for a content type that is not in the body
+     */
+    public static BodySlice[] getBodyContents(Message message, String... contentTypes) {
+        BodySlice[] contents = new BodySlice[contentTypes.length];
+
+        if (message == null) {
+            return contents;
+        }
+
+        ContentTypeHeader mainContentTypeHeader = (ContentTypeHeader) message.getHeader(ContentTypeHeader.NAME);
+
+        if (isContentTypeHeaderIncomplete(mainContentTypeHeader)) {
+            return contents;
         }
-        MultipartMimeContentImpl retval = new MultipartMimeContentImpl(((SIPMessage) message).getContentTypeHeader());
+
+        String mainContentType = mainContentTypeHeader.getContentType() + "/" + mainContentTypeHeader.getContentSubType();
+
+        // check for multipart content
+        if (mainContentType.equalsIgnoreCase(MULTIPART_MIXED)) {
+            MultipartBodyScanner scanner = getMultipartBodyScanner(mainContentTypeHeader);
+            byte[] rawContent = message.getRawContent();
+
+            if (scanner != null && rawContent != null) {
+                MultipartBodyScanner.Part[] parts = scanner.findParts(rawContent, 0, rawContent.length, contentTypes);
+                System.arraycopy(parts, 0, contents, 0, parts.length);
+            }
+            return contents;
+        }
+
+        // check for single body case
+        for (int i = 0; i < contentTypes.length; i++) {
+            if (mainContentType.equalsIgnoreCase(contentTypes[i])) {
+                byte[] rawContent = message.getRawContent();
+                contents[i] = (rawContent == null) ? null : BodySlice.of(rawContent);
+                break;
+            }
+        }
+
+        return contents;
+    }
+
+    private static boolean isContentTypeHeaderIncomplete(ContentTypeHeader mainContentTypeHeader) {
+        return mainContentTypeHeader == null || mainContentTypeHeader.getContentType() == null ||
+                mainContentTypeHeader.getContentSubType() == null;
+    }
+
+    private static BodySlice getMultipartBodyContent(Message message, ContentTypeHeader mainContentTypeHeader,
+                                                     String contentType) {
         byte[] rawContent = message.getRawContent();
-        try {
-            String body = new String(rawContent);
-            retval.createContentList(body);
-            return retval;
-        } catch (Exception e) {
+        MultipartBodyScanner scanner = getMultipartBodyScanner(mainContentTypeHeader);
+
+        if (rawContent == null || rawContent.length == 0 || scanner == null) {
             return null;
         }
+
+        return scanner.findPart(rawContent, 0, rawContent.length, contentType);
+    }
+
+    /**
+     * @return scanner for the boundary parameter of the multipart Content-Type, null if there is no boundary
+     */
+    private static MultipartBodyScanner getMultipartBodyScanner(ContentTypeHeader mainContentTypeHeader) {
+        String boundary = mainContentTypeHeader.getParameter("boundary");
+
+        if (boundary == null) {
+            return null;
+        }
+
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        if (boundary.isEmpty()) {
+            return null;
+        }
+
+        return getMultipartBodyScanner(boundary);
+    }
+
+    static MultipartBodyScanner getMultipartBodyScanner(String boundary) {
+        MultipartBodyScanner scanner = scanners.get(boundary);
+        if (scanner != null) {
+            return scanner;
+        }
+
+        if (scanners.size() >= MAX_CACHED_SCANNERS) {
+            // full (ex. a client with a new boundary per message) - make room by dropping any entry
+            Iterator<String> it = scanners.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        scanner = new MultipartBodyScanner(boundary);
+        scanners.put(boundary, scanner);
+
+        return scanner;
+    }
+
+    static int getCachedScannerCount() {
+        return scanners.size();
     }
 
     private static String contentToString(Object content) {
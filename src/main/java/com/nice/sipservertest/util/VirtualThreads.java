@@ -0,0 +1,48 @@
+package com.nice.sipservertest.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * access to virtual threads (JDK 21+) without compiling against the JDK 21 API, so the build still works on 17
+ */
+public class VirtualThreads {
+
+    private static final MethodHandle newVirtualThreadPerTaskExecutor = findFactory();
+
+    private static MethodHandle findFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    /**
+     * @return executor that starts a new virtual thread for each task
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (newVirtualThreadPerTaskExecutor == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, running on " +
+                    System.getProperty("java.version"));
+        }
+
+        try {
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.nice.sipservertest.capture;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipCaptureJournalTest {
+
+    @TempDir
+    Path directory;
+
+    static SIPRequest invite(String callId) throws Exception {
+        String invite = "INVITE sip:bob@example.com SIP/2.0\r\n" +
+                "Via: SIP/2.0/TCP 10.0.0.1:5060;branch=z9hG4bK" + callId + "\r\n" +
+                "From: <sip:alice@example.com>;tag=1\r\n" +
+                "To: <sip:bob@example.com>\r\n" +
+                "Call-ID: " + callId + "\r\n" +
+                "CSeq: 1 INVITE\r\n" +
+                "Max-Forwards: 70\r\n" +
+                "Content-Type: application/sdp\r\n" +
+                "Content-Length: 5\r\n\r\n" +
+                "v=0\r\n";
+        SIPRequest request = (SIPRequest) parse(invite);
+        request.setRemoteAddress(InetAddress.getByName("10.0.0.1"));
+        request.setRemotePort(5070);
+        request.setLocalPort(5060);
+        return request;
+    }
+
+    static SIPMessage parse(String message) throws Exception {
+        return new StringMsgParser().parseSIPMessage(message.getBytes(StandardCharsets.UTF_8), true, false, null);
+    }
+
+    @Test
+    void capturesAndExtractsCalls() throws Exception {
+        SIPRequest first = invite("call-1@example.com");
+        SIPRequest second = invite("call-2@example.com");
+        SIPResponse ok = first.createResponse(200);
+
+        try (SipCaptureJournal journal = new SipCaptureJournal(directory, 1 << 16, 4, 16)) {
+            assertTrue(journal.captureReceived(first, "TCP"));
+            assertTrue(journal.captureReceived(second, "TCP"));
+            assertTrue(journal.captureSent(ok, first, "TCP"));
+        }
+
+        Map<String, List<SipCaptureReader.Record>> index = SipCaptureReader.index(directory);
+        assertEquals(List.of("call-1@example.com", "call-2@example.com"), List.copyOf(index.keySet()));
+        assertEquals(2, index.get("call-1@example.com").size());
+        assertNull(index.get("call-1@example.com").get(0).getMessage());
+
+        List<SipCaptureReader.Record> call = SipCaptureReader.extract(directory, "call-1@example.com");
+        assertEquals(2, call.size());
+
+        SipCaptureReader.Record invite = call.get(0);
+        assertFalse(invite.isSent());
+        assertEquals("TCP", invite.getTransport());
+        assertEquals("10.0.0.1", invite.getPeerAddress().getHostAddress());
+        assertEquals(5070, invite.getPeerPort());
+        assertEquals(5060, invite.getLocalPort());
+        String text = new String(invite.getMessage(), StandardCharsets.UTF_8);
+        assertTrue(text.startsWith("INVITE sip:bob@example.com SIP/2.0\r\n"), text);
+        assertTrue(text.endsWith("\r\n\r\nv=0\r\n"), text);
+        // the capture parses back into the same message
+        assertEquals(first.getCallId().getCallId(), parse(text).getCallId().getCallId());
+
+        assertTrue(call.get(1).isSent());
+        assertTrue(new String(call.get(1).getMessage(), StandardCharsets.UTF_8).startsWith("SIP/2.0 200 OK\r\n"));
+    }
+
+    @Test
+    void rotatesAndKeepsTheNewestSegments() throws Exception {
+        SIPRequest request = invite("rotating@example.com");
+
+        try (SipCaptureJournal journal = new SipCaptureJournal(directory, 4096, 3, 1024)) {
+            for (int i = 0; i < 100; i++) {
+                journal.captureReceived(request, "UDP");
+            }
+            while (journal.getWrittenCount() < 100) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, journal.getFailedCount());
+        }
+
+        List<Path> segments = SipCaptureJournal.listSegments(directory);
+        assertEquals(3, segments.size());
+        int kept = SipCaptureReader.index(directory).get("rotating@example.com").size();
+        assertTrue(kept > 0 && kept < 100, "kept " + kept);
+
+        // a new journal numbers on from the existing segments
+        try (SipCaptureJournal journal = new SipCaptureJournal(directory, 4096, 3, 16)) {
+            journal.captureReceived(invite("later@example.com"), "UDP");
+        }
+        List<Path> reopened = SipCaptureJournal.listSegments(directory);
+        assertEquals(segments.subList(1, 3), reopened.subList(0, 2));
+        assertEquals(1, SipCaptureReader.extract(directory, "later@example.com").size());
+    }
+}
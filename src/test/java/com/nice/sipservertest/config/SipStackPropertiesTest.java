@@ -0,0 +1,78 @@
+package com.nice.sipservertest.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipStackPropertiesTest {
+
+    @Test
+    void appliesTheNistPropertyNames() {
+        SipStackProperties stackProperties = new SipStackProperties();
+        stackProperties.setName("sip-stack-test");
+        stackProperties.setThreadPoolSize(8);
+        stackProperties.setReentrantListener(true);
+        stackProperties.setMaxServerTransactions(20000);
+        stackProperties.setMaxMessageSize(65536);
+        stackProperties.setReceiveUdpBufferSize(4 * 1024 * 1024);
+        stackProperties.setCongestionControlTimeout(0);
+        stackProperties.setCacheServerConnections(false);
+        stackProperties.setTcpPostParsingThreadPoolSize(4);
+        stackProperties.setNioMaxSocketIdleTime(30000L);
+        stackProperties.validate();
+
+        Properties properties = stackProperties.applyTo(new Properties());
+
+        assertEquals(Map.of(
+                "javax.sip.STACK_NAME", "sip-stack-test",
+                "gov.nist.javax.sip.THREAD_POOL_SIZE", "8",
+                "gov.nist.javax.sip.REENTRANT_LISTENER", "true",
+                "gov.nist.javax.sip.MAX_SERVER_TRANSACTIONS", "20000",
+                "gov.nist.javax.sip.MAX_MESSAGE_SIZE", "65536",
+                "gov.nist.javax.sip.RECEIVE_UDP_BUFFER_SIZE", "4194304",
+                "gov.nist.javax.sip.CONGESTION_CONTROL_TIMEOUT", "0",
+                "gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false",
+                "gov.nist.javax.sip.TCP_POST_PARSING_THREAD_POOL_SIZE", "4",
+                "gov.nist.javax.sip.NIO_MAX_SOCKET_IDLE_TIME", "30000"), properties);
+    }
+
+    @Test
+    void unsetValuesKeepTheStackDefaults() {
+        Properties properties = new SipStackProperties().applyTo(new Properties());
+
+        assertEquals(Map.of("javax.sip.STACK_NAME", "sip-test"), properties);
+    }
+
+    @Test
+    void rejectsOutOfRangeThreadPoolAndQueueSizes() {
+        SipStackProperties stackProperties = new SipStackProperties();
+        stackProperties.setThreadPoolSize(0);
+        stackProperties.setTcpPostParsingThreadPoolSize(-1);
+        stackProperties.setMaxServerTransactions(0);
+        stackProperties.setMaxClientTransactions(-5);
+        stackProperties.setReceiveUdpBufferSize(0);
+        stackProperties.setCongestionControlTimeout(-1);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, stackProperties::validate);
+
+        for (String name : new String[] {"thread-pool-size", "tcp-post-parsing-thread-pool-size",
+                "max-server-transactions", "max-client-transactions", "receive-udp-buffer-size",
+                "congestion-control-timeout"}) {
+            assertTrue(e.getMessage().contains("sip.stack." + name + " must"), e.getMessage());
+        }
+    }
+
+    @Test
+    void reentrantListenerNeedsAThreadPool() {
+        SipStackProperties stackProperties = new SipStackProperties();
+        stackProperties.setReentrantListener(true);
+
+        assertThrows(IllegalArgumentException.class, stackProperties::validate);
+
+        stackProperties.setThreadPoolSize(4);
+        stackProperties.validate();
+    }
+}
@@ -0,0 +1,45 @@
+package com.nice.sipservertest.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sip.ListeningPoint;
+import javax.sip.SipProvider;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "sip.stack.name=sip-transport-test",
+        "sip.transport.listening-points[0].transport=UDP",
+        "sip.transport.listening-points[0].address=127.0.0.1",
+        "sip.transport.listening-points[0].port=15060",
+        "sip.transport.listening-points[1].transport=TCP",
+        "sip.transport.listening-points[1].address=127.0.0.1",
+        "sip.transport.listening-points[1].port=15060",
+        "sip.transport.udp-reuse-port-sockets=3"
+})
+class SipTransportsTest {
+
+    @Autowired
+    SipTransports sipTransports;
+
+    @Test
+    void opensOneProviderPerSocket() {
+        List<SipProvider> providers = sipTransports.getProviders();
+
+        List<String> transports = providers.stream()
+                .map(provider -> provider.getListeningPoints()[0])
+                .map(lp -> lp.getTransport().toUpperCase() + ":" + lp.getPort())
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("UDP:15060", "UDP:15060", "UDP:15060", "TCP:15060"), transports);
+        assertEquals(4, providers.stream().map(provider -> provider.getSipStack()).distinct().count());
+        for (SipProvider provider : providers) {
+            ListeningPoint lp = provider.getListeningPoints()[0];
+            assertEquals("127.0.0.1", lp.getIPAddress());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.nice.sipservertest.dns;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.route53.Route53AsyncClient;
+import software.amazon.awssdk.services.route53.model.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Route53AnswerCacheTest {
+
+    /**
+     * in-memory Route53 - answers are completed by the test (or right away if autoComplete is set)
+     */
+    static class StubRoute53 implements Route53AsyncClient {
+
+        final List<CompletableFuture<TestDnsAnswerResponse>> answers = new CopyOnWriteArrayList<>();
+
+        final AtomicInteger listCalls = new AtomicInteger();
+
+        volatile String address = "10.0.0.1";
+
+        volatile Long ttlSeconds = 20L;
+
+        volatile boolean autoComplete = true;
+
+        @Override
+        public CompletableFuture<TestDnsAnswerResponse> testDNSAnswer(TestDnsAnswerRequest request) {
+            CompletableFuture<TestDnsAnswerResponse> future = new CompletableFuture<>();
+            answers.add(future);
+            if (autoComplete) complete(future);
+            return future;
+        }
+
+        void complete(CompletableFuture<TestDnsAnswerResponse> future) {
+            future.complete(TestDnsAnswerResponse.builder().recordData(address).responseCode("NOERROR").build());
+        }
+
+        @Override
+        public CompletableFuture<ListResourceRecordSetsResponse> listResourceRecordSets(ListResourceRecordSetsRequest request) {
+            listCalls.incrementAndGet();
+            ResourceRecordSet recordSet = ResourceRecordSet.builder().name(request.startRecordName() + ".")
+                    .type(request.startRecordType()).ttl(ttlSeconds).build();
+            return CompletableFuture.completedFuture(ListResourceRecordSetsResponse.builder()
+                    .resourceRecordSets(recordSet).build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "route53";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void servesFromMemoryAndRefreshesAhead() throws Exception {
+        StubRoute53 route53 = new StubRoute53();
+        AtomicLong clock = new AtomicLong();
+        Route53AnswerCache cache = new Route53AnswerCache(route53, 60_000, 1_000, 0.8, 16, clock::get);
+
+        Route53AnswerCache.Answer answer = cache.get("Z1", "sip.example.com", RRType.A).get();
+        assertEquals(List.of("10.0.0.1"), answer.getRecordData());
+        assertEquals(20_000, answer.getTtlMs());
+
+        // within 80% of the TTL - no API calls
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(15));
+        assertSame(answer, cache.get("Z1", "SIP.example.com.", RRType.A).get());
+        assertEquals(1, cache.getLoadCount());
+
+        // past 80% - the cached answer is returned and a refresh runs behind it
+        route53.address = "10.0.0.2";
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertSame(answer, cache.get("Z1", "sip.example.com", RRType.A).get());
+        assertEquals(2, cache.getLoadCount());
+        assertEquals(List.of("10.0.0.2"), cache.get("Z1", "sip.example.com", RRType.A).get().getRecordData());
+
+        // other type, other key
+        cache.get("Z1", "sip.example.com", RRType.AAAA).get();
+        assertEquals(3, cache.getLoadCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        StubRoute53 route53 = new StubRoute53();
+        route53.autoComplete = false;
+        Route53AnswerCache cache = new Route53AnswerCache(route53, 60_000, 1_000, 0.8, 16);
+
+        CompletableFuture<Route53AnswerCache.Answer> first = cache.get("Z1", "sip.example.com", RRType.A);
+        CompletableFuture<Route53AnswerCache.Answer> second = cache.get("Z1", "sip.example.com", RRType.A);
+        assertSame(first, second);
+        assertEquals(1, route53.answers.size());
+
+        route53.complete(route53.answers.get(0));
+        assertEquals(List.of("10.0.0.1"), first.get(5, TimeUnit.SECONDS).getRecordData());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    void honorsMinimumTtlAndFailures() throws Exception {
+        StubRoute53 route53 = new StubRoute53();
+        route53.ttlSeconds = 0L;
+        AtomicLong clock = new AtomicLong();
+        Route53AnswerCache cache = new Route53AnswerCache(route53, 60_000, 5_000, 0.8, 16, clock::get);
+
+        assertEquals(5_000, cache.get("Z1", "sip.example.com", RRType.A).get().getTtlMs());
+
+        // alias records have no TTL
+        route53.ttlSeconds = null;
+        assertEquals(60_000, cache.get("Z1", "alias.example.com", RRType.A).get().getTtlMs());
+
+        // a failed load is not cached
+        route53.autoComplete = false;
+        CompletableFuture<Route53AnswerCache.Answer> failed = cache.get("Z1", "down.example.com", RRType.A);
+        route53.answers.get(route53.answers.size() - 1).completeExceptionally(
+                Route53Exception.builder().message("Rate exceeded").build());
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertEquals(1, cache.getFailureCount());
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,136 @@
+package com.nice.sipservertest.dns;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.route53.Route53AsyncClient;
+import software.amazon.awssdk.services.route53.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Route53RecordUpdaterTest {
+
+    /**
+     * in-memory Route53 - records every change batch, a change turns INSYNC after pendingPolls GetChange calls
+     */
+    static class StubRoute53 implements Route53AsyncClient {
+
+        final List<ChangeResourceRecordSetsRequest> requests = new CopyOnWriteArrayList<>();
+
+        final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+
+        final AtomicInteger ids = new AtomicInteger();
+
+        volatile int pendingPolls = 2;
+
+        volatile boolean rejectBatches;
+
+        @Override
+        public CompletableFuture<ChangeResourceRecordSetsResponse> changeResourceRecordSets(ChangeResourceRecordSetsRequest request) {
+            requests.add(request);
+            if (rejectBatches) {
+                return CompletableFuture.failedFuture(InvalidChangeBatchException.builder().message("invalid").build());
+            }
+
+            String id = "/change/C" + ids.incrementAndGet();
+            polls.put(id, new AtomicInteger());
+            return CompletableFuture.completedFuture(ChangeResourceRecordSetsResponse.builder()
+                    .changeInfo(ChangeInfo.builder().id(id).status(ChangeStatus.PENDING).build()).build());
+        }
+
+        @Override
+        public CompletableFuture<GetChangeResponse> getChange(GetChangeRequest request) {
+            int n = polls.get(request.id()).incrementAndGet();
+            ChangeStatus status = (n >= pendingPolls) ? ChangeStatus.INSYNC : ChangeStatus.PENDING;
+            return CompletableFuture.supplyAsync(() -> GetChangeResponse.builder()
+                    .changeInfo(ChangeInfo.builder().id(request.id()).status(status).build()).build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "route53";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static ResourceRecordSet aRecord(String name, String address) {
+        return ResourceRecordSet.builder().name(name).type(RRType.A).ttl(20L)
+                .resourceRecords(ResourceRecord.builder().value(address).build()).build();
+    }
+
+    @Test
+    void coalescesChangesIntoOneBatch() throws Exception {
+        StubRoute53 route53 = new StubRoute53();
+
+        try (Route53RecordUpdater updater = new Route53RecordUpdater(route53, "Z1", 100, 5, 1000)) {
+            CompletableFuture<ChangeInfo> first = updater.upsert(aRecord("sip.example.com", "10.0.0.1"));
+            CompletableFuture<ChangeInfo> second = updater.upsert(aRecord("SIP.example.com.", "10.0.0.2"));
+            CompletableFuture<ChangeInfo> other = updater.upsert(aRecord("media.example.com", "10.0.0.3"));
+
+            ChangeInfo changeInfo = first.get(5, TimeUnit.SECONDS);
+            assertEquals(ChangeStatus.INSYNC, changeInfo.status());
+            assertSame(changeInfo, second.get(5, TimeUnit.SECONDS));
+            assertEquals(changeInfo.id(), other.get(5, TimeUnit.SECONDS).id());
+
+            // one call, the repeated UPSERT collapsed into its last value
+            assertEquals(1, route53.requests.size());
+            List<Change> changes = route53.requests.get(0).changeBatch().changes();
+            assertEquals(2, changes.size());
+            assertEquals("10.0.0.2", changes.get(0).resourceRecordSet().resourceRecords().get(0).value());
+            assertEquals("Z1", route53.requests.get(0).hostedZoneId());
+            assertEquals(2, route53.polls.get(changeInfo.id()).get());
+
+            assertEquals(3, updater.getSubmittedChangeCount());
+            assertEquals(2, updater.getSentChangeCount());
+            assertEquals(1, updater.getSentBatchCount());
+        }
+    }
+
+    @Test
+    void splitsLargeBatches() throws Exception {
+        StubRoute53 route53 = new StubRoute53();
+        route53.pendingPolls = 1;
+
+        try (Route53RecordUpdater updater = new Route53RecordUpdater(route53, "Z1", 50, 1, 2)) {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[5];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = updater.upsert(aRecord("host" + i + ".example.com", "10.0.0." + i));
+            }
+            CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, route53.requests.size());
+            assertEquals(3, updater.getSentBatchCount());
+        }
+    }
+
+    @Test
+    void rejectedBatchFailsEveryChange() throws Exception {
+        StubRoute53 route53 = new StubRoute53();
+        route53.rejectBatches = true;
+
+        try (Route53RecordUpdater updater = new Route53RecordUpdater(route53, "Z1", 10, 1, 1000)) {
+            CompletableFuture<ChangeInfo> upsert = updater.upsert(aRecord("sip.example.com", "10.0.0.1"));
+            CompletableFuture<ChangeInfo> delete = updater.delete(aRecord("old.example.com", "10.0.0.9"));
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> upsert.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(InvalidChangeBatchException.class, e.getCause());
+            assertThrows(ExecutionException.class, () -> delete.get(5, TimeUnit.SECONDS));
+
+            // a later change starts a new batch
+            route53.rejectBatches = false;
+            assertEquals(ChangeStatus.INSYNC, updater.upsert(aRecord("sip.example.com", "10.0.0.1"))
+                    .get(5, TimeUnit.SECONDS).status());
+            assertEquals(2, route53.requests.size());
+        }
+    }
+}
@@ -0,0 +1,782 @@
+package com.nice.sipservertest.dto;
+
+import com.nice.sipservertest.factory.SdpMediaDescriptorFactory;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * verbatim copy of the regex based SDP parser that SdpMessageParser/SdpMediaDescriptorFactory replaced
+ * kept only as the reference implementation for the differential tests (lives in the dto package for the package
+ * private SdpMediaMapping setters)
+ */
+public class LegacySdpMessageParser {
+
+
+    public final static String SdpEOLPattern = "\\r\\n";
+
+    static final Pattern sdpMessageLineRegex = Pattern.compile("^([^=])=(.+)$");
+
+    static final Pattern sdpConnectLineRegex = Pattern.compile("^IN[ \\t]+(IP4|IP6)[ \\t]+(.+)$");
+
+    static final Pattern sdpOriginLineRegex = Pattern.compile("^([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)[ \\t]+([^ \\t]+)$");
+
+    static final Pattern sdpAttributeLineRegex = Pattern.compile("^([^:]+)(:(.+))?$");
+
+    public static SdpMessage parse(String messageString)
+    {
+        SdpMessage msg = new SdpMessage();
+
+        String[] msgLines = messageString.split(SdpEOLPattern, 0);
+
+        SdpMessageStates state = SdpMessageStates.SESSION;
+        List<String> currentMediaObject = new ArrayList<>();
+        for (String msgLine : msgLines)
+        {
+            Matcher m = sdpMessageLineRegex.matcher(msgLine);
+            if (!m.find() || m.groupCount() < 2) continue;  // TXDO - might want to provide feedback on the skip for troubleshooting
+
+            char cmdCode = m.group(1).charAt(0);
+            String msgLineBody = m.group(2);
+
+            switch(cmdCode)
+            {
+                case 'v':       // session only - SDP version
+                    // if the 'v' command is in the session info and not zero, then fail to parse
+                    // otherwise, just ignore it
+                    if (state == SdpMessageStates.SESSION && !msgLineBody.equals("0")) {
+                        throw new SdpParseException(SdpParserErrorTypes.INVALID_SDP_VERSION,
+                                "Invalid SDP session version number (only zero allowed)");
+                    }
+
+                    msg.setHasVersion(true);
+                    break;
+
+                case 'o':       // session only - originator info
+                    Matcher mo = sdpOriginLineRegex.matcher(msgLineBody);
+
+                    if (!mo.find() || mo.groupCount() < 6) break;
+
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        String user = mo.group(1);
+                        if (user == null || user.isEmpty() || user.equals("-")) {
+                            msg.setOriginUsername((String) null);
+                        } else {
+                            msg.setOriginUsername(user);
+                        }
+
+                        try {
+                            msg.originSessionId = Long.parseLong(mo.group(2));
+                        } catch (Exception e) {
+                        }
+
+                        try {
+                            msg.originSessionVersion = Long.parseLong(mo.group(3));
+                        } catch (Exception e) {
+                        }
+
+                        if (mo.group(5).equals("IP4")) {
+
+                            msg.originAddressType = SdpAddressTypes.IPV4;
+                        } else {
+
+                            msg.originAddressType = SdpAddressTypes.IPV6;
+                        }
+
+                        msg.setOriginUnicastAddress(mo.group(6));
+
+                        msg.setHasOriginator(true);
+                    }
+                    break;
+
+                case 's':       // session only - session name
+                    // if we're in session state and the session isn't set to the default ('-'), then update it
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        if (!msgLineBody.equals("-")) msg.setSessionName(msgLineBody);
+
+                        msg.setHasSessionName(true);
+                    }
+                    break;
+
+                case 'c':       // session and media - session IP info
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        msg.connectionAddress = parseSdpConnectionString(msgLineBody);
+                    }
+                    else
+                    {
+                        currentMediaObject.add(msgLine);
+                    }
+                    break;
+
+                case 't':       // session only - session time (only support t=0 0)
+                    // basically ignore this in the parser - hopefully it's a '0 0', but we wouldn't do anything if it wasn't anyway...
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        msg.setHasTimeDescription(true);
+                    }
+
+                    break;
+
+                case 'a':       // session and media - attirbute
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        // parse session level attributes
+                        parseSessionAttributes(msgLineBody, msg);
+                    }
+                    else
+                    {
+                        currentMediaObject.add(msgLine);
+                    }
+                    break;
+
+                case 'm':       // media only - main media info line for media descriptor
+                    // if there's a previous media descriptor, then parse it and add it to the message collection
+                    if (currentMediaObject.stream().count() > 0)
+                    {
+                        try {
+
+                            msg.addMediaDescription(parseMedia(currentMediaObject, msg.connectionAddress));
+                        } catch(Exception e) {
+                        }
+                    }
+
+                    state = SdpMessageStates.MEDIA;
+                    currentMediaObject.clear();
+
+                    currentMediaObject.add(msgLine);
+                    break;
+
+                case 'i':       // session and media - info
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        msg.setSessionInformation(msgLineBody);
+                    }
+                    else
+                    {
+                        currentMediaObject.add(msgLine);
+                    }
+                    break;
+
+                case 'u':       // session only - URL
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        try
+                        {
+                            msg.sessionUri = URI.create(msgLineBody);
+                        } catch(Exception e) {
+
+                            // if we have an error in parsing, then just move on
+                            // we will almost certainly not use this option so no point in error handling
+                        }
+                    }
+                    break;
+
+                case 'e':       // session only - email
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        msg.addSessionEmailAddress(msgLineBody);
+                    }
+                    break;
+
+                case 'p':       // session only - phone number
+                    if (state == SdpMessageStates.SESSION)
+                    {
+                        msg.addSessionPhoneNumber(msgLineBody);
+                    }
+                    break;
+            }
+        }
+
+        // if there's a previous media descriptor, then parse it and add it to the message collection
+        if (currentMediaObject.size() > 0)
+        {
+            try {
+                msg.addMediaDescription(parseMedia(currentMediaObject, msg.connectionAddress));
+            } catch(Exception e) {
+
+            }
+        }
+
+        if (msg.isHasVersion() && msg.isHasOriginator() && msg.isHasSessionName() && msg.isHasTimeDescription())
+        {
+            msg.setValid(true);
+        }
+
+        return msg;
+    }
+
+    public static InetAddress parseSdpConnectionString(String messageLineBody)
+    {
+        Matcher m = sdpConnectLineRegex.matcher(messageLineBody);
+
+        if (!m.find() || m.groupCount() < 2)
+        {
+            return null;
+        }
+
+        InetAddress ip;
+
+        try {
+
+            ip = InetAddress.getByName(m.group(2));
+        } catch(Exception e) {
+
+            return null;
+        }
+
+        return ip;
+    }
+
+    private static void parseSessionAttributes(String msgLineBody, SdpMessage msg)
+    {
+        Matcher m = sdpAttributeLineRegex.matcher(msgLineBody);
+
+        if (!m.find()) return;
+
+        if (m.groupCount() == 2)
+        {
+            // flag type attributes
+            String flag = m.group(1);
+
+            switch(flag)
+            {
+                case SdpMediaDescriptorFactory.SDP_ATTRIB_RECVONLY:
+                    msg.direction = SdpMediaDirection.RECEIVE_ONLY;
+                    break;
+
+                case SdpMediaDescriptorFactory.SDP_ATTRIB_SENDRECV:
+                    msg.direction = SdpMediaDirection.SEND_RECEIVE;
+                    break;
+
+                case SdpMediaDescriptorFactory.SDP_ATTRIB_SENDONLY:
+                    msg.direction = SdpMediaDirection.SEND_ONLY;
+                    break;
+
+                case SdpMediaDescriptorFactory.SDP_ATTRIB_INACTIVE:
+                    msg.direction = SdpMediaDirection.INACTIVE;
+                    break;
+
+            }
+        }
+        else if (m.groupCount() == 3)
+        {
+            // type/value attributes
+            String cmd = m.group(1);
+
+            switch(cmd)
+            {
+                case "cat":
+                    msg.setCategory(m.group(3));
+                    break;
+
+                case "tool":
+                    msg.setTool(m.group(3));
+                    break;
+
+                case "type":
+                    switch (m.group(3).toLowerCase())
+                    {
+                        case "broadcast":
+                            msg.conferenceType = SdpMediaConferenceTypes.BROADCAST;
+                            break;
+
+                        case "h332":
+                            msg.conferenceType = SdpMediaConferenceTypes.H332;
+                            break;
+
+                        case "meeting":
+                            msg.conferenceType = SdpMediaConferenceTypes.MEETING;
+                            break;
+
+                        case "moderated":
+                            msg.conferenceType = SdpMediaConferenceTypes.MODERATED;
+                            break;
+
+                        case "test":
+                            msg.conferenceType = SdpMediaConferenceTypes.TEST;
+                            break;
+                    }
+                    break;
+
+                case "charset":
+                    switch (m.group(3).toUpperCase())
+                    {
+                        case "ISO-10646":
+                            // leaving this here since the default could change in the future
+                            msg.charset = SdpCharsets.ISO_10646;
+                            break;
+
+                        case "ISO-8859-1":
+                            msg.charset = SdpCharsets.ISO_8859_1;
+                            break;
+
+                        default:
+                            // nothing was specified in the SDP message so use default per RFC 4566
+                            msg.charset = SdpCharsets.ISO_10646;
+                            break;
+                    }
+                    break;
+            }
+        }
+    }
+
+    // ---- SdpMediaDescriptorFactory ----
+
+
+    public final static String SDP_ATTRIB_RTPMAP = "rtpmap";
+
+    public final static String SDP_ATTRIB_FMTP = "fmtp";
+
+    public final static String SDP_ATTRIB_LABEL = "label";
+
+    public final static String SDP_ATTRIB_PTIME = "ptime";
+
+    public final static String SDP_ATTRIB_SENDONLY = "sendonly";
+
+    public final static String SDP_ATTRIB_RECVONLY = "recvonly";
+
+    public final static String SDP_ATTRIB_SENDRECV = "sendrecv";
+
+    public final static String SDP_ATTRIB_INACTIVE = "inactive";
+
+    public final static String SDP_ATTRIB_ORIENT = "orient";
+
+    public final static String SDP_ATTRIB_CONFERENCE_TYPE = "type";
+
+    public final static String SDP_ATTRIB_FRAMERATE = "framerate";
+
+    public final static String SDP_ATTRIB_QUALITY = "quality";
+
+    public final static String SDP_ATTRIB_RTCP = "rtcp";
+
+    public final static String SDP_ATTRIB_CRYPTO = "crypto";
+
+    public final static Pattern sdpConnectLinePattern = Pattern.compile("^IN[ \\t]+(IP4|IP6)[ \\t]+(.+)$");
+
+    public final static Pattern mediaLinePattern = Pattern.compile("^m=([a-zA-Z0-9]+)[ \\t]+([0-9]+)[ \\t]+([a-zA-Z0-9/\\-]+)[ \\t]+(.*)$");
+
+    public final static Pattern attribFlagLinePattern = Pattern.compile("^a=([a-zA-Z0-9\\-]+)$");
+
+    public final static Pattern attribLinePattern = Pattern.compile("^a=([a-zA-Z0-9\\-]+):(.*)");
+
+    public final static Pattern attribMappingLinePattern = Pattern.compile("^a=(rtpmap|fmtp):([0-9\\-]+)");
+
+    public final static Pattern attribRtcp = Pattern.compile("^([0-9]+)(?:[ \\t]+IN[ \\t]+(IP4|IP6)[ \\t]+([A-F0-9.:\\-]+))?$");
+
+    public final static Pattern sdpLinePattern = Pattern.compile("^([^=])=(.+)$");
+
+
+    /// <summary>
+    /// parse a SDP media mapping attribute set from a list of line strings
+    /// </summary>
+    /// <param name="parentMessage">parent <c>SdpMessage</c> that owns this <c>SdpMessageMedia</c> object</param>
+    /// <param name="message">multiple lines starting with the m= at message[0] and ending with the last a= line for one media mapping</param>
+    /// <param name="sdpMedia"></param>
+    /// <returns></returns>
+    public static SdpMediaDescriptor parseMedia(List<String> message, InetAddress connectionAddress)
+    {
+        SdpMediaDescriptor sdpMedia = new SdpMediaDescriptor();
+
+        // parse the m= line
+        Matcher m = mediaLinePattern.matcher(message.get(0));
+        if (!m.find() || m.groupCount() > 4 || m.groupCount() < 3) return null;
+
+        int rtpEndpointPort;
+        try
+        {
+            rtpEndpointPort = Integer.parseInt(m.group(2));
+        }
+        catch(Exception e)
+        {
+            return null;
+        }
+
+        sdpMedia.transportProfile = MediaTransportProfile.sdpTransportStringToTransportEnum(m.group(3));
+        sdpMedia.setTransportProtocolString(m.group(3));
+
+        // get the RTP payload type codes from the m= line
+        if (m.groupCount() == 4)
+        {
+            // we have an RTP payload type list
+            String[] rtpPtListStrings = m.group(4).split("\\s", 0);
+
+            for(String rtpPtString : rtpPtListStrings)
+            {
+                try
+                {
+                    sdpMedia.rtpPayloadTypeList.add(Integer.parseInt(rtpPtString));
+                }
+                catch(Exception e)
+                {
+                }
+            }
+        }
+
+        // walk the lines of the media description body (skip the first m= line)
+        for(String msg : message.subList(1, message.size()))
+        {
+            // determine if this is an rtpmap or fmtp attribute, and if so, process it
+            Matcher ma = attribMappingLinePattern.matcher(msg);
+
+            if (ma.find())
+            {
+                String ptString = ma.group(2);
+                int pt;
+                try
+                {
+                    pt = Integer.parseInt(ptString);
+                }
+                catch(Exception e)
+                {
+                    continue;
+                }
+
+                SdpMediaMapping mm = sdpMedia.mediaMappings.get(pt);
+                if (mm == null)
+                {
+                    mm = new SdpMediaMapping();
+                    sdpMedia.mediaMappings.put(pt, mm);
+                }
+
+                if (ma.group(1).equalsIgnoreCase(SDP_ATTRIB_RTPMAP))
+                {
+                    tryParseRtpMapIntoCurrent(mm, msg);
+                }
+                else
+                {
+                    tryParseFmtpIntoCurrent(mm, msg);
+                }
+
+                continue;
+            }
+
+            // match for non-rtpmap/fmtp flag-type attributes
+            ma = attribFlagLinePattern.matcher(msg);
+
+            if (ma.find() && ma.groupCount() > 0)
+            {
+                String attribCmd = ma.group(1);
+
+                // this is a valid a= flag-type attribute line so process it
+                // note:  RFC 4566 doesn't seem to specify whether or not the attribute name is case-sensitive so going with the most general case
+                if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_SENDONLY))
+                {
+                    sdpMedia.direction = SdpMediaDirection.SEND_ONLY;
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_RECVONLY))
+                {
+                    sdpMedia.direction = SdpMediaDirection.RECEIVE_ONLY;
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_SENDRECV))
+                {
+                    sdpMedia.direction = SdpMediaDirection.SEND_RECEIVE;
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_INACTIVE))
+                {
+                    sdpMedia.direction = SdpMediaDirection.INACTIVE;
+                }
+
+                continue;
+            }
+
+            // match for non-rtpmap/fmtp value-type attributes
+            ma = attribLinePattern.matcher(msg);
+
+            if (ma.find() && ma.groupCount() > 1)
+            {
+                String attribCmd = ma.group(1);
+
+                // this is a valid a= attribute line so process it
+                // note:  RFC 4566 seems to suggest that the token is case-sensitive, but going to take the more cautious route
+                // and process as case-insensitive (I can't imagine the IETF would assign another key using case to differentiate them)
+                if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_LABEL))
+                {
+                    sdpMedia.label = ma.group(2);
+                }
+                // TODO - removing this for now - may add crypto attributes back in if time permits
+                /*
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_CRYPTO))
+                {
+                    if (sdpMediaCrypto.TryParse(ma.Groups[2].Value, out SdpMediaCrypto mcrypto))
+                    {
+                        sdpMedia.MediaCrypto.Add(mcrypto.Tag, mcrypto);
+                    }
+                }
+                */
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_PTIME))
+                {
+                    try
+                    {
+                        sdpMedia.packetTimeInMs = Integer.parseInt(ma.group(2));
+                    }
+                    catch(Exception e)
+                    {
+                        // if it fails to parse, there's not much that can be done
+                    }
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_ORIENT))
+                {
+                    switch(ma.group(2).toLowerCase())
+                    {
+                        case "landscape":
+                            sdpMedia.orientation = SdpMediaOrientation.LANDSCAPE;
+                            break;
+
+                        case "portrait":
+                            sdpMedia.orientation = SdpMediaOrientation.PORTRAIT;
+                            break;
+
+                        case "seascape":
+                            sdpMedia.orientation = SdpMediaOrientation.SEASCAPE;
+                            break;
+                    }
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_RTCP))
+                {
+                    // a=rtcp: attribute
+                    Matcher mrtcp = attribRtcp.matcher(ma.group(2));
+                    if (mrtcp.find())
+                    {
+                        InetAddress rtcpIp;
+                        InetAddress rtpAddr = (sdpMedia.getRtpEndpoint() == null) ? connectionAddress : sdpMedia.getRtpEndpoint().getAddress();
+                        if (mrtcp.groupCount() >= 3)
+                        {
+                            try
+                            {
+                                rtcpIp = Inet4Address.getByName(mrtcp.group(3));
+                            }
+                            catch(Exception e)
+                            {
+                                rtcpIp = rtpAddr;
+                            }
+                        }
+                        else
+                        {
+                            rtcpIp = rtpAddr;
+                        }
+
+                        if (rtcpIp != null)
+                        {
+                            try
+                            {
+                                sdpMedia.setRtcpEndpoint(new InetSocketAddress(rtcpIp, Integer.parseInt(mrtcp.group(1))));
+                            }
+                            catch(Exception e)
+                            {
+                            }
+                        }
+                    }
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_FRAMERATE))
+                {
+                    try
+                    {
+                        sdpMedia.framerate = Integer.parseInt(ma.group(2));
+                    }
+                    catch(Exception e)
+                    {
+                    }
+                }
+                else if (attribCmd.equalsIgnoreCase(SDP_ATTRIB_QUALITY))
+                {
+                    try
+                    {
+                        int x = Integer.parseInt(ma.group(2));
+                        if (x >= 0 && x <= 10) sdpMedia.quality = x;
+                    }
+                    catch(Exception e)
+                    {
+                    }
+                }
+
+                continue;
+            }
+
+            // look for other non-attribute lines
+            Matcher mc = sdpLinePattern.matcher(msg);
+
+            if (mc.find() && mc.groupCount() >= 2)
+            {
+                switch(mc.group(1).charAt(0))
+                {
+                    case 'c':
+                        InetAddress cip = parseMediaSdpConnectionString(mc.group(2));
+                        if (cip != null)
+                        {
+                            sdpMedia.setRtpEndpoint(new InetSocketAddress(cip, rtpEndpointPort));
+                        }
+                        break;
+
+                    case 'i':
+                        sdpMedia.setMediaDescriptorInformation(mc.group(2));
+                        break;
+                }
+            }
+        }
+
+        // take care of the RTP endpoint if it wasn't already by a media-level "c=" line
+        if (sdpMedia.getRtpEndpoint() == null && connectionAddress != null)
+        {
+            sdpMedia.setRtpEndpoint(new InetSocketAddress(connectionAddress, rtpEndpointPort));
+        }
+
+        // check the rtp payload list from the m= line and create defaults for any that are not specified in the message
+        for(int pt : sdpMedia.rtpPayloadTypeList)
+        {
+            if (sdpMedia.mediaMappings.get(pt) == null)
+            {
+                // no info provided for this RTP payload type in the message so we'll create a default if possible
+                switch(pt)
+                {
+                    case 0:     // PCMU
+                        sdpMedia.mediaMappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.PCMU));
+                        break;
+
+                    case 4:     // G.723
+                        sdpMedia.mediaMappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.G723));
+                        break;
+
+                    case 8:     // PCMA
+                        sdpMedia.mediaMappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.PCMA));
+                        break;
+
+                    case 18:    // G.729
+                        sdpMedia.mediaMappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.G729));
+                        break;
+
+                    case 101:   // telephone-event (DTMF)
+                        sdpMedia.mediaMappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.TELEPHONE_EVENT));
+                        break;
+
+                    default:    // an unknown encoding format
+                        sdpMedia.mediaMappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.UNKNOWN, pt));
+                        break;
+                }
+            }
+        }
+
+        return sdpMedia;
+    }
+
+    public static InetAddress parseMediaSdpConnectionString(String messageLineBody)
+    {
+        Matcher m = sdpConnectLinePattern.matcher(messageLineBody);
+
+        if (!m.find() || m.groupCount() < 2)
+        {
+            return null;
+        }
+
+        InetAddress ip;
+        try {
+
+            ip = Inet4Address.getByName(m.group(2));
+        } catch(Exception e) {
+
+            return null;
+        }
+
+        return ip;
+    }
+
+    // ---- SdpMediaMappingFactory ----
+
+
+    // TODO - may need to update this regex with the characters for the media codec name
+    public final static Pattern rtpmapRegex = Pattern.compile("a=rtpmap\\:([0-9]+)[ \\t]+([a-zA-Z0-9\\-]+)\\/([0-9]+)(\\/([0-9]*))?", Pattern.CASE_INSENSITIVE);
+
+    // regex used to parse the a=fmtp: SDP mapping option
+    public final static Pattern fmtpRegex = Pattern.compile("a=fmtp\\:([0-9]+)[ \\t]+(.*)", Pattern.CASE_INSENSITIVE);
+
+
+    /**
+     *  parse the 'a=rtpmap:' attribute into current object - pass full line starting with a=
+     * @param rtpMapString string to parse
+     * @return true if successful, false otherwise
+     */
+    public static boolean tryParseRtpMapIntoCurrent(SdpMediaMapping mediaMapping, String rtpMapString)
+    {
+        Matcher m = rtpmapRegex.matcher(rtpMapString);
+
+        if (!m.find()) return false;
+
+        try
+        {
+            mediaMapping.setRtpPayloadType(Integer.parseInt(m.group(1)));
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+
+        mediaMapping.setMediaEncodingString(m.group(2));
+        mediaMapping.setMediaCodec(SdpMediaCodecs.getSdpMediaCodecFromSdpName(mediaMapping.getMediaEncodingString()));
+
+        try
+        {
+            mediaMapping.setSamplingFrequency(Integer.parseInt(m.group(3)));
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+
+        try
+        {
+            mediaMapping.setChannels(Integer.parseInt(m.group(5)));
+        }
+        catch(NumberFormatException e)
+        {
+            mediaMapping.setChannels(1);
+        }
+
+        return true;
+    }
+
+    /**
+     * parse the 'a=fmtp:' attribute into current object - pass full line starting with a=
+     * @param fmtpString string to parse
+     * @return true if successful, false otherwise
+     */
+    public static boolean tryParseFmtpIntoCurrent(SdpMediaMapping mediaMapping, String fmtpString)
+    {
+        Matcher m = fmtpRegex.matcher(fmtpString);
+
+        if (!m.find() || m.groupCount() > 3) return false;
+
+
+        int pt = -1;
+
+        try
+        {
+            pt = Integer.parseInt(m.group(1));
+
+            if (mediaMapping.getMediaCodec() == SdpMediaCodecs.UNKNOWN &&
+                    SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt) != SdpMediaCodecs.UNKNOWN &&
+                    SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt) != SdpMediaCodecs.DYNAMIC)
+            {
+                mediaMapping.setRtpPayloadType(pt);
+                mediaMapping.setMediaCodec(SdpMediaCodecs.getSdpMediaCodecFromPayloadNumber(pt));
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+
+        if (pt != mediaMapping.getRtpPayloadType()) return false;
+
+        mediaMapping.setGenericFormatSpecificParameters(m.group(2));
+
+        return true;
+    }
+}
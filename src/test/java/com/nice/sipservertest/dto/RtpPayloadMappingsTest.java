@@ -0,0 +1,70 @@
+package com.nice.sipservertest.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RtpPayloadMappingsTest {
+
+    @Test
+    void behavesLikeMapInPayloadTypeOrder()
+    {
+        RtpPayloadMappings mappings = new RtpPayloadMappings();
+        TreeMap<Integer, SdpMediaMapping> expected = new TreeMap<>();
+
+        for (int pt : new int[] {101, 0, 1005, -1, 8, 127, 128, 1000, 18})
+        {
+            SdpMediaMapping mapping = new SdpMediaMapping(SdpMediaCodecs.UNKNOWN, pt);
+            assertNull(mappings.put(pt, mapping));
+            expected.put(pt, mapping);
+        }
+
+        SdpMediaMapping replacement = new SdpMediaMapping(SdpMediaCodecs.PCMA);
+        assertSame(expected.put(8, replacement), mappings.put(8, replacement));
+        assertSame(expected.put(1005, replacement), mappings.put(1005, replacement));
+
+        assertEquals(expected, mappings);
+        assertEquals(List.of(0, 8, 18, 101, 127, -1, 128, 1000, 1005), new ArrayList<>(mappings.keySet()));
+        assertSame(replacement, mappings.get(Integer.valueOf(8)));
+        assertNull(mappings.get(7));
+        assertNull(mappings.get("8"));
+
+        List<SdpMediaMapping> visited = new ArrayList<>();
+        mappings.forEachMapping(visited::add);
+        assertEquals(new ArrayList<>(mappings.values()), visited);
+
+        assertSame(expected.remove(1000), mappings.remove(1000));
+        assertSame(expected.remove(0), mappings.remove(Integer.valueOf(0)));
+        assertNull(mappings.remove(55));
+        assertEquals(expected, mappings);
+        assertEquals(expected.size(), mappings.size());
+    }
+
+    @Test
+    void iteratorRemoveAcrossBothRanges()
+    {
+        RtpPayloadMappings mappings = new RtpPayloadMappings();
+        for (int pt : new int[] {0, 8, 200, 300, 400})
+        {
+            mappings.put(pt, new SdpMediaMapping(SdpMediaCodecs.UNKNOWN, pt));
+        }
+
+        for (Iterator<Map.Entry<Integer, SdpMediaMapping>> it = mappings.entrySet().iterator(); it.hasNext(); )
+        {
+            int pt = it.next().getKey();
+            if (pt == 8 || pt == 200 || pt == 300) it.remove();
+        }
+
+        assertEquals(List.of(0, 400), new ArrayList<>(mappings.keySet()));
+
+        mappings.clear();
+        assertTrue(mappings.isEmpty());
+        assertNull(mappings.get(400));
+    }
+}
@@ -0,0 +1,62 @@
+package com.nice.sipservertest.dto;
+
+import com.nice.sipservertest.parser.AsciiCharSequence;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SdpCodecRegistryTest {
+
+    @Test
+    void builtInCodecs()
+    {
+        SdpCodecRegistry registry = new SdpCodecRegistry();
+        byte[] rtpmap = "a=rtpmap:96 OPUS/48000/2".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(SdpMediaCodecs.PCMU, registry.getCodecFromEncodingName("pcmu"));
+        assertEquals(SdpMediaCodecs.TELEPHONE_EVENT, registry.getCodecFromEncodingName("Telephone-Event"));
+        assertEquals(SdpMediaCodecs.AMR_WB, registry.getCodecFromEncodingName("amr-wb"));
+        assertEquals(SdpMediaCodecs.ILBC, registry.getCodecFromEncodingName("ILBC"));
+        assertEquals(SdpMediaCodecs.OPUS, registry.getCodecFromEncodingName(new AsciiCharSequence(rtpmap, 12, 4)));
+        assertEquals(SdpMediaCodecs.UNKNOWN, registry.getCodecFromEncodingName("G726-32"));
+        assertEquals(SdpMediaCodecs.UNKNOWN, registry.getCodecFromEncodingName(""));
+        assertNull(registry.getCodecFromEncodingName(null));
+
+        assertEquals(SdpMediaCodecs.PCMA, registry.getCodecFromPayloadType(8));
+        assertEquals(SdpMediaCodecs.G722, registry.getCodecFromPayloadType(9));
+        assertEquals(SdpMediaCodecs.UNKNOWN, registry.getCodecFromPayloadType(3));
+        assertEquals(SdpMediaCodecs.DYNAMIC, registry.getCodecFromPayloadType(101));
+        assertEquals(SdpMediaCodecs.UNKNOWN, registry.getCodecFromPayloadType(128));
+        assertEquals(SdpMediaCodecs.UNKNOWN, registry.getCodecFromPayloadType(-1));
+
+        assertEquals(MediaCodecTypes.G711U, registry.getMediaCodecType(SdpMediaCodecs.PCMU));
+        assertEquals(MediaCodecTypes.OPUS, registry.getMediaCodecType(SdpMediaCodecs.OPUS));
+        assertEquals(MediaCodecTypes.UNKNOWN, registry.getMediaCodecType(SdpMediaCodecs.G723));
+        assertEquals(MediaCodecTypes.UNKNOWN, registry.getMediaCodecType(null));
+    }
+
+    @Test
+    void registeredMappingsAreAdded()
+    {
+        SdpCodecRegistry registry = new SdpCodecRegistry();
+
+        for (int i = 0; i < 40; i++)
+        {
+            registry.registerEncodingName("alias-" + i, SdpMediaCodecs.G729);
+        }
+        registry.registerEncodingName("PCMU", SdpMediaCodecs.PCMA);
+        registry.registerStaticPayloadType(3, SdpMediaCodecs.G723);
+        registry.registerMediaCodecType(SdpMediaCodecs.G723, MediaCodecTypes.G729);
+
+        assertEquals(SdpMediaCodecs.G729, registry.getCodecFromEncodingName("ALIAS-17"));
+        assertEquals(SdpMediaCodecs.PCMA, registry.getCodecFromEncodingName("pcmu"));
+        assertEquals(SdpMediaCodecs.G729, registry.getCodecFromEncodingName("g729"));
+        assertEquals(SdpMediaCodecs.G723, registry.getCodecFromPayloadType(3));
+        assertEquals(MediaCodecTypes.G729, registry.getMediaCodecType(SdpMediaCodecs.G723));
+
+        assertThrows(IllegalArgumentException.class, () -> registry.registerStaticPayloadType(96, SdpMediaCodecs.OPUS));
+        assertEquals(SdpMediaCodecs.PCMU, SdpCodecRegistry.getDefault().getCodecFromEncodingName("PCMU"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.nice.sipservertest.listener;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipCallSequencerTest {
+
+    @Test
+    void keepsTheTasksOfACallInOrder() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        SipCallSequencer sequencer = new SipCallSequencer(executor);
+        Map<String, List<Integer>> runs = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < 1000; i++) {
+            String callId = "call-" + (i % 10);
+            int task = i / 10;
+            sequencer.execute(callId, () -> {
+                List<Integer> run = runs.computeIfAbsent(callId, key -> new ArrayList<>());
+                // not thread safe on purpose - two tasks of a call running at once would lose or reorder entries
+                int size = run.size();
+                Thread.yield();
+                run.add(size, task);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(10, runs.size());
+        for (List<Integer> run : runs.values()) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, run.get(i));
+            }
+        }
+        assertEquals(0, sequencer.size());
+    }
+}
@@ -0,0 +1,184 @@
+package com.nice.sipservertest.listener;
+
+import com.nice.sipservertest.config.SipPipelineProperties;
+import com.nice.sipservertest.dto.MediaTransportProfile;
+import com.nice.sipservertest.dto.SdpMediaCodecs;
+import com.nice.sipservertest.dto.SdpMediaDirection;
+import com.nice.sipservertest.dto.SdpMediaTypes;
+import com.nice.sipservertest.negotiation.SdpCapabilityProfile;
+import com.nice.sipservertest.negotiation.SdpOfferAnswerEngine;
+import com.nice.sipservertest.session.RtpPortAllocator;
+import com.nice.sipservertest.session.SipSessionRegistry;
+import com.nice.sipservertest.util.DnsResolverCache;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.RequestEvent;
+import javax.sip.SipFactory;
+import javax.sip.message.Response;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * call lifecycle through the listener request handling - which requests end the session and give back its ports
+ */
+class SipListenerImplTest {
+
+    private static final String AUDIO_OFFER = "v=0\r\n" +
+            "o=SRC 1 1 IN IP4 10.0.0.1\r\n" +
+            "s=-\r\n" +
+            "c=IN IP4 10.0.0.1\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 20000 RTP/AVP 8\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n";
+
+    private final ConcurrentLinkedQueue<Response> sent = new ConcurrentLinkedQueue<>();
+
+    private SipSessionRegistry sessionRegistry;
+
+    private RtpPortAllocator rtpPortAllocator;
+
+    private SipSignalingLog signalingLog;
+
+    private ExecutorService executor;
+
+    private SipListenerImpl listener;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SdpOfferAnswerEngine engine = new SdpOfferAnswerEngine(new SdpCapabilityProfile(
+                InetAddress.getByName("10.0.0.5"), "recorder", List.of(SdpMediaCodecs.PCMA, SdpMediaCodecs.PCMU),
+                EnumSet.of(SdpMediaTypes.AUDIO), EnumSet.of(MediaTransportProfile.RTP_AVP),
+                SdpMediaDirection.RECEIVE_ONLY, false), 16);
+        sessionRegistry = new SipSessionRegistry(16);
+        // a single RTP/RTCP pair
+        rtpPortAllocator = new RtpPortAllocator(30000, 30002);
+        signalingLog = VirtualThreadsLoadTest.discardingLog();
+        // a thread per request - the listener has to keep the requests of the call in order itself
+        executor = Executors.newCachedThreadPool();
+        SipFactory sipFactory = SipFactory.getInstance();
+
+        listener = new SipListenerImpl(sipFactory.createMessageFactory(), sipFactory.createHeaderFactory(),
+                sipFactory.createAddressFactory(), List.of(), new SipPipelineProperties(), sessionRegistry, engine,
+                rtpPortAllocator, "10.0.0.5", signalingLog, null,
+                new SipSignalingMetrics(new SimpleMeterRegistry(), List.of(), sessionRegistry), executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.close();
+        signalingLog.close();
+        rtpPortAllocator.close();
+    }
+
+    private static SIPRequest request(String method, int cseq, String toTag, String sdp) throws Exception {
+        String body = (sdp != null) ? sdp : "";
+        String request = method + " sip:recorder@example.com SIP/2.0\r\n" +
+                "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK" + method + cseq + "\r\n" +
+                "From: <sip:src@example.com>;tag=src\r\n" +
+                "To: <sip:recorder@example.com>" + ((toTag != null) ? ";tag=" + toTag : "") + "\r\n" +
+                "Call-ID: lifecycle@example.com\r\n" +
+                "CSeq: " + cseq + " " + method + "\r\n" +
+                "Max-Forwards: 70\r\n" +
+                ((sdp != null) ? "Content-Type: application/sdp\r\n" : "") +
+                "Content-Length: " + body.length() + "\r\n\r\n" + body;
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(request.getBytes(StandardCharsets.UTF_8), true,
+                false, null);
+    }
+
+    private List<Integer> send(SIPRequest... requests) throws Exception {
+        for (SIPRequest request : requests) {
+            listener.processRequest(new RequestEvent(this, VirtualThreadsLoadTest.transaction(sent), null, request));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<Integer> statusCodes = new ArrayList<>();
+        for (Response response : sent) {
+            statusCodes.add(response.getStatusCode());
+        }
+        return statusCodes;
+    }
+
+    @Test
+    void cancelCrossingTheAnswerKeepsTheCall() throws Exception {
+        // the CANCEL of the INVITE arrives after its 200 went out
+        assertEquals(List.of(Response.OK, Response.OK),
+                send(request("INVITE", 1, null, AUDIO_OFFER), request("CANCEL", 1, null, null)));
+
+        assertNotNull(sessionRegistry.get("lifecycle@example.com"));
+        assertEquals(1, rtpPortAllocator.getInUseCount());
+    }
+
+    @Test
+    void byeEndsTheCall() throws Exception {
+        assertEquals(List.of(Response.OK, Response.OK),
+                send(request("INVITE", 1, null, AUDIO_OFFER), request("BYE", 2, "rec", null)));
+
+        assertNull(sessionRegistry.get("lifecycle@example.com"));
+        assertEquals(0, rtpPortAllocator.getInUseCount());
+    }
+
+    @Test
+    void failedInviteGivesBackItsPorts() throws Exception {
+        // the first m= line gets the only pair, the second one runs out
+        String offer = AUDIO_OFFER + "m=audio 20002 RTP/AVP 8\r\na=rtpmap:8 PCMA/8000\r\n";
+
+        assertEquals(List.of(Response.SERVICE_UNAVAILABLE), send(request("INVITE", 1, null, offer)));
+
+        assertNull(sessionRegistry.get("lifecycle@example.com"));
+        assertEquals(0, rtpPortAllocator.getInUseCount());
+    }
+
+    @Test
+    void inviteIsAnsweredOnceItsHostNameResolves() throws Exception {
+        CountDownLatch dnsAnswers = new CountDownLatch(1);
+        DnsResolverCache dnsResolverCache = new DnsResolverCache(16, 60_000, 60_000, 1, 0, host -> {
+            try {
+                dnsAnswers.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return InetAddress.getByAddress(host, new byte[] {10, 0, 0, 9});
+        });
+        DnsResolverCache previous = DnsResolverCache.getDefault();
+        DnsResolverCache.setDefault(dnsResolverCache);
+        try {
+            listener.processRequest(new RequestEvent(this, VirtualThreadsLoadTest.transaction(sent), null,
+                    request("INVITE", 1, null, AUDIO_OFFER.replace("c=IN IP4 10.0.0.1", "c=IN IP4 media.example.com"))));
+
+            // parsed once and handed to the lookup instead of being answered with the endpoint inactive
+            VirtualThreadsLoadTest.await(() -> dnsResolverCache.getMissCount() > 0, 10_000);
+            Thread.sleep(100);
+            assertTrue(sent.isEmpty());
+
+            dnsAnswers.countDown();
+            VirtualThreadsLoadTest.await(() -> !sent.isEmpty(), 10_000);
+        } finally {
+            dnsAnswers.countDown();
+            DnsResolverCache.setDefault(previous);
+            dnsResolverCache.close();
+        }
+
+        Response response = sent.peek();
+        assertEquals(Response.OK, response.getStatusCode());
+        assertFalse(new String(response.getRawContent(), StandardCharsets.UTF_8).contains("a=inactive"));
+        assertEquals(new InetSocketAddress(InetAddress.getByAddress(new byte[] {10, 0, 0, 9}), 20000),
+                sessionRegistry.getMediaChannels("lifecycle@example.com").get(0).getRtpEndpoint());
+    }
+}
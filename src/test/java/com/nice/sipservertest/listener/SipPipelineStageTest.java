@@ -0,0 +1,95 @@
+package com.nice.sipservertest.listener;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipPipelineStageTest {
+
+    @Test
+    void passesItemsDownstreamAndRejectsWhenFull() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> handled = new CopyOnWriteArrayList<>();
+        List<String> failed = new CopyOnWriteArrayList<>();
+
+        SipPipelineStage<String> last = new SipPipelineStage<>("last", 1, 4, item -> {
+            handled.add(item);
+            done.countDown();
+            return false;
+        }, null, (item, e) -> failed.add(item));
+
+        SipPipelineStage<String> first = new SipPipelineStage<>("first", 1, 1, item -> {
+            release.await();
+            if (item.equals("bad")) throw new IllegalStateException(item);
+            return !item.equals("drop");
+        }, last, (item, e) -> failed.add(item));
+
+        first.start();
+        last.start();
+
+        // worker blocks on the first item, the second fills the one slot queue
+        assertTrue(first.offer("a"));
+        while (first.size() != 0) Thread.yield();
+        assertTrue(first.offer("drop"));
+        assertFalse(first.offer("rejected"));
+
+        release.countDown();
+        first.put("bad");
+        first.put("b");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), handled);
+        assertEquals(Collections.singletonList("bad"), failed);
+
+        first.stop();
+        last.stop();
+    }
+
+    @Test
+    void keepsTheOrderOfItemsWithTheSameKey() throws Exception
+    {
+        int calls = 16;
+        int perCall = 200;
+        CountDownLatch done = new CountDownLatch(calls * perCall);
+        Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+
+        // "call:sequence" - the handler sleeps at random so unkeyed workers would reorder
+        SipPipelineStage<String> stage = new SipPipelineStage<>("keyed", 4, 64,
+                item -> item.substring(0, item.indexOf(':')).hashCode(), item -> {
+            if (ThreadLocalRandom.current().nextInt(50) == 0) Thread.sleep(1);
+            String call = item.substring(0, item.indexOf(':'));
+            handled.computeIfAbsent(call, c -> new CopyOnWriteArrayList<>())
+                    .add(Integer.parseInt(item.substring(item.indexOf(':') + 1)));
+            done.countDown();
+            return false;
+        }, null, (item, e) -> fail(e));
+
+        stage.start();
+        for (int i = 0; i < perCall; i++) {
+            for (int c = 0; c < calls; c++) {
+                stage.put("call-" + c + ":" + i);
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        List<Integer> expected = IntStream.range(0, perCall).boxed().toList();
+        for (int c = 0; c < calls; c++) {
+            assertEquals(expected, handled.get("call-" + c));
+        }
+
+        stage.stop();
+    }
+}
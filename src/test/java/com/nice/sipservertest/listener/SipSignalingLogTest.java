@@ -0,0 +1,126 @@
+package com.nice.sipservertest.listener;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipSignalingLogTest {
+
+    /**
+     * keeps what is written, blocks the consumer while gate is closed
+     */
+    static class RecordingSink implements SipSignalingLog.Sink {
+
+        final List<String> messages = new CopyOnWriteArrayList<>();
+
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        volatile Level minLevel = Level.TRACE;
+
+        @Override
+        public boolean isEnabled(SipSignalingLog.Category category, Level level) {
+            return level.toInt() >= minLevel.toInt();
+        }
+
+        @Override
+        public void write(SipSignalingLog.Category category, Level level, String callId, String message, Throwable cause) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(category + " " + callId + " " + message);
+        }
+    }
+
+    @Test
+    void formatsOnTheLogThreadInOrder() {
+        RecordingSink sink = new RecordingSink();
+        List<String> renderedOn = new ArrayList<>();
+        Object request = new Object() {
+            @Override
+            public String toString() {
+                renderedOn.add(Thread.currentThread().getName());
+                return "INVITE sip:bob@example.com SIP/2.0";
+            }
+        };
+
+        try (SipSignalingLog signalingLog = new SipSignalingLog(8, Map.of(), 10_000, sink, System::nanoTime)) {
+            signalingLog.log(SipSignalingLog.Category.REQUEST, Level.INFO, "call-1", "Received a SIP request {}", request);
+            signalingLog.log(SipSignalingLog.Category.BODY, Level.INFO, "call-1", "Content string: {}",
+                    (Supplier<String>) () -> "v=0");
+            signalingLog.log(SipSignalingLog.Category.RESPONSE, Level.INFO, "call-1", "Sent {} {}", 200, "OK");
+            signalingLog.log(SipSignalingLog.Category.STACK, Level.DEBUG, null, "stack message", (Throwable) null);
+        }
+
+        assertEquals(List.of("REQUEST call-1 Received a SIP request INVITE sip:bob@example.com SIP/2.0",
+                "BODY call-1 Content string: v=0", "RESPONSE call-1 Sent 200 OK", "STACK null stack message"), sink.messages);
+        assertEquals(List.of("sip-signaling-log"), renderedOn);
+    }
+
+    @Test
+    void samplesAndRateLimitsPerCategory() {
+        RecordingSink sink = new RecordingSink();
+        AtomicLong clock = new AtomicLong();
+        Map<SipSignalingLog.Category, SipSignalingLog.Limits> limits = Map.of(
+                SipSignalingLog.Category.BODY, new SipSignalingLog.Limits(4, 0),
+                SipSignalingLog.Category.REQUEST, new SipSignalingLog.Limits(1, 3));
+
+        try (SipSignalingLog signalingLog = new SipSignalingLog(64, limits, 10_000, sink, clock::get)) {
+            for (int i = 0; i < 10; i++) {
+                signalingLog.log(SipSignalingLog.Category.BODY, Level.INFO, null, "body {}", i);
+                signalingLog.log(SipSignalingLog.Category.REQUEST, Level.INFO, null, "request {}", i);
+            }
+            // warnings are not limited
+            signalingLog.log(SipSignalingLog.Category.REQUEST, Level.WARN, null, "warning", (Throwable) null);
+
+            // next second, next 3 requests
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            signalingLog.log(SipSignalingLog.Category.REQUEST, Level.INFO, null, "request {}", 10);
+
+            assertEquals(3, signalingLog.getAcceptedCount(SipSignalingLog.Category.BODY));
+            assertEquals(7, signalingLog.getSampledOutCount(SipSignalingLog.Category.BODY));
+            assertEquals(5, signalingLog.getAcceptedCount(SipSignalingLog.Category.REQUEST));
+            assertEquals(7, signalingLog.getRateLimitedCount(SipSignalingLog.Category.REQUEST));
+        }
+
+        assertEquals(List.of("BODY null body 0", "REQUEST null request 0", "REQUEST null request 1",
+                "REQUEST null request 2", "BODY null body 4", "BODY null body 8", "REQUEST null warning",
+                "REQUEST null request 10"), sink.messages);
+    }
+
+    @Test
+    void dropsWhenFullAndSkipsDisabledLevels() {
+        RecordingSink sink = new RecordingSink();
+        sink.gate = new CountDownLatch(1);
+        sink.minLevel = Level.INFO;
+
+        try (SipSignalingLog signalingLog = new SipSignalingLog(4, Map.of(), 10_000, sink, System::nanoTime)) {
+            assertFalse(signalingLog.isEnabled(SipSignalingLog.Category.STACK, Level.DEBUG));
+            signalingLog.log(SipSignalingLog.Category.STACK, Level.DEBUG, null, "debug", (Throwable) null);
+            assertEquals(0, signalingLog.getAcceptedCount(SipSignalingLog.Category.STACK));
+
+            // the consumer holds the first slot until the sink returns, so the fifth event finds the buffer full
+            for (int i = 0; i < 5; i++) {
+                signalingLog.log(SipSignalingLog.Category.EVENT, Level.INFO, null, "event {}", i);
+            }
+            assertEquals(4, signalingLog.getAcceptedCount(SipSignalingLog.Category.EVENT));
+            assertEquals(1, signalingLog.getOverflowCount(SipSignalingLog.Category.EVENT));
+
+            sink.gate.countDown();
+        }
+
+        assertEquals(List.of("EVENT null event 0", "EVENT null event 1", "EVENT null event 2", "EVENT null event 3"),
+                sink.messages);
+    }
+}
@@ -0,0 +1,80 @@
+package com.nice.sipservertest.listener;
+
+import com.nice.sipservertest.dto.SdpObjectPool;
+import com.nice.sipservertest.session.SipSessionRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipSignalingMetricsTest {
+
+    @Test
+    void tagsRequestsByMethodAndStatus() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SipSignalingMetrics metrics = new SipSignalingMetrics(registry, List.of(), new SipSessionRegistry(16));
+
+        long received = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        metrics.requestReceived("INVITE");
+        metrics.requestReceived("INVITE");
+        metrics.requestReceived("XYZZY");
+        metrics.responseSent("INVITE", 200, received, 1_000);
+        metrics.responseSent("INVITE", 200, received, 3_000);
+        metrics.responseSent("INVITE", 488, received, 1_000);
+        metrics.responseSent("XYZZY", 999, received, 1_000);
+
+        assertEquals(2, registry.get("sip.requests.received").tag("method", "INVITE").counter().count());
+        assertEquals(1, registry.get("sip.requests.received").tag("method", "OTHER").counter().count());
+
+        Timer ok = registry.get("sip.requests").tags("method", "INVITE", "status", "200").timer();
+        assertEquals(2, ok.count());
+        assertTrue(ok.totalTime(TimeUnit.MILLISECONDS) >= 10);
+        assertEquals(4_000, registry.get("sip.response.send").tags("method", "INVITE", "status", "200").timer()
+                .totalTime(TimeUnit.NANOSECONDS));
+        assertEquals(1, registry.get("sip.requests").tags("method", "INVITE", "status", "488").timer().count());
+        // out of range status codes share the first slot
+        assertEquals(1, registry.get("sip.requests").tags("method", "OTHER", "status", "100").timer().count());
+    }
+
+    @Test
+    void recordsSdpSizesAndResults() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SipSessionRegistry sessionRegistry = new SipSessionRegistry(16);
+        SipSignalingMetrics metrics = new SipSignalingMetrics(registry, List.of(), sessionRegistry);
+        SdpObjectPool sdpPool = new SdpObjectPool(4);
+        metrics.bindSdpPool(sdpPool);
+
+        metrics.sdpParsed(2_000, 300, 2);
+        metrics.sdpParsed(4_000, 900, 4);
+        metrics.sdpParseFailed(500, 40);
+        metrics.sdpAnswered("answered", 1_000);
+        metrics.sdpAnswered("rejected", 1_000);
+        metrics.sdpAnswered("answered", 1_000);
+
+        assertEquals(2, registry.get("sip.sdp.parse").tag("result", "parsed").timer().count());
+        assertEquals(1, registry.get("sip.sdp.parse").tag("result", "failed").timer().count());
+        assertEquals(1240, registry.get("sip.sdp.body.size").summary().totalAmount());
+        assertEquals(3, registry.get("sip.sdp.media.lines").summary().mean());
+        assertEquals(2, registry.get("sip.sdp.answer").tag("result", "answered").timer().count());
+        assertEquals(1, registry.get("sip.sdp.answer").tag("result", "rejected").timer().count());
+
+        // no stacks, nothing active
+        assertEquals(0, registry.get("sip.transactions.active").tag("type", "server").gauge().value());
+        assertEquals(0, registry.get("sip.dialogs.active").gauge().value());
+        sessionRegistry.update("call-1", null, List.of());
+        assertEquals(1, registry.get("sip.dialogs.active").gauge().value());
+
+        // empty pool - the first borrow misses, the message released comes back on the next
+        sdpPool.release(sdpPool.borrowMessage());
+        sdpPool.borrowMessage();
+        assertEquals(1, registry.get("sip.sdp.pool.borrows").tags("pool", "message", "result", "miss")
+                .functionCounter().count());
+        assertEquals(1, registry.get("sip.sdp.pool.borrows").tags("pool", "message", "result", "hit")
+                .functionCounter().count());
+        assertEquals(0, registry.get("sip.sdp.pool.drops").tag("pool", "descriptor").functionCounter().count());
+    }
+}
@@ -0,0 +1,241 @@
+package com.nice.sipservertest.listener;
+
+import com.nice.sipservertest.config.SipDnsProperties;
+import com.nice.sipservertest.config.SipPipelineProperties;
+import com.nice.sipservertest.dto.MediaTransportProfile;
+import com.nice.sipservertest.dto.SdpMediaCodecs;
+import com.nice.sipservertest.dto.SdpMediaDirection;
+import com.nice.sipservertest.dto.SdpMediaTypes;
+import com.nice.sipservertest.negotiation.SdpCapabilityProfile;
+import com.nice.sipservertest.negotiation.SdpOfferAnswerEngine;
+import com.nice.sipservertest.session.RtpPortAllocator;
+import com.nice.sipservertest.session.SipSessionRegistry;
+import com.nice.sipservertest.util.DnsResolverCache;
+import com.nice.sipservertest.util.VirtualThreads;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.stack.SIPServerTransaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+import javax.sip.RequestEvent;
+import javax.sip.SipFactory;
+import javax.sip.message.Response;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * load check for callback mode (sip.execution.mode=virtual-threads) - INVITEs go through the real listener request
+ * handling on a virtual thread per request, with the DNS cache sized like production (SipDnsProperties defaults)
+ * every INVITE names a host the cache has not seen and the stub lookup holds all of them back, so the requests can
+ * only be waiting on the lookups, not parked on them - the test checks that no handling thread is left running before
+ * the lookups are let through and that every INVITE is then answered with its resolved endpoint
+ * skipped on JVMs without virtual threads (before Java 21)
+ */
+class VirtualThreadsLoadTest {
+
+    private static final int CONCURRENT_INVITES = 1_000;
+
+    static SIPRequest invite(int call) throws Exception {
+        String sdp = "v=0\r\n" +
+                "o=SRC " + call + " 1 IN IP4 media-" + call + ".example.com\r\n" +
+                "s=-\r\n" +
+                "c=IN IP4 media-" + call + ".example.com\r\n" +
+                "t=0 0\r\n" +
+                "m=audio 20000 RTP/AVP 8\r\n" +
+                "a=rtpmap:8 PCMA/8000\r\n";
+        String invite = "INVITE sip:recorder@example.com SIP/2.0\r\n" +
+                "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK" + call + "\r\n" +
+                "From: <sip:src@example.com>;tag=" + call + "\r\n" +
+                "To: <sip:recorder@example.com>\r\n" +
+                "Call-ID: load-" + call + "@example.com\r\n" +
+                "CSeq: 1 INVITE\r\n" +
+                "Max-Forwards: 70\r\n" +
+                "Content-Type: application/sdp\r\n" +
+                "Content-Length: " + sdp.length() + "\r\n\r\n" + sdp;
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(invite.getBytes(StandardCharsets.UTF_8), true,
+                false, null);
+    }
+
+    /**
+     * UDP server transaction on port 5060 that hands the responses it sends to the queue
+     */
+    static SIPServerTransaction transaction(ConcurrentLinkedQueue<Response> sent) {
+        return (SIPServerTransaction) Proxy.newProxyInstance(VirtualThreadsLoadTest.class.getClassLoader(),
+                new Class<?>[] {SIPServerTransaction.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "sendResponse":
+                            sent.add((Response) args[0]);
+                            return null;
+                        case "getTransport":
+                            return "UDP";
+                        case "getPort":
+                            return 5060;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * drops everything - the load would only flood the test output
+     */
+    static SipSignalingLog discardingLog() {
+        return new SipSignalingLog(1024, Map.of(), 10_000, new SipSignalingLog.Sink() {
+            @Override
+            public boolean isEnabled(SipSignalingLog.Category category, Level level) {
+                return false;
+            }
+
+            @Override
+            public void write(SipSignalingLog.Category category, Level level, String callId, String message,
+                              Throwable cause) {
+            }
+        }, System::nanoTime);
+    }
+
+    /**
+     * virtual thread per task executor that counts the tasks that have not finished yet
+     */
+    static ExecutorService countingExecutor(ExecutorService executor, AtomicInteger running) {
+        return new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable task) {
+                running.incrementAndGet();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    running.decrementAndGet();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void shutdown() {
+                executor.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return executor.shutdownNow();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return executor.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return executor.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return executor.awaitTermination(timeout, unit);
+            }
+        };
+    }
+
+    static void await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void slowLookupsDoNotParkConcurrentInvites() throws Exception {
+        assumeTrue(VirtualThreads.isSupported(), "needs virtual threads (Java 21+)");
+
+        CountDownLatch dnsAnswers = new CountDownLatch(1);
+        SipDnsProperties dnsProperties = new SipDnsProperties();
+        // stands in for a slow DNS server - nothing resolves until the test lets it
+        DnsResolverCache dnsResolverCache = new DnsResolverCache(dnsProperties.getMaxEntries(),
+                dnsProperties.getPositiveTtlMs(), dnsProperties.getNegativeTtlMs(), dnsProperties.getResolverThreads(),
+                dnsProperties.getLookupTimeoutMs(), host -> {
+            try {
+                if (!dnsAnswers.await(20, TimeUnit.SECONDS)) throw new UnknownHostException(host);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host);
+            }
+            int call = Integer.parseInt(host.substring("media-".length(), host.indexOf('.')));
+            return InetAddress.getByAddress(host, new byte[] {10, 1, (byte) (call >> 8), (byte) call});
+        });
+        DnsResolverCache previous = DnsResolverCache.getDefault();
+        DnsResolverCache.setDefault(dnsResolverCache);
+
+        SdpOfferAnswerEngine engine = new SdpOfferAnswerEngine(new SdpCapabilityProfile(
+                InetAddress.getByName("10.0.0.5"), "recorder", List.of(SdpMediaCodecs.PCMA, SdpMediaCodecs.PCMU),
+                EnumSet.of(SdpMediaTypes.AUDIO), EnumSet.of(MediaTransportProfile.RTP_AVP),
+                SdpMediaDirection.RECEIVE_ONLY, false), 16);
+        SipSessionRegistry sessionRegistry = new SipSessionRegistry(CONCURRENT_INVITES);
+        AtomicInteger running = new AtomicInteger();
+        ExecutorService executor = countingExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor(), running);
+        ConcurrentLinkedQueue<Response> sent = new ConcurrentLinkedQueue<>();
+        SipFactory sipFactory = SipFactory.getInstance();
+        SipSignalingLog signalingLog = discardingLog();
+
+        SipListenerImpl listener = new SipListenerImpl(sipFactory.createMessageFactory(),
+                sipFactory.createHeaderFactory(), sipFactory.createAddressFactory(), List.of(),
+                new SipPipelineProperties(), sessionRegistry, engine, new RtpPortAllocator(30000, 39999), "10.0.0.5",
+                signalingLog, null, new SipSignalingMetrics(new SimpleMeterRegistry(), List.of(),
+                sessionRegistry),
+                executor);
+        try {
+            for (int i = 0; i < CONCURRENT_INVITES; i++) {
+                listener.processRequest(new RequestEvent(this, transaction(sent), null, invite(i)));
+            }
+
+            // every INVITE handed to its lookup, no thread left waiting for DNS
+            await(() -> running.get() == 0, 20_000);
+            assertTrue(sent.isEmpty());
+
+            dnsAnswers.countDown();
+            await(() -> sent.size() == CONCURRENT_INVITES, 30_000);
+            await(() -> running.get() == 0, 10_000);
+        } finally {
+            dnsAnswers.countDown();
+            listener.close();
+            signalingLog.close();
+            DnsResolverCache.setDefault(previous);
+            dnsResolverCache.close();
+        }
+
+        assertEquals(0, dnsResolverCache.getFailureCount());
+        for (Response response : sent) {
+            assertEquals(Response.OK, response.getStatusCode());
+            String answer = new String(response.getRawContent(), StandardCharsets.UTF_8);
+            assertFalse(answer.contains("a=inactive"), answer);
+        }
+        assertEquals(CONCURRENT_INVITES, sessionRegistry.size());
+    }
+}
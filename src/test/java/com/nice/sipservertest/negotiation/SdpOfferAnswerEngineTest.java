@@ -0,0 +1,205 @@
+package com.nice.sipservertest.negotiation;
+
+import com.nice.sipservertest.dto.MediaTransportProfile;
+import com.nice.sipservertest.dto.SdpMediaCodecs;
+import com.nice.sipservertest.dto.SdpMediaDescriptor;
+import com.nice.sipservertest.dto.SdpMediaDirection;
+import com.nice.sipservertest.dto.SdpMediaTypes;
+import com.nice.sipservertest.dto.SdpMessage;
+import com.nice.sipservertest.parser.SdpMessageParser;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SdpOfferAnswerEngineTest {
+
+    static final String SIPREC_OFFER =
+            "v=0\r\n" +
+            "o=SRC 1000 2000 IN IP4 192.168.0.10\r\n" +
+            "s=SIPREC\r\n" +
+            "c=IN IP4 192.168.0.10\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 20000 RTP/AVP 18 0 8 101 102\r\n" +
+            "a=rtpmap:18 G729/8000\r\n" +
+            "a=fmtp:18 annexb=no\r\n" +
+            "a=rtpmap:0 PCMU/8000\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n" +
+            "a=rtpmap:101 telephone-event/8000\r\n" +
+            "a=fmtp:101 0-15\r\n" +
+            "a=rtpmap:102 telephone-event/16000\r\n" +
+            "a=label:1\r\n" +
+            "a=sendonly\r\n" +
+            "a=ptime:20\r\n" +
+            "m=audio 20002 RTP/AVP 8\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n" +
+            "a=label:2\r\n" +
+            "a=sendonly\r\n" +
+            "m=video 20004 RTP/AVP 96\r\n" +
+            "a=rtpmap:96 H264/90000\r\n" +
+            "a=label:3\r\n";
+
+    static SdpOfferAnswerEngine engine(SdpMediaDirection direction, boolean honorOfferOrder, int cacheSize) throws Exception {
+        SdpCapabilityProfile profile = new SdpCapabilityProfile(InetAddress.getByName("10.0.0.5"), "answerer",
+                List.of(SdpMediaCodecs.PCMA, SdpMediaCodecs.PCMU, SdpMediaCodecs.TELEPHONE_EVENT),
+                EnumSet.of(SdpMediaTypes.AUDIO), EnumSet.of(MediaTransportProfile.RTP_AVP), direction, honorOfferOrder);
+        return new SdpOfferAnswerEngine(profile, cacheSize);
+    }
+
+    static List<Integer> payloadTypes(SdpMediaDescriptor md) {
+        return new ArrayList<>(md.getRtpPayloadTypeList());
+    }
+
+    @Test
+    void answersEachOfferedMediaLine() throws Exception {
+        SdpMessage offer = SdpMessageParser.parse(SIPREC_OFFER);
+        SdpMessage answer = engine(SdpMediaDirection.SEND_RECEIVE, false, 16).answer(offer, 42, 2000,
+                (offered, index) -> 30000 + 2 * index);
+
+        assertEquals(42, answer.getOriginSessionId());
+        assertEquals(2000, answer.getOriginSessionVersion());
+        assertEquals(3, answer.getMediaDescriptions().size());
+        assertTrue(SdpOfferAnswerEngine.hasAcceptedMedia(answer));
+
+        // profile preference order, offered payload types kept, only the 8000 Hz telephone-event
+        SdpMediaDescriptor first = answer.getMediaDescriptions().get(0);
+        assertEquals(List.of(8, 0, 101), payloadTypes(first));
+        assertEquals("0-15", first.getMediaMappings().get(101).getGenericFormatSpecificParameters());
+        assertEquals(30000, first.getRtpEndpoint().getPort());
+        assertEquals(InetAddress.getByName("10.0.0.5"), first.getRtpEndpoint().getAddress());
+        assertEquals(SdpMediaDirection.RECEIVE_ONLY, first.getDirection());
+        assertEquals("1", first.getLabel());
+        assertEquals(20, first.getPacketTimeInMs());
+
+        SdpMediaDescriptor second = answer.getMediaDescriptions().get(1);
+        assertEquals(List.of(8), payloadTypes(second));
+        assertEquals(30002, second.getRtpEndpoint().getPort());
+        assertEquals("2", second.getLabel());
+
+        // video is not supported - rejected with port 0, same media type
+        SdpMediaDescriptor third = answer.getMediaDescriptions().get(2);
+        assertEquals(SdpMediaTypes.VIDEO, third.getMediaType());
+        assertEquals(0, third.getRtpEndpoint().getPort());
+        assertEquals(List.of(96), payloadTypes(third));
+        assertEquals("3", third.getLabel());
+
+        // the encoded answer is valid SDP
+        SdpMessage reparsed = SdpMessageParser.parse(answer.getEncodedMessage());
+        assertEquals(3, reparsed.getMediaDescriptions().size());
+        assertEquals(List.of(8, 0, 101), payloadTypes(reparsed.getMediaDescriptions().get(0)));
+        assertEquals(SdpMediaDirection.RECEIVE_ONLY, reparsed.getMediaDescriptions().get(0).getDirection());
+        assertEquals(0, reparsed.getMediaDescriptions().get(2).getRtpEndpoint().getPort());
+    }
+
+    @Test
+    void honorsOfferOrderWhenConfigured() throws Exception {
+        SdpMessage offer = SdpMessageParser.parse(SIPREC_OFFER);
+        SdpMessage answer = engine(SdpMediaDirection.SEND_RECEIVE, true, 0).answer(offer, 1, 1, (offered, index) -> 30000);
+
+        assertEquals(List.of(0, 8, 101), payloadTypes(answer.getMediaDescriptions().get(0)));
+    }
+
+    @Test
+    void limitsDirectionsToTheProfile() throws Exception {
+        SdpOfferAnswerEngine recorder = engine(SdpMediaDirection.RECEIVE_ONLY, false, 0);
+
+        assertEquals(SdpMediaDirection.RECEIVE_ONLY, recorder.answerDirection(SdpMediaDirection.SEND_RECEIVE));
+        assertEquals(SdpMediaDirection.RECEIVE_ONLY, recorder.answerDirection(SdpMediaDirection.SEND_ONLY));
+        assertEquals(SdpMediaDirection.INACTIVE, recorder.answerDirection(SdpMediaDirection.RECEIVE_ONLY));
+        assertEquals(SdpMediaDirection.INACTIVE, recorder.answerDirection(SdpMediaDirection.INACTIVE));
+
+        SdpOfferAnswerEngine phone = engine(SdpMediaDirection.SEND_RECEIVE, false, 0);
+        assertEquals(SdpMediaDirection.SEND_ONLY, phone.answerDirection(SdpMediaDirection.RECEIVE_ONLY));
+        assertEquals(SdpMediaDirection.SEND_RECEIVE, phone.answerDirection(SdpMediaDirection.UNSPECIFIED));
+    }
+
+    @Test
+    void rejectsOfferWithoutCommonCodec() throws Exception {
+        SdpMessage offer = SdpMessageParser.parse(SIPREC_OFFER.replace("m=audio 20002 RTP/AVP 8", "m=audio 20002 RTP/AVP 18")
+                .replace("a=rtpmap:8 PCMA/8000\r\na=label:2", "a=rtpmap:18 G729/8000\r\na=label:2"));
+        SdpMessage answer = engine(SdpMediaDirection.SEND_RECEIVE, false, 0).answer(offer, 1, 1, (offered, index) -> 30000);
+
+        assertEquals(30000, answer.getMediaDescriptions().get(0).getRtpEndpoint().getPort());
+        assertEquals(0, answer.getMediaDescriptions().get(1).getRtpEndpoint().getPort());
+
+        SdpMessage g729Only = SdpMessageParser.parse("v=0\r\no=- 1 1 IN IP4 10.1.1.1\r\ns=-\r\nc=IN IP4 10.1.1.1\r\n" +
+                "t=0 0\r\nm=audio 4000 RTP/AVP 18 101\r\na=rtpmap:18 G729/8000\r\na=rtpmap:101 telephone-event/8000\r\n");
+        answer = engine(SdpMediaDirection.SEND_RECEIVE, false, 0).answer(g729Only, 1, 1, (offered, index) -> 30000);
+        assertFalse(SdpOfferAnswerEngine.hasAcceptedMedia(answer));
+    }
+
+    @Test
+    void cachesByOfferShape() throws Exception {
+        SdpOfferAnswerEngine engine = engine(SdpMediaDirection.SEND_RECEIVE, false, 2);
+
+        SdpMessage first = engine.answer(SdpMessageParser.parse(SIPREC_OFFER), 1, 1, (offered, index) -> 30000 + 2 * index);
+        // same shape from another address, other ports and labels - only those change in the answer
+        String other = SIPREC_OFFER.replace("192.168.0.10", "192.168.0.11").replace("20000", "21000")
+                .replace("a=label:1", "a=label:7");
+        SdpMessage second = engine.answer(SdpMessageParser.parse(other), 2, 1, (offered, index) -> 40000 + 2 * index);
+
+        assertEquals(1, engine.getCacheMissCount());
+        assertEquals(1, engine.getCacheHitCount());
+        assertEquals(payloadTypes(first.getMediaDescriptions().get(0)), payloadTypes(second.getMediaDescriptions().get(0)));
+        assertEquals("7", second.getMediaDescriptions().get(0).getLabel());
+        assertEquals(40000, second.getMediaDescriptions().get(0).getRtpEndpoint().getPort());
+
+        // a different codec list is a different shape, the cache stays bounded
+        engine.answer(SdpMessageParser.parse(SIPREC_OFFER.replace("RTP/AVP 18 0 8 101 102", "RTP/AVP 0 8 101")), 3, 1,
+                (offered, index) -> 30000);
+        engine.answer(SdpMessageParser.parse(SIPREC_OFFER.replace("RTP/AVP 18 0 8 101 102", "RTP/AVP 8 101")), 4, 1,
+                (offered, index) -> 30000);
+        assertEquals(3, engine.getCacheMissCount());
+        assertEquals(2, engine.getCacheSize());
+    }
+
+    @Test
+    void patchedTemplateMatchesFullEncode() throws Exception {
+        SdpOfferAnswerEngine engine = engine(SdpMediaDirection.SEND_RECEIVE, false, 16);
+        SdpOfferAnswerEngine uncached = engine(SdpMediaDirection.SEND_RECEIVE, false, 0);
+
+        Object[][] calls = {
+                {SIPREC_OFFER, 7L, 2000L, "10.0.0.5", 30000},
+                {SIPREC_OFFER.replace("o=SRC 1000 2000", "o=SRC 1000 123456789012"), 4294967295L, 123456789012L, "10.0.0.5", 8},
+                {SIPREC_OFFER.replace("192.168.0.10", "172.16.1.1"), 0L, 0L, "192.168.100.200", 65532},
+                {SIPREC_OFFER, 99L, 1L, "2001:db8::15", 40000},
+        };
+
+        for (Object[] call : calls) {
+            SdpMessage offer = SdpMessageParser.parse((String) call[0]);
+            InetAddress address = InetAddress.getByName((String) call[3]);
+            int base = (Integer) call[4];
+            SdpOfferAnswerEngine.PortSource ports = (offered, index) -> base + 2 * index;
+
+            byte[] expected = uncached.answer(offer, (Long) call[1], (Long) call[2], address, ports).getEncodedBytes();
+            assertArrayEquals(expected, engine.answerBytes(offer, (Long) call[1], (Long) call[2], address, ports));
+            // second time from the template
+            assertArrayEquals(expected, engine.answerBytes(offer, (Long) call[1], (Long) call[2], address, ports));
+        }
+
+        // IPv4 and IPv6 answers differ in more than the address - two templates
+        assertEquals(2, engine.getTemplateMissCount());
+        assertEquals(6, engine.getTemplateHitCount());
+
+        // labels are part of the answer text, so part of the fingerprint
+        engine.answerBytes(SdpMessageParser.parse(SIPREC_OFFER.replace("a=label:2", "a=label:9")), 1, 1,
+                (offered, index) -> 30000);
+        assertEquals(3, engine.getTemplateMissCount());
+        assertEquals(3, engine.getTemplateCacheSize());
+    }
+
+    @Test
+    void templateRemembersUnacceptableOffers() throws Exception {
+        SdpOfferAnswerEngine engine = engine(SdpMediaDirection.SEND_RECEIVE, false, 16);
+        SdpMessage videoOnly = SdpMessageParser.parse("v=0\r\no=- 1 1 IN IP4 10.1.1.1\r\ns=-\r\nc=IN IP4 10.1.1.1\r\n" +
+                "t=0 0\r\nm=video 4000 RTP/AVP 96\r\na=rtpmap:96 H264/90000\r\n");
+
+        assertNull(engine.answerBytes(videoOnly, 1, 1, (offered, index) -> 30000));
+        assertNull(engine.answerBytes(videoOnly, 2, 2, (offered, index) -> 30000));
+        assertEquals(1, engine.getTemplateHitCount());
+    }
+}
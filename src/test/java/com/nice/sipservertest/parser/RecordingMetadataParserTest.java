@@ -0,0 +1,120 @@
+package com.nice.sipservertest.parser;
+
+import com.nice.sipservertest.dto.RecordingMetadata;
+import com.nice.sipservertest.dto.SdpMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingMetadataParserTest {
+
+    static final String SDP =
+            "v=0\r\n" +
+            "o=SRC 1366884522 1366884523 IN IP4 10.1.1.50\r\n" +
+            "s=SIPREC\r\n" +
+            "c=IN IP4 10.1.1.50\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 36000 RTP/AVP 0\r\n" +
+            "a=label:1\r\n" +
+            "a=sendonly\r\n" +
+            "m=audio 36002 RTP/AVP 0\r\n" +
+            "a=label:2\r\n" +
+            "a=sendonly\r\n";
+
+    static final String METADATA =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<recording xmlns=\"urn:ietf:params:xml:ns:recording:1\">\n" +
+            "  <datamode>complete</datamode>\n" +
+            "  <group group_id=\"7+OTCyoxTmqmqyA/1weDAg==\">\n" +
+            "    <associate-time>2023-01-10T10:15:30Z</associate-time>\n" +
+            "  </group>\n" +
+            "  <session session_id=\"hVpd7YQgRW2nD22h7q60JQ==\">\n" +
+            "    <group-ref>7+OTCyoxTmqmqyA/1weDAg==</group-ref>\n" +
+            "    <sipSessionID>ab30317f1a784dc48ff824d0d3715d86;remote=47755a9de7794ba387653f2099600ef2</sipSessionID>\n" +
+            "    <start-time>2023-01-10T10:15:30Z</start-time>\n" +
+            "  </session>\n" +
+            "  <participantstreamassoc participant_id=\"zSfPoSvdSDCmU3A3TRDxAw==\">\n" +
+            "    <send>i1Pz3to5hGk8fuXl+PbwCw==</send>\n" +
+            "    <recv>UAAMm5GRQKSCMVvLyl4rFw==</recv>\n" +
+            "  </participantstreamassoc>\n" +
+            "  <participant participant_id=\"srfBElmCRp2QB23b7Mpk0w==\">\n" +
+            "    <nameID aor=\"sip:alice@example.com\">\n" +
+            "      <name xml:lang=\"en\">Alice</name>\n" +
+            "    </nameID>\n" +
+            "  </participant>\n" +
+            "  <participant participant_id=\"zSfPoSvdSDCmU3A3TRDxAw==\">\n" +
+            "    <nameID aor=\"sip:bob@example.com\">\n" +
+            "      <name xml:lang=\"en\">Björn</name>\n" +
+            "    </nameID>\n" +
+            "  </participant>\n" +
+            "  <stream stream_id=\"UAAMm5GRQKSCMVvLyl4rFw==\" session_id=\"hVpd7YQgRW2nD22h7q60JQ==\">\n" +
+            "    <label>1</label>\n" +
+            "  </stream>\n" +
+            "  <stream stream_id=\"i1Pz3to5hGk8fuXl+PbwCw==\" session_id=\"hVpd7YQgRW2nD22h7q60JQ==\">\n" +
+            "    <label>2</label>\n" +
+            "  </stream>\n" +
+            "  <participantstreamassoc participant_id=\"srfBElmCRp2QB23b7Mpk0w==\">\n" +
+            "    <send>UAAMm5GRQKSCMVvLyl4rFw==</send>\n" +
+            "    <recv>i1Pz3to5hGk8fuXl+PbwCw==</recv>\n" +
+            "  </participantstreamassoc>\n" +
+            "</recording>\n";
+
+    @Test
+    void parsesParticipantsStreamsAndLabels() throws Exception
+    {
+        byte[] body = ("xx" + METADATA).getBytes(StandardCharsets.UTF_8);
+        RecordingMetadata metadata = RecordingMetadataParser.parse(body, 2, body.length - 2);
+
+        assertEquals("complete", metadata.getDataMode());
+
+        assertEquals(1, metadata.getSessions().size());
+        RecordingMetadata.Session session = metadata.getSessions().get(0);
+        assertEquals("hVpd7YQgRW2nD22h7q60JQ==", session.getSessionId());
+        assertEquals("7+OTCyoxTmqmqyA/1weDAg==", session.getGroupId());
+        assertTrue(session.getSipSessionId().startsWith("ab30317f1a784dc48ff824d0d3715d86;remote="));
+
+        // Bob's association came first, his participant element is merged into it
+        assertEquals(2, metadata.getParticipants().size());
+        RecordingMetadata.Participant alice = metadata.getParticipant("srfBElmCRp2QB23b7Mpk0w==");
+        RecordingMetadata.Participant bob = metadata.getParticipant("zSfPoSvdSDCmU3A3TRDxAw==");
+        assertEquals("sip:alice@example.com", alice.getAor());
+        assertEquals("Alice", alice.getName());
+        assertEquals("Björn", bob.getName());
+        assertEquals(List.of("UAAMm5GRQKSCMVvLyl4rFw=="), alice.getSendStreamIds());
+        assertEquals(List.of("i1Pz3to5hGk8fuXl+PbwCw=="), alice.getRecvStreamIds());
+        assertEquals(List.of("i1Pz3to5hGk8fuXl+PbwCw=="), bob.getSendStreamIds());
+
+        assertEquals(2, metadata.getStreams().size());
+        RecordingMetadata.Stream stream2 = metadata.getStreamByLabel("2");
+        assertEquals("i1Pz3to5hGk8fuXl+PbwCw==", stream2.getStreamId());
+        assertSame(bob, metadata.getSender(stream2));
+        assertSame(alice, metadata.getSender(metadata.getStream("UAAMm5GRQKSCMVvLyl4rFw==")));
+
+        SdpMessage sdp = SdpMessageParser.parse(SDP);
+        assertEquals(36002, metadata.getMediaDescriptor(sdp, stream2).getRtpEndpoint().getPort());
+        assertEquals(36000, metadata.getMediaDescriptor(sdp, metadata.getStreamByLabel("1")).getRtpEndpoint().getPort());
+        assertNull(metadata.getStreamByLabel("3"));
+    }
+
+    @Test
+    void rejectsExternalEntities()
+    {
+        byte[] body = ("<?xml version=\"1.0\"?>\n" +
+                "<!DOCTYPE recording [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>\n" +
+                "<recording><datamode>&x;</datamode></recording>").getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(XMLStreamException.class, () -> RecordingMetadataParser.parse(body, 0, body.length));
+    }
+
+    @Test
+    void rejectsMalformedXml()
+    {
+        byte[] body = "<recording><stream stream_id=\"a\"><label>1</stream></recording>".getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(XMLStreamException.class, () -> RecordingMetadataParser.parse(body, 0, body.length));
+    }
+}
@@ -0,0 +1,379 @@
+package com.nice.sipservertest.parser;
+
+import com.nice.sipservertest.dto.LazySdpMediaDescriptorList;
+import com.nice.sipservertest.dto.LegacySdpMessageParser;
+import com.nice.sipservertest.dto.SdpMediaDescriptor;
+import com.nice.sipservertest.dto.SdpMediaMapping;
+import com.nice.sipservertest.dto.SdpMediaTypes;
+import com.nice.sipservertest.dto.SdpMessage;
+import com.nice.sipservertest.dto.SdpObjectPool;
+import com.nice.sipservertest.dto.SdpParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * differential tests - the cursor based parser has to produce exactly what the old regex parser produced
+ */
+class SdpMessageParserTest {
+
+    static final String SINGLE_AUDIO =
+            "v=0\r\n" +
+            "o=- 3912345678 3912345679 IN IP4 10.1.2.3\r\n" +
+            "s=-\r\n" +
+            "c=IN IP4 10.1.2.3\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 40000 RTP/AVP 0 8 18 101\r\n" +
+            "a=rtpmap:0 PCMU/8000\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n" +
+            "a=rtpmap:18 G729/8000\r\n" +
+            "a=fmtp:18 annexb=no\r\n" +
+            "a=rtpmap:101 telephone-event/8000\r\n" +
+            "a=fmtp:101 0-15\r\n" +
+            "a=ptime:20\r\n" +
+            "a=sendrecv\r\n";
+
+    static final String SIPREC =
+            "v=0\r\n" +
+            "o=SRC 1000 2000 IN IP4 192.168.0.10\r\n" +
+            "s=SIPREC\r\n" +
+            "c=IN IP4 192.168.0.10\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 20000 RTP/AVP 0 101\r\n" +
+            "a=rtpmap:0 PCMU/8000\r\n" +
+            "a=rtpmap:101 telephone-event/8000\r\n" +
+            "a=label:1\r\n" +
+            "a=sendonly\r\n" +
+            "m=audio 20002 RTP/AVP 8\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n" +
+            "a=label:2\r\n" +
+            "a=SENDONLY\r\n";
+
+    static final String SESSION_ATTRIBUTES =
+            "v=0\r\n" +
+            "o=alice 2890844526 2890842807 IN IP4 atlanta.example.com\r\n" +
+            "s=Call with everything\r\n" +
+            "i=A Seminar on the session description protocol\r\n" +
+            "u=http://www.example.com/seminars/sdp.pdf\r\n" +
+            "e=j.doe@example.com (Jane Doe)\r\n" +
+            "e=other@example.com\r\n" +
+            "p=+1 617 555-6011\r\n" +
+            "c=IN IP4 224.2.17.12\r\n" +
+            "t=2873397496 2873404696\r\n" +
+            "a=cat:foo.bar\r\n" +
+            "a=tool:sdp:tool:1.0\r\n" +
+            "a=type:Moderated\r\n" +
+            "a=charset:iso-8859-1\r\n" +
+            "a=recvonly\r\n" +
+            "m=audio 49170 RTP/AVP 0\r\n" +
+            "i=main audio\r\n" +
+            "m=video 51372 RTP/AVP 99\r\n" +
+            "a=rtpmap:99 h263-1998/90000\r\n" +
+            "a=orient:Portrait\r\n" +
+            "a=framerate:30\r\n" +
+            "a=quality:7\r\n";
+
+    static final String MEDIA_CONNECTION_AND_RTCP =
+            "v=0\r\n" +
+            "o=- 1 1 IN IP4 10.0.0.1\r\n" +
+            "s= \r\n" +
+            "c=IN IP4 10.0.0.1\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 30000 RTP/SAVP 96 97\r\n" +
+            "a=rtcp:30011 IN IP4 10.0.0.9\r\n" +
+            "c=IN IP4 10.0.0.2\r\n" +
+            "a=rtpmap:96 opus/48000/2\r\n" +
+            "a=fmtp:96 minptime=10;useinbandfec=1\r\n" +
+            "a=rtpmap:97 AMR-WB/16000/\r\n" +
+            "a=inactive\r\n" +
+            "m=audio 30002 udp 0\r\n" +
+            "c=IN IP4 10.0.0.3\r\n" +
+            "a=rtcp:30099 IN IP4 10.0.0.3\r\n" +
+            "m=audio 0 RTP/AVP 8\r\n" +
+            "m=text 30004 X-PROPRIETARY 0 1\r\n";
+
+    static final String IPV6 =
+            "v=0\r\n" +
+            "o=- 42 42 IN IP6 2001:DB8::1\r\n" +
+            "s=-\r\n" +
+            "c=IN IP6 2001:DB8::1\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 50000 RTP/AVP 0\r\n" +
+            "a=rtcp:50009 IN IP6 2001:DB8::2\r\n";
+
+    static final String MALFORMED_LINES =
+            "v=0\r\n" +
+            "o=too few fields\r\n" +
+            "o=- notanumber 7 IN IP4 10.9.9.9\r\n" +
+            "s=-\r\n" +
+            "garbage line\r\n" +
+            "x=\r\n" +
+            "=y\r\n" +
+            "\r\n" +
+            "c=IN IP4 \r\n" +
+            "c=IN IP4 10.9.9.9\r\n" +
+            "t=0 0\r\n" +
+            "a=cat:\r\n" +
+            "a=:nothing\r\n" +
+            "b=AS:64\r\n" +
+            "m=audio 10000 RTP/AVP 0  8 x -1 99999999999\r\n" +
+            "a=rtpmap:x PCMU/8000\r\n" +
+            "a=rtpmap:8\r\n" +
+            "a=fmtp:0\r\n" +
+            "a=fmtp:101 before-rtpmap\r\n" +
+            "a=rtpmap:101 telephone-event/8000\r\n" +
+            "a=RTPMAP:0 PCMU/8000\r\n" +
+            "a=ptime:20.5\r\n" +
+            "a=quality:11\r\n" +
+            "a=rtcp:abc\r\n" +
+            "a=some flag\r\n" +
+            "b=AS:64\r\n" +
+            "k=clear:secret\r\n";
+
+    static final String NO_SESSION_CONNECTION =
+            "v=0\r\n" +
+            "o=- 5 5 IN IP4 10.5.5.5\r\n" +
+            "s=-\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 6000 RTP/AVP 0\r\n" +
+            "m=audio 6002 RTP/AVP 0\r\n" +
+            "c=IN IP4 10.5.5.6\r\n";
+
+    static Stream<String> corpus()
+    {
+        return Stream.of(SINGLE_AUDIO, SIPREC, SESSION_ATTRIBUTES, MEDIA_CONNECTION_AND_RTCP, IPV6, MALFORMED_LINES,
+                NO_SESSION_CONNECTION, "", "v=0\r\n", "v=0\r\ns=-\r\n");
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void matchesLegacyParser(String body)
+    {
+        // the legacy parser never read the m= media field (parsesMediaTypes covers it)
+        assertEquals(describe(LegacySdpMessageParser.parse(body), false),
+                describe(SdpMessageParser.parse(body), false));
+    }
+
+    @Test
+    void parsesMediaTypes()
+    {
+        assertEquals(List.of(SdpMediaTypes.AUDIO, SdpMediaTypes.VIDEO), mediaTypes(SdpMessageParser.parse(SESSION_ATTRIBUTES)));
+        assertEquals(List.of(SdpMediaTypes.AUDIO, SdpMediaTypes.AUDIO, SdpMediaTypes.AUDIO, SdpMediaTypes.TEXT),
+                mediaTypes(SdpMessageParser.parse(MEDIA_CONNECTION_AND_RTCP)));
+        assertEquals(List.of(SdpMediaTypes.VIDEO), mediaTypes(SdpMessageParser.parseLazy(
+                "v=0\r\no=- 1 1 IN IP4 10.0.0.1\r\ns=-\r\nc=IN IP4 10.0.0.1\r\nt=0 0\r\nm=video 30000 RTP/AVP 96\r\n")));
+    }
+
+    static List<SdpMediaTypes> mediaTypes(SdpMessage msg)
+    {
+        List<SdpMediaTypes> types = new ArrayList<>();
+        for (SdpMediaDescriptor md : msg.getMediaDescriptions()) types.add(md.getMediaType());
+        return types;
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void parsesRawBytes(String body)
+    {
+        byte[] raw = ("garbage" + body).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direct = ByteBuffer.allocateDirect(raw.length).put(raw);
+        direct.position(7);
+
+        assertEquals(describe(SdpMessageParser.parse(body)), describe(SdpMessageParser.parse(raw, 7, raw.length - 7)));
+        assertEquals(describe(SdpMessageParser.parse(body)), describe(SdpMessageParser.parse(direct)));
+        assertEquals(7, direct.position());
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void lazyParseMatchesEagerParse(String body)
+    {
+        byte[] raw = body.getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(describe(SdpMessageParser.parse(body)), describe(SdpMessageParser.parseLazy(body)));
+        assertEquals(describe(SdpMessageParser.parse(body)), describe(SdpMessageParser.parseLazy(raw, 0, raw.length)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void encodeToMatchesEncodedMessage(String body) throws Exception
+    {
+        SdpMessage msg = SdpMessageParser.parse(body.getBytes(StandardCharsets.US_ASCII), 0, body.length());
+
+        byte[] expected;
+        try
+        {
+            expected = msg.getEncodedMessage().getBytes(StandardCharsets.UTF_8);
+        }
+        catch (Throwable t)
+        {
+            assertThrows(t.getClass(), () -> msg.encodeTo(new byte[4096], 0));
+            return;
+        }
+
+        byte[] array = new byte[expected.length + 10];
+        assertEquals(expected.length + 3, msg.encodeTo(array, 3));
+        assertArrayEquals(expected, Arrays.copyOfRange(array, 3, expected.length + 3));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(expected.length + 10);
+        direct.position(5);
+        msg.encodeTo(direct);
+        assertEquals(expected.length + 5, direct.position());
+        byte[] written = new byte[expected.length];
+        direct.position(5);
+        direct.get(written);
+        assertArrayEquals(expected, written);
+
+        assertArrayEquals(expected, msg.getEncodedBytes());
+        assertThrows(BufferOverflowException.class, () -> msg.encodeTo(new byte[expected.length - 1], 0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void pooledParseMatchesParse(String body)
+    {
+        // single slot pool - every corpus message is parsed into the objects released by the previous one
+        SdpObjectPool pool = new SdpObjectPool(1);
+        corpus().forEach(other -> {
+            byte[] raw = other.getBytes(StandardCharsets.US_ASCII);
+            pool.release(SdpMessageParser.parse(raw, 0, raw.length, pool));
+        });
+
+        byte[] raw = body.getBytes(StandardCharsets.US_ASCII);
+        SdpMessage pooled = SdpMessageParser.parse(raw, 0, raw.length, pool);
+
+        assertEquals(describe(SdpMessageParser.parse(body)), describe(pooled));
+        assertTrue(pool.getMessagePool().getHitCount() > 0);
+    }
+
+    @Test
+    void lazyParseOnlyDecodesTouchedDescriptors()
+    {
+        SdpMessage msg = SdpMessageParser.parseLazy(SIPREC);
+        LazySdpMediaDescriptorList descriptors = (LazySdpMediaDescriptorList) msg.getMediaDescriptions();
+
+        assertTrue(msg.isValid());
+        assertEquals(2, descriptors.size());
+        assertEquals(new InetSocketAddress("192.168.0.10", 20000), descriptors.get(0).getRtpEndpoint());
+        assertTrue(descriptors.isMaterialized(0));
+        assertFalse(descriptors.isMaterialized(1));
+
+        assertEquals(20002, msg.getMediaDescriptionFromLabel("2").getRtpEndpoint().getPort());
+        assertTrue(descriptors.isMaterialized(1));
+    }
+
+    @Test
+    void rejectsNonZeroVersion()
+    {
+        assertThrows(SdpParseException.class, () -> SdpMessageParser.parse("v=1\r\no=- 1 1 IN IP4 10.0.0.1\r\n"));
+    }
+
+    @Test
+    void acceptsBareLineFeeds()
+    {
+        SdpMessage msg = SdpMessageParser.parse(SINGLE_AUDIO.replace("\r\n", "\n"));
+
+        assertEquals(describe(SdpMessageParser.parse(SINGLE_AUDIO)), describe(msg));
+        assertTrue(msg.isValid());
+    }
+
+    @Test
+    void rtcpPortWithoutAddressUsesRtpAddress()
+    {
+        SdpMessage msg = SdpMessageParser.parse(
+                "v=0\r\no=- 1 1 IN IP4 10.0.0.1\r\ns=-\r\nc=IN IP4 10.0.0.1\r\nt=0 0\r\n" +
+                "m=audio 30000 RTP/AVP 0\r\na=rtcp:30005\r\n");
+
+        assertEquals(new InetSocketAddress("10.0.0.1", 30005), msg.getMediaDescriptions().get(0).getRtcpEndpoint());
+    }
+
+    @Test
+    void connectionHostNamesSkipAddressLiterals()
+    {
+        byte[] sdp = ("v=0\r\no=- 1 1 IN IP4 10.0.0.1\r\ns=-\r\nc=IN IP4 media.example.com\r\nt=0 0\r\n" +
+                "m=audio 30000 RTP/AVP 0\r\nc=IN IP4 10.0.0.2\r\na=rtcp:30005 IN IP4 rtcp.example.com\r\n" +
+                "m=audio 30002 RTP/AVP 0\r\nc=IN IP4 media.example.com\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(List.of("media.example.com", "rtcp.example.com"),
+                SdpMessageParser.connectionHostNames(sdp, 0, sdp.length));
+    }
+
+    @Test
+    void encodedBytesOfHighOctetAddressesAndMessagesPastTheScratchBuffer() throws Exception
+    {
+        StringBuilder body = new StringBuilder("v=0\r\no=- 1 1 IN IP4 192.168.250.254\r\ns=-\r\n" +
+                "c=IN IP4 192.168.250.254\r\nt=0 0\r\n");
+        for (int i = 0; i < 100; i++)
+        {
+            body.append("m=audio ").append(30000 + 2 * i).append(" RTP/AVP 0 8\r\na=rtpmap:0 PCMU/8000\r\n")
+                    .append("a=rtpmap:8 PCMA/8000\r\na=label:").append(i).append("\r\n");
+        }
+        SdpMessage msg = SdpMessageParser.parse(body.toString());
+
+        byte[] expected = msg.getEncodedMessage().getBytes(StandardCharsets.UTF_8);
+        assertTrue(expected.length > 4096);
+        assertArrayEquals(expected, msg.getEncodedBytes());
+        assertTrue(new String(msg.getEncodedBytes(), StandardCharsets.UTF_8).contains("c=IN IP4 192.168.250.254\r\n"));
+    }
+
+    static String describe(SdpMessage msg)
+    {
+        return describe(msg, true);
+    }
+
+    static String describe(SdpMessage msg, boolean withMediaType)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("valid=").append(msg.isValid())
+                .append(" v=").append(msg.isHasVersion())
+                .append(" o=").append(msg.isHasOriginator())
+                .append(" s=").append(msg.isHasSessionName())
+                .append(" t=").append(msg.isHasTimeDescription()).append('\n')
+                .append("origin=").append(msg.getOriginUsername()).append('|').append(msg.getOriginSessionId())
+                .append('|').append(msg.getOriginSessionVersion()).append('|').append(msg.getOriginAddressType())
+                .append('|').append(msg.getOriginUnicastAddress()).append('\n')
+                .append("session=").append(msg.getSessionName()).append('|').append(msg.getSessionInformation())
+                .append('|').append(msg.getSessionUri()).append('|').append(msg.getSessionEmailAddresses())
+                .append('|').append(msg.getSessionPhoneNumbers()).append('\n')
+                .append("connection=").append(msg.getConnectionAddress()).append('\n')
+                .append("attributes=").append(msg.getCategory()).append('|').append(msg.getTool())
+                .append('|').append(msg.getConferenceType()).append('|').append(msg.getCharset())
+                .append('|').append(msg.getDirection()).append('\n')
+                .append("labels=").append(new TreeMap<>(msg.getMediaMappingWithSdpLabelKey()).keySet()).append('\n');
+
+        for (SdpMediaDescriptor md : msg.getMediaDescriptions())
+        {
+            sb.append("m ").append(withMediaType ? md.getMediaType() : "-").append('|').append(md.getTransportProfile())
+                    .append('|').append(md.getTransportProtocolString()).append('|').append(md.getRtpEndpoint())
+                    .append('|').append(md.getRtcpEndpoint()).append('|').append(md.getDirection())
+                    .append('|').append(md.getLabel()).append('|').append(md.getMediaDescriptorInformation())
+                    .append('|').append(md.getPacketTimeInMs()).append('|').append(md.getOrientation())
+                    .append('|').append(md.getFramerate()).append('|').append(md.getQuality())
+                    .append('|').append(md.getRtpPayloadTypeList()).append('\n');
+
+            for (Map.Entry<Integer, SdpMediaMapping> e : new TreeMap<>(md.getMediaMappings()).entrySet())
+            {
+                SdpMediaMapping mm = e.getValue();
+                sb.append("  ").append(e.getKey()).append(" -> ").append(mm.getRtpPayloadType())
+                        .append('|').append(mm.getMediaCodec()).append('|').append(mm.getMediaEncodingString())
+                        .append('|').append(mm.getSamplingFrequency()).append('|').append(mm.getChannels())
+                        .append('|').append(mm.getGenericFormatSpecificParameters()).append('\n');
+            }
+        }
+
+        return sb.toString();
+    }
+}
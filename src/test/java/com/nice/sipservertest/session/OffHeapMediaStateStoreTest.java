@@ -0,0 +1,156 @@
+package com.nice.sipservertest.session;
+
+import com.nice.sipservertest.dto.MediaChannel;
+import com.nice.sipservertest.dto.MediaChannelStates;
+import com.nice.sipservertest.dto.MediaChannelTypes;
+import com.nice.sipservertest.dto.MediaCodec;
+import com.nice.sipservertest.dto.MediaCodecTypes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapMediaStateStoreTest {
+
+    static MediaChannel channel(String address, int port, MediaChannelStates state, int... payloadTypes) throws Exception {
+        List<MediaCodec> codecs = new ArrayList<>();
+        for (int pt : payloadTypes) {
+            codecs.add(new MediaCodec(pt, (pt == 0) ? MediaCodecTypes.G711U : MediaCodecTypes.TELEPHONY_EVENT, "0-15"));
+        }
+        InetAddress inetAddress = InetAddress.getByName(address);
+        return new MediaChannel(state, MediaChannelTypes.AUDIO, new InetSocketAddress(inetAddress, port),
+                (port == 0) ? null : new InetSocketAddress(inetAddress, port + 1), codecs);
+    }
+
+    static void assertChannelsEqual(List<MediaChannel> expected, List<MediaChannel> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            MediaChannel e = expected.get(i);
+            MediaChannel a = actual.get(i);
+            assertEquals(e.getMediaSessionState(), a.getMediaSessionState());
+            assertEquals(e.getMediaChannelType(), a.getMediaChannelType());
+            assertEquals(e.getRtpEndpoint(), a.getRtpEndpoint());
+            assertEquals(e.getRtcpEndpoint(), a.getRtcpEndpoint());
+            assertEquals(e.getMediaCodecs().size(), a.getMediaCodecs().size());
+            for (int c = 0; c < e.getMediaCodecs().size(); c++) {
+                assertEquals(e.getMediaCodecs().get(c).getRtpPayloadType(), a.getMediaCodecs().get(c).getRtpPayloadType());
+                assertEquals(e.getMediaCodecs().get(c).getMediaCodecType(), a.getMediaCodecs().get(c).getMediaCodecType());
+                assertNull(a.getMediaCodecs().get(c).getFmtp());
+            }
+        }
+    }
+
+    @Test
+    void roundTripReplaceAndRemove() throws Exception {
+        try (OffHeapMediaStateStore store = new OffHeapMediaStateStore(1000, 2, 4, null)) {
+            List<MediaChannel> channels = List.of(channel("10.1.1.50", 36000, MediaChannelStates.ACTIVE, 0, 101),
+                    channel("2001:db8::1", 65534, MediaChannelStates.INACTIVE, 8));
+
+            assertTrue(store.put("call-1@10.1.1.50", channels));
+            assertChannelsEqual(channels, store.get("call-1@10.1.1.50"));
+            assertNull(store.get("call-2@10.1.1.50"));
+
+            List<MediaChannel> reInvite = List.of(channel("10.1.1.51", 0, MediaChannelStates.UNUSED));
+            assertTrue(store.put("call-1@10.1.1.50", reInvite));
+            assertChannelsEqual(reInvite, store.get("call-1@10.1.1.50"));
+            assertEquals(1, store.size());
+
+            // does not fit the slot - stays on the heap, the old state is dropped
+            List<MediaChannel> tooMany = List.of(channels.get(0), channels.get(1), channels.get(0));
+            assertFalse(store.put("call-1@10.1.1.50", tooMany));
+            assertNull(store.get("call-1@10.1.1.50"));
+            assertFalse(store.put("x".repeat(OffHeapMediaStateStore.MAX_CALL_ID_BYTES + 1), channels));
+
+            assertTrue(store.put("call-3", new ArrayList<>()));
+            assertEquals(0, store.get("call-3").size());
+            assertTrue(store.remove("call-3"));
+            assertFalse(store.remove("call-3"));
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    void probeChainsSurviveRemoves() throws Exception {
+        List<MediaChannel> channels = List.of(channel("10.0.0.1", 4000, MediaChannelStates.ACTIVE, 0));
+
+        try (OffHeapMediaStateStore store = new OffHeapMediaStateStore(64 * 12, 1, 1, null)) {
+            int capacity = store.getCapacity();
+            Map<String, Integer> stored = new HashMap<>();
+            Random random = new Random(7);
+
+            int rejected = 0;
+            for (int i = 0; i < capacity * 4; i++) {
+                String callId = "call-" + random.nextInt(capacity * 2);
+                if (stored.containsKey(callId) && random.nextBoolean()) {
+                    assertTrue(store.remove(callId));
+                    stored.remove(callId);
+                } else {
+                    int port = 4000 + 2 * i;
+                    List<MediaChannel> media = List.of(channel("10.0.0.1", port % 65536, MediaChannelStates.ACTIVE, 0));
+                    if (store.put(callId, media)) {
+                        stored.put(callId, port % 65536);
+                    } else {
+                        // only a full segment rejects a new call
+                        rejected++;
+                        stored.remove(callId);
+                    }
+                }
+            }
+
+            assertEquals(stored.size(), store.size());
+            for (Map.Entry<String, Integer> entry : stored.entrySet()) {
+                assertEquals(entry.getValue(), store.get(entry.getKey()).get(0).getRtpEndpoint().getPort());
+            }
+            assertTrue(rejected < capacity);
+            assertNotNull(channels);
+        }
+    }
+
+    @Test
+    void memoryMappedArena(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("sessions");
+        List<MediaChannel> channels = List.of(channel("192.168.0.10", 20000, MediaChannelStates.ACTIVE, 0, 101));
+
+        try (OffHeapMediaStateStore store = new OffHeapMediaStateStore(500, 4, 8, file)) {
+            assertTrue(store.put("mapped-call", channels));
+            assertChannelsEqual(channels, store.get("mapped-call"));
+            assertEquals(store.getArenaBytes(), Files.size(file));
+        }
+    }
+
+    @Test
+    void registryDecodesOffHeapMediaOnDemand() throws Exception {
+        List<MediaChannel> channels = List.of(channel("10.1.1.50", 36000, MediaChannelStates.ACTIVE, 0));
+
+        try (OffHeapMediaStateStore store = new OffHeapMediaStateStore(100, 1, 2, null)) {
+            SipSessionRegistry registry = new SipSessionRegistry(16, store);
+
+            SipCallSession session = registry.update("call-1", null, channels);
+            assertTrue(session.isOffHeap());
+            assertChannelsEqual(channels, registry.getMediaChannels("call-1"));
+
+            // two channels do not fit a one channel slot
+            List<MediaChannel> twoChannels = List.of(channels.get(0), channels.get(0));
+            session = registry.update("call-1", null, twoChannels);
+            assertFalse(session.isOffHeap());
+            assertSame(twoChannels.get(1), registry.getMediaChannels("call-1").get(1));
+            assertEquals(0, store.size());
+
+            registry.update("call-1", null, channels);
+            assertEquals(1, store.size());
+            registry.remove("call-1");
+            assertEquals(0, store.size());
+            assertNull(registry.getMediaChannels("call-1"));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.nice.sipservertest.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RtpPortAllocatorTest {
+
+    @Test
+    void allocatesEveryEvenPortOnce() {
+        // 65 pairs - the second bitmap word is partly outside the range
+        try (RtpPortAllocator allocator = new RtpPortAllocator(20000, 20130)) {
+            assertEquals(65, allocator.getCapacity());
+
+            Set<Integer> ports = new HashSet<>();
+            for (int i = 0; i < 65; i++) {
+                int port = allocator.allocate();
+                assertTrue(port >= 20000 && port <= 20128 && port % 2 == 0, "port " + port);
+                assertTrue(ports.add(port));
+            }
+            assertEquals(-1, allocator.allocate());
+            assertEquals(65, allocator.getInUseCount());
+
+            assertTrue(allocator.free(20064));
+            assertFalse(allocator.free(20064));
+            assertFalse(allocator.free(20065));
+            assertFalse(allocator.free(20130));
+            assertEquals(20064, allocator.allocate());
+        }
+    }
+
+    @Test
+    void callKeepsItsPortsUntilReleased() {
+        try (RtpPortAllocator allocator = new RtpPortAllocator(30000, 30999)) {
+            int audio = allocator.allocate("call-1", 0);
+            int video = allocator.allocate("call-1", 1);
+
+            // re-INVITE gets the same ports
+            assertEquals(audio, allocator.allocate("call-1", 0));
+            assertEquals(video, allocator.allocate("call-1", 1));
+            assertNotEquals(audio, video);
+            assertEquals(2, allocator.getInUseCount());
+
+            allocator.allocate("call-2", 2);
+            assertEquals(2, allocator.getCallCount());
+
+            assertEquals(2, allocator.release("call-1"));
+            assertEquals(0, allocator.release("call-1"));
+            assertEquals(1, allocator.getInUseCount());
+        }
+    }
+
+    @Test
+    void reclaimsPortsOfVanishedCalls() {
+        try (RtpPortAllocator allocator = new RtpPortAllocator(30000, 30999)) {
+            allocator.allocate("live", 0);
+            allocator.allocate("gone", 0);
+            allocator.allocate("gone", 1);
+
+            // still within the grace period
+            assertEquals(0, allocator.reclaimLeaked(callId -> false, 60_000));
+
+            assertEquals(2, allocator.reclaimLeaked("live"::equals, 0));
+            assertEquals(2, allocator.getLeakedCount());
+            assertEquals(1, allocator.getInUseCount());
+            assertEquals(1, allocator.getCallCount());
+        }
+    }
+
+    @Test
+    void concurrentAllocateAndFree() throws Exception {
+        try (RtpPortAllocator allocator = new RtpPortAllocator(10000, 10000 + 2 * 512 - 1)) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            Set<Integer> held = ConcurrentHashMap.newKeySet();
+
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    futures.add(executor.submit(() -> {
+                        List<Integer> mine = new ArrayList<>();
+                        for (int i = 0; i < 20_000; i++) {
+                            if (mine.size() < 64) {
+                                int port = allocator.allocate();
+                                assertTrue(port > 0);
+                                assertTrue(held.add(port), "port " + port + " handed out twice");
+                                mine.add(port);
+                            } else {
+                                int port = mine.remove(mine.size() - 1);
+                                held.remove(port);
+                                assertTrue(allocator.free(port));
+                            }
+                        }
+                        for (int port : mine) {
+                            held.remove(port);
+                            assertTrue(allocator.free(port));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) future.get();
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(0, allocator.getInUseCount());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.nice.sipservertest.session;
+
+import com.nice.sipservertest.dto.MediaChannel;
+import com.nice.sipservertest.dto.RecordingMetadata;
+import com.nice.sipservertest.dto.SdpMessage;
+import com.nice.sipservertest.parser.SdpMessageParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipSessionRegistryTest {
+
+    static SdpMessage sdp(String user, long sessionId, long version, int port) {
+        return SdpMessageParser.parse("v=0\r\n" +
+                "o=" + user + " " + sessionId + " " + version + " IN IP4 10.1.1.50\r\n" +
+                "s=-\r\n" +
+                "c=IN IP4 10.1.1.50\r\n" +
+                "t=0 0\r\n" +
+                "m=audio " + port + " RTP/AVP 0\r\n");
+    }
+
+    static List<MediaChannel> channels(int count) {
+        List<MediaChannel> channels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            channels.add(new MediaChannel());
+        }
+        return channels;
+    }
+
+    @Test
+    void reInviteReplacesMediaAndByeEvicts() {
+        SipSessionRegistry registry = new SipSessionRegistry(16);
+
+        SipCallSession created = registry.update("call-1", sdp("alice", 100, 1, 4000), channels(1));
+        assertEquals("alice_10.1.1.50_100", created.getSdpSessionId());
+        assertSame(created, registry.get("call-1"));
+        assertSame(created, registry.getBySdpSessionId("alice_10.1.1.50_100"));
+
+        SipCallSession updated = registry.update("call-1", sdp("alice", 100, 2, 4002), channels(2));
+        assertEquals(2, updated.getMediaChannels().size());
+        assertEquals(2, updated.getSdpSessionVersion());
+        assertEquals(created.getCreatedMillis(), updated.getCreatedMillis());
+        assertEquals(1, created.getMediaChannels().size());
+
+        // a late re-INVITE with an older version does not win
+        assertSame(updated, registry.update("call-1", sdp("alice", 100, 1, 4000), channels(1)));
+
+        // new SDP session on the same call moves the index
+        SipCallSession moved = registry.update("call-1", sdp("alice", 200, 1, 4004), channels(1));
+        assertNull(registry.getBySdpSessionId("alice_10.1.1.50_100"));
+        assertSame(moved, registry.getBySdpSessionId("alice_10.1.1.50_200"));
+
+        assertSame(moved, registry.remove("call-1"));
+        assertNull(registry.remove("call-1"));
+        assertNull(registry.get("call-1"));
+        assertNull(registry.getBySdpSessionId("alice_10.1.1.50_200"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void keepsRecordingMetadataAcrossReInvites() {
+        SipSessionRegistry registry = new SipSessionRegistry(16);
+        RecordingMetadata metadata = new RecordingMetadata();
+        RecordingMetadata changed = new RecordingMetadata();
+
+        assertSame(metadata, registry.update("call-1", sdp("src", 1, 1, 4000), channels(1), metadata)
+                .getRecordingMetadata());
+        // a re-INVITE without metadata keeps what the call has
+        assertSame(metadata, registry.update("call-1", sdp("src", 1, 2, 4000), channels(1)).getRecordingMetadata());
+        assertSame(changed, registry.update("call-1", sdp("src", 1, 3, 4000), channels(1), changed)
+                .getRecordingMetadata());
+
+        assertNull(registry.update("call-2", sdp("src", 2, 1, 4002), channels(1)).getRecordingMetadata());
+    }
+
+    @Test
+    void concurrentCallsAcrossThreads() throws Exception {
+        SipSessionRegistry registry = new SipSessionRegistry(1024);
+        int threads = 8;
+        int callsPerThread = 2000;
+        SdpMessage sdp = sdp("src", 1, 1, 4000);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < callsPerThread; i++) {
+                    String callId = "call-" + thread + "-" + i;
+                    registry.update(callId, sdp, channels(1));
+                    registry.update(callId, sdp, channels(2));
+                    // every other call hangs up
+                    if (i % 2 == 0) registry.remove(callId);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * callsPerThread / 2, registry.size());
+        assertEquals(2, registry.get("call-3-1").getMediaChannels().size());
+        assertNull(registry.get("call-3-2"));
+    }
+}
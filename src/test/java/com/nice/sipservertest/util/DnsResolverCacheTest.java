@@ -0,0 +1,119 @@
+package com.nice.sipservertest.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DnsResolverCacheTest {
+
+    @Test
+    void parsesLiteralsLikeTheJdk() throws Exception
+    {
+        String[] literals = { "10.1.2.3", "0.0.0.0", "255.255.255.255", "::", "::1", "2001:db8::7",
+                "fe80:0:0:0:204:61ff:fe9d:f156", "::ffff:192.168.1.20", "2001:db8:0:0:1::" };
+
+        for (String literal : literals)
+        {
+            assertEquals(InetAddress.getByName(literal), InetAddressLiterals.parse(literal), literal);
+        }
+
+        String[] notLiterals = { "10.1.2", "10.1.2.256", "1.2.3.4.5", "10..2.3", "2001:db8::7::1", "1:2:3:4:5:6:7:8:9",
+                "2001:db8:", "fe80::1%eth0", "media.example.com", "" };
+
+        for (String text : notLiterals)
+        {
+            assertNull(InetAddressLiterals.parse(text), text);
+        }
+    }
+
+    @Test
+    void resolvesHostNamesInTheBackground() throws Exception
+    {
+        InetAddress resolved = InetAddress.getByAddress("media.example.com", new byte[] { 10, 0, 0, 1 });
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger lookups = new AtomicInteger();
+
+        // no lookup timeout - a miss never waits
+        DnsResolverCache cache = new DnsResolverCache(16, 60_000, 60_000, 1, 0, host -> {
+            lookups.incrementAndGet();
+            try { release.await(); } catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+            if (host.equals("media.example.com")) return resolved;
+            throw new UnknownHostException(host);
+        });
+
+        String text = "IN IP4 media.example.com";
+
+        // first sight of the name never blocks the caller, concurrent misses share one lookup
+        assertNull(cache.resolve(text, 7, text.length()));
+        assertNull(cache.resolve("media.example.com"));
+        release.countDown();
+
+        assertEquals(resolved, cache.resolveAsync("media.example.com").get(5, TimeUnit.SECONDS));
+        assertEquals(resolved, cache.resolve(text, 7, text.length()));
+        assertNull(cache.resolveAsync("missing.example.com").get(5, TimeUnit.SECONDS));
+        assertNull(cache.resolve("missing.example.com"));
+
+        assertEquals(2, lookups.get());
+        assertEquals(1, cache.getFailureCount());
+        assertEquals(2, cache.getResolutionCount());
+        assertTrue(cache.getHitCount() >= 2);
+
+        // literals don't go near the cache
+        assertEquals(InetAddress.getByName("10.9.8.7"), cache.resolve("c=10.9.8.7", 2, 10));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void firstSightOfANameWaitsForTheLookup() throws Exception
+    {
+        InetAddress resolved = InetAddress.getByAddress("media.example.com", new byte[] { 10, 0, 0, 1 });
+        CountDownLatch release = new CountDownLatch(1);
+
+        DnsResolverCache cache = new DnsResolverCache(16, 60_000, 60_000, 1, 5_000, host -> {
+            if (host.equals("slow.example.com"))
+            {
+                try { release.await(); } catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            if (host.equals("media.example.com") || host.equals("slow.example.com")) return resolved;
+            throw new UnknownHostException(host);
+        });
+
+        try
+        {
+            // an FQDN peer's first offer gets its address
+            assertEquals(resolved, cache.resolve("media.example.com"));
+            assertEquals(1, cache.getMissCount());
+            assertNull(cache.resolve("missing.example.com"));
+            assertEquals(1, cache.getFailureCount());
+        }
+        finally
+        {
+            cache.close();
+        }
+
+        // a lookup that outlives the timeout gives up, the lookup itself carries on
+        DnsResolverCache impatient = new DnsResolverCache(16, 60_000, 60_000, 1, 50, host -> {
+            try { release.await(); } catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+            return resolved;
+        });
+
+        try
+        {
+            assertNull(impatient.resolve("slow.example.com"));
+            assertEquals(1, impatient.getTimeoutCount());
+            release.countDown();
+            assertEquals(resolved, impatient.resolveAsync("slow.example.com").get(5, TimeUnit.SECONDS));
+            assertEquals(resolved, impatient.resolve("slow.example.com"));
+        }
+        finally
+        {
+            impatient.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.nice.sipservertest.util;
+
+import gov.nist.javax.sip.header.ContentType;
+import gov.nist.javax.sip.message.Content;
+import gov.nist.javax.sip.message.MultipartMimeContentImpl;
+import org.junit.jupiter.api.Test;
+
+import javax.sip.SipFactory;
+import javax.sip.message.Request;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartBodyScannerTest {
+
+    static final String SDP =
+            "v=0\r\n" +
+            "o=SRC 1000 2000 IN IP4 192.168.0.10\r\n" +
+            "s=SIPREC\r\n" +
+            "c=IN IP4 192.168.0.10\r\n" +
+            "t=0 0\r\n" +
+            "m=audio 20000 RTP/AVP 0\r\n" +
+            "a=label:1\r\n" +
+            "a=sendonly";
+
+    static final String METADATA =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+            "<recording xmlns=\"urn:ietf:params:xml:ns:recording:1\">\r\n" +
+            "  <datamode>complete</datamode>\r\n" +
+            "</recording>";
+
+    static final String SIPREC_BODY =
+            "--foobar\r\n" +
+            "Content-Type: application/sdp\r\n" +
+            "\r\n" +
+            SDP + "\r\n" +
+            "--foobar\r\n" +
+            "Content-Type: application/rs-metadata+xml\r\n" +
+            "Content-Disposition: recording-session\r\n" +
+            "\r\n" +
+            METADATA + "\r\n" +
+            "--foobar--\r\n";
+
+    @Test
+    void splitsSiprecBody()
+    {
+        String metadata = METADATA.replace("</recording>", "  <!-- --foobar inside a line is not a delimiter -->\r\n</recording>");
+        byte[] body = ("junk" + SIPREC_BODY.replace(METADATA, metadata)).getBytes(StandardCharsets.US_ASCII);
+        List<MultipartBodyScanner.Part> parts = new MultipartBodyScanner("foobar").scan(body, 4, body.length - 4);
+
+        assertEquals(2, parts.size());
+        assertEquals("application/sdp", parts.get(0).getContentType());
+        assertEquals(SDP, parts.get(0).toString(StandardCharsets.US_ASCII));
+        assertEquals("application/rs-metadata+xml", parts.get(1).getContentType());
+        assertEquals(metadata, parts.get(1).toString(StandardCharsets.US_ASCII));
+        assertSame(body, parts.get(0).getArray());
+
+        MultipartBodyScanner.Part sdp = new MultipartBodyScanner("foobar").findPart(body, 4, body.length - 4, "APPLICATION/SDP");
+        assertEquals(parts.get(0).getOffset(), sdp.getOffset());
+        assertNull(new MultipartBodyScanner("foobar").findPart(body, 4, body.length - 4, "text/plain"));
+    }
+
+    @Test
+    void matchesJainSipMultipartParser() throws Exception
+    {
+        ContentType contentType = new ContentType("multipart", "mixed");
+        contentType.setParameter("boundary", "foobar");
+        MultipartMimeContentImpl jainSip = new MultipartMimeContentImpl(contentType);
+        jainSip.createContentList(SIPREC_BODY);
+
+        List<String> expected = new ArrayList<>();
+        for (Iterator<Content> it = jainSip.getContents(); it.hasNext(); ) {
+            Content content = it.next();
+            expected.add(content.getContentTypeHeader().getContentType() + "/" +
+                    content.getContentTypeHeader().getContentSubType() + "|" + content.getContent());
+        }
+
+        byte[] body = SIPREC_BODY.getBytes(StandardCharsets.US_ASCII);
+        List<String> actual = new ArrayList<>();
+        for (MultipartBodyScanner.Part part : new MultipartBodyScanner("foobar").scan(body, 0, body.length)) {
+            actual.add(part.getContentType() + "|" + part.toString(StandardCharsets.US_ASCII));
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void lenientParsing()
+    {
+        String text = "preamble\n" +
+                "--b1 \n" +
+                "content-TYPE : Text/Plain ; charset=us-ascii\n" +
+                "\n" +
+                "first\n" +
+                "--b1x is not a delimiter\n" +
+                "--b1\n" +
+                "\n" +
+                "no headers\n" +
+                "--b1\n" +
+                "c: application/sdp\n" +
+                "\n" +
+                "v=0\n" +
+                "--b1\n" +
+                "Content-Type: application/pidf+xml\n" +
+                "\n" +
+                "unterminated";
+        byte[] body = text.getBytes(StandardCharsets.US_ASCII);
+
+        List<MultipartBodyScanner.Part> parts = new MultipartBodyScanner("b1").scan(body, 0, body.length);
+
+        assertEquals(4, parts.size());
+        assertTrue(parts.get(0).isContentType("text/plain"));
+        assertEquals("first\n--b1x is not a delimiter", parts.get(0).toString(StandardCharsets.US_ASCII));
+        assertEquals("text/plain", parts.get(1).getContentType());
+        assertEquals("no headers", parts.get(1).toString(StandardCharsets.US_ASCII));
+        assertEquals("v=0", parts.get(2).toString(StandardCharsets.US_ASCII));
+        assertEquals("application/pidf+xml", parts.get(3).getContentType());
+        assertEquals("unterminated", parts.get(3).toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void sipBodyHelpersReuseScannersByBoundary()
+    {
+        MultipartBodyScanner scanner = SipBodyHelpers.getMultipartBodyScanner("foobar");
+        assertSame(scanner, SipBodyHelpers.getMultipartBodyScanner("foobar"));
+        assertNotSame(scanner, SipBodyHelpers.getMultipartBodyScanner("other"));
+
+        // a new boundary per message does not grow the cache without limit
+        for (int i = 0; i < 1000; i++)
+        {
+            assertNotNull(SipBodyHelpers.getMultipartBodyScanner("boundary-" + i));
+        }
+        assertTrue(SipBodyHelpers.getCachedScannerCount() <= 256);
+
+        MultipartBodyScanner.Part[] parts = SipBodyHelpers.getMultipartBodyScanner("foobar").findParts(
+                SIPREC_BODY.getBytes(StandardCharsets.US_ASCII), 0, SIPREC_BODY.length(), "application/sdp",
+                "application/rs-metadata+xml");
+        assertEquals(SDP, parts[0].toString(StandardCharsets.US_ASCII));
+        assertEquals(METADATA, parts[1].toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void sipBodyHelpersSliceTheRawContent() throws Exception
+    {
+        String invite = "INVITE sip:recorder@10.0.0.5:5060 SIP/2.0\r\n" +
+                "Via: SIP/2.0/UDP 10.1.1.50:5060;branch=z9hG4bK-1\r\n" +
+                "From: <sip:src@10.1.1.50>;tag=1\r\n" +
+                "To: <sip:recorder@10.0.0.5>\r\n" +
+                "Call-ID: multipart-test@10.1.1.50\r\n" +
+                "CSeq: 1 INVITE\r\n" +
+                "Max-Forwards: 70\r\n" +
+                "Content-Type: multipart/mixed;boundary=\"foobar\"\r\n" +
+                "Content-Length: " + SIPREC_BODY.length() + "\r\n" +
+                "\r\n" +
+                SIPREC_BODY;
+
+        SipFactory sipFactory = SipFactory.getInstance();
+        sipFactory.setPathName("gov.nist");
+        Request request = sipFactory.createMessageFactory().createRequest(invite);
+
+        BodySlice sdp = SipBodyHelpers.getBodyContent(request, "application/sdp");
+
+        assertSame(request.getRawContent(), sdp.getArray());
+        assertEquals(SDP, sdp.toString(StandardCharsets.US_ASCII));
+        assertArrayEquals(SDP.getBytes(StandardCharsets.US_ASCII), SipBodyHelpers.getBodyContentBytes(request, "application/sdp"));
+        assertEquals(METADATA, SipBodyHelpers.getBodyContentString(request, "application/rs-metadata+xml"));
+        assertNull(SipBodyHelpers.getBodyContent(request, "application/pidf+xml"));
+
+        BodySlice[] contents = SipBodyHelpers.getBodyContents(request, "application/rs-metadata+xml", "text/plain",
+                "application/sdp");
+        assertEquals(METADATA, contents[0].toString(StandardCharsets.US_ASCII));
+        assertNull(contents[1]);
+        assertEquals(sdp.getOffset(), contents[2].getOffset());
+    }
+}